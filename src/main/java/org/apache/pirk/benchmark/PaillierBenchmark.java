@@ -21,13 +21,19 @@ package org.apache.pirk.benchmark;
 
 import java.math.BigInteger;
 
+import org.apache.pirk.encryption.GMPConstantTimeModPowEngine;
+import org.apache.pirk.encryption.GMPModPowEngine;
+import org.apache.pirk.encryption.JavaModPowEngine;
 import org.apache.pirk.encryption.ModPowAbstraction;
+import org.apache.pirk.encryption.MontgomeryModPowEngine;
 import org.apache.pirk.encryption.Paillier;
+import org.apache.pirk.encryption.spi.ModPowEngine;
 import org.apache.pirk.utils.PIRException;
 import org.apache.pirk.utils.SystemConfiguration;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
 import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
@@ -35,7 +41,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * A JMH benchmark to evaluate Paillier performance both with and without using com.square.jnagmp.gmp to accelerate modPow
+ * A JMH benchmark to evaluate Paillier performance with each of the registered {@link ModPowEngine}s
+ * <p>
+ * The engine is a parameter of the benchmark state and is set once per trial, not per invocation
  * <p>
  * Guides to using JMH can be found at: http://tutorials.jenkov.com/java-performance/jmh.html and http://nitschinger.at/Using-JMH-for-Java-Microbenchmarking/
  */
@@ -43,77 +51,68 @@ import org.slf4j.LoggerFactory;
 public class PaillierBenchmark
 {
   private static final int MODULUS_SIZE = 3074;
+  private static final int BATCH_SIZE = 16;
   private static final Logger logger = LoggerFactory.getLogger(PaillierBenchmark.class);
 
   @State(Scope.Benchmark)
   public static class PaillierBenchmarkState
   {
+    @Param({GMPModPowEngine.NAME, GMPConstantTimeModPowEngine.NAME, JavaModPowEngine.NAME, MontgomeryModPowEngine.NAME})
+    String engineName;
+
     BigInteger r1 = null; // random number in (Z/NZ)*
     BigInteger m1 = null; // message to encrypt
 
     Paillier pallier = null;
+    ModPowEngine engine = null;
+
+    BigInteger[] bases = null; // one base raised to BATCH_SIZE data partition sized exponents, as in the row calculations
+    BigInteger[] exponents = null;
 
     /**
-     * This sets up the state for the two separate benchmarks
+     * This sets up the state for the benchmarks
      */
     @Setup(org.openjdk.jmh.annotations.Level.Trial)
-    public void setUp()
+    public void setUp() throws PIRException
     {
+      SystemConfiguration.setProperty("paillier.modPowEngine", engineName);
+      ModPowAbstraction.reloadConfiguration();
+      engine = ModPowAbstraction.getEngine();
+
       int systemPrimeCertainty = SystemConfiguration.getIntProperty("pir.primeCertainty", 100);
       pallier = new Paillier(MODULUS_SIZE, systemPrimeCertainty);
 
       r1 = BigInteger.valueOf(3);
       m1 = BigInteger.valueOf(5);
-    }
-  }
 
-  @Benchmark
-  @BenchmarkMode(Mode.Throughput)
-  public void testWithGMP(PaillierBenchmarkState allState)
-  {
-    SystemConfiguration.setProperty("paillier.useGMPForModPow", "true");
-    SystemConfiguration.setProperty("paillier.GMPConstantTimeMode", "false");
-    ModPowAbstraction.reloadConfiguration();
-
-    try
-    {
-      allState.pallier.encrypt(allState.m1, allState.r1);
-    } catch (PIRException e)
-    {
-      logger.info("Exception in testWithGMP!\n");
+      bases = new BigInteger[BATCH_SIZE];
+      exponents = new BigInteger[BATCH_SIZE];
+      BigInteger base = pallier.encrypt(m1, r1);
+      for (int i = 0; i < BATCH_SIZE; ++i)
+      {
+        bases[i] = base;
+        exponents[i] = BigInteger.valueOf(255 - i);
+      }
     }
   }
 
   @Benchmark
   @BenchmarkMode(Mode.Throughput)
-  public void testWithGMPConstantTime(PaillierBenchmarkState allState)
+  public void testEncrypt(PaillierBenchmarkState allState)
   {
-    SystemConfiguration.setProperty("paillier.useGMPForModPow", "true");
-    SystemConfiguration.setProperty("paillier.GMPConstantTimeMode", "true");
-    ModPowAbstraction.reloadConfiguration();
-
     try
     {
       allState.pallier.encrypt(allState.m1, allState.r1);
     } catch (PIRException e)
     {
-      logger.info("Exception in testWithGMPConstantTime!\n");
+      logger.info("Exception in testEncrypt with engine " + allState.engineName + "!\n");
     }
   }
 
   @Benchmark
   @BenchmarkMode(Mode.Throughput)
-  public void testWithoutGMP(PaillierBenchmarkState allState)
+  public BigInteger[] testModPowBatch(PaillierBenchmarkState allState)
   {
-    SystemConfiguration.setProperty("paillier.useGMPForModPow", "false");
-    ModPowAbstraction.reloadConfiguration();
-
-    try
-    {
-      allState.pallier.encrypt(allState.m1, allState.r1);
-    } catch (PIRException e)
-    {
-      logger.info("Exception in testWithoutGMP!\n");
-    }
+    return allState.engine.modPowBatch(allState.bases, allState.exponents, allState.pallier.getNSquared());
   }
 }
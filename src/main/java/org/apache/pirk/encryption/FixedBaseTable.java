@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pirk.encryption;
+
+import java.math.BigInteger;
+
+/**
+ * Table for fixed-base exponentiation g^e mod n with exponents of a bounded bit length
+ * <p>
+ * Writing e = \sum_i d_i 2^{wi} with w-bit digits d_i, the table holds g^{d 2^{wi}} mod n for every block i and non-zero digit d, so that
+ * <p>
+ * g^e = \prod_i g^{d_i 2^{wi}} mod n
+ * <p>
+ * takes at most ceil(maxExponentBitLength/w) multiplications and no squarings. The values are held in Montgomery form.
+ * <p>
+ * Instances are immutable and thread-safe
+ */
+public final class FixedBaseTable
+{
+  private final Montgomery montgomery;
+  private final int maxExponentBitLength;
+  private final int window;
+  private final int[][][] table; // table[i][d-1] = g^{d 2^{wi}} mod n
+
+  /**
+   * Creates the table for powers of {@code base} modulo the odd {@code modulus} with exponents of at most {@code maxExponentBitLength} bits, using
+   * {@code window}-bit digits
+   */
+  public FixedBaseTable(BigInteger base, BigInteger modulus, int maxExponentBitLength, int window)
+  {
+    if (maxExponentBitLength < 1 || window < 1 || window > 16)
+    {
+      throw new IllegalArgumentException("maxExponentBitLength = " + maxExponentBitLength + " must be positive and window = " + window + " in [1,16]");
+    }
+    montgomery = new Montgomery(modulus);
+    this.maxExponentBitLength = maxExponentBitLength;
+    this.window = window;
+
+    int numBlocks = (maxExponentBitLength + window - 1) / window;
+    int numDigits = (1 << window) - 1;
+    int[] scratch = montgomery.newScratch();
+
+    table = new int[numBlocks][numDigits][];
+    int[] blockBase = montgomery.toMontgomery(base.mod(modulus)); // g^{2^{wi}}
+    for (int i = 0; i < numBlocks; ++i)
+    {
+      table[i][0] = blockBase;
+      for (int d = 1; d < numDigits; ++d)
+      {
+        table[i][d] = new int[montgomery.getNumLimbs()];
+        montgomery.multiply(table[i][d - 1], blockBase, table[i][d], scratch);
+      }
+      int[] nextBlockBase = new int[montgomery.getNumLimbs()];
+      montgomery.multiply(table[i][numDigits - 1], blockBase, nextBlockBase, scratch);
+      blockBase = nextBlockBase;
+    }
+  }
+
+  public int getMaxExponentBitLength()
+  {
+    return maxExponentBitLength;
+  }
+
+  /**
+   * Returns base^exponent mod modulus for 0 <= exponent < 2^maxExponentBitLength
+   */
+  public BigInteger pow(BigInteger exponent)
+  {
+    if (exponent.signum() < 0 || exponent.bitLength() > maxExponentBitLength)
+    {
+      throw new IllegalArgumentException("exponent must be non-negative with at most " + maxExponentBitLength + " bits");
+    }
+
+    int[] result = montgomery.one();
+    int[] scratch = montgomery.newScratch();
+    int bitLength = exponent.bitLength();
+    for (int i = 0, offset = 0; offset < bitLength; ++i, offset += window)
+    {
+      int digit = 0;
+      for (int bit = window - 1; bit >= 0; --bit)
+      {
+        digit = (digit << 1) | (exponent.testBit(offset + bit) ? 1 : 0);
+      }
+      if (digit != 0)
+      {
+        montgomery.multiply(result, table[i][digit - 1], result, scratch);
+      }
+    }
+    return montgomery.fromMontgomery(result);
+  }
+}
@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pirk.encryption;
+
+import java.math.BigInteger;
+
+import org.apache.pirk.encryption.spi.ModPowEngine;
+
+import com.squareup.jnagmp.Gmp;
+
+/**
+ * ModPowEngine using the natively compiled GMP via JNA-GMP in a way that tries to make all modPow calls take a constant amount of time to execute
+ * <p>
+ * The timing attack resistance slows down performance (still better than Java's {@code BigInteger.modPow}) and is not necessarily proven to block timing
+ * attacks. Before getting concerned, please carefully consider your threat model and if you really believe that you may need it
+ */
+public class GMPConstantTimeModPowEngine implements ModPowEngine
+{
+  public static final String NAME = "gmpConstantTime";
+
+  @Override
+  public String getEngineName()
+  {
+    return NAME;
+  }
+
+  @Override
+  public BigInteger modPow(BigInteger base, BigInteger exponent, BigInteger modulus)
+  {
+    // mpz_powm_sec requires a positive exponent
+    if (exponent.signum() == 0)
+    {
+      return BigInteger.ONE.mod(modulus);
+    }
+    return Gmp.modPowSecure(base, exponent, modulus);
+  }
+}
@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pirk.encryption;
+
+import java.math.BigInteger;
+
+import org.apache.pirk.encryption.spi.ModPowEngine;
+
+import com.squareup.jnagmp.Gmp;
+
+/**
+ * ModPowEngine using the natively compiled GMP via JNA-GMP, running as fast as possible
+ * <p>
+ * The word "insecure" in {@code Gmp.modPowInsecure} does not imply any actual, direct insecurity. It denotes that this function runs as fast as possible
+ * without trying to counteract timing attacks. This is probably what you want unless you have a compelling reason why you believe that this environment is
+ * safe enough to house your keys but doesn't protect you from another entity on the machine watching how long the program runs -- see
+ * {@link GMPConstantTimeModPowEngine}
+ */
+public class GMPModPowEngine implements ModPowEngine
+{
+  public static final String NAME = "gmp";
+
+  @Override
+  public String getEngineName()
+  {
+    return NAME;
+  }
+
+  @Override
+  public BigInteger modPow(BigInteger base, BigInteger exponent, BigInteger modulus)
+  {
+    return Gmp.modPowInsecure(base, exponent, modulus);
+  }
+}
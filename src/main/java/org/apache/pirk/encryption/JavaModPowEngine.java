@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pirk.encryption;
+
+import java.math.BigInteger;
+
+import org.apache.pirk.encryption.spi.ModPowEngine;
+
+/**
+ * ModPowEngine using Java's built-in {@code BigInteger.modPow}
+ * <p>
+ * This is significantly slower than GMP but has the virtue of working everywhere
+ */
+public class JavaModPowEngine implements ModPowEngine
+{
+  public static final String NAME = "java";
+
+  @Override
+  public String getEngineName()
+  {
+    return NAME;
+  }
+
+  @Override
+  public BigInteger modPow(BigInteger base, BigInteger exponent, BigInteger modulus)
+  {
+    return base.modPow(exponent, modulus);
+  }
+}
@@ -20,72 +20,105 @@ package org.apache.pirk.encryption;
 
 import java.math.BigInteger;
 
+import org.apache.pirk.encryption.spi.ModPowEngine;
+import org.apache.pirk.utils.PIRException;
 import org.apache.pirk.utils.SystemConfiguration;
-
-import com.squareup.jnagmp.Gmp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * This class is designed to offer a one-stop-shop for invoking the desired version of modPow
+ * <p>
+ * The static methods delegate to the default {@link ModPowEngine} of the JVM, which is selected by name with the {@code paillier.modPowEngine} property. If
+ * it is not set, the legacy {@code paillier.useGMPForModPow} and {@code paillier.GMPConstantTimeMode} properties select between the 'gmp', 'gmpConstantTime'
+ * and 'java' engines.
+ * <p>
+ * Code that should use an engine chosen per job holds the engine returned by {@link #getEngine(String)} instead of calling the static methods.
  */
 public final class ModPowAbstraction
 {
-  private static boolean useGMPForModPow = SystemConfiguration.isSetTrue("paillier.useGMPForModPow");
+  private static final Logger logger = LoggerFactory.getLogger(ModPowAbstraction.class);
 
-  private static boolean useGMPConstantTimeMethods = SystemConfiguration.isSetTrue("paillier.GMPConstantTimeMode");
+  private static volatile ModPowEngine engine = loadEngine();
 
   /**
    * Performs modPow: ({@code base}^{@code exponent}) mod {@code modulus}
    * 
-   * This method uses the values of {@code paillier.useGMPForModPow} and {@code paillier.GMPConstantTimeMode} as they were when the class was loaded to decide
-   * which implementation of modPow to invoke.
+   * This method uses the default engine as it was when the class was loaded to decide which implementation of modPow to invoke.
    * 
-   * These values can be reloaded by invoking static method {@code ModPowAbstraction.reloadConfiguration()}
+   * The default engine can be reloaded by invoking static method {@code ModPowAbstraction.reloadConfiguration()}
    * 
    * @return The result of modPow
    */
   public static BigInteger modPow(BigInteger base, BigInteger exponent, BigInteger modulus)
   {
-    BigInteger result;
+    return engine.modPow(base, exponent, modulus);
+  }
+
+  public static BigInteger modPow(long base, BigInteger exponent, BigInteger modulus)
+  {
+    return modPow(BigInteger.valueOf(base), exponent, modulus);
+  }
+
+  /**
+   * Performs modPow: ({@code bases[i]}^{@code exponents[i]}) mod {@code modulus} for each i with the default engine
+   */
+  public static BigInteger[] modPowBatch(BigInteger[] bases, BigInteger[] exponents, BigInteger modulus)
+  {
+    return engine.modPowBatch(bases, exponents, modulus);
+  }
+
+  /**
+   * Returns the default engine
+   */
+  public static ModPowEngine getEngine()
+  {
+    return engine;
+  }
+
+  /**
+   * Returns the engine with the given name; returns the default engine if {@code engineName} is null or empty
+   */
+  public static ModPowEngine getEngine(String engineName) throws PIRException
+  {
+    if (engineName == null || engineName.isEmpty())
+    {
+      return engine;
+    }
+    return ModPowEngineService.getInstance().getEngine(engineName);
+  }
+
+  public static void reloadConfiguration()
+  {
+    engine = loadEngine();
+  }
 
-    if (useGMPForModPow)
+  private static ModPowEngine loadEngine()
+  {
+    String engineName = SystemConfiguration.getProperty("paillier.modPowEngine", "");
+    if (engineName.isEmpty())
     {
-      if (useGMPConstantTimeMethods)
+      if (SystemConfiguration.isSetTrue("paillier.useGMPForModPow"))
       {
-        // Use GMP and use the "timing attack resistant" method
-        // The timing attack resistance slows down performance and is not necessarily proven to block timing attacks.
-        // Before getting concerned, please carefully consider your threat model
-        // and if you really believe that you may need it
-        result = Gmp.modPowSecure(base, exponent, modulus);
+        engineName = SystemConfiguration.isSetTrue("paillier.GMPConstantTimeMode") ? GMPConstantTimeModPowEngine.NAME : GMPModPowEngine.NAME;
       }
       else
       {
-        // The word "insecure" here does not imply any actual, direct insecurity.
-        // It denotes that this function runs as fast as possible without trying to
-        // counteract timing attacks. This is probably what you want unless you have a
-        // compelling reason why you believe that this environment is safe enough to house
-        // your keys but doesn't protect you from another entity on the machine watching
-        // how long the program runs.
-        result = Gmp.modPowInsecure(base, exponent, modulus);
+        engineName = JavaModPowEngine.NAME;
       }
     }
-    else
+
+    ModPowEngine defaultEngine;
+    try
     {
-      // If GMP isn't used, BigInteger's built-in modPow is used.
-      // This is significantly slower but has the virtue of working everywhere.
-      result = base.modPow(exponent, modulus);
+      defaultEngine = ModPowEngineService.getInstance().getEngine(engineName);
+    } catch (PIRException e)
+    {
+      logger.error("Unable to load modPow engine = " + engineName + ", using " + JavaModPowEngine.NAME, e);
+      defaultEngine = new JavaModPowEngine();
     }
+    logger.debug("Default modPow engine = {}", defaultEngine.getEngineName());
 
-    return result;
-  }
-
-  public static BigInteger modPow(long base, BigInteger exponent, BigInteger modulus)
-  {
-    return modPow(BigInteger.valueOf(base), exponent, modulus);
-  }
-
-  public static void reloadConfiguration()
-  {
-    useGMPForModPow = SystemConfiguration.isSetTrue("paillier.useGMPForModPow");
-    useGMPConstantTimeMethods = SystemConfiguration.isSetTrue("paillier.GMPConstantTimeMode");
+    return defaultEngine;
   }
 }
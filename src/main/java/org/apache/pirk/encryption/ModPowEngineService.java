@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pirk.encryption;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+import org.apache.pirk.encryption.spi.ModPowEngine;
+import org.apache.pirk.utils.PIRException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Service to look up the available {@link ModPowEngine} implementations by name
+ * <p>
+ * Engines are registered via META-INF/services/org.apache.pirk.encryption.spi.ModPowEngine
+ */
+public class ModPowEngineService
+{
+  private static final Logger logger = LoggerFactory.getLogger(ModPowEngineService.class);
+
+  // Singleton for the modPow engine service.
+  private static ModPowEngineService service;
+
+  // engine name (lower case) -> engine
+  private Map<String,ModPowEngine> engines = new HashMap<>();
+
+  public static synchronized ModPowEngineService getInstance() throws PIRException
+  {
+    if (service == null)
+    {
+      service = new ModPowEngineService();
+    }
+    return service;
+  }
+
+  private ModPowEngineService() throws PIRException
+  {
+    try
+    {
+      for (ModPowEngine engine : ServiceLoader.load(ModPowEngine.class))
+      {
+        logger.debug("Found {}, in {}", engine.getEngineName(), engine.getClass().getName());
+        engines.put(engine.getEngineName().toLowerCase(), engine);
+      }
+    } catch (ServiceConfigurationError e)
+    {
+      logger.error("ModPowEngine configuration error {}", e);
+      throw new PIRException(e);
+    }
+  }
+
+  /**
+   * Returns the engine with the given name (case insensitive)
+   */
+  public ModPowEngine getEngine(String engineName) throws PIRException
+  {
+    ModPowEngine engine = engines.get(engineName.toLowerCase());
+    if (engine == null)
+    {
+      throw new PIRException("Unknown modPow engine = " + engineName + " available = " + getEngineNames());
+    }
+    return engine;
+  }
+
+  /**
+   * Returns the names of the available engines
+   */
+  public List<String> getEngineNames()
+  {
+    List<String> names = new ArrayList<>();
+    for (ModPowEngine engine : engines.values())
+    {
+      names.add(engine.getEngineName());
+    }
+    return names;
+  }
+}
@@ -0,0 +1,294 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pirk.encryption;
+
+import java.io.Serializable;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Class holding the precomputed values for Montgomery arithmetic modulo a fixed odd modulus
+ * <p>
+ * Values are held as little-endian arrays of {@link #getNumLimbs()} 32-bit limbs. For the modulus n with s limbs and R = 2^{32s}, the Montgomery form of x is
+ * xR mod n and {@link #multiply(int[], int[], int[], int[])} computes abR^{-1} mod n (coarsely integrated operand scanning), so that products of values in Montgomery form stay in
+ * Montgomery form without any division by n.
+ * <p>
+ * Instances are immutable and thread-safe; the callers supply the scratch space via {@link #newScratch()}
+ */
+public final class Montgomery implements Serializable
+{
+  private static final long serialVersionUID = 1L;
+
+  private static final long LONG_MASK = 0xffffffffL;
+
+  // Exponent bit lengths at which the window size of modPow is increased -- as in BigInteger.modPow
+  private static final int[] WINDOW_THRESHOLDS = {7, 25, 81, 241, 673, 1793};
+
+  private final BigInteger modulus;
+  private final int numLimbs;
+  private final int[] n;
+  private final int nPrime; // -n^{-1} mod 2^32
+  private final int[] rSquared; // R^2 mod n
+  private final int[] one; // R mod n, 1 in Montgomery form
+  private final BigInteger r; // R mod n
+
+  public Montgomery(BigInteger modulusInput)
+  {
+    if (modulusInput.signum() <= 0 || !modulusInput.testBit(0))
+    {
+      throw new IllegalArgumentException("Montgomery arithmetic requires a positive odd modulus");
+    }
+    modulus = modulusInput;
+    numLimbs = (modulus.bitLength() + 31) >>> 5;
+    n = toLimbs(modulus);
+
+    // Newton iteration for n[0]^{-1} mod 2^32 -- each step doubles the number of correct low bits
+    int inverse = n[0];
+    for (int i = 0; i < 5; ++i)
+    {
+      inverse *= 2 - n[0] * inverse;
+    }
+    nPrime = -inverse;
+
+    rSquared = toLimbs(BigInteger.ONE.shiftLeft(64 * numLimbs).mod(modulus));
+    r = BigInteger.ONE.shiftLeft(32 * numLimbs).mod(modulus);
+    one = toLimbs(r);
+  }
+
+  public BigInteger getModulus()
+  {
+    return modulus;
+  }
+
+  public int getNumLimbs()
+  {
+    return numLimbs;
+  }
+
+  /**
+   * Returns the scratch space required by {@link #multiply(int[], int[], int[], int[])}
+   */
+  public int[] newScratch()
+  {
+    return new int[numLimbs + 1];
+  }
+
+  /**
+   * Returns 1 in Montgomery form
+   */
+  public int[] one()
+  {
+    return one.clone();
+  }
+
+  /**
+   * Converts x to Montgomery form
+   */
+  public int[] toMontgomery(BigInteger x)
+  {
+    int[] result = toLimbs((x.signum() < 0 || x.compareTo(modulus) >= 0) ? x.mod(modulus) : x);
+    multiply(result, rSquared, result, newScratch());
+
+    return result;
+  }
+
+  /**
+   * Converts x from Montgomery form
+   */
+  public BigInteger fromMontgomery(int[] x)
+  {
+    int[] unit = new int[numLimbs];
+    unit[0] = 1;
+    int[] result = new int[numLimbs];
+    multiply(x, unit, result, newScratch());
+
+    return fromLimbs(result);
+  }
+
+  /**
+   * Sets result = abR^{-1} mod n for a and b in Montgomery form
+   * <p>
+   * The result may alias a or b; scratch must be of length getNumLimbs() + 1 and is overwritten
+   */
+  public void multiply(int[] a, int[] b, int[] result, int[] scratch)
+  {
+    int[] t = scratch;
+    Arrays.fill(t, 0);
+
+    long n0 = n[0] & LONG_MASK;
+    for (int i = 0; i < numLimbs; ++i)
+    {
+      // t = (t + a * b[i] + m * n) / 2^32, with m chosen such that the low limb vanishes -- both products are accumulated in a single pass
+      long bi = b[i] & LONG_MASK;
+      long sum = (t[0] & LONG_MASK) + (a[0] & LONG_MASK) * bi;
+      long carryA = sum >>> 32;
+      long m = (((int) sum) * nPrime) & LONG_MASK;
+      long carryN = ((sum & LONG_MASK) + m * n0) >>> 32;
+      for (int j = 1; j < numLimbs; ++j)
+      {
+        sum = (t[j] & LONG_MASK) + (a[j] & LONG_MASK) * bi + carryA;
+        carryA = sum >>> 32;
+        sum = (sum & LONG_MASK) + m * (n[j] & LONG_MASK) + carryN;
+        carryN = sum >>> 32;
+        t[j - 1] = (int) sum;
+      }
+      sum = (t[numLimbs] & LONG_MASK) + carryA + carryN;
+      t[numLimbs - 1] = (int) sum;
+      t[numLimbs] = (int) (sum >>> 32);
+    }
+
+    // t < 2n -- a single conditional subtraction brings it into [0, n)
+    if (t[numLimbs] != 0 || compareToModulus(t) >= 0)
+    {
+      long borrow = 0;
+      for (int j = 0; j < numLimbs; ++j)
+      {
+        long diff = (t[j] & LONG_MASK) - (n[j] & LONG_MASK) - borrow;
+        result[j] = (int) diff;
+        borrow = (diff >>> 63);
+      }
+    }
+    else
+    {
+      System.arraycopy(t, 0, result, 0, numLimbs);
+    }
+  }
+
+  /**
+   * Performs modPow: ({@code base}^{@code exponent}) mod n, for a non-negative {@code exponent}
+   */
+  public BigInteger modPow(BigInteger base, BigInteger exponent)
+  {
+    return fromMontgomery(modPow(powerTable(toMontgomery(base), windowSize(exponent.bitLength())), exponent, newScratch()));
+  }
+
+  /**
+   * Returns the window size used for exponents of the given bit length
+   */
+  static int windowSize(int exponentBitLength)
+  {
+    int window = 1;
+    while (window <= WINDOW_THRESHOLDS.length && exponentBitLength > WINDOW_THRESHOLDS[window - 1])
+    {
+      ++window;
+    }
+    return window;
+  }
+
+  /**
+   * Returns the table {x^0, x^1, ..., x^{2^window - 1}} for x in Montgomery form
+   */
+  int[][] powerTable(int[] x, int window)
+  {
+    int[] scratch = newScratch();
+
+    int[][] table = new int[1 << window][];
+    table[0] = one();
+    table[1] = x;
+    for (int i = 2; i < table.length; ++i)
+    {
+      table[i] = new int[numLimbs];
+      multiply(table[i - 1], x, table[i], scratch);
+    }
+    return table;
+  }
+
+  /**
+   * Left-to-right fixed window exponentiation with the power table of the base; returns the result in Montgomery form
+   */
+  int[] modPow(int[][] table, BigInteger exponent, int[] scratch)
+  {
+    int window = Integer.numberOfTrailingZeros(table.length);
+
+    int[] result = one();
+    boolean started = false;
+    for (int w = (exponent.bitLength() + window - 1) / window - 1; w >= 0; --w)
+    {
+      if (started)
+      {
+        for (int i = 0; i < window; ++i)
+        {
+          multiply(result, result, result, scratch);
+        }
+      }
+
+      int bits = 0;
+      for (int i = window - 1; i >= 0; --i)
+      {
+        bits = (bits << 1) | (exponent.testBit(w * window + i) ? 1 : 0);
+      }
+      if (bits != 0)
+      {
+        multiply(result, table[bits], result, scratch);
+        started = true;
+      }
+    }
+    return result;
+  }
+
+  private int compareToModulus(int[] x)
+  {
+    for (int j = numLimbs - 1; j >= 0; --j)
+    {
+      if (x[j] != n[j])
+      {
+        return ((x[j] & LONG_MASK) < (n[j] & LONG_MASK)) ? -1 : 1;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Returns R^k mod n
+   */
+  BigInteger rPow(long k)
+  {
+    return modPow(r, BigInteger.valueOf(k));
+  }
+
+  private int[] toLimbs(BigInteger x)
+  {
+    int[] limbs = new int[numLimbs];
+    toLimbs(x, limbs);
+    return limbs;
+  }
+
+  /**
+   * Writes the limbs of x, 0 <= x < n, into the given array of length getNumLimbs()
+   */
+  void toLimbs(BigInteger x, int[] limbs)
+  {
+    Arrays.fill(limbs, 0);
+    byte[] bytes = x.toByteArray(); // big-endian, possibly with a leading sign byte
+    for (int i = 0; i < bytes.length && i < 4 * numLimbs; ++i)
+    {
+      limbs[i >>> 2] |= (bytes[bytes.length - 1 - i] & 0xff) << (8 * (i & 3));
+    }
+  }
+
+  static BigInteger fromLimbs(int[] limbs)
+  {
+    byte[] bytes = new byte[4 * limbs.length];
+    for (int i = 0; i < bytes.length; ++i)
+    {
+      bytes[bytes.length - 1 - i] = (byte) (limbs[i >>> 2] >>> (8 * (i & 3)));
+    }
+    return new BigInteger(1, bytes);
+  }
+}
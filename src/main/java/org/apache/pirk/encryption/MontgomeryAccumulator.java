@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pirk.encryption;
+
+import java.io.Serializable;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+/**
+ * Mutable accumulator for products of many values modulo a fixed odd modulus n -- such as the ciphertext column products (mod N^2) of a response
+ * <p>
+ * {@code acc.multiply(x)} replaces {@code acc = (acc.multiply(x)).mod(n)}: the product is updated in place with one Montgomery multiplication (see
+ * {@link Montgomery}), without a division and without allocating intermediate BigIntegers. Each in place multiplication leaves a factor R^{-1}, which is
+ * tracked with a counter and removed in a single step by {@link #getValue()}.
+ * <p>
+ * Accumulators are not thread-safe; they can be reused via {@link #reset()}, and their state can be kept outside of the heap via
+ * {@link #write(ByteBuffer, int)} and {@link #read(ByteBuffer, int)}
+ */
+public final class MontgomeryAccumulator implements Serializable
+{
+  private static final long serialVersionUID = 1L;
+
+  // Per thread {operand limbs, multiplication scratch}, so that an accumulator only holds its value
+  private static final ThreadLocal<int[][]> workspace = new ThreadLocal<>();
+
+  private final Montgomery montgomery;
+
+  private final int[] value; // product * R^{-numReductions} mod n
+  private long numReductions = 0;
+
+  /**
+   * Creates an accumulator with value 1 for the given modulus context
+   */
+  public MontgomeryAccumulator(Montgomery montgomeryInput)
+  {
+    montgomery = montgomeryInput;
+    value = new int[montgomery.getNumLimbs()];
+    reset();
+  }
+
+  /**
+   * Creates an accumulator with value 1 modulo the given odd modulus
+   */
+  public MontgomeryAccumulator(BigInteger modulus)
+  {
+    this(new Montgomery(modulus));
+  }
+
+  /**
+   * Resets the value of the accumulator to 1
+   */
+  public void reset()
+  {
+    montgomery.toLimbs(BigInteger.ONE, value);
+    numReductions = 0;
+  }
+
+  /**
+   * Sets the value of the accumulator to (value * x) mod n
+   */
+  public void multiply(BigInteger x)
+  {
+    if (x.signum() < 0 || x.compareTo(montgomery.getModulus()) >= 0)
+    {
+      x = x.mod(montgomery.getModulus());
+    }
+    int[][] ws = getWorkspace();
+    montgomery.toLimbs(x, ws[0]);
+    montgomery.multiply(value, ws[0], value, ws[1]);
+    ++numReductions;
+  }
+
+  /**
+   * Sets the value of the accumulator to (value * other.getValue()) mod n; the accumulators must share the modulus
+   */
+  public void multiply(MontgomeryAccumulator other)
+  {
+    if (!montgomery.getModulus().equals(other.montgomery.getModulus()))
+    {
+      throw new IllegalArgumentException("Accumulators do not share the modulus");
+    }
+    montgomery.multiply(value, other.value, value, getWorkspace()[1]);
+    numReductions += other.numReductions + 1;
+  }
+
+  /**
+   * Returns the value of the accumulator, converted out of the Montgomery domain
+   */
+  public BigInteger getValue()
+  {
+    // value * R^{numReductions + 1} * R^{-1} = product
+    int[] correction = new int[value.length];
+    montgomery.toLimbs(montgomery.rPow(numReductions + 1), correction);
+
+    int[] result = new int[value.length];
+    montgomery.multiply(value, correction, result, montgomery.newScratch());
+
+    return Montgomery.fromLimbs(result);
+  }
+
+  public BigInteger getModulus()
+  {
+    return montgomery.getModulus();
+  }
+
+  /**
+   * Returns the number of bytes of the state written by {@link #write(ByteBuffer, int)} for the given modulus context
+   */
+  public static int getStateByteLength(Montgomery montgomery)
+  {
+    return 8 + 4 * montgomery.getNumLimbs();
+  }
+
+  /**
+   * Writes the state of the accumulator into the buffer at the given (absolute) offset
+   */
+  public void write(ByteBuffer buffer, int offset)
+  {
+    buffer.putLong(offset, numReductions);
+    for (int i = 0; i < value.length; ++i)
+    {
+      buffer.putInt(offset + 8 + 4 * i, value[i]);
+    }
+  }
+
+  /**
+   * Sets the state of the accumulator to the one written by {@link #write(ByteBuffer, int)} into the buffer at the given (absolute) offset
+   */
+  public void read(ByteBuffer buffer, int offset)
+  {
+    numReductions = buffer.getLong(offset);
+    for (int i = 0; i < value.length; ++i)
+    {
+      value[i] = buffer.getInt(offset + 8 + 4 * i);
+    }
+  }
+
+  private int[][] getWorkspace()
+  {
+    int[][] ws = workspace.get();
+    if (ws == null || ws[0].length != value.length)
+    {
+      ws = new int[][] {new int[value.length], montgomery.newScratch()};
+      workspace.set(ws);
+    }
+    return ws;
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pirk.encryption;
+
+import java.math.BigInteger;
+
+import org.apache.pirk.encryption.spi.ModPowEngine;
+
+/**
+ * ModPowEngine performing the exponentiations with pure Java Montgomery arithmetic -- see {@link Montgomery}
+ * <p>
+ * The modulus dependent precomputation is kept for the last modulus seen and shared across all exponentiations with it. In {@link #modPowBatch}, runs of
+ * equal bases (e.g. one query element raised to all of the data partitions of a row) also share the conversion to Montgomery form and the window table; if
+ * the run is long compared to the range of its (small) exponents, all powers of the base are computed once by repeated multiplication and looked up.
+ * <p>
+ * Single exponentiations with large exponents are generally faster with the 'java' engine, whose {@code BigInteger.modPow} uses the JVM's Montgomery
+ * multiplication intrinsics; this engine is aimed at the batched exponentiations of the row calculations and expTable generation.
+ * <p>
+ * Falls back to {@code BigInteger.modPow} for even moduli and negative exponents
+ */
+public class MontgomeryModPowEngine implements ModPowEngine
+{
+  public static final String NAME = "montgomery";
+
+  // Largest exponent bit length for which modPowBatch tabulates all powers of a base
+  private static final int MAX_FULL_TABLE_BITS = 16;
+
+  private volatile Montgomery lastMontgomery = null;
+
+  @Override
+  public String getEngineName()
+  {
+    return NAME;
+  }
+
+  @Override
+  public BigInteger modPow(BigInteger base, BigInteger exponent, BigInteger modulus)
+  {
+    if (!modulus.testBit(0) || exponent.signum() < 0)
+    {
+      return base.modPow(exponent, modulus);
+    }
+    return getMontgomery(modulus).modPow(base, exponent);
+  }
+
+  @Override
+  public BigInteger[] modPowBatch(BigInteger[] bases, BigInteger[] exponents, BigInteger modulus)
+  {
+    if (bases.length != exponents.length)
+    {
+      throw new IllegalArgumentException("bases.length = " + bases.length + " != exponents.length = " + exponents.length);
+    }
+
+    BigInteger[] results = new BigInteger[bases.length];
+    if (!modulus.testBit(0))
+    {
+      for (int i = 0; i < bases.length; ++i)
+      {
+        results[i] = bases[i].modPow(exponents[i], modulus);
+      }
+      return results;
+    }
+
+    Montgomery montgomery = getMontgomery(modulus);
+    int[] scratch = montgomery.newScratch();
+
+    // Process the runs of equal bases
+    int start = 0;
+    while (start < bases.length)
+    {
+      int end = start + 1;
+      int maxBitLength = exponents[start].bitLength();
+      boolean negativeExponent = exponents[start].signum() < 0;
+      while (end < bases.length && bases[end].equals(bases[start]))
+      {
+        maxBitLength = Math.max(maxBitLength, exponents[end].bitLength());
+        negativeExponent |= exponents[end].signum() < 0;
+        ++end;
+      }
+      int runLength = end - start;
+
+      if (negativeExponent)
+      {
+        for (int i = start; i < end; ++i)
+        {
+          results[i] = modPow(bases[i], exponents[i], modulus);
+        }
+      }
+      else if (maxBitLength <= MAX_FULL_TABLE_BITS && (1 << maxBitLength) <= runLength * maxBitLength)
+      {
+        // Small exponents shared by many elements (i.e. data partitions) -- compute every power of the base once and look the results up
+        int[][] powers = montgomery.powerTable(montgomery.toMontgomery(bases[start]), maxBitLength);
+        BigInteger[] converted = new BigInteger[powers.length];
+        for (int i = start; i < end; ++i)
+        {
+          int exponent = exponents[i].intValue();
+          if (converted[exponent] == null)
+          {
+            converted[exponent] = montgomery.fromMontgomery(powers[exponent]);
+          }
+          results[i] = converted[exponent];
+        }
+      }
+      else
+      {
+        int[][] table = montgomery.powerTable(montgomery.toMontgomery(bases[start]), Montgomery.windowSize(maxBitLength));
+        for (int i = start; i < end; ++i)
+        {
+          results[i] = montgomery.fromMontgomery(montgomery.modPow(table, exponents[i], scratch));
+        }
+      }
+      start = end;
+    }
+    return results;
+  }
+
+  /**
+   * Returns the Montgomery precomputation for the given odd modulus
+   */
+  public Montgomery getMontgomery(BigInteger modulus)
+  {
+    Montgomery montgomery = lastMontgomery;
+    if (montgomery == null || !montgomery.getModulus().equals(modulus))
+    {
+      montgomery = new Montgomery(modulus);
+      lastMontgomery = montgomery;
+    }
+    return montgomery;
+  }
+}
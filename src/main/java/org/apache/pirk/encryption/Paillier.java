@@ -26,8 +26,13 @@ import org.apache.pirk.utils.SystemConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -65,6 +70,22 @@ import java.util.Objects;
  * <p>
  * - D(c) = yw mod N
  * <p>
+ * As the factorization of N is known to the decryptor, decryption is performed via the Chinese Remainder Theorem:
+ * <p>
+ * - Set hp = L_p((1+N)^(p-1) mod p^2)^-1 mod p and hq = L_q((1+N)^(q-1) mod q^2)^-1 mod q, where L_x(u) = (u-1)/x
+ * <p>
+ * - Set mp = L_p(c^(p-1) mod p^2) * hp mod p and mq = L_q(c^(q-1) mod q^2) * hq mod q
+ * <p>
+ * - D(c) = mq + q * ((mp - mq) * q^-1 mod p)
+ * <p>
+ * Likewise, the encryption computes r^N mod N^2 from r^(N mod p(p-1)) mod p^2 and r^(N mod q(q-1)) mod q^2, recombined via CRT.
+ * <p>
+ * Short exponent randomness mode (see {@link #useShortExponentRandomness(int)}):
+ * <p>
+ * - Fix a random h in (Z/NZ)* and set hN = h^N mod N^2
+ * <p>
+ * - Draw the randomizer as r^N = (hN)^k mod N^2 for a random k of a short bit length, computed with a {@link FixedBaseTable}
+ * <p>
  * Ref: Paillier, Pascal. "Public-Key Cryptosystems Based on Composite Degree Residuosity Classes." EUROCRYPT'99.
  */
 public final class Paillier implements Serializable
@@ -85,9 +106,34 @@ public final class Paillier implements Serializable
   private BigInteger lambdaN; // lambda(N) = lcm(p-1,q-1), Carmichael function of N
 
   private BigInteger w; // lambda(N)^-1 mod N
+
+  // CRT decryption elements -- recomputed from p and q upon deserialization
+  private transient BigInteger pSquared; // p^2
+  private transient BigInteger qSquared; // q^2
+  private transient BigInteger pMinusOne; // p-1
+  private transient BigInteger qMinusOne; // q-1
+  private transient BigInteger hp; // L_p((1+N)^(p-1) mod p^2)^-1 mod p
+  private transient BigInteger hq; // L_q((1+N)^(q-1) mod q^2)^-1 mod q
+  private transient BigInteger qInverse; // q^-1 mod p
+
+  // CRT encryption elements -- recomputed from p and q upon deserialization
+  private transient BigInteger pExponent; // N mod p(p-1), the order of (Z/p^2 Z)*
+  private transient BigInteger qExponent; // N mod q(q-1), the order of (Z/q^2 Z)*
+  private transient BigInteger qSquaredInverse; // q^-2 mod p^2
+
   @Expose
   private final int bitLength; // bit length of the modulus N
 
+  // Short exponent randomness mode -- null/0 for the standard mode
+  @Expose
+  private BigInteger randomnessBase = null; // h^N mod N^2
+  @Expose
+  private int randomnessExponentBitLength = 0; // bit length of the exponents k of (h^N)^k
+
+  private transient FixedBaseTable randomnessTable = null; // recomputed from randomnessBase upon deserialization
+
+  private static final int RANDOMNESS_TABLE_WINDOW = 6;
+
   /**
    * Creates a Paillier algorithm with all parameters specified.
    *
@@ -259,7 +305,7 @@ public final class Paillier implements Serializable
   private void getKeys(int bitLength, int certainty)
   {
     // Generate the primes
-    BigInteger[] pq = PrimeGenerator.getPrimePair(bitLength, certainty, RandomProvider.SECURE_RANDOM);
+    BigInteger[] pq = PrimeGenerator.getPrimePair(bitLength, certainty);
     p = pq[0];
     q = pq[1];
 
@@ -274,6 +320,107 @@ public final class Paillier implements Serializable
     lambdaN = p.subtract(BigInteger.ONE).multiply(q.subtract(BigInteger.ONE)).divide(p.subtract(BigInteger.ONE).gcd(q.subtract(BigInteger.ONE)));
 
     w = lambdaN.modInverse(N); // lambda(N)^-1 mod N
+
+    setCRTElements();
+  }
+
+  private void setCRTElements()
+  {
+    pSquared = p.multiply(p);
+    qSquared = q.multiply(q);
+    pMinusOne = p.subtract(BigInteger.ONE);
+    qMinusOne = q.subtract(BigInteger.ONE);
+
+    // hp = L_p((1+N)^(p-1) mod p^2)^-1 mod p; hq = L_q((1+N)^(q-1) mod q^2)^-1 mod q
+    BigInteger g = N.add(BigInteger.ONE);
+    hp = lFunction(ModPowAbstraction.modPow(g.mod(pSquared), pMinusOne, pSquared), p).modInverse(p);
+    hq = lFunction(ModPowAbstraction.modPow(g.mod(qSquared), qMinusOne, qSquared), q).modInverse(q);
+
+    qInverse = q.modInverse(p); // q^-1 mod p
+
+    pExponent = N.mod(p.multiply(pMinusOne));
+    qExponent = N.mod(q.multiply(qMinusOne));
+    qSquaredInverse = qSquared.modInverse(pSquared);
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+  {
+    in.defaultReadObject();
+    setCRTElements();
+    if (randomnessBase != null)
+    {
+      randomnessTable = new FixedBaseTable(randomnessBase, NSquared, randomnessExponentBitLength, RANDOMNESS_TABLE_WINDOW);
+    }
+  }
+
+  /**
+   * Switches the encryption to the short exponent randomness mode with a newly generated base h^N mod N^2.
+   * <p>
+   * The randomizer of each encryption is then (h^N)^k mod N^2 for a random {@code exponentBitLength}-bit k, computed with a fixed-base table instead of a
+   * full length exponentiation. The security rests on the hardness of the discrete logarithm with short exponents in addition to that of the Paillier
+   * cryptosystem; {@code exponentBitLength} should be at least twice the targeted security level.
+   *
+   * @param exponentBitLength
+   *          the bit length of the exponents k.
+   * @throws IllegalArgumentException
+   *           If {@code exponentBitLength} is not in [1, bitLength].
+   */
+  public void useShortExponentRandomness(int exponentBitLength)
+  {
+    useShortExponentRandomness(modPowN(generateRandomValue()), exponentBitLength);
+  }
+
+  /**
+   * Switches the encryption to the short exponent randomness mode with the given base h^N mod N^2, as returned by {@link #getRandomnessBase()}.
+   *
+   * @param base
+   *          the value h^N mod N^2 for an h in (Z/NZ)*.
+   * @param exponentBitLength
+   *          the bit length of the exponents k.
+   * @throws IllegalArgumentException
+   *           If {@code exponentBitLength} is not in [1, bitLength].
+   */
+  public void useShortExponentRandomness(BigInteger base, int exponentBitLength)
+  {
+    if (exponentBitLength < 1 || exponentBitLength > bitLength)
+    {
+      throw new IllegalArgumentException("exponentBitLength = " + exponentBitLength + " must be in [1, " + bitLength + "]");
+    }
+    randomnessTable = new FixedBaseTable(base, NSquared, exponentBitLength, RANDOMNESS_TABLE_WINDOW);
+    randomnessBase = base;
+    randomnessExponentBitLength = exponentBitLength;
+
+    logger.info("Using short exponent randomness with exponentBitLength = " + exponentBitLength);
+  }
+
+  /**
+   * Returns whether the short exponent randomness mode is in use.
+   */
+  public boolean usesShortExponentRandomness()
+  {
+    return randomnessTable != null;
+  }
+
+  /**
+   * Returns the base h^N mod N^2 of the short exponent randomness mode, or null in the standard mode.
+   */
+  public BigInteger getRandomnessBase()
+  {
+    return randomnessBase;
+  }
+
+  /**
+   * Returns the exponent bit length of the short exponent randomness mode, or 0 in the standard mode.
+   */
+  public int getRandomnessExponentBitLength()
+  {
+    return randomnessExponentBitLength;
+  }
+
+  // L_x(u) = (u-1)/x
+  private static BigInteger lFunction(BigInteger u, BigInteger x)
+  {
+    return u.subtract(BigInteger.ONE).divide(x);
   }
 
   /**
@@ -287,14 +434,7 @@ public final class Paillier implements Serializable
    */
   public BigInteger encrypt(BigInteger m) throws PIRException
   {
-    // Generate a random value r in (Z/NZ)*
-    BigInteger r = (new BigInteger(bitLength, RandomProvider.SECURE_RANDOM)).mod(N);
-    while (r.equals(BigInteger.ZERO) || r.equals(BigInteger.ONE) || r.mod(p).equals(BigInteger.ZERO) || r.mod(q).equals(BigInteger.ZERO))
-    {
-      r = (new BigInteger(bitLength, RandomProvider.SECURE_RANDOM)).mod(N);
-    }
-
-    return encrypt(m, r);
+    return encryptWithRandomness(m, generateRandomness());
   }
 
   /**
@@ -309,17 +449,80 @@ public final class Paillier implements Serializable
    *           If {@code m} is not less than @{code N}.
    */
   public BigInteger encrypt(BigInteger m, BigInteger r) throws PIRException
+  {
+    return encryptWithRandomness(m, modPowN(r));
+  }
+
+  /**
+   * Returns the ciphertext of a message using the given precomputed randomness r^N mod N^2, as generated by {@link #generateRandomness()}.
+   * <p>
+   * E(0) is the randomness itself; any other message costs one multiplication mod N^2.
+   *
+   * @param m
+   *          the value to be encrypted.
+   * @param rN
+   *          the value r^N mod N^2 for a random value r in (Z/NZ)*; must not be used for another encryption.
+   * @return the encrypted value.
+   * @throws PIRException
+   *           If {@code m} is not less than @{code N}.
+   */
+  public BigInteger encryptWithRandomness(BigInteger m, BigInteger rN) throws PIRException
   {
     if (m.compareTo(N) >= 0)
     {
       throw new PIRException("m  = " + m.toString(2) + " is greater than or equal to N = " + N.toString(2));
     }
+    if (m.signum() == 0)
+    {
+      return rN;
+    }
 
-    // E(m) = (1 + mN)r^N mod N^2 = (((1+mN) mod N^2) * (r^N mod N^2)) mod N^2
-    BigInteger term1 = (m.multiply(N).add(BigInteger.ONE)).mod(NSquared);
-    BigInteger term2 = ModPowAbstraction.modPow(r, N, NSquared);
+    // E(m) = (1 + mN)r^N mod N^2; 1 + mN < N^2 as m < N
+    return m.multiply(N).add(BigInteger.ONE).multiply(rN).mod(NSquared);
+  }
 
-    return (term1.multiply(term2)).mod(NSquared);
+  /**
+   * Returns the randomness r^N mod N^2 for a newly generated random value r in (Z/NZ)*, for use with {@link #encryptWithRandomness(BigInteger, BigInteger)}.
+   * <p>
+   * In the short exponent randomness mode, r = h^k for a random short exponent k.
+   *
+   * @return r^N mod N^2.
+   */
+  public BigInteger generateRandomness()
+  {
+    if (randomnessTable != null)
+    {
+      SecureRandom random = RandomProvider.getThreadSecureRandom();
+      BigInteger k = new BigInteger(randomnessExponentBitLength, random);
+      while (k.signum() == 0)
+      {
+        k = new BigInteger(randomnessExponentBitLength, random);
+      }
+      return randomnessTable.pow(k);
+    }
+    return modPowN(generateRandomValue());
+  }
+
+  // Computes r^N mod N^2 via CRT from r^N mod p^2 and r^N mod q^2, for r in (Z/NZ)*
+  private BigInteger modPowN(BigInteger r)
+  {
+    BigInteger xp = ModPowAbstraction.modPow(r.mod(pSquared), pExponent, pSquared);
+    BigInteger xq = ModPowAbstraction.modPow(r.mod(qSquared), qExponent, qSquared);
+
+    // Recombine: x = xq + q^2 * ((xp - xq) * q^-2 mod p^2)
+    return xp.subtract(xq).multiply(qSquaredInverse).mod(pSquared).multiply(qSquared).add(xq);
+  }
+
+  // Generates a random value r in (Z/NZ)*
+  private BigInteger generateRandomValue()
+  {
+    SecureRandom random = RandomProvider.getThreadSecureRandom();
+    BigInteger r = (new BigInteger(bitLength, random)).mod(N);
+    while (r.equals(BigInteger.ZERO) || r.equals(BigInteger.ONE) || r.mod(p).equals(BigInteger.ZERO) || r.mod(q).equals(BigInteger.ZERO))
+    {
+      r = (new BigInteger(bitLength, random)).mod(N);
+    }
+    return r;
   }
 
   /**
@@ -331,11 +534,29 @@ public final class Paillier implements Serializable
    */
   public BigInteger decrypt(BigInteger c)
   {
-    // w = lambda(N)^-1 mod N; x = c^(lambda(N)) mod N^2; y = (x-1)/N; d = yw mod N
-    BigInteger x = ModPowAbstraction.modPow(c, lambdaN, NSquared);
-    BigInteger y = (x.subtract(BigInteger.ONE)).divide(N);
+    // mp = L_p(c^(p-1) mod p^2) * hp mod p; mq = L_q(c^(q-1) mod q^2) * hq mod q
+    BigInteger mp = lFunction(ModPowAbstraction.modPow(c.mod(pSquared), pMinusOne, pSquared), p).multiply(hp).mod(p);
+    BigInteger mq = lFunction(ModPowAbstraction.modPow(c.mod(qSquared), qMinusOne, qSquared), q).multiply(hq).mod(q);
+
+    // Recombine: d = mq + q * ((mp - mq) * q^-1 mod p)
+    return mp.subtract(mq).multiply(qInverse).mod(p).multiply(q).add(mq);
+  }
 
-    return (y.multiply(w)).mod(N);
+  /**
+   * Returns the plaintext messages for a list of ciphertexts, in the same order.
+   *
+   * @param ciphertexts
+   *          the encrypted values.
+   * @return the corresponding plaintext values.
+   */
+  public List<BigInteger> decryptBatch(List<BigInteger> ciphertexts)
+  {
+    List<BigInteger> plaintexts = new ArrayList<>(ciphertexts.size());
+    for (BigInteger c : ciphertexts)
+    {
+      plaintexts.add(decrypt(c));
+    }
+    return plaintexts;
   }
 
   private String parametersToString()
@@ -0,0 +1,457 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pirk.encryption;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.pirk.utils.PIRException;
+import org.apache.pirk.utils.RandomProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Store of pre-generated Paillier keys on the local file system
+ * <p>
+ * Keys are generated ahead of time via {@link #generateKeys(int, int, int, int)} or in the background via {@link #replenish(int, int, int, int)}, and handed out
+ * by {@link #acquire(int, int, int)}. Each key may be handed out {@code keyUses} times -- 1 for single-use keys -- after which it is removed from the store.
+ * <p>
+ * Each key is held in its own file, readable only by its owner and encrypted with AES-GCM under a key derived from the store password with PBKDF2. A key is
+ * claimed by atomically renaming its file, so several processes can share a store directory. A key left claimed for more than
+ * {@link #STALE_CLAIM_MILLIS} ms -- by a process that died before releasing it -- is returned to the store when the store is next opened.
+ */
+public class PaillierKeyStore
+{
+  private static final Logger logger = LoggerFactory.getLogger(PaillierKeyStore.class);
+
+  private static final int MAGIC = 0x504b5331; // "PKS1"
+  private static final String KEY_FILE_SUFFIX = ".key";
+  private static final String CLAIMED_SUFFIX = ".claimed";
+
+  public static final long STALE_CLAIM_MILLIS = TimeUnit.MINUTES.toMillis(10); // a live claim is held for one key decryption and re-encryption
+
+  static final int SALT_LENGTH = 16;
+  static final int IV_LENGTH = 12;
+  private static final int TAG_BIT_LENGTH = 128;
+  private static final int PBKDF2_ITERATIONS = 65536;
+  private static final int AES_KEY_BIT_LENGTH = 256;
+
+  // One background generator per store directory
+  private static final Map<String,ExecutorService> generators = new ConcurrentHashMap<>();
+
+  private final File directory;
+  private final char[] password;
+  private final int keyUses;
+
+  /**
+   * Creates a store in the given directory, which is created if it does not exist, and returns its stale claimed keys to the store
+   *
+   * @param directory
+   *          the local directory holding the key files.
+   * @param password
+   *          the password protecting the key files.
+   * @param keyUses
+   *          the number of times each key is handed out.
+   * @throws IOException
+   *           If the directory cannot be created.
+   */
+  public PaillierKeyStore(File directory, char[] password, int keyUses) throws IOException
+  {
+    if (keyUses < 1)
+    {
+      throw new IllegalArgumentException("keyUses = " + keyUses + " must be positive");
+    }
+    if (password == null || password.length == 0)
+    {
+      throw new IllegalArgumentException("A password is required for the key store");
+    }
+    Files.createDirectories(directory.toPath());
+
+    this.directory = directory;
+    this.password = password.clone();
+    this.keyUses = keyUses;
+
+    recoverStaleClaims();
+  }
+
+  /**
+   * Returns the number of stored keys with the given modulus bit length
+   */
+  public int numKeys(int bitLength)
+  {
+    File[] files = directory.listFiles((dir, name) -> name.startsWith(filePrefix(bitLength)) && name.endsWith(KEY_FILE_SUFFIX));
+    return (files == null) ? 0 : files.length;
+  }
+
+  /**
+   * Returns a key with the given modulus bit length, prime certainty of at least {@code certainty}, and bit {@code ensureBitSet} of the modulus set (if
+   * ensureBitSet > -1)
+   * <p>
+   * The key is taken from the store if one is available and generated otherwise. A key with uses left after this one is kept in the store.
+   *
+   * @throws PIRException
+   *           If a key file cannot be read, written, or decrypted.
+   */
+  public Paillier acquire(int bitLength, int certainty, int ensureBitSet) throws PIRException
+  {
+    File[] files = directory.listFiles((dir, name) -> name.startsWith(filePrefix(bitLength)) && name.endsWith(KEY_FILE_SUFFIX));
+    if (files != null)
+    {
+      for (File file : files)
+      {
+        File claimed = new File(file.getPath() + CLAIMED_SUFFIX);
+        if (!claim(file, claimed))
+        {
+          continue; // taken by another caller
+        }
+        claimed.setLastModified(System.currentTimeMillis()); // the age of the claim, not of the key
+
+        StoredKey storedKey;
+        try
+        {
+          storedKey = read(claimed);
+        } catch (PIRException e)
+        {
+          claim(claimed, file);
+          throw e;
+        }
+        if (storedKey.certainty < certainty || (ensureBitSet > -1 && !storedKey.paillier.getN().testBit(ensureBitSet)))
+        {
+          // Not suitable for this request -- put it back
+          claim(claimed, file);
+          continue;
+        }
+
+        release(claimed, file, storedKey.paillier, storedKey.certainty, storedKey.usesLeft - 1);
+        logger.info("Acquired stored key " + file.getName() + " with " + (storedKey.usesLeft - 1) + " uses left");
+        return storedKey.paillier;
+      }
+    }
+
+    logger.info("No stored key with bitLength = " + bitLength + " available; generating one");
+    Paillier paillier = new Paillier(bitLength, certainty, ensureBitSet);
+    if (keyUses > 1)
+    {
+      store(paillier, certainty, keyUses - 1);
+    }
+    return paillier;
+  }
+
+  /**
+   * Generates keys on the calling thread until the store holds {@code numKeys} keys of the given bit length
+   *
+   * @throws PIRException
+   *           If a key file cannot be written.
+   */
+  public void generateKeys(int bitLength, int certainty, int ensureBitSet, int numKeys) throws PIRException
+  {
+    while (numKeys(bitLength) < numKeys)
+    {
+      store(new Paillier(bitLength, certainty, ensureBitSet), certainty, keyUses);
+    }
+  }
+
+  /**
+   * Tops the store up to {@code numKeys} keys of the given bit length in the background
+   * <p>
+   * The generation runs on one thread per store directory, which ends once it is idle; a pending generation keeps the JVM alive until it completes
+   */
+  public void replenish(int bitLength, int certainty, int ensureBitSet, int numKeys)
+  {
+    ExecutorService generator = generators.computeIfAbsent(directory.getAbsolutePath(), path -> {
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> new Thread(runnable,
+          "paillier-keystore"));
+      executor.allowCoreThreadTimeOut(true);
+      return executor;
+    });
+    generator.submit(() -> {
+      try
+      {
+        generateKeys(bitLength, certainty, ensureBitSet, numKeys);
+      } catch (PIRException e)
+      {
+        logger.error("Unable to replenish the key store " + directory, e);
+      }
+    });
+  }
+
+  // Atomically renames from to to; false if from no longer exists
+  private static boolean claim(File from, File to) throws PIRException
+  {
+    try
+    {
+      Files.move(from.toPath(), to.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      return true;
+    } catch (AtomicMoveNotSupportedException e)
+    {
+      throw new PIRException("The key store requires a file system supporting atomic renames", e);
+    } catch (IOException e)
+    {
+      return false;
+    }
+  }
+
+  // Returns a claimed key to the store with the given uses left, or removes it; the key is held by exactly one file at every step
+  private void release(File claimed, File file, Paillier paillier, int certainty, int usesLeft) throws PIRException
+  {
+    try
+    {
+      if (usesLeft > 0)
+      {
+        File tmp = new File(directory, filePrefix(paillier.getBitLength()) + UUID.randomUUID() + CLAIMED_SUFFIX);
+        write(tmp, paillier, certainty, usesLeft);
+        if (!claim(tmp, claimed) || !claim(claimed, file))
+        {
+          throw new IOException("Unable to rename key file " + tmp);
+        }
+      }
+      else
+      {
+        Files.delete(claimed.toPath());
+      }
+    } catch (IOException e)
+    {
+      throw new PIRException("Unable to update key file " + claimed, e);
+    }
+  }
+
+  private void store(Paillier paillier, int certainty, int usesLeft) throws PIRException
+  {
+    String name = filePrefix(paillier.getBitLength()) + UUID.randomUUID();
+    File tmp = new File(directory, name + CLAIMED_SUFFIX);
+    try
+    {
+      write(tmp, paillier, certainty, usesLeft);
+    } catch (IOException e)
+    {
+      throw new PIRException("Unable to write key file " + tmp, e);
+    }
+    claim(tmp, new File(directory, name + KEY_FILE_SUFFIX));
+    logger.info("Stored key " + name + " with " + usesLeft + " uses");
+  }
+
+  // Returns the keys left claimed by a process that died between claiming and releasing them; unreadable files are left in place
+  private void recoverStaleClaims()
+  {
+    long staleBefore = System.currentTimeMillis() - STALE_CLAIM_MILLIS;
+    File[] files = directory.listFiles((dir, name) -> name.endsWith(CLAIMED_SUFFIX));
+    if (files == null)
+    {
+      return;
+    }
+    for (File claimed : files)
+    {
+      if (claimed.lastModified() >= staleBefore)
+      {
+        continue; // may still be held
+      }
+      try
+      {
+        StoredKey storedKey = read(claimed);
+        File file = new File(directory, filePrefix(storedKey.paillier.getBitLength()) + UUID.randomUUID() + KEY_FILE_SUFFIX);
+        if (claim(claimed, file))
+        {
+          logger.info("Recovered stale claimed key " + claimed.getName() + " as " + file.getName());
+        }
+      } catch (PIRException e)
+      {
+        logger.warn("Unable to recover stale claimed key " + claimed, e);
+      }
+    }
+  }
+
+  private static String filePrefix(int bitLength)
+  {
+    return "paillier-" + bitLength + "-";
+  }
+
+  private void write(File file, Paillier paillier, int certainty, int usesLeft) throws IOException, PIRException
+  {
+    ByteArrayOutputStream plaintext = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(plaintext))
+    {
+      out.writeInt(paillier.getBitLength());
+      out.writeInt(certainty);
+      out.writeInt(usesLeft);
+      writeBigInteger(out, paillier.getP());
+      writeBigInteger(out, paillier.getQ());
+    }
+
+    byte[] salt = new byte[SALT_LENGTH];
+    byte[] iv = new byte[IV_LENGTH];
+    RandomProvider.SECURE_RANDOM.nextBytes(salt);
+    RandomProvider.SECURE_RANDOM.nextBytes(iv);
+    byte[] ciphertext;
+    try
+    {
+      ciphertext = getCipher(Cipher.ENCRYPT_MODE, salt, iv).doFinal(plaintext.toByteArray());
+    } catch (GeneralSecurityException e)
+    {
+      throw new PIRException("Unable to encrypt key file " + file, e);
+    }
+
+    try (DataOutputStream out = new DataOutputStream(createOwnerOnly(file.toPath())))
+    {
+      out.writeInt(MAGIC);
+      out.write(salt);
+      out.write(iv);
+      out.writeInt(ciphertext.length);
+      out.write(ciphertext);
+    }
+  }
+
+  private StoredKey read(File file) throws PIRException
+  {
+    try (DataInputStream in = new DataInputStream(Files.newInputStream(file.toPath())))
+    {
+      if (in.readInt() != MAGIC)
+      {
+        throw new PIRException("Not a key store file: " + file);
+      }
+      byte[] salt = new byte[SALT_LENGTH];
+      byte[] iv = new byte[IV_LENGTH];
+      in.readFully(salt);
+      in.readFully(iv);
+      byte[] ciphertext = new byte[in.readInt()];
+      in.readFully(ciphertext);
+
+      byte[] plaintext;
+      try
+      {
+        plaintext = getCipher(Cipher.DECRYPT_MODE, salt, iv).doFinal(ciphertext);
+      } catch (GeneralSecurityException e)
+      {
+        throw new PIRException("Unable to decrypt key file " + file + " -- wrong key store password?", e);
+      }
+
+      try (DataInputStream keyIn = new DataInputStream(new ByteArrayInputStream(plaintext)))
+      {
+        int bitLength = keyIn.readInt();
+        int certainty = keyIn.readInt();
+        int usesLeft = keyIn.readInt();
+        BigInteger p = readBigInteger(keyIn);
+        BigInteger q = readBigInteger(keyIn);
+        return new StoredKey(new Paillier(p, q, bitLength), certainty, usesLeft);
+      }
+    } catch (IOException e)
+    {
+      throw new PIRException("Unable to read key file " + file, e);
+    }
+  }
+
+  private Cipher getCipher(int mode, byte[] salt, byte[] iv) throws GeneralSecurityException
+  {
+    return getCipher(deriveKey(password, salt), mode, iv);
+  }
+
+  /**
+   * Derives the AES key of a file from the password and the salt of the file with PBKDF2; shared with the {@link RandomnessPool} files
+   */
+  static SecretKeySpec deriveKey(char[] password, byte[] salt) throws GeneralSecurityException
+  {
+    SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
+    byte[] key = factory.generateSecret(new PBEKeySpec(password, salt, PBKDF2_ITERATIONS, AES_KEY_BIT_LENGTH)).getEncoded();
+    return new SecretKeySpec(key, "AES");
+  }
+
+  /**
+   * Returns an AES-GCM cipher with the given key and IV
+   */
+  static Cipher getCipher(SecretKeySpec key, int mode, byte[] iv) throws GeneralSecurityException
+  {
+    Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+    cipher.init(mode, key, new GCMParameterSpec(TAG_BIT_LENGTH, iv));
+    return cipher;
+  }
+
+  /**
+   * Creates the file, replacing any existing one, readable and writable only by its owner; shared with the {@link RandomnessPool} files
+   */
+  static OutputStream createOwnerOnly(Path path) throws IOException
+  {
+    Files.deleteIfExists(path);
+    if (path.getFileSystem().supportedFileAttributeViews().contains("posix"))
+    {
+      Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+    }
+    else
+    {
+      Files.createFile(path);
+      File file = path.toFile();
+      if (!(file.setReadable(false, false) && file.setReadable(true, true) && file.setWritable(false, false) && file.setWritable(true, true)))
+      {
+        throw new IOException("Unable to restrict the permissions of " + path);
+      }
+    }
+    return Files.newOutputStream(path);
+  }
+
+  private static void writeBigInteger(DataOutputStream out, BigInteger value) throws IOException
+  {
+    byte[] bytes = value.toByteArray();
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static BigInteger readBigInteger(DataInputStream in) throws IOException
+  {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new BigInteger(bytes);
+  }
+
+  private static class StoredKey
+  {
+    final Paillier paillier;
+    final int certainty;
+    final int usesLeft;
+
+    StoredKey(Paillier paillier, int certainty, int usesLeft)
+    {
+      this.paillier = paillier;
+      this.certainty = certainty;
+      this.usesLeft = usesLeft;
+    }
+  }
+}
@@ -20,9 +20,24 @@ package org.apache.pirk.encryption;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.pirk.utils.RandomProvider;
 import org.apache.pirk.utils.SystemConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -49,7 +64,14 @@ import org.slf4j.LoggerFactory;
  * <p>
  * Headings of most interest: Table C.2 "Minimum number of rounds of M-R testing when generating primes for use in RSA Digital Signatures" and "The primes p and
  * q shall be selected with the following constraints"
- * 
+ * <p>
+ * The primes are searched for by pallier.primeGenerationThreads worker threads (defaults to the number of available processors). As in FIPS 186-4 B.3.3, each
+ * attempt draws a fresh random odd candidate; candidates with a factor in a table of small primes are rejected before the probabilistic primality tests. The
+ * attempts are numbered and their outcomes taken in attempt order, so that for a key pair p and q are the first two primes of the attempt sequence that
+ * satisfy the constraints.
+ * <p>
+ * When the caller supplies a Random, attempt i draws from its own generator seeded with a seed drawn from the caller's Random and with i: a seeded Random
+ * gives the same primes whatever the number of threads and their interleaving.
  */
 public class PrimeGenerator
 {
@@ -57,11 +79,17 @@ public class PrimeGenerator
 
   private static final BigDecimal SQRT_2 = BigDecimal.valueOf(Math.sqrt(2));
 
-  private static final HashMap<Integer,BigInteger> lowerBoundCache = new HashMap<>();
-  private static final HashMap<Integer,BigInteger> minimumDifferenceCache = new HashMap<>();
+  private static final Map<Integer,BigInteger> lowerBoundCache = new ConcurrentHashMap<>();
+  private static final Map<Integer,BigInteger> minimumDifferenceCache = new ConcurrentHashMap<>();
 
   private static boolean additionalChecksEnabled = SystemConfiguration.isSetTrue("pallier.FIPSPrimeGenerationChecks");
 
+  // Odd primes below 2^15 used to reject the candidates by trial division, in groups whose product fits in a long
+  private static final int[][] SMALL_PRIME_GROUPS = groupSmallPrimes(computeSmallPrimes(1 << 15));
+  private static final BigInteger[] SMALL_PRIME_PRODUCTS = multiplyGroups(SMALL_PRIME_GROUPS);
+
+  private static final int SEED_LENGTH = 32;
+
   /**
    * Method to generate a single prime
    * <p>
@@ -71,144 +99,321 @@ public class PrimeGenerator
    */
   public static BigInteger getSinglePrime(int bitLength, int certainty, Random rnd)
   {
-    BigInteger p;
+    logger.debug("bitLength " + bitLength + " certainty " + certainty + " random " + rnd);
 
+    return search(new PrimeSearch(bitLength, certainty, rnd, null, 1))[0];
+  }
+
+  /**
+   * Method to generate a second prime, q, in relation to a (p,q) RSA key pair
+   * <p>
+   * Will optionally ensure that the prime meets the requirements in NIST SP 800-56B and FIPS 186-4
+   * <p>
+   * NOTE: bitLength corresponds to the FIPS 186-4 nlen parameter
+   */
+  public static BigInteger getSecondPrime(int bitLength, int certainty, Random rnd, BigInteger p)
+  {
     logger.debug("bitLength " + bitLength + " certainty " + certainty + " random " + rnd);
 
-    // If the additional checks are disabled, don't waste time on anything else
-    if (!additionalChecksEnabled)
+    return search(new PrimeSearch(bitLength, certainty, rnd, p, 1))[0];
+  }
+
+  /**
+   * This method returns a two-long array containing a viable RSA p and q meeting FIPS 186-4 and SP 800-56B
+   * <p>
+   * Each worker thread draws its randomness from its own {@link RandomProvider#getThreadSecureRandom()}; the result is not reproducible
+   */
+  public static BigInteger[] getPrimePair(int bitLength, int certainty)
+  {
+    logger.debug("bitLength " + bitLength + " certainty " + certainty);
+
+    return search(new PrimeSearch(bitLength, certainty, null, null, 2));
+  }
+
+  /**
+   * This method returns a two-long array containing a viable RSA p and q meeting FIPS 186-4 and SP 800-56B
+   */
+  public static BigInteger[] getPrimePair(int bitLength, int certainty, Random rnd)
+  {
+    logger.debug("bitLength " + bitLength + " certainty " + certainty + " random " + rnd);
+
+    return search(new PrimeSearch(bitLength, certainty, rnd, null, 2));
+  }
+
+  /**
+   * Runs the given search on pallier.primeGenerationThreads threads
+   */
+  private static BigInteger[] search(PrimeSearch primeSearch)
+  {
+    int numThreads = SystemConfiguration.getIntProperty("pallier.primeGenerationThreads", Runtime.getRuntime().availableProcessors());
+    if (numThreads <= 1)
     {
-      p = new BigInteger(bitLength / 2, certainty, rnd);
+      primeSearch.run();
+      return primeSearch.getPrimes();
     }
-    else
-    {
-      // Calculate the number of Miller-Rabin rounds that we need in addition to
-      // the number that BigInteger will do to comply with FIPS 186-4, Appendix C.2
-      int roundsLeft = calcNumAdditionalMillerRabinRounds(bitLength);
 
-      // Calculate the lower bound (\sqrt(2))(2^(bitLength/2) – 1)) for use in FIPS 186-4 B.3.3, step 4.4
-      BigInteger lowerBound;
-      if (!lowerBoundCache.containsKey(bitLength))
-      {
-        lowerBound = SQRT_2.multiply(BigDecimal.valueOf(2).pow((bitLength / 2) - 1)).toBigInteger();
-        lowerBoundCache.put(bitLength, lowerBound);
-      }
-      else
+    ExecutorService es = Executors.newFixedThreadPool(numThreads);
+    try
+    {
+      List<Future<?>> futures = new ArrayList<>(numThreads);
+      for (int i = 0; i < numThreads; ++i)
       {
-        lowerBound = lowerBoundCache.get(bitLength);
+        futures.add(es.submit(primeSearch));
       }
-
-      // Complete FIPS 186-4 B.3.3, steps 4.2 - 4.5
-      while (true)
+      for (Future<?> future : futures)
       {
-        // FIPS 186-4 B.3.3, step 4.2 and 4.3
-        // 4.2: Obtain a string p of (bitLength/2) bits from an RBG that supports the security_strength.
-        // 4.3: If (p is not odd), then p = p + 1. -- BigInteger hands us a prime (hence odd) with the call below
-        p = new BigInteger(bitLength / 2, certainty, rnd);
-
-        // FIPS 186-4 B.3.3, step 4.4
-        // 4.4: If p < (\sqrt(2))(2^(bitLength/2) – 1)), then go to step 4.2.
-        if (p.compareTo(lowerBound) > -1)
-        {
-          // FIPS 186-4, step 4.5
-          // Run however many more rounds of Miller-Rabin are needed
-          if (passesMillerRabin(p, roundsLeft, rnd))
-          {
-            // We have winner
-            break;
-          }
-        }
+        future.get();
       }
+    } catch (InterruptedException | ExecutionException e)
+    {
+      primeSearch.cancel();
+      throw new RuntimeException("Exception in prime generation threads", e);
+    } finally
+    {
+      es.shutdown();
     }
-    return p;
+    return primeSearch.getPrimes();
+  }
+
+  // Returns the lower bound (\sqrt(2))(2^(bitLength/2) – 1)) for use in FIPS 186-4 B.3.3, steps 4.4 and 5.5
+  private static BigInteger getLowerBound(int bitLength)
+  {
+    return lowerBoundCache.computeIfAbsent(bitLength, k -> SQRT_2.multiply(BigDecimal.valueOf(2).pow((bitLength / 2) - 1)).toBigInteger());
+  }
+
+  // Returns the minimumDifference 2^((bitLength/2) – 100) for use in FIPS 186-4 B.3.3, step 5.4 -- 1 for toy sizes of bitLength < 200
+  private static BigInteger getMinimumDifference(int bitLength)
+  {
+    return minimumDifferenceCache.computeIfAbsent(bitLength, k -> BigDecimal.valueOf(2).pow(Math.max(0, bitLength / 2 - 100)).toBigInteger());
   }
 
   /**
-   * Method to generate a second prime, q, in relation to a (p,q) RSA key pair
+   * Search for primes of bitLength/2 bits, shared by the worker threads
    * <p>
-   * Will optionally ensure that the prime meets the requirements in NIST SP 800-56B and FIPS 186-4
-   * <p>
-   * NOTE: bitLength corresponds to the FIPS 186-4 nlen parameter
+   * Each call to {@link #run()} makes attempts until the requested number of primes is found. With the additional checks enabled, the primes satisfy FIPS
+   * 186-4 B.3.3, steps 4.4-4.5 and 5.4-5.6, with respect to each other and to the given first prime, if any.
    */
-  public static BigInteger getSecondPrime(int bitLength, int certainty, Random rnd, BigInteger p)
+  private static class PrimeSearch implements Runnable
   {
-    BigInteger q;
+    private final int primeBitLength;
+    private final int certainty;
+    private final byte[] seed; // drawn from the caller's Random; null for the thread SecureRandom of each worker
 
-    logger.debug("bitLength " + bitLength + " certainty " + certainty + " random " + rnd);
+    // FIPS 186-4 checks -- null/0 if the additional checks are disabled
+    private final BigInteger lowerBound;
+    private final BigInteger minimumDifference;
+    private final int roundsLeft;
 
-    // If the additional checks are disabled, don't waste time on anything else
-    if (!additionalChecksEnabled)
+    private final BigInteger firstPrime; // p, when searching for q only
+    private final int numPrimes;
+    private final List<BigInteger> primes = new ArrayList<>();
+    private volatile boolean done = false;
+
+    private final AtomicLong nextAttempt = new AtomicLong();
+    private final Map<Long,BigInteger> finished = new HashMap<>(); // guarded by primes -- the outcomes (null for no prime) of the attempts after nextResult
+    private long nextResult = 0; // guarded by primes
+
+    PrimeSearch(int bitLength, int certainty, Random rnd, BigInteger firstPrime, int numPrimes)
     {
-      q = new BigInteger(bitLength / 2, certainty, rnd);
+      if (bitLength < 8)
+      {
+        throw new IllegalArgumentException("bitLength = " + bitLength + " must be at least 8");
+      }
+      primeBitLength = bitLength / 2;
+      this.certainty = certainty;
+      if (rnd != null)
+      {
+        seed = new byte[SEED_LENGTH];
+        rnd.nextBytes(seed);
+      }
+      else
+      {
+        seed = null;
+      }
+
+      if (additionalChecksEnabled)
+      {
+        // Calculate the number of Miller-Rabin rounds that we need in addition to
+        // the number that BigInteger will do to comply with FIPS 186-4, Appendix C.2
+        roundsLeft = calcNumAdditionalMillerRabinRounds(bitLength);
+        lowerBound = getLowerBound(bitLength);
+        minimumDifference = getMinimumDifference(bitLength);
+      }
+      else
+      {
+        roundsLeft = 0;
+        lowerBound = null;
+        minimumDifference = null;
+      }
+
+      this.firstPrime = firstPrime;
+      this.numPrimes = numPrimes;
+    }
+
+    BigInteger[] getPrimes()
+    {
+      synchronized (primes)
+      {
+        return primes.toArray(new BigInteger[numPrimes]);
+      }
     }
-    else
+
+    void cancel()
     {
-      // Calculate the number of Miller-Rabin rounds that we need in addition to
-      // the number that BigInteger will do to comply with FIPS 186-4, Appendix C.2
-      int roundsLeft = calcNumAdditionalMillerRabinRounds(bitLength);
+      done = true;
+    }
 
-      // Calculate the lower bound (\sqrt(2))(2^(bitLength/2) – 1)) for use in FIPS 186-4 B.3.3, step 5.5
-      BigInteger lowerBound;
-      if (!lowerBoundCache.containsKey(bitLength))
+    @Override
+    public void run()
+    {
+      while (!done)
       {
-        lowerBound = SQRT_2.multiply(BigDecimal.valueOf(2).pow((bitLength / 2) - 1)).toBigInteger();
-        lowerBoundCache.put(bitLength, lowerBound);
+        long attempt = nextAttempt.getAndIncrement();
+        Random random = (seed != null) ? getAttemptRandom(attempt) : RandomProvider.getThreadSecureRandom();
+
+        // FIPS 186-4 B.3.3, steps 4.2-4.3 and 5.2-5.3: a random odd candidate of (bitLength/2) bits
+        BigInteger candidate = new BigInteger(primeBitLength, random).setBit(primeBitLength - 1).setBit(0);
+        finish(attempt, isAcceptable(candidate, random) ? candidate : null);
       }
-      else
+    }
+
+    // The generator of the given attempt, seeded with the seed of the search and the attempt number
+    private Random getAttemptRandom(long attempt)
+    {
+      try
       {
-        lowerBound = lowerBoundCache.get(bitLength);
+        SecureRandom random = SecureRandom.getInstance("SHA1PRNG"); // deterministic when seeded before first use
+        random.setSeed(ByteBuffer.allocate(SEED_LENGTH + 8).put(seed).putLong(attempt).array());
+        return random;
+      } catch (NoSuchAlgorithmException e)
+      {
+        throw new RuntimeException("Unable to instantiate a SHA1PRNG SecureRandom for the prime search", e);
       }
+    }
 
-      // Compute the minimumDifference 2^((bitLength/2) – 100) for use in FIPS 186-4 B.3.3, step 5.4
-      BigInteger minimumDifference;
-      if (!minimumDifferenceCache.containsKey(bitLength))
+    private boolean isAcceptable(BigInteger candidate, Random random)
+    {
+      // FIPS 186-4 B.3.3, steps 4.4 and 5.5: candidate >= (\sqrt(2))(2^(bitLength/2) – 1))
+      if (lowerBound != null && candidate.compareTo(lowerBound) < 0)
       {
-        minimumDifference = BigDecimal.valueOf(2).pow(bitLength / 2 - 100).toBigInteger();
-        minimumDifferenceCache.put(bitLength, minimumDifference);
+        return false;
       }
-      else
+      if (!isDistant(candidate, firstPrime) || hasSmallFactor(candidate))
       {
-        minimumDifference = minimumDifferenceCache.get(bitLength);
+        return false;
       }
 
-      // Complete FIPS 186-4 B.3.3, steps 5.2 - 5.6
-      while (true)
+      // FIPS 186-4, steps 4.5 and 5.6: BigInteger's tests, plus however many more rounds of Miller-Rabin are needed
+      return candidate.isProbablePrime(certainty) && passesMillerRabin(candidate, roundsLeft, random);
+    }
+
+    // FIPS 186-4 B.3.3, step 5.4: |p – q| > 2^((bitLength/2) – 100)
+    private boolean isDistant(BigInteger candidate, BigInteger other)
+    {
+      return other == null || minimumDifference == null || candidate.subtract(other).abs().compareTo(minimumDifference) > 0;
+    }
+
+    // Takes the outcomes of the attempts in attempt order, so that the primes do not depend on the timing of the threads
+    private void finish(long attempt, BigInteger prime)
+    {
+      synchronized (primes)
       {
-        // FIPS 186-4 B.3.3, step 5.2 and 5.3
-        // 5.2: Obtain a string q of (bitLength/2) bits from an RBG that supports the security_strength.
-        // 5.3: If (q is not odd), then q = q + 1. -- BigInteger hands us a prime (hence odd) with the call below
-        q = new BigInteger(bitLength / 2, certainty, rnd);
-
-        // FIPS 186-4 B.3.3, step 5.4 & 5.5
-        // 5.4 If (|p – q| ≤ 2^((bitLength/2) – 100), then go to step 5.2
-        // 5.5: If q < (\sqrt(2))(2^(bitLength/2) – 1)), then go to step 5.2.
-        BigInteger absDiff = (p.subtract(q)).abs();
-        if ((q.compareTo(lowerBound) > -1) && (absDiff.compareTo(minimumDifference) > 0))
+        finished.put(attempt, prime);
+        while (!done && finished.containsKey(nextResult))
         {
-          // FIPS 186-4, step 5.6
-          // Run however many more rounds of Miller-Rabin are needed
-          if (passesMillerRabin(q, roundsLeft, rnd))
+          BigInteger next = finished.remove(nextResult++);
+          if (next != null)
           {
-            // We have winner
-            break;
+            offer(next);
           }
         }
       }
     }
-    return q;
+
+    // Called with the lock of primes held
+    private void offer(BigInteger prime)
+    {
+      for (BigInteger other : primes)
+      {
+        if (other.equals(prime) || !isDistant(prime, other))
+        {
+          return;
+        }
+      }
+      primes.add(prime);
+      done = (primes.size() == numPrimes);
+    }
   }
 
-  /**
-   * This method returns a two-long array containing a viable RSA p and q meeting FIPS 186-4 and SP 800-56B
-   */
-  public static BigInteger[] getPrimePair(int bitLength, int certainty, Random rnd)
+  // Returns true if the candidate has a factor in the table of small primes, other than itself
+  private static boolean hasSmallFactor(BigInteger candidate)
   {
-    BigInteger[] toReturn = {null, null};
+    for (int k = 0; k < SMALL_PRIME_GROUPS.length; ++k)
+    {
+      long remainder = candidate.mod(SMALL_PRIME_PRODUCTS[k]).longValue();
+      for (int smallPrime : SMALL_PRIME_GROUPS[k])
+      {
+        if (remainder % smallPrime == 0)
+        {
+          return candidate.bitLength() > 31 || candidate.intValue() != smallPrime;
+        }
+      }
+    }
+    return false;
+  }
+
+  // Splits the small primes into consecutive groups whose product fits in a long
+  private static int[][] groupSmallPrimes(int[] smallPrimes)
+  {
+    List<int[]> groups = new ArrayList<>();
+    int start = 0;
+    long product = 1;
+    for (int i = 0; i < smallPrimes.length; ++i)
+    {
+      if (product > Long.MAX_VALUE / smallPrimes[i])
+      {
+        groups.add(Arrays.copyOfRange(smallPrimes, start, i));
+        start = i;
+        product = 1;
+      }
+      product *= smallPrimes[i];
+    }
+    groups.add(Arrays.copyOfRange(smallPrimes, start, smallPrimes.length));
+    return groups.toArray(new int[groups.size()][]);
+  }
 
-    toReturn[0] = getSinglePrime(bitLength, certainty, rnd);
-    toReturn[1] = getSecondPrime(bitLength, certainty, rnd, toReturn[0]);
+  private static BigInteger[] multiplyGroups(int[][] groups)
+  {
+    BigInteger[] products = new BigInteger[groups.length];
+    for (int k = 0; k < groups.length; ++k)
+    {
+      long product = 1;
+      for (int smallPrime : groups[k])
+      {
+        product *= smallPrime;
+      }
+      products[k] = BigInteger.valueOf(product);
+    }
+    return products;
+  }
 
-    return toReturn;
+  // Returns the odd primes less than the given bound
+  private static int[] computeSmallPrimes(int bound)
+  {
+    BitSet composites = new BitSet(bound);
+    List<Integer> smallPrimes = new ArrayList<>();
+    for (int i = 3; i < bound; i += 2)
+    {
+      if (!composites.get(i))
+      {
+        smallPrimes.add(i);
+        for (long j = (long) i * i; j < bound; j += 2 * i)
+        {
+          composites.set((int) j);
+        }
+      }
+    }
+    return smallPrimes.stream().mapToInt(Integer::intValue).toArray();
   }
 
   /**
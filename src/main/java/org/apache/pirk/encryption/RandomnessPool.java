@@ -0,0 +1,370 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pirk.encryption;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.pirk.utils.RandomProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of precomputed Paillier randomness values r^N mod N^2 for a given key
+ * <p>
+ * The r^N mod N^2 exponentiation is the expensive part of {@link Paillier#encrypt(BigInteger)}, and it does not depend on the message. The pool moves it
+ * offline: values are computed ahead of time, either synchronously via {@link #fill(int)} or by background threads via {@link #start(int)}, and the
+ * encryptor draws them with {@link #next()} and {@link Paillier#encryptWithRandomness(BigInteger, BigInteger)}. E(0) is then the drawn value itself and
+ * E(m) is one multiplication mod N^2.
+ * <p>
+ * If the pool runs dry, {@link #next()} computes the value inline, so drawing never blocks.
+ * <p>
+ * Each value must be used for only one encryption. Values handed out by {@link #next()} are removed from the pool, {@link #store(File, char[])} drains the
+ * values it persists, and {@link #load(File, char[], int)} deletes the file it read.
+ * <p>
+ * A stored pool holds the key along with its values, so that a pool precomputed ahead of time (the querier's 'precompute' action) is used as is by a later
+ * encryption. The file is as secret as the private key -- it holds p and q, and its values are the randomness of future query elements -- and is therefore
+ * encrypted like the {@link PaillierKeyStore} files (AES-GCM under a key derived from a password with PBKDF2) and created readable by its owner only.
+ */
+public class RandomnessPool
+{
+  private static final Logger logger = LoggerFactory.getLogger(RandomnessPool.class);
+
+  private static final int MAGIC = 0x50525031; // "PRP1"
+  private static final int VALUES_PER_CHUNK = 1024; // values encrypted together, so that large pools are never held in one buffer
+
+  private final Paillier paillier;
+
+  private final BlockingQueue<BigInteger> values;
+
+  private ExecutorService fillers = null;
+
+  private final AtomicLong numDrawn = new AtomicLong(0);
+  private final AtomicLong numComputedInline = new AtomicLong(0);
+
+  /**
+   * Creates an empty pool for the given key holding at most {@code capacity} values
+   */
+  public RandomnessPool(Paillier paillier, int capacity)
+  {
+    if (capacity < 1)
+    {
+      throw new IllegalArgumentException("capacity = " + capacity + " must be positive");
+    }
+    this.paillier = paillier;
+    values = new ArrayBlockingQueue<>(capacity);
+  }
+
+  /**
+   * Returns the key of the pool
+   */
+  public Paillier getPaillier()
+  {
+    return paillier;
+  }
+
+  /**
+   * Returns the number of values currently in the pool
+   */
+  public int size()
+  {
+    return values.size();
+  }
+
+  /**
+   * Computes values on the calling thread until the pool holds {@code count} values or is full
+   */
+  public void fill(int count)
+  {
+    while (values.size() < count && values.offer(paillier.generateRandomness()))
+    {
+      // keep going
+    }
+  }
+
+  /**
+   * Computes values on {@code numThreads} threads until the pool holds {@code count} values or is full
+   */
+  public void fill(int count, int numThreads) throws InterruptedException
+  {
+    ExecutorService es = Executors.newFixedThreadPool(numThreads);
+    try
+    {
+      for (int i = 0; i < numThreads; ++i)
+      {
+        es.submit(() -> fill(count));
+      }
+    } finally
+    {
+      es.shutdown();
+    }
+    es.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+  }
+
+  /**
+   * Starts {@code numThreads} background threads that keep the pool full until {@link #stop()} is called
+   * <p>
+   * The threads are daemon threads, so a running pool does not keep the JVM alive
+   */
+  public synchronized void start(int numThreads)
+  {
+    if (fillers != null)
+    {
+      throw new IllegalStateException("Randomness pool is already started");
+    }
+    fillers = Executors.newFixedThreadPool(numThreads, runnable -> {
+      Thread thread = new Thread(runnable, "randomness-pool");
+      thread.setDaemon(true);
+      return thread;
+    });
+    for (int i = 0; i < numThreads; ++i)
+    {
+      fillers.submit(this::fillContinuously);
+    }
+    logger.info("Started " + numThreads + " randomness pool threads");
+  }
+
+  /**
+   * Stops the background threads, if started; the values already in the pool remain available
+   */
+  public synchronized void stop()
+  {
+    if (fillers != null)
+    {
+      fillers.shutdownNow();
+      fillers = null;
+      logger.info("Stopped randomness pool: numDrawn = " + numDrawn.get() + " numComputedInline = " + numComputedInline.get() + " size = " + values.size());
+    }
+  }
+
+  private void fillContinuously()
+  {
+    try
+    {
+      while (!Thread.currentThread().isInterrupted())
+      {
+        values.put(paillier.generateRandomness());
+      }
+    } catch (InterruptedException e)
+    {
+      // stopped
+    }
+  }
+
+  /**
+   * Removes and returns a value r^N mod N^2 from the pool, computing it inline if the pool is empty
+   */
+  public BigInteger next()
+  {
+    numDrawn.incrementAndGet();
+
+    BigInteger value = values.poll();
+    if (value == null)
+    {
+      numComputedInline.incrementAndGet();
+      value = paillier.generateRandomness();
+    }
+    return value;
+  }
+
+  /**
+   * Persists the values of the pool to the given file, encrypted under the given password, removing them from the pool
+   * <p>
+   * The file holds the key (p, q, and the modulus bit length) followed by the values, in chunks that are each encrypted and authenticated along with their
+   * position
+   */
+  public void store(File file, char[] password) throws IOException
+  {
+    List<BigInteger> drained = new ArrayList<>(values.size());
+    values.drainTo(drained);
+
+    byte[] salt = new byte[PaillierKeyStore.SALT_LENGTH];
+    RandomProvider.SECURE_RANDOM.nextBytes(salt);
+    int numChunks = 1 + (drained.size() + VALUES_PER_CHUNK - 1) / VALUES_PER_CHUNK; // chunk 0 holds the key
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(PaillierKeyStore.createOwnerOnly(file.toPath()))))
+    {
+      SecretKeySpec key = PaillierKeyStore.deriveKey(password, salt);
+      out.writeInt(MAGIC);
+      out.write(salt);
+      out.writeInt(numChunks);
+      for (int chunk = 0; chunk < numChunks; ++chunk)
+      {
+        ByteArrayOutputStream plaintext = new ByteArrayOutputStream();
+        try (DataOutputStream chunkOut = new DataOutputStream(plaintext))
+        {
+          if (chunk == 0)
+          {
+            chunkOut.writeInt(paillier.getBitLength());
+            writeBigInteger(chunkOut, paillier.getP());
+            writeBigInteger(chunkOut, paillier.getQ());
+          }
+          else
+          {
+            List<BigInteger> chunkValues = drained.subList((chunk - 1) * VALUES_PER_CHUNK, Math.min(drained.size(), chunk * VALUES_PER_CHUNK));
+            chunkOut.writeInt(chunkValues.size());
+            for (BigInteger value : chunkValues)
+            {
+              writeBigInteger(chunkOut, value);
+            }
+          }
+        }
+
+        byte[] iv = new byte[PaillierKeyStore.IV_LENGTH];
+        RandomProvider.SECURE_RANDOM.nextBytes(iv);
+        Cipher cipher = PaillierKeyStore.getCipher(key, Cipher.ENCRYPT_MODE, iv);
+        cipher.updateAAD(getChunkAAD(salt, numChunks, chunk));
+        byte[] ciphertext = cipher.doFinal(plaintext.toByteArray());
+
+        out.write(iv);
+        out.writeInt(ciphertext.length);
+        out.write(ciphertext);
+      }
+    } catch (GeneralSecurityException e)
+    {
+      throw new IOException("Unable to encrypt randomness pool file " + file, e);
+    }
+    logger.info("Stored " + drained.size() + " randomness values to " + file);
+  }
+
+  /**
+   * Loads a pool persisted with {@link #store(File, char[])}, with the key stored in the file, and deletes the file, so that its values are never used twice
+   * <p>
+   * Values beyond the {@code capacity} of the new pool are discarded
+   *
+   * @throws IOException
+   *           If the file cannot be read, decrypted, or deleted.
+   */
+  public static RandomnessPool load(File file, char[] password, int capacity) throws IOException
+  {
+    return load(file, password, null, capacity);
+  }
+
+  /**
+   * Loads a pool persisted with {@link #store(File, char[])} for the given key and deletes the file, so that its values are never used twice
+   * <p>
+   * Values beyond the {@code capacity} of the new pool are discarded
+   *
+   * @throws IOException
+   *           If the file cannot be read, decrypted, or deleted, or was stored for a different key.
+   */
+  public static RandomnessPool load(File file, char[] password, Paillier paillier, int capacity) throws IOException
+  {
+    RandomnessPool pool = null;
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath()))))
+    {
+      if (in.readInt() != MAGIC)
+      {
+        throw new IOException("Not a randomness pool file: " + file);
+      }
+      byte[] salt = new byte[PaillierKeyStore.SALT_LENGTH];
+      in.readFully(salt);
+      int numChunks = in.readInt();
+      SecretKeySpec key = PaillierKeyStore.deriveKey(password, salt);
+      for (int chunk = 0; chunk < numChunks && (pool == null || pool.values.remainingCapacity() > 0); ++chunk)
+      {
+        byte[] iv = new byte[PaillierKeyStore.IV_LENGTH];
+        in.readFully(iv);
+        byte[] ciphertext = new byte[in.readInt()];
+        in.readFully(ciphertext);
+
+        byte[] plaintext;
+        try
+        {
+          Cipher cipher = PaillierKeyStore.getCipher(key, Cipher.DECRYPT_MODE, iv);
+          cipher.updateAAD(getChunkAAD(salt, numChunks, chunk));
+          plaintext = cipher.doFinal(ciphertext);
+        } catch (GeneralSecurityException e)
+        {
+          throw new IOException("Unable to decrypt randomness pool file " + file + " -- wrong password?", e);
+        }
+
+        DataInputStream chunkIn = new DataInputStream(new ByteArrayInputStream(plaintext));
+        if (chunk == 0)
+        {
+          int bitLength = chunkIn.readInt();
+          BigInteger p = readBigInteger(chunkIn);
+          BigInteger q = readBigInteger(chunkIn);
+          if (paillier != null && !p.multiply(q).equals(paillier.getN()))
+          {
+            throw new IOException("Randomness pool file " + file + " was not stored for the given key");
+          }
+          pool = new RandomnessPool((paillier != null) ? paillier : new Paillier(p, q, bitLength), capacity);
+          continue;
+        }
+        int numValues = chunkIn.readInt();
+        for (int i = 0; i < numValues && pool.values.offer(readBigInteger(chunkIn)); ++i)
+        {
+          // keep going
+        }
+      }
+    } catch (GeneralSecurityException e)
+    {
+      throw new IOException("Unable to derive the key of randomness pool file " + file, e);
+    }
+    if (pool == null)
+    {
+      throw new IOException("Randomness pool file " + file + " holds no key");
+    }
+    Files.delete(file.toPath());
+    logger.info("Loaded " + pool.size() + " randomness values from " + file);
+
+    return pool;
+  }
+
+  // Binds a chunk to its file and position, so that chunks cannot be dropped, reordered, or mixed between files
+  private static byte[] getChunkAAD(byte[] salt, int numChunks, int chunk)
+  {
+    return ByteBuffer.allocate(12 + salt.length).putInt(MAGIC).put(salt).putInt(numChunks).putInt(chunk).array();
+  }
+
+  private static void writeBigInteger(DataOutputStream out, BigInteger value) throws IOException
+  {
+    byte[] bytes = value.toByteArray();
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static BigInteger readBigInteger(DataInputStream in) throws IOException
+  {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new BigInteger(bytes);
+  }
+}
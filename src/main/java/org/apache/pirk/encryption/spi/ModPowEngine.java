@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pirk.encryption.spi;
+
+import java.math.BigInteger;
+
+/**
+ * Interface for a modular exponentiation backend
+ * <p>
+ * Implementations are discovered via {@link java.util.ServiceLoader} by the {@link org.apache.pirk.encryption.ModPowEngineService} and selected by name with
+ * the paillier.modPowEngine (JVM default) and pir.modPowEngine (per responder job) properties. Implementations must be stateless or thread-safe.
+ */
+public interface ModPowEngine
+{
+  /**
+   * Returns the name of the engine; this is the value of the paillier.modPowEngine and pir.modPowEngine properties that selects it
+   */
+  public String getEngineName();
+
+  /**
+   * Performs modPow: ({@code base}^{@code exponent}) mod {@code modulus}
+   */
+  public BigInteger modPow(BigInteger base, BigInteger exponent, BigInteger modulus);
+
+  /**
+   * Performs modPow: ({@code bases[i]}^{@code exponents[i]}) mod {@code modulus} for each i, sharing the {@code modulus} across the whole batch
+   * <p>
+   * Engines should override this to amortize per call costs (native call overhead, modulus dependent precomputation) over the batch
+   */
+  public default BigInteger[] modPowBatch(BigInteger[] bases, BigInteger[] exponents, BigInteger modulus)
+  {
+    if (bases.length != exponents.length)
+    {
+      throw new IllegalArgumentException("bases.length = " + bases.length + " != exponents.length = " + exponents.length);
+    }
+
+    BigInteger[] results = new BigInteger[bases.length];
+    for (int i = 0; i < bases.length; ++i)
+    {
+      results[i] = modPow(bases[i], exponents[i], modulus);
+    }
+    return results;
+  }
+}
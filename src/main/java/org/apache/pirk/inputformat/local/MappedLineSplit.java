@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pirk.inputformat.local;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Byte range of a local file of lines (such as JSON records) holding only whole lines, read through a memory mapping of the file
+ * <p>
+ * {@link #getSplits(String, long)} maps the files of a path (a file or a directory of files) in windows of at most {@link #MAX_WINDOW_BYTES} bytes and cuts
+ * them into splits of about splitBytes bytes, each boundary moved forward to just after the next newline, so that the splits can be read by parallel workers
+ * without any coordination. {@link #nextLine()} hands out the lines as views into the mapping, without copying.
+ * <p>
+ * Lines are terminated by '\n' and a trailing '\r' is dropped; the last line of a file need not be terminated. A split is read by a single thread.
+ */
+public class MappedLineSplit
+{
+  public static final int MAX_WINDOW_BYTES = 1 << 30;
+
+  private final String fileName;
+  private final long start;
+  private final ByteBuffer buffer; // the bytes of the split; the position is the start of the next line
+  private final ByteBuffer line; // view of the last line returned by nextLine()
+
+  private MappedLineSplit(String fileNameInput, long startInput, ByteBuffer bufferInput)
+  {
+    fileName = fileNameInput;
+    start = startInput;
+    buffer = bufferInput;
+    line = buffer.duplicate();
+  }
+
+  /**
+   * Returns the splits of the given file, or of the files of the given directory (ignoring hidden files and those starting with '_'), in file name and offset
+   * order
+   */
+  public static List<MappedLineSplit> getSplits(String path, long splitBytes) throws IOException
+  {
+    if (splitBytes <= 0)
+    {
+      throw new IllegalArgumentException("splitBytes = " + splitBytes + " must be positive");
+    }
+
+    File input = new File(path);
+    List<File> files = new ArrayList<>();
+    if (input.isDirectory())
+    {
+      File[] children = input.listFiles(file -> file.isFile() && !file.getName().startsWith(".") && !file.getName().startsWith("_"));
+      if (children == null)
+      {
+        throw new IOException("Unable to list the files of " + path);
+      }
+      Arrays.sort(children);
+      files.addAll(Arrays.asList(children));
+    }
+    else if (input.isFile())
+    {
+      files.add(input);
+    }
+    else
+    {
+      throw new FileNotFoundException(path);
+    }
+
+    List<MappedLineSplit> splits = new ArrayList<>();
+    for (File file : files)
+    {
+      addSplits(file, splitBytes, splits);
+    }
+    return splits;
+  }
+
+  private static void addSplits(File file, long splitBytes, List<MappedLineSplit> splits) throws IOException
+  {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+    {
+      long size = channel.size();
+      long windowStart = 0;
+      while (windowStart < size)
+      {
+        int windowLength = (int) Math.min(size - windowStart, MAX_WINDOW_BYTES);
+        MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowLength);
+
+        // Unless the file ends in this window, end the window after its last newline -- the rest starts the next window
+        int windowEnd = windowLength;
+        if (windowStart + windowLength < size)
+        {
+          windowEnd = windowLength - 1;
+          while (windowEnd >= 0 && window.get(windowEnd) != '\n')
+          {
+            --windowEnd;
+          }
+          if (windowEnd < 0)
+          {
+            throw new IOException("Line longer than " + MAX_WINDOW_BYTES + " bytes at offset " + windowStart + " of " + file);
+          }
+          ++windowEnd;
+        }
+
+        int splitStart = 0;
+        while (splitStart < windowEnd)
+        {
+          int splitEnd = (int) Math.min(windowEnd, splitStart + splitBytes);
+          while (splitEnd < windowEnd && window.get(splitEnd - 1) != '\n')
+          {
+            ++splitEnd;
+          }
+          splits.add(new MappedLineSplit(file.getPath(), windowStart + splitStart, slice(window, splitStart, splitEnd)));
+          splitStart = splitEnd;
+        }
+        windowStart += windowEnd;
+      }
+    }
+  }
+
+  private static ByteBuffer slice(ByteBuffer window, int from, int to)
+  {
+    ByteBuffer view = window.duplicate();
+    view.limit(to);
+    view.position(from);
+    return view.slice();
+  }
+
+  public String getFileName()
+  {
+    return fileName;
+  }
+
+  /**
+   * Returns the offset of the split in its file
+   */
+  public long getStart()
+  {
+    return start;
+  }
+
+  public int getLength()
+  {
+    return buffer.capacity();
+  }
+
+  /**
+   * Returns the next line, without its terminator, as a view into the mapping -- the view is reused by the next call; returns null at the end of the split
+   */
+  public ByteBuffer nextLine()
+  {
+    int lineStart = buffer.position();
+    int limit = buffer.limit();
+    if (lineStart >= limit)
+    {
+      return null;
+    }
+
+    int lineEnd = lineStart;
+    while (lineEnd < limit && buffer.get(lineEnd) != '\n')
+    {
+      ++lineEnd;
+    }
+    buffer.position(Math.min(lineEnd + 1, limit));
+    if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r')
+    {
+      --lineEnd;
+    }
+
+    line.clear();
+    line.limit(lineEnd);
+    line.position(lineStart);
+    return line;
+  }
+
+  /**
+   * Returns the next line, without its terminator, decoded as UTF-8; returns null at the end of the split
+   */
+  public String readLine()
+  {
+    ByteBuffer next = nextLine();
+    if (next == null)
+    {
+      return null;
+    }
+    byte[] bytes = new byte[next.remaining()];
+    next.get(bytes);
+
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pirk.querier.wideskies;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.google.gson.annotations.Expose;
+import org.apache.pirk.encryption.Paillier;
+import org.apache.pirk.query.wideskies.QueryInfo;
+import org.apache.pirk.serialization.Storable;
+
+/**
+ * Class to hold only the information necessary for the PIR querier to perform decryption
+ * <p>
+ * Unlike the {@link Querier}, it does not carry the encrypted query vectors (or lookup table), so it stays small regardless of the hashBitSize of the query
+ */
+public class DecryptionKey implements Serializable, Storable
+{
+  private static final long serialVersionUID = 1L;
+
+  public static final long decryptionKeySerialVersionUID = 1L;
+
+  @Expose
+  public final long decryptionKeyVersion = decryptionKeySerialVersionUID;
+
+  @Expose
+  private QueryInfo queryInfo = null; // the query parameters, identifier, and schema
+
+  @Expose
+  private Paillier paillier = null; // Paillier encryption functionality
+
+  @Expose
+  private List<String> selectors = null; // selectors
+
+  // map to check the embedded selectors in the results for false positives
+  @Expose
+  private Map<Integer,String> embedSelectorMap = null;
+
+  public DecryptionKey(QueryInfo queryInfoInput, Paillier paillierInput, List<String> selectorsInput, Map<Integer,String> embedSelectorMapInput)
+  {
+    queryInfo = queryInfoInput;
+
+    paillier = paillierInput;
+
+    selectors = selectorsInput;
+
+    embedSelectorMap = embedSelectorMapInput;
+  }
+
+  public QueryInfo getQueryInfo()
+  {
+    return queryInfo;
+  }
+
+  public Paillier getPaillier()
+  {
+    return paillier;
+  }
+
+  public List<String> getSelectors()
+  {
+    return selectors;
+  }
+
+  public Map<Integer,String> getEmbedSelectorMap()
+  {
+    return embedSelectorMap;
+  }
+
+  @Override public boolean equals(Object o)
+  {
+    if (this == o)
+    {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass())
+    {
+      return false;
+    }
+
+    DecryptionKey decryptionKey = (DecryptionKey) o;
+
+    if (!queryInfo.equals(decryptionKey.queryInfo))
+    {
+      return false;
+    }
+    if (!paillier.equals(decryptionKey.paillier))
+    {
+      return false;
+    }
+    if (!selectors.equals(decryptionKey.selectors))
+    {
+      return false;
+    }
+    return embedSelectorMap != null ? embedSelectorMap.equals(decryptionKey.embedSelectorMap) : decryptionKey.embedSelectorMap == null;
+  }
+
+  @Override public int hashCode()
+  {
+    return Objects.hash(queryInfo, paillier, selectors, embedSelectorMap);
+  }
+}
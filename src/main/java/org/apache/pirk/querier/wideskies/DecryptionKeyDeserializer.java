@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pirk.querier.wideskies;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonDeserializationContext;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import org.apache.pirk.encryption.Paillier;
+import org.apache.pirk.query.wideskies.QueryInfo;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Custom deserializer for DecryptionKey class for Gson.
+ */
+public class DecryptionKeyDeserializer implements JsonDeserializer<DecryptionKey>
+{
+
+  private static final Gson gson = new Gson();
+
+  @Override
+  public DecryptionKey deserialize(JsonElement jsonElement, Type type, JsonDeserializationContext jsonDeserializationContext) throws JsonParseException
+  {
+    JsonObject jsonObject = jsonElement.getAsJsonObject();
+    // Check the version number.
+    long decryptionKeyVersion = jsonObject.get("decryptionKeyVersion").getAsLong();
+    if (decryptionKeyVersion != DecryptionKey.decryptionKeySerialVersionUID)
+    {
+      throw new JsonParseException("Attempt to deserialize unsupported decryption key version. Supported: " + DecryptionKey.decryptionKeySerialVersionUID
+          + "; Received: " + decryptionKeyVersion);
+    }
+    // Then deserialize the Query Info
+    QueryInfo queryInfo = gson.fromJson(jsonObject.get("queryInfo").toString(), QueryInfo.class);
+
+    // Now Paillier
+    Paillier paillier = QuerierDeserializer.deserializePaillier(jsonObject.get("paillier").getAsJsonObject());
+
+    List<String> selectors = gson.fromJson(jsonObject.get("selectors").toString(), new TypeToken<List<String>>()
+    {}.getType());
+    Map<Integer,String> embedSelectorMap = gson.fromJson(jsonObject.get("embedSelectorMap").toString(), new TypeToken<Map<Integer,String>>()
+    {}.getType());
+
+    return new DecryptionKey(queryInfo, paillier, selectors, embedSelectorMap);
+  }
+}
@@ -26,12 +26,21 @@ import static org.apache.pirk.querier.wideskies.QuerierProps.BITSET;
 import static org.apache.pirk.querier.wideskies.QuerierProps.CERTAINTY;
 import static org.apache.pirk.querier.wideskies.QuerierProps.DATAPARTITIONSIZE;
 import static org.apache.pirk.querier.wideskies.QuerierProps.EMBEDSELECTOR;
+import static org.apache.pirk.querier.wideskies.QuerierProps.ENCRYPTIONMODE;
 import static org.apache.pirk.querier.wideskies.QuerierProps.HASHBITSIZE;
+import static org.apache.pirk.querier.wideskies.QuerierProps.KEYSTOREDIR;
+import static org.apache.pirk.querier.wideskies.QuerierProps.KEYSTOREKEYUSES;
+import static org.apache.pirk.querier.wideskies.QuerierProps.KEYSTOREPASSWORD;
+import static org.apache.pirk.querier.wideskies.QuerierProps.KEYSTORESIZE;
 import static org.apache.pirk.querier.wideskies.QuerierProps.NUMTHREADS;
 import static org.apache.pirk.querier.wideskies.QuerierProps.PAILLIERBITSIZE;
 import static org.apache.pirk.querier.wideskies.QuerierProps.QUERYTYPE;
+import static org.apache.pirk.querier.wideskies.QuerierProps.RANDOMNESSPOOLFILE;
+import static org.apache.pirk.querier.wideskies.QuerierProps.RANDOMNESSPOOLPASSWORD;
+import static org.apache.pirk.querier.wideskies.QuerierProps.SHORTEXPONENTBITLENGTH;
 import static org.apache.pirk.querier.wideskies.QuerierProps.USEHDFSLOOKUPTABLE;
 import static org.apache.pirk.querier.wideskies.QuerierProps.USEMEMLOOKUPTABLE;
+import static org.apache.pirk.querier.wideskies.QuerierProps.USERANDOMNESSPOOL;
 import static org.apache.pirk.querier.wideskies.QuerierProps.setEncryptionDefaults;
 import static org.apache.pirk.querier.wideskies.QuerierProps.setGeneralDefaults;
 import static org.apache.pirk.querier.wideskies.QuerierProps.validateQuerierEncryptionProperties;
@@ -119,6 +128,50 @@ public class EncryptionPropertiesBuilder
     return this;
   }
 
+  public EncryptionPropertiesBuilder useRandomnessPool(boolean useRandomnessPool)
+  {
+    properties.setProperty(USERANDOMNESSPOOL, String.valueOf(useRandomnessPool));
+    return this;
+  }
+
+  public EncryptionPropertiesBuilder encryptionMode(String encryptionMode)
+  {
+    properties.setProperty(ENCRYPTIONMODE, encryptionMode);
+    return this;
+  }
+
+  public EncryptionPropertiesBuilder shortExponentBitLength(int shortExponentBitLength)
+  {
+    properties.setProperty(SHORTEXPONENTBITLENGTH, String.valueOf(shortExponentBitLength));
+    return this;
+  }
+
+  public EncryptionPropertiesBuilder keyStore(String keyStoreDir, String keyStorePassword)
+  {
+    properties.setProperty(KEYSTOREDIR, keyStoreDir);
+    properties.setProperty(KEYSTOREPASSWORD, keyStorePassword);
+    return this;
+  }
+
+  public EncryptionPropertiesBuilder keyStoreKeyUses(int keyStoreKeyUses)
+  {
+    properties.setProperty(KEYSTOREKEYUSES, String.valueOf(keyStoreKeyUses));
+    return this;
+  }
+
+  public EncryptionPropertiesBuilder keyStoreSize(int keyStoreSize)
+  {
+    properties.setProperty(KEYSTORESIZE, String.valueOf(keyStoreSize));
+    return this;
+  }
+
+  public EncryptionPropertiesBuilder randomnessPool(String randomnessPoolFile, String randomnessPoolPassword)
+  {
+    properties.setProperty(RANDOMNESSPOOLFILE, randomnessPoolFile);
+    properties.setProperty(RANDOMNESSPOOLPASSWORD, randomnessPoolPassword);
+    return this;
+  }
+
   public Properties build() throws PIRException
   {
     if (!validateQuerierEncryptionProperties(properties))
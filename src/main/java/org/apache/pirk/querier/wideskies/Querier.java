@@ -118,4 +118,12 @@ public class Querier implements Serializable, Storable
   {
     return embedSelectorMap;
   }
+
+  /**
+   * Returns the decryption information of this querier, without the encrypted query
+   */
+  public DecryptionKey getDecryptionKey()
+  {
+    return new DecryptionKey(query.getQueryInfo(), paillier, selectors, embedSelectorMap);
+  }
 }
@@ -173,7 +173,8 @@ public class QuerierCLI
     options.addOption(optionLocalPropFile);
 
     // ACTION
-    Option optionACTION = new Option("a", QuerierProps.ACTION, true, "required - 'encrypt' or 'decrypt' -- The action performed by the QuerierDriver");
+    Option optionACTION = new Option("a", QuerierProps.ACTION, true,
+        "required - 'encrypt', 'decrypt', or 'precompute' -- The action performed by the QuerierDriver");
     optionACTION.setRequired(false);
     optionACTION.setArgName(QuerierProps.ACTION);
     optionACTION.setType(String.class);
@@ -194,7 +195,8 @@ public class QuerierCLI
         "required - Fully qualified file for the result output. "
             + "\n The output file specifies either: \n (1) For encryption: \n \t (a) A file to contain the serialized Querier object named: " + "<outputFile>-"
             + QuerierConst.QUERIER_FILETAG + "  AND \n \t " + "(b) A file to contain the serialized Query object named: <outputFile>-"
-            + QuerierConst.QUERY_FILETAG + "\n " + "OR \n (2) A file to contain the decryption results where each line is where each line "
+            + QuerierConst.QUERY_FILETAG + "  AND \n \t " + "(c) A file to contain the serialized DecryptionKey object named: <outputFile>-"
+            + QuerierConst.DECRYPTIONKEY_FILETAG + "\n " + "OR \n (2) A file to contain the decryption results where each line is where each line "
             + "corresponds to one hit and is a JSON object with the schema QuerySchema");
     optionOUTPUTFILE.setRequired(false);
     optionOUTPUTFILE.setArgName(QuerierProps.OUTPUTFILE);
@@ -294,14 +296,96 @@ public class QuerierCLI
     optionUseHDFSLookupTable.setType(String.class);
     options.addOption(optionUseHDFSLookupTable);
 
+    // useRandomnessPool
+    Option optionUseRandomnessPool = new Option("rp", QuerierProps.USERANDOMNESSPOOL, true,
+        "optional -- 'true' or 'false' -- Whether or not to precompute the Paillier randomness in background threads during encryption");
+    optionUseRandomnessPool.setRequired(false);
+    optionUseRandomnessPool.setArgName(QuerierProps.USERANDOMNESSPOOL);
+    optionUseRandomnessPool.setType(String.class);
+    options.addOption(optionUseRandomnessPool);
+
+    // encryptionMode
+    Option optionEncryptionMode = new Option("em", QuerierProps.ENCRYPTIONMODE, true,
+        "optional -- 'standard' or 'shortExponent' -- Whether to draw the Paillier randomizers with full length or short exponents; defaults to 'standard'");
+    optionEncryptionMode.setRequired(false);
+    optionEncryptionMode.setArgName(QuerierProps.ENCRYPTIONMODE);
+    optionEncryptionMode.setType(String.class);
+    options.addOption(optionEncryptionMode);
+
+    // shortExponentBitLength
+    Option optionShortExponentBitLength = new Option("seb", QuerierProps.SHORTEXPONENTBITLENGTH, true,
+        "optional -- Bit length of the exponents in the 'shortExponent' encryption mode; defaults to 256");
+    optionShortExponentBitLength.setRequired(false);
+    optionShortExponentBitLength.setArgName(QuerierProps.SHORTEXPONENTBITLENGTH);
+    optionShortExponentBitLength.setType(String.class);
+    options.addOption(optionShortExponentBitLength);
+
+    // keyStoreDir
+    Option optionKeyStoreDir = new Option("ksd", QuerierProps.KEYSTOREDIR, true,
+        "optional -- Local directory of the Paillier key store; if set, keys are taken from the store and replenished in the background");
+    optionKeyStoreDir.setRequired(false);
+    optionKeyStoreDir.setArgName(QuerierProps.KEYSTOREDIR);
+    optionKeyStoreDir.setType(String.class);
+    options.addOption(optionKeyStoreDir);
+
+    // keyStorePassword
+    Option optionKeyStorePassword = new Option("ksp", QuerierProps.KEYSTOREPASSWORD, true,
+        "required with keyStoreDir -- Password protecting the keys in the key store");
+    optionKeyStorePassword.setRequired(false);
+    optionKeyStorePassword.setArgName(QuerierProps.KEYSTOREPASSWORD);
+    optionKeyStorePassword.setType(String.class);
+    options.addOption(optionKeyStorePassword);
+
+    // keyStoreKeyUses
+    Option optionKeyStoreKeyUses = new Option("ksu", QuerierProps.KEYSTOREKEYUSES, true,
+        "optional -- Number of queries each stored key is used for; defaults to 1");
+    optionKeyStoreKeyUses.setRequired(false);
+    optionKeyStoreKeyUses.setArgName(QuerierProps.KEYSTOREKEYUSES);
+    optionKeyStoreKeyUses.setType(String.class);
+    options.addOption(optionKeyStoreKeyUses);
+
+    // keyStoreSize
+    Option optionKeyStoreSize = new Option("kss", QuerierProps.KEYSTORESIZE, true,
+        "optional -- Number of keys of each bit size kept in the key store; defaults to 1");
+    optionKeyStoreSize.setRequired(false);
+    optionKeyStoreSize.setArgName(QuerierProps.KEYSTORESIZE);
+    optionKeyStoreSize.setType(String.class);
+    options.addOption(optionKeyStoreSize);
+
+    // randomnessPoolFile
+    Option optionRandomnessPoolFile = new Option("rpf", QuerierProps.RANDOMNESSPOOLFILE, true,
+        "required for precomputation, optional for encryption -- File the 'precompute' action stores a key and the Paillier randomness of one query to; "
+            + "an encryption given the file uses them and deletes it");
+    optionRandomnessPoolFile.setRequired(false);
+    optionRandomnessPoolFile.setArgName(QuerierProps.RANDOMNESSPOOLFILE);
+    optionRandomnessPoolFile.setType(String.class);
+    options.addOption(optionRandomnessPoolFile);
+
+    // randomnessPoolPassword
+    Option optionRandomnessPoolPassword = new Option("rpp", QuerierProps.RANDOMNESSPOOLPASSWORD, true,
+        "required with randomnessPoolFile -- Password protecting the randomness pool file");
+    optionRandomnessPoolPassword.setRequired(false);
+    optionRandomnessPoolPassword.setArgName(QuerierProps.RANDOMNESSPOOLPASSWORD);
+    optionRandomnessPoolPassword.setType(String.class);
+    options.addOption(optionRandomnessPoolPassword);
+
     // QUERIERFILE
     Option optionQUERIERFILE = new Option("qf", QuerierProps.QUERIERFILE, true,
-        "required for decryption -- Fully qualified file containing the serialized Querier object");
+        "required for decryption (unless " + QuerierProps.DECRYPTIONKEYFILE + " is given) -- Fully qualified file containing the serialized Querier object");
     optionQUERIERFILE.setRequired(false);
     optionQUERIERFILE.setArgName(QuerierProps.QUERIERFILE);
     optionQUERIERFILE.setType(String.class);
     options.addOption(optionQUERIERFILE);
 
+    // DECRYPTIONKEYFILE
+    Option optionDECRYPTIONKEYFILE = new Option("dkf", QuerierProps.DECRYPTIONKEYFILE, true,
+        "required for decryption (unless " + QuerierProps.QUERIERFILE + " is given) -- Fully qualified file containing the serialized DecryptionKey object; "
+            + "takes precedence over " + QuerierProps.QUERIERFILE);
+    optionDECRYPTIONKEYFILE.setRequired(false);
+    optionDECRYPTIONKEYFILE.setArgName(QuerierProps.DECRYPTIONKEYFILE);
+    optionDECRYPTIONKEYFILE.setType(String.class);
+    options.addOption(optionDECRYPTIONKEYFILE);
+
     // embedQuerySchema
     Option optionEMBEDQUERYSCHEMA = new Option("embedQS", QuerierProps.EMBEDQUERYSCHEMA, true,
         "optional (defaults to false) -- Whether or not to embed the QuerySchema in the Query (via QueryInfo)");
@@ -26,4 +26,6 @@ public class QuerierConst
   public static final String QUERY_FILETAG = "query";
 
   public static final String QUERIER_FILETAG = "querier";
+
+  public static final String DECRYPTIONKEY_FILETAG = "decryptionKey";
 }
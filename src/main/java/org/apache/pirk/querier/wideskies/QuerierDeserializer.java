@@ -73,12 +73,20 @@ public class QuerierDeserializer implements JsonDeserializer<Querier>
    *          A JsonObject at the root of a serialied Paillier object.
    * @return A Paillier object of the deserialized Json.
    */
-  private Paillier deserializePaillier(JsonObject paillier)
+  static Paillier deserializePaillier(JsonObject paillier)
   {
     BigInteger p = new BigInteger(paillier.get("p").getAsString());
     BigInteger q = new BigInteger(paillier.get("q").getAsString());
     int bitLength = paillier.get("bitLength").getAsInt();
-    return new Paillier(p, q, bitLength);
+    Paillier result = new Paillier(p, q, bitLength);
+
+    // Short exponent randomness mode, if in use
+    JsonElement randomnessBase = paillier.get("randomnessBase");
+    if (randomnessBase != null && !randomnessBase.isJsonNull())
+    {
+      result.useShortExponentRandomness(new BigInteger(randomnessBase.getAsString()), paillier.get("randomnessExponentBitLength").getAsInt());
+    }
+    return result;
   }
 
 }
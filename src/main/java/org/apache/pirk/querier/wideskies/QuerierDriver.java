@@ -44,23 +44,28 @@ import java.util.UUID;
  * <p>
  * (3) All necessary encryption parameters.
  * <p>
- * Two corresponding files will be emitted:
+ * Three corresponding files will be emitted:
  * <p>
- * (1) A file containing the serialized Query object (to be sent to the responder) and
+ * (1) A file containing the serialized Query object (to be sent to the responder),
  * <p>
- * (2) A file containing the serialized Querier object to be used for decryption.
+ * (2) A file containing the serialized Querier object, and
+ * <p>
+ * (3) A file containing the serialized DecryptionKey object -- the part of the Querier needed for decryption, without the encrypted query.
  * <p>
  * For decryption, specify:
  * <p>
  * (1) A response file containing the serialized Response object and
  * <p>
- * (2) The corresponding decryption information file containing the serialized Querier object.
+ * (2) The corresponding decryption information file containing either the serialized DecryptionKey object (preferred) or the serialized Querier object.
  * <p>
  * The output will be a file containing the hits for the query, where each line corresponds to one hit and is the string representation of the corresponding
  * QueryResponseJSON object.
  * <p>
  * Can optionally specify a bit position that must be set in the Paillier modulus
  * <p>
+ * The 'precompute' action generates a key and the randomness of one query ahead of time and stores them, encrypted, to querier.randomnessPoolFile; a later
+ * encryption given the same file uses them instead of generating its own.
+ * <p>
  * TODO:
  * <p>
  * - Add interior functionality for multiple query looping?
@@ -90,6 +95,7 @@ public class QuerierDriver implements Serializable
 
     // Decryption variables
     String querierFile;
+    String decryptionKeyFile;
 
     // Parse the args
     QuerierCLI qdriverCLI = new QuerierCLI(args);
@@ -120,21 +126,40 @@ public class QuerierDriver implements Serializable
 
       Querier querier = QuerierFactory.createQuerier(queryIdentifier, selectors, SystemConfiguration.getProperties());
 
-      // Write necessary output files - two files written -
+      // Write necessary output files - three files written -
       // (1) Querier object to <outputFile>-QuerierConst.QUERIER_FILETAG
       // (2) Query object to <outputFile>-QuerierConst.QUERY_FILETAG
+      // (3) DecryptionKey object to <outputFile>-QuerierConst.DECRYPTIONKEY_FILETAG
       storage.store(outputFile + "-" + QuerierConst.QUERIER_FILETAG, querier);
       storage.store(outputFile + "-" + QuerierConst.QUERY_FILETAG, querier.getQuery());
+      storage.store(outputFile + "-" + QuerierConst.DECRYPTIONKEY_FILETAG, querier.getDecryptionKey());
+    }
+    else if (action.equals("precompute"))
+    {
+      logger.info("Precomputing randomness: \n randomnessPoolFile = " + SystemConfiguration.getProperty(QuerierProps.RANDOMNESSPOOLFILE)
+          + "\n numThreads = " + numThreads);
+
+      QuerierFactory.precomputeRandomness(SystemConfiguration.getProperties());
     }
     else if (action.equals("decrypt"))
     {
       // Decryption
       querierFile = SystemConfiguration.getProperty(QuerierProps.QUERIERFILE);
-      // Reconstruct the necessary objects from the files
+      decryptionKeyFile = SystemConfiguration.getProperty(QuerierProps.DECRYPTIONKEYFILE);
+
+      // Reconstruct the necessary objects from the files - only the DecryptionKey if given, as the Querier carries the whole encrypted query
       Response response = storage.recall(inputFile, Response.class);
-      Querier querier = storage.recall(querierFile, Querier.class);
+      DecryptionKey decryptionKey;
+      if (decryptionKeyFile != null)
+      {
+        decryptionKey = storage.recall(decryptionKeyFile, DecryptionKey.class);
+      }
+      else
+      {
+        decryptionKey = storage.recall(querierFile, Querier.class).getDecryptionKey();
+      }
 
-      UUID querierQueryID = querier.getQuery().getQueryInfo().getIdentifier();
+      UUID querierQueryID = decryptionKey.getQueryInfo().getIdentifier();
       UUID responseQueryID = response.getQueryInfo().getIdentifier();
       if (!querierQueryID.equals(responseQueryID))
       {
@@ -144,7 +169,7 @@ public class QuerierDriver implements Serializable
       }
 
       // Perform decryption and output the result file
-      DecryptResponse decryptResponse = new DecryptResponse(response, querier);
+      DecryptResponse decryptResponse = new DecryptResponse(response, decryptionKey);
       QueryResultsWriter.writeResultFile(outputFile, decryptResponse.decrypt(numThreads));
     }
   }
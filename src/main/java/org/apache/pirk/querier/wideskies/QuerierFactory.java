@@ -19,6 +19,8 @@
 package org.apache.pirk.querier.wideskies;
 
 import org.apache.pirk.encryption.Paillier;
+import org.apache.pirk.encryption.PaillierKeyStore;
+import org.apache.pirk.encryption.RandomnessPool;
 import org.apache.pirk.querier.wideskies.encrypt.EncryptQuery;
 import org.apache.pirk.query.wideskies.QueryInfo;
 import org.apache.pirk.schema.query.QuerySchemaRegistry;
@@ -26,6 +28,8 @@ import org.apache.pirk.utils.PIRException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.IOException;
 import java.math.BigInteger;
 import java.util.List;
 import java.util.Properties;
@@ -71,6 +75,9 @@ public class QuerierFactory
     boolean embedSelector = Boolean.valueOf(properties.getProperty(QuerierProps.EMBEDSELECTOR, "false"));
     boolean useMemLookupTable = Boolean.valueOf(properties.getProperty(QuerierProps.USEMEMLOOKUPTABLE, "false"));
     boolean useHDFSLookupTable = Boolean.valueOf(properties.getProperty(QuerierProps.USEHDFSLOOKUPTABLE, "false"));
+    boolean useRandomnessPool = Boolean.valueOf(properties.getProperty(QuerierProps.USERANDOMNESSPOOL, "false"));
+    String randomnessPoolFile = properties.getProperty(QuerierProps.RANDOMNESSPOOLFILE);
+    String encryptionMode = properties.getProperty(QuerierProps.ENCRYPTIONMODE, EncryptQuery.STANDARD_MODE);
 
     // Check to ensure we have a valid queryType
     if (QuerySchemaRegistry.get(queryType) == null)
@@ -97,7 +104,18 @@ public class QuerierFactory
       queryInfo.addQuerySchema(QuerySchemaRegistry.get(queryType));
     }
 
-    Paillier paillier = new Paillier(paillierBitSize, certainty, bitSet); // throws PIRException if certainty conditions are not satisfied
+    // A precomputed randomness pool carries the key its values were computed for
+    RandomnessPool randomnessPool = null;
+    Paillier paillier;
+    if (randomnessPoolFile != null)
+    {
+      randomnessPool = loadRandomnessPool(properties, 1 << hashBitSize, paillierBitSize, bitSet);
+      paillier = randomnessPool.getPaillier();
+    }
+    else
+    {
+      paillier = getPaillier(properties, paillierBitSize, certainty, bitSet);
+    }
 
     // Check the number of selectors to ensure that 2^{numSelector*dataPartitionBitSize} < N
     // For example, if the highest bit is set, the largest value is \floor{paillierBitSize/dataPartitionBitSize}
@@ -112,8 +130,134 @@ public class QuerierFactory
 
     }
 
+    if (encryptionMode.equals(EncryptQuery.SHORT_EXPONENT_MODE))
+    {
+      paillier.useShortExponentRandomness(Integer.parseInt(properties.getProperty(QuerierProps.SHORTEXPONENTBITLENGTH, "256")));
+    }
+
     // Perform the encryption
-    EncryptQuery encryptQuery = new EncryptQuery(queryInfo, selectors, paillier);
-    return encryptQuery.encrypt(numThreads);
+    if (randomnessPool == null && !useRandomnessPool)
+    {
+      EncryptQuery encryptQuery = new EncryptQuery(queryInfo, selectors, paillier);
+      return encryptQuery.encrypt(numThreads);
+    }
+
+    // Draw the r^N mod N^2 values from the precomputed pool, computing any missing ones inline, or compute them in the background while the encryption draws
+    // from them if requested; the background threads compete with the encryption threads for the same cores
+    if (randomnessPool == null)
+    {
+      randomnessPool = new RandomnessPool(paillier, 1 << hashBitSize);
+    }
+    if (useRandomnessPool)
+    {
+      randomnessPool.start(numThreads);
+    }
+    try
+    {
+      EncryptQuery encryptQuery = new EncryptQuery(queryInfo, selectors, paillier, randomnessPool);
+      return encryptQuery.encrypt(numThreads);
+    } finally
+    {
+      randomnessPool.stop();
+    }
+  }
+
+  /**
+   * Precomputes the r^N mod N^2 values for one query ahead of time and stores them, with their key, to querier.randomnessPoolFile
+   * <p>
+   * A later encryption with the same querier.randomnessPoolFile uses the stored key and draws from the stored values, which moves the bulk of the
+   * randomness computation off the encryption.
+   *
+   * @param properties
+   *          A list of properties specifying PIRK configuration options; requires querier.hashBitSize, querier.paillierBitSize, querier.certainty,
+   *          querier.randomnessPoolFile, and querier.randomnessPoolPassword.
+   * @throws PIRException
+   *           If the properties are invalid or the pool cannot be stored.
+   * @throws InterruptedException
+   *           If the precomputation is interrupted.
+   */
+  public static void precomputeRandomness(Properties properties) throws PIRException, InterruptedException
+  {
+    if (!QuerierProps.validateQuerierPrecomputeProperties(properties))
+    {
+      throw new PIRException("Invalid precomputation properties.");
+    }
+    int numThreads = Integer.parseInt(properties.getProperty(QuerierProps.NUMTHREADS, String.valueOf(Runtime.getRuntime().availableProcessors())));
+    int hashBitSize = Integer.parseInt(properties.getProperty(QuerierProps.HASHBITSIZE));
+    int bitSet = Integer.parseInt(properties.getProperty(QuerierProps.BITSET, "-1"));
+    int paillierBitSize = Integer.parseInt(properties.getProperty(QuerierProps.PAILLIERBITSIZE));
+    int certainty = Integer.parseInt(properties.getProperty(QuerierProps.CERTAINTY));
+    String encryptionMode = properties.getProperty(QuerierProps.ENCRYPTIONMODE, EncryptQuery.STANDARD_MODE);
+    File randomnessPoolFile = new File(properties.getProperty(QuerierProps.RANDOMNESSPOOLFILE));
+
+    Paillier paillier = getPaillier(properties, paillierBitSize, certainty, bitSet);
+    if (encryptionMode.equals(EncryptQuery.SHORT_EXPONENT_MODE))
+    {
+      paillier.useShortExponentRandomness(Integer.parseInt(properties.getProperty(QuerierProps.SHORTEXPONENTBITLENGTH, "256")));
+    }
+
+    // One value per row of the query
+    int numValues = 1 << hashBitSize;
+    RandomnessPool randomnessPool = new RandomnessPool(paillier, numValues);
+    randomnessPool.fill(numValues, numThreads);
+    try
+    {
+      randomnessPool.store(randomnessPoolFile, properties.getProperty(QuerierProps.RANDOMNESSPOOLPASSWORD).toCharArray());
+    } catch (IOException e)
+    {
+      throw new PIRException("Unable to store the randomness pool " + randomnessPoolFile, e);
+    }
+  }
+
+  /**
+   * Loads the randomness pool precomputed to querier.randomnessPoolFile, checking that its key matches the requested parameters
+   */
+  private static RandomnessPool loadRandomnessPool(Properties properties, int capacity, int paillierBitSize, int bitSet) throws PIRException
+  {
+    File randomnessPoolFile = new File(properties.getProperty(QuerierProps.RANDOMNESSPOOLFILE));
+    RandomnessPool randomnessPool;
+    try
+    {
+      randomnessPool = RandomnessPool.load(randomnessPoolFile, properties.getProperty(QuerierProps.RANDOMNESSPOOLPASSWORD).toCharArray(), capacity);
+    } catch (IOException e)
+    {
+      throw new PIRException("Unable to load the randomness pool " + randomnessPoolFile, e);
+    }
+
+    Paillier paillier = randomnessPool.getPaillier();
+    if (paillier.getBitLength() != paillierBitSize || (bitSet > -1 && !paillier.getN().testBit(bitSet)))
+    {
+      String message = "The key of the randomness pool " + randomnessPoolFile + " has bitLength = " + paillier.getBitLength() + "; requested paillierBitSize = "
+          + paillierBitSize + " and bitSet = " + bitSet;
+      logger.error(message);
+      throw new PIRException(message);
+    }
+    return randomnessPool;
+  }
+
+  /**
+   * Returns a Paillier key from the key store configured with querier.keyStoreDir, replenishing the store in the background, or a newly generated key if no
+   * key store is configured.
+   */
+  private static Paillier getPaillier(Properties properties, int paillierBitSize, int certainty, int bitSet) throws PIRException
+  {
+    String keyStoreDir = properties.getProperty(QuerierProps.KEYSTOREDIR);
+    if (keyStoreDir == null)
+    {
+      return new Paillier(paillierBitSize, certainty, bitSet); // throws PIRException if certainty conditions are not satisfied
+    }
+
+    int keyUses = Integer.parseInt(properties.getProperty(QuerierProps.KEYSTOREKEYUSES, "1"));
+    int keyStoreSize = Integer.parseInt(properties.getProperty(QuerierProps.KEYSTORESIZE, "1"));
+    try
+    {
+      PaillierKeyStore keyStore = new PaillierKeyStore(new File(keyStoreDir), properties.getProperty(QuerierProps.KEYSTOREPASSWORD).toCharArray(), keyUses);
+      Paillier paillier = keyStore.acquire(paillierBitSize, certainty, bitSet);
+      keyStore.replenish(paillierBitSize, certainty, bitSet, keyStoreSize);
+      return paillier;
+    } catch (IOException e)
+    {
+      throw new PIRException("Unable to open the key store " + keyStoreDir, e);
+    }
   }
 }
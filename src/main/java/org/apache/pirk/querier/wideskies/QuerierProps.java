@@ -18,6 +18,7 @@
  */
 package org.apache.pirk.querier.wideskies;
 
+import org.apache.pirk.querier.wideskies.encrypt.EncryptQuery;
 import org.apache.pirk.utils.SystemConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,16 +52,27 @@ public class QuerierProps
   static final String EMBEDSELECTOR = "querier.embedSelector";
   static final String USEMEMLOOKUPTABLE = "querier.memLookupTable";
   static final String USEHDFSLOOKUPTABLE = "querier.useHDFSLookupTable";
+  static final String USERANDOMNESSPOOL = "querier.useRandomnessPool";
+  static final String ENCRYPTIONMODE = "querier.encryptionMode";
+  static final String SHORTEXPONENTBITLENGTH = "querier.shortExponentBitLength";
+  static final String KEYSTOREDIR = "querier.keyStoreDir";
+  static final String KEYSTOREPASSWORD = "querier.keyStorePassword";
+  static final String KEYSTOREKEYUSES = "querier.keyStoreKeyUses";
+  static final String KEYSTORESIZE = "querier.keyStoreSize";
+  static final String RANDOMNESSPOOLFILE = "querier.randomnessPoolFile";
+  static final String RANDOMNESSPOOLPASSWORD = "querier.randomnessPoolPassword";
   static final String SR_ALGORITHM = "pallier.secureRandom.algorithm";
   static final String SR_PROVIDER = "pallier.secureRandom.provider";
   static final String EMBEDQUERYSCHEMA = "pir.embedQuerySchema";
 
   // Decryption properties
   static final String QUERIERFILE = "querier.querierFile";
+  static final String DECRYPTIONKEYFILE = "querier.decryptionKeyFile";
 
   static final List<String> PROPSLIST = Arrays.asList(ACTION, INPUTFILE, OUTPUTFILE, QUERYTYPE, NUMTHREADS, EMBEDQUERYSCHEMA, HASHBITSIZE,
-      DATAPARTITIONSIZE, PAILLIERBITSIZE, BITSET, CERTAINTY, QUERYSCHEMAS, DATASCHEMAS, EMBEDSELECTOR, USEMEMLOOKUPTABLE, USEHDFSLOOKUPTABLE, SR_ALGORITHM,
-      SR_PROVIDER);
+      DATAPARTITIONSIZE, PAILLIERBITSIZE, BITSET, CERTAINTY, QUERYSCHEMAS, DATASCHEMAS, EMBEDSELECTOR, USEMEMLOOKUPTABLE, USEHDFSLOOKUPTABLE, USERANDOMNESSPOOL,
+      ENCRYPTIONMODE, SHORTEXPONENTBITLENGTH, KEYSTOREDIR, KEYSTOREPASSWORD, KEYSTOREKEYUSES, KEYSTORESIZE, RANDOMNESSPOOLFILE, RANDOMNESSPOOLPASSWORD,
+      SR_ALGORITHM, SR_PROVIDER, QUERIERFILE, DECRYPTIONKEYFILE);
 
   public static boolean validateQuerierProperties()
   {
@@ -68,12 +80,17 @@ public class QuerierProps
     if (validateGeneralQuerierProperties(SystemConfiguration.getProperties()))
     {
       String action = SystemConfiguration.getProperty(ACTION).toLowerCase();
-      // Action is either "encrypt" or "decrypt", or else we can't get here.
+      // Action is either "encrypt", "decrypt", or "precompute", or else we can't get here.
       if (action.equals("encrypt"))
       {
         setEncryptionDefaults(SystemConfiguration.getProperties());
         return validateQuerierEncryptionProperties(SystemConfiguration.getProperties());
       }
+      else if (action.equals("precompute"))
+      {
+        setEncryptionDefaults(SystemConfiguration.getProperties());
+        return validateQuerierPrecomputeProperties(SystemConfiguration.getProperties());
+      }
       else
       {
         return validateQuerierDecryptionProperties(SystemConfiguration.getProperties());
@@ -109,22 +126,26 @@ public class QuerierProps
       valid = false;
     }
     String action = properties.getProperty(ACTION).toLowerCase();
-    if (!action.equals("encrypt") && !action.equals("decrypt"))
+    if (!action.equals("encrypt") && !action.equals("decrypt") && !action.equals("precompute"))
     {
       logger.info("Unsupported action: " + action);
       valid = false;
     }
 
-    if (!properties.containsKey(INPUTFILE))
+    // The precompute action writes to querier.randomnessPoolFile only
+    if (!action.equals("precompute"))
     {
-      logger.info("Must have the option " + INPUTFILE);
-      valid = false;
-    }
+      if (!properties.containsKey(INPUTFILE))
+      {
+        logger.info("Must have the option " + INPUTFILE);
+        valid = false;
+      }
 
-    if (!properties.containsKey(OUTPUTFILE))
-    {
-      logger.info("Must have the option " + OUTPUTFILE);
-      valid = false;
+      if (!properties.containsKey(OUTPUTFILE))
+      {
+        logger.info("Must have the option " + OUTPUTFILE);
+        valid = false;
+      }
     }
 
     if (!properties.containsKey(NUMTHREADS))
@@ -153,6 +174,31 @@ public class QuerierProps
       properties.setProperty(USEHDFSLOOKUPTABLE, "false");
     }
 
+    if (!properties.containsKey(USERANDOMNESSPOOL))
+    {
+      properties.setProperty(USERANDOMNESSPOOL, "false");
+    }
+
+    if (!properties.containsKey(ENCRYPTIONMODE))
+    {
+      properties.setProperty(ENCRYPTIONMODE, EncryptQuery.STANDARD_MODE);
+    }
+
+    if (!properties.containsKey(SHORTEXPONENTBITLENGTH))
+    {
+      properties.setProperty(SHORTEXPONENTBITLENGTH, "256");
+    }
+
+    if (!properties.containsKey(KEYSTOREKEYUSES))
+    {
+      properties.setProperty(KEYSTOREKEYUSES, "1");
+    }
+
+    if (!properties.containsKey(KEYSTORESIZE))
+    {
+      properties.setProperty(KEYSTORESIZE, "1");
+    }
+
     if (!properties.containsKey(BITSET))
     {
       properties.setProperty(BITSET, "-1");
@@ -194,6 +240,35 @@ public class QuerierProps
       valid = false;
     }
 
+    String encryptionMode = properties.getProperty(ENCRYPTIONMODE, EncryptQuery.STANDARD_MODE);
+    if (!encryptionMode.equals(EncryptQuery.STANDARD_MODE) && !encryptionMode.equals(EncryptQuery.SHORT_EXPONENT_MODE))
+    {
+      logger.info("For action='encrypt': Unsupported " + ENCRYPTIONMODE + " = " + encryptionMode + "; must be " + EncryptQuery.STANDARD_MODE + " or "
+          + EncryptQuery.SHORT_EXPONENT_MODE);
+      valid = false;
+    }
+
+    if (properties.containsKey(KEYSTOREDIR) && !properties.containsKey(KEYSTOREPASSWORD))
+    {
+      logger.info("For action='encrypt': Must have the option " + KEYSTOREPASSWORD + " when using " + KEYSTOREDIR);
+      valid = false;
+    }
+
+    if (properties.containsKey(RANDOMNESSPOOLFILE))
+    {
+      if (!properties.containsKey(RANDOMNESSPOOLPASSWORD))
+      {
+        logger.info("For action='encrypt': Must have the option " + RANDOMNESSPOOLPASSWORD + " when using " + RANDOMNESSPOOLFILE);
+        valid = false;
+      }
+      // The pool file carries the key its values were computed for
+      if (properties.containsKey(KEYSTOREDIR))
+      {
+        logger.info("For action='encrypt': " + RANDOMNESSPOOLFILE + " cannot be used with " + KEYSTOREDIR);
+        valid = false;
+      }
+    }
+
     if (properties.containsKey(QUERYSCHEMAS))
     {
       appendProperty(properties, "query.schemas", properties.getProperty(QUERYSCHEMAS));
@@ -207,14 +282,45 @@ public class QuerierProps
     return valid;
   }
 
+  public static boolean validateQuerierPrecomputeProperties(Properties properties)
+  {
+    boolean valid = true;
+
+    // Parse precomputation properties
+    for (String option : Arrays.asList(HASHBITSIZE, PAILLIERBITSIZE, CERTAINTY, RANDOMNESSPOOLFILE, RANDOMNESSPOOLPASSWORD))
+    {
+      if (!properties.containsKey(option))
+      {
+        logger.info("For action='precompute': Must have the option " + option);
+        valid = false;
+      }
+    }
+
+    String encryptionMode = properties.getProperty(ENCRYPTIONMODE, EncryptQuery.STANDARD_MODE);
+    if (!encryptionMode.equals(EncryptQuery.STANDARD_MODE) && !encryptionMode.equals(EncryptQuery.SHORT_EXPONENT_MODE))
+    {
+      logger.info("For action='precompute': Unsupported " + ENCRYPTIONMODE + " = " + encryptionMode + "; must be " + EncryptQuery.STANDARD_MODE + " or "
+          + EncryptQuery.SHORT_EXPONENT_MODE);
+      valid = false;
+    }
+
+    if (properties.containsKey(KEYSTOREDIR) && !properties.containsKey(KEYSTOREPASSWORD))
+    {
+      logger.info("For action='precompute': Must have the option " + KEYSTOREPASSWORD + " when using " + KEYSTOREDIR);
+      valid = false;
+    }
+
+    return valid;
+  }
+
   public static boolean validateQuerierDecryptionProperties(Properties properties)
   {
     boolean valid = true;
 
     // Parse decryption args
-    if (!properties.containsKey(QUERIERFILE))
+    if (!properties.containsKey(QUERIERFILE) && !properties.containsKey(DECRYPTIONKEYFILE))
     {
-      logger.info("For action='decrypt': Must have the option " + QUERIERFILE);
+      logger.info("For action='decrypt': Must have the option " + QUERIERFILE + " or " + DECRYPTIONKEYFILE);
       valid = false;
     }
 
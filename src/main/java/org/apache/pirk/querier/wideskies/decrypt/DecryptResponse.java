@@ -24,14 +24,17 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 import org.apache.pirk.encryption.Paillier;
+import org.apache.pirk.querier.wideskies.DecryptionKey;
 import org.apache.pirk.querier.wideskies.Querier;
 import org.apache.pirk.query.wideskies.QueryInfo;
 import org.apache.pirk.response.wideskies.Response;
@@ -48,16 +51,20 @@ public class DecryptResponse
 {
   private static final Logger logger = LoggerFactory.getLogger(DecryptResponse.class);
 
-  private static final BigInteger TWO_BI = BigInteger.valueOf(2);
-
   private final Response response;
 
-  private final Querier querier;
+  private final DecryptionKey decryptionKey;
 
   public DecryptResponse(Response responseInput, Querier querierInput)
   {
     response = responseInput;
-    querier = querierInput;
+    decryptionKey = querierInput.getDecryptionKey();
+  }
+
+  public DecryptResponse(Response responseInput, DecryptionKey decryptionKeyInput)
+  {
+    response = responseInput;
+    decryptionKey = decryptionKeyInput;
   }
 
   public Map<String,List<QueryResponseJSON>> decrypt() throws InterruptedException, PIRException
@@ -84,7 +91,10 @@ public class DecryptResponse
    * D^k_r = D^k_r,0 || D^k_r,1 || ... || D^k_r,(numPartitionsPerDataElement - 1)
    * <p>
    * where D^k_r,l = Y_{r*numPartitionsPerDataElement + l} & (2^{r*numPartitionsPerDataElement} * (2^numBitsPerDataElement - 1))
-   *
+   * <p>
+   * The decryption of (1) runs on a work-stealing pool of numThreads threads, in column order; the extraction of (2) consumes each decrypted element, as a
+   * big-endian byte array, as soon as it is available. Once every selector has seen an all-zero data element, the decryption of the remaining columns is
+   * cancelled.
    */
   public Map<String,List<QueryResponseJSON>> decrypt(int numThreads) throws InterruptedException, PIRException
   {
@@ -92,33 +102,22 @@ public class DecryptResponse
 
     QueryInfo queryInfo = response.getQueryInfo();
 
-    Paillier paillier = querier.getPaillier();
-    List<String> selectors = querier.getSelectors();
-    Map<Integer,String> embedSelectorMap = querier.getEmbedSelectorMap();
+    Paillier paillier = decryptionKey.getPaillier();
+    List<String> selectors = decryptionKey.getSelectors();
+    Map<Integer,String> embedSelectorMap = decryptionKey.getEmbedSelectorMap();
 
-    // Perform decryption on the encrypted columns
-    List<BigInteger> rElements = decryptElements(response.getResponseElements(), paillier);
+    // Start the decryption of the encrypted columns
+    ForkJoinPool decryptPool = new ForkJoinPool(Math.max(1, numThreads));
+    List<CompletableFuture<byte[]>> rElements = decryptElements(response.getResponseElements(), paillier, decryptPool);
     logger.debug("rElements.size() = " + rElements.size());
 
-    // Pull the necessary parameters
-    int dataPartitionBitSize = queryInfo.getDataPartitionBitSize();
-
-    // Initialize the result map and masks-- removes initialization checks from code below
-    Map<String,BigInteger> selectorMaskMap = new HashMap<>();
-    int selectorNum = 0;
+    // Initialize the result map -- removes initialization checks from code below
     for (String selector : selectors)
     {
       resultMap.put(selector, new ArrayList<>());
-
-      // 2^{selectorNum*dataPartitionBitSize}(2^{dataPartitionBitSize} - 1)
-      BigInteger mask = TWO_BI.pow(selectorNum * dataPartitionBitSize).multiply((TWO_BI.pow(dataPartitionBitSize).subtract(BigInteger.ONE)));
-      logger.debug("selector = " + selector + " mask = " + mask.toString(2));
-      selectorMaskMap.put(selector, mask);
-
-      ++selectorNum;
     }
 
-    // Decrypt via Runnables
+    // Extract the hits via Runnables, as the elements are decrypted
     ExecutorService es = Executors.newCachedThreadPool();
     if (selectors.size() < numThreads)
     {
@@ -143,8 +142,8 @@ public class DecryptResponse
       }
 
       // Create the runnable and execute
-      DecryptResponseTask<Map<String,List<QueryResponseJSON>>> runDec = new DecryptResponseTask<>(rElements, selectorsPartition, selectorMaskMap,
-          queryInfo.clone(), embedSelectorMap);
+      DecryptResponseTask<Map<String,List<QueryResponseJSON>>> runDec = new DecryptResponseTask<>(rElements, selectorsPartition, queryInfo.clone(),
+          embedSelectorMap);
       futures.add(es.submit(runDec));
     }
 
@@ -158,24 +157,24 @@ public class DecryptResponse
     } catch (TimeoutException | ExecutionException e)
     {
       throw new PIRException("Exception in decryption threads.", e);
+    } finally
+    {
+      es.shutdown();
+      decryptPool.shutdownNow();
     }
 
-    es.shutdown();
-
     return resultMap;
   }
 
-  // Method to perform basic decryption of each raw response element - does not
+  // Method to start the basic decryption of each raw response element on the given pool - does not
   // extract and reconstruct the data elements
-  private List<BigInteger> decryptElements(TreeMap<Integer,BigInteger> elements, Paillier paillier)
+  private List<CompletableFuture<byte[]>> decryptElements(TreeMap<Integer,BigInteger> elements, Paillier paillier, ForkJoinPool decryptPool)
   {
-    List<BigInteger> decryptedElements = new ArrayList<>();
-
-    for (BigInteger encElement : elements.values())
+    List<CompletableFuture<byte[]>> rElements = new ArrayList<>(elements.size());
+    for (BigInteger element : elements.values())
     {
-      decryptedElements.add(paillier.decrypt(encElement));
+      rElements.add(CompletableFuture.supplyAsync(() -> paillier.decrypt(element).toByteArray(), decryptPool));
     }
-
-    return decryptedElements;
+    return rElements;
   }
 }
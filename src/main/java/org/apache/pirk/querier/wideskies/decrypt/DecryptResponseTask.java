@@ -25,6 +25,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import org.apache.pirk.query.wideskies.QueryInfo;
 import org.apache.pirk.query.wideskies.QueryUtils;
@@ -38,26 +40,27 @@ import org.slf4j.LoggerFactory;
 /**
  * Runnable class for multithreaded PIR decryption
  * <p>
- * NOTE: rElements and selectorMaskMap are joint access objects, for now
+ * Each decrypted element is handled as a big-endian byte array; the partitions of all selectors of the task are sliced out of it in a single pass. As the
+ * hits of a selector fill its slots in order, the task stops once every one of its selectors has seen an all-zero data element.
+ * <p>
+ * NOTE: rElements is a joint access object, for now; the elements of rElements are still being decrypted while the task runs
  *
  */
 class DecryptResponseTask<V> implements Callable<Map<String,List<QueryResponseJSON>>>
 {
   private static final Logger logger = LoggerFactory.getLogger(DecryptResponseTask.class);
 
-  private final List<BigInteger> rElements;
+  private final List<CompletableFuture<byte[]>> rElements;
   private final TreeMap<Integer,String> selectors;
-  private final Map<String,BigInteger> selectorMaskMap;
   private final QueryInfo queryInfo;
 
   private final Map<Integer,String> embedSelectorMap;
 
-  public DecryptResponseTask(List<BigInteger> rElementsInput, TreeMap<Integer,String> selectorsInput, Map<String,BigInteger> selectorMaskMapInput,
-      QueryInfo queryInfoInput, Map<Integer,String> embedSelectorMapInput)
+  public DecryptResponseTask(List<CompletableFuture<byte[]>> rElementsInput, TreeMap<Integer,String> selectorsInput, QueryInfo queryInfoInput,
+      Map<Integer,String> embedSelectorMapInput)
   {
     rElements = rElementsInput;
     selectors = selectorsInput;
-    selectorMaskMap = selectorMaskMapInput;
     queryInfo = queryInfoInput;
     embedSelectorMap = embedSelectorMapInput;
   }
@@ -79,74 +82,116 @@ class DecryptResponseTask<V> implements Callable<Map<String,List<QueryResponseJS
       resultMap.put(selector, new ArrayList<QueryResponseJSON>());
     }
 
+    // Selector i of the task has index firstSelectorIndex + i
+    int firstSelectorIndex = selectors.firstKey();
+    int numSelectors = selectors.lastKey() - firstSelectorIndex + 1;
+    int[][] parts = new int[numSelectors][numPartitionsPerDataElement];
+    boolean[] finished = new boolean[numSelectors]; // true once the selector has seen an all-zero data element
+    int numFinished = 0;
+
     // Pull the hits for each selector
     int maxHitsPerSelector = rElements.size() / numPartitionsPerDataElement; // Max number of data hits in the response elements for a given selector
-    logger.debug("numResults = " + rElements.size() + " numPartitionsPerDataElement = " + numPartitionsPerDataElement + " maxHits = " + maxHitsPerSelector);
+    logger.debug("numResults = {} numPartitionsPerDataElement = {} maxHits = {}", rElements.size(), numPartitionsPerDataElement, maxHitsPerSelector);
 
-    for (int hits = 0; hits < maxHitsPerSelector; hits++)
+    for (int hits = 0; hits < maxHitsPerSelector && numFinished < numSelectors; hits++)
     {
-      int selectorIndex = selectors.firstKey();
-      while (selectorIndex <= selectors.lastKey())
+      // Slice the partitions of every selector out of each element of the hit
+      for (int partNum = 0; partNum < numPartitionsPerDataElement; partNum++)
+      {
+        byte[] element = getElement(hits * numPartitionsPerDataElement + partNum);
+        for (int i = 0; i < numSelectors; ++i)
+        {
+          if (!finished[i])
+          {
+            parts[i][partNum] = extractBits(element, (firstSelectorIndex + i) * dataPartitionBitSize, dataPartitionBitSize);
+          }
+        }
+      }
+
+      for (int i = 0; i < numSelectors; ++i)
       {
+        if (finished[i])
+        {
+          continue;
+        }
+        int selectorIndex = firstSelectorIndex + i;
         String selector = selectors.get(selectorIndex);
-        logger.debug("selector = " + selector);
 
-        List<BigInteger> parts = new ArrayList<>();
+        List<BigInteger> hitParts = new ArrayList<>(numPartitionsPerDataElement);
         boolean zeroElement = true;
-        for (int partNum = 0; partNum < numPartitionsPerDataElement; partNum++)
+        for (int part : parts[i])
         {
-          BigInteger part = (rElements.get(hits * numPartitionsPerDataElement + partNum)).and(selectorMaskMap.get(selector)); // pull off the correct bits
-
-          logger.debug("rElements.get(" + (hits * numPartitionsPerDataElement + partNum) + ") = "
-              + rElements.get(hits * numPartitionsPerDataElement + partNum).toString(2) + " bitLength = "
-              + rElements.get(hits * numPartitionsPerDataElement + partNum).bitLength() + " val = "
-              + rElements.get(hits * numPartitionsPerDataElement + partNum));
-          logger.debug("colNum = " + (hits * numPartitionsPerDataElement + partNum) + " partNum = " + partNum + " part = " + part);
-
-          part = part.shiftRight(selectorIndex * dataPartitionBitSize);
-          parts.add(part);
-
-          logger.debug("partNum = " + partNum + " part = " + part.intValue());
+          hitParts.add(BigInteger.valueOf(part));
+          zeroElement = zeroElement && part == 0;
+        }
 
-          zeroElement = zeroElement && part.equals(BigInteger.ZERO);
+        if (zeroElement)
+        {
+          // No further hits for this selector
+          finished[i] = true;
+          ++numFinished;
+          logger.debug("selector = {} finished after {} hit slots", selector, hits);
+          continue;
         }
 
-        logger.debug("parts.size() = " + parts.size());
+        // Convert biHit to the appropriate QueryResponseJSON object, based on the queryType
+        QueryResponseJSON qrJOSN = QueryUtils.extractQueryResponseJSON(queryInfo, qSchema, hitParts);
+        qrJOSN.setMapping(selectorName, selector);
+        logger.debug("selector = {} qrJOSN = {}", selector, qrJOSN);
 
-        if (!zeroElement)
+        // Add the hit for this selector - if we are using embedded selectors, check to make sure
+        // that the hit's embedded selector in the qrJOSN and the once in the embedSelectorMap match
+        boolean addHit = true;
+        if (queryInfo.getEmbedSelector())
         {
-          // Convert biHit to the appropriate QueryResponseJSON object, based on the queryType
-          QueryResponseJSON qrJOSN = QueryUtils.extractQueryResponseJSON(queryInfo, qSchema, parts);
-          qrJOSN.setMapping(selectorName, selector);
-          logger.debug("selector = " + selector + " qrJOSN = " + qrJOSN.getJSONString());
-
-          // Add the hit for this selector - if we are using embedded selectors, check to make sure
-          // that the hit's embedded selector in the qrJOSN and the once in the embedSelectorMap match
-          boolean addHit = true;
-          if (queryInfo.getEmbedSelector())
-          {
-            if (!(embedSelectorMap.get(selectorIndex)).equals(qrJOSN.getValue(QueryResponseJSON.SELECTOR)))
-            {
-              addHit = false;
-              logger.debug("qrJOSN embedded selector = " + qrJOSN.getValue(QueryResponseJSON.SELECTOR) + " != original embedded selector = "
-                  + embedSelectorMap.get(selectorIndex));
-            }
-          }
-          if (addHit)
+          if (!(embedSelectorMap.get(selectorIndex)).equals(qrJOSN.getValue(QueryResponseJSON.SELECTOR)))
           {
-            List<QueryResponseJSON> selectorHitList = resultMap.get(selector);
-            selectorHitList.add(qrJOSN);
-            resultMap.put(selector, selectorHitList);
-
-            // Add the selector into the wlJSONHit
-            qrJOSN.setMapping(QueryResponseJSON.SELECTOR, selector);
+            addHit = false;
+            logger.debug("qrJOSN embedded selector = " + qrJOSN.getValue(QueryResponseJSON.SELECTOR) + " != original embedded selector = "
+                + embedSelectorMap.get(selectorIndex));
           }
         }
+        if (addHit)
+        {
+          resultMap.get(selector).add(qrJOSN);
 
-        ++selectorIndex;
+          // Add the selector into the wlJSONHit
+          qrJOSN.setMapping(QueryResponseJSON.SELECTOR, selector);
+        }
       }
     }
 
     return resultMap;
   }
+
+  /**
+   * Returns bits [bitOffset, bitOffset + numBits) of the non-negative big-endian value, for numBits < 32
+   */
+  static int extractBits(byte[] value, int bitOffset, int numBits)
+  {
+    // Bytes are counted from the least significant end; the slice spans at most 5 bytes
+    int lowByte = bitOffset >>> 3;
+    int highByte = (bitOffset + numBits - 1) >>> 3;
+
+    long bits = 0;
+    for (int b = highByte; b >= lowByte; --b)
+    {
+      int index = value.length - 1 - b;
+      bits = (bits << 8) | ((index >= 0) ? (value[index] & 0xFF) : 0);
+    }
+
+    return (int) ((bits >>> (bitOffset & 7)) & ((1L << numBits) - 1));
+  }
+
+  // Returns the decrypted element with the given index, waiting for its decryption if necessary
+  private byte[] getElement(int index) throws PIRException
+  {
+    try
+    {
+      return rElements.get(index).join();
+    } catch (CompletionException e)
+    {
+      throw new PIRException("Exception decrypting response element " + index, e.getCause());
+    }
+  }
 }
@@ -20,6 +20,7 @@ package org.apache.pirk.querier.wideskies.encrypt;
 
 import org.apache.commons.codec.binary.Hex;
 import org.apache.pirk.encryption.Paillier;
+import org.apache.pirk.encryption.RandomnessPool;
 import org.apache.pirk.querier.wideskies.Querier;
 import org.apache.pirk.query.wideskies.Query;
 import org.apache.pirk.query.wideskies.QueryInfo;
@@ -56,6 +57,16 @@ public class EncryptQuery
 {
   private static final Logger logger = LoggerFactory.getLogger(EncryptQuery.class);
 
+  /**
+   * Encryption mode drawing a full length random value r^N mod N^2 for each query element
+   */
+  public static final String STANDARD_MODE = "standard";
+
+  /**
+   * Encryption mode drawing the randomizers as (h^N)^k mod N^2 for short exponents k -- see {@link Paillier#useShortExponentRandomness(int)}
+   */
+  public static final String SHORT_EXPONENT_MODE = "shortExponent";
+
   // Contains basic query information.
   private final QueryInfo queryInfo;
 
@@ -65,6 +76,9 @@ public class EncryptQuery
   // Paillier encryption functionality.
   private final Paillier paillier;
 
+  // Precomputed Paillier randomness, or null to compute it during the encryption.
+  private final RandomnessPool randomnessPool;
+
   /**
    * Constructs a query encryptor using the given query information, selectors, and Paillier cryptosystem.
    *
@@ -74,9 +88,27 @@ public class EncryptQuery
    */
   public EncryptQuery(QueryInfo queryInfo, List<String> selectors, Paillier paillier)
   {
+    this(queryInfo, selectors, paillier, null);
+  }
+
+  /**
+   * Constructs a query encryptor that draws the Paillier randomness r^N mod N^2 from the given pool.
+   *
+   * @param queryInfo      Fundamental information about the query.
+   * @param selectors      the list of selectors for this query.
+   * @param paillier       the Paillier cryptosystem to use.
+   * @param randomnessPool the pool of precomputed randomness for the key of {@code paillier}, or null to compute it during encryption.
+   */
+  public EncryptQuery(QueryInfo queryInfo, List<String> selectors, Paillier paillier, RandomnessPool randomnessPool)
+  {
+    if (randomnessPool != null && !randomnessPool.getPaillier().getN().equals(paillier.getN()))
+    {
+      throw new IllegalArgumentException("The randomness pool was not generated for the given Paillier key");
+    }
     this.queryInfo = queryInfo;
     this.selectors = selectors;
     this.paillier = paillier;
+    this.randomnessPool = randomnessPool;
   }
 
   /**
@@ -123,6 +155,7 @@ public class EncryptQuery
     // if the selector is of variable lengths
     Map<Integer,String> embedSelectorMap = computeEmbeddedSelectorMap();
 
+    logger.info("Encrypting in mode = " + getEncryptionMode() + " with randomnessPool = " + (randomnessPool != null));
     SortedMap<Integer,BigInteger> queryElements;
     if (numThreads == 1)
     {
@@ -135,20 +168,21 @@ public class EncryptQuery
       logger.info("Completed parallel creation of encrypted query vectors");
     }
 
+    // The in-memory expTable is not shipped with the query -- the responder computes its rows on first use
     Query query = new Query(queryInfo, paillier.getN(), queryElements);
 
-    // Generate the expTable in Query, if we are using it and if
-    // useHDFSExpLookupTable is false -- if we are generating it as standalone and not on the cluster
-    if (queryInfo.useExpLookupTable() && !queryInfo.useHDFSExpLookupTable())
-    {
-      logger.info("Starting expTable generation");
-      query.generateExpTable();
-    }
-
     // Return the Querier object.
     return new Querier(selectors, paillier, query, embedSelectorMap);
   }
 
+  /**
+   * Returns the encryption mode, {@link #STANDARD_MODE} or {@link #SHORT_EXPONENT_MODE}, as set on the Paillier key
+   */
+  public String getEncryptionMode()
+  {
+    return paillier.usesShortExponentRandomness() ? SHORT_EXPONENT_MODE : STANDARD_MODE;
+  }
+
   /**
    * Use this method to get a securely generated, random string of 2*numBytes length
    *
@@ -158,7 +192,7 @@ public class EncryptQuery
   private String getRandByteString(int numBytes)
   {
     byte[] randomData = new byte[numBytes];
-    RandomProvider.SECURE_RANDOM.nextBytes(randomData);
+    RandomProvider.getThreadSecureRandom().nextBytes(randomData);
     return Hex.encodeHexString(randomData);
   }
 
@@ -221,7 +255,7 @@ public class EncryptQuery
   {
     int numElements = 1 << queryInfo.getHashBitSize(); // 2^hashBitSize
 
-    EncryptQueryTask task = new EncryptQueryTask(queryInfo.getDataPartitionBitSize(), paillier, selectorQueryVecMapping, 0, numElements - 1);
+    EncryptQueryTask task = new EncryptQueryTask(queryInfo.getDataPartitionBitSize(), paillier, randomnessPool, selectorQueryVecMapping, 0, numElements - 1);
 
     return task.call();
   }
@@ -249,7 +283,7 @@ public class EncryptQuery
       }
 
       // Create the runnable and execute
-      EncryptQueryTask runEnc = new EncryptQueryTask(queryInfo.getDataPartitionBitSize(), paillier, selectorQueryVecMapping, start, stop);
+      EncryptQueryTask runEnc = new EncryptQueryTask(queryInfo.getDataPartitionBitSize(), paillier, randomnessPool, selectorQueryVecMapping, start, stop);
       futures.add(es.submit(runEnc));
     }
 
@@ -25,6 +25,7 @@ import java.util.TreeMap;
 import java.util.concurrent.Callable;
 
 import org.apache.pirk.encryption.Paillier;
+import org.apache.pirk.encryption.RandomnessPool;
 import org.apache.pirk.utils.PIRException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,14 +42,16 @@ final class EncryptQueryTask implements Callable<SortedMap<Integer,BigInteger>>
   private final int stop; // stop, inclusive, of the computing range for the runnable
 
   private final Paillier paillier;
+  private final RandomnessPool randomnessPool; // null to compute the randomness inline
   private final Map<Integer,Integer> selectorQueryVecMapping;
 
-  public EncryptQueryTask(int dataPartitionBitSizeInput, Paillier paillierInput, Map<Integer,Integer> selectorQueryVecMappingInput, int startInput,
-      int stopInput)
+  public EncryptQueryTask(int dataPartitionBitSizeInput, Paillier paillierInput, RandomnessPool randomnessPoolInput,
+      Map<Integer,Integer> selectorQueryVecMappingInput, int startInput, int stopInput)
   {
     dataPartitionBitSize = dataPartitionBitSizeInput;
 
     paillier = paillierInput;
+    randomnessPool = randomnessPoolInput;
     selectorQueryVecMapping = selectorQueryVecMappingInput;
 
     start = startInput;
@@ -64,7 +67,7 @@ final class EncryptQueryTask implements Callable<SortedMap<Integer,BigInteger>>
     {
       Integer selectorNum = selectorQueryVecMapping.get(i);
       BigInteger valToEnc = (selectorNum == null) ? BigInteger.ZERO : (BigInteger.valueOf(2)).pow(selectorNum * dataPartitionBitSize);
-      BigInteger encVal = paillier.encrypt(valToEnc);
+      BigInteger encVal = (randomnessPool == null) ? paillier.encrypt(valToEnc) : paillier.encryptWithRandomness(valToEnc, randomnessPool.next());
       encryptedValues.put(i, encVal);
       logger.debug("selectorNum = " + selectorNum + " valToEnc = " + valToEnc + " encVal = " + encVal);
     }
@@ -0,0 +1,346 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pirk.query.wideskies;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import com.google.gson.reflect.TypeToken;
+import org.apache.pirk.serialization.JsonSerializer;
+
+/**
+ * Query whose elements are held in the fixed-width binary query format, either memory mapped from a local file or read into heap buffers from a stream
+ * <p>
+ * The binary format is: the magic number {@link #MAGIC}, the header length, and the header -- the QueryInfo (JSON), N, the expFileBasedLookup (JSON), the
+ * element byte length, and the number of elements -- followed by the 2^hashBitSize query elements, each written as an unsigned big-endian integer of the
+ * element byte length.
+ * <p>
+ * {@link #getQueryElement(int)} reads the element at its fixed offset; no per-element objects are held. {@link #getQueryElements()} materializes all of the
+ * elements and should be avoided on the responder hot paths. As for any query, the in-memory expTable is not stored.
+ */
+public class BinaryQuery extends Query
+{
+  private static final long serialVersionUID = 1L;
+
+  public static final int MAGIC = 0x50514231; // "PQB1"
+
+  private int elementByteLength = 0;
+
+  private int numElements = 0;
+
+  private int elementsPerChunk = 0; // each chunk holds whole elements and is at most Integer.MAX_VALUE bytes
+
+  private transient ByteBuffer[] chunks = null;
+
+  private BinaryQuery(Header header)
+  {
+    super(header.queryInfo, header.N, null);
+
+    setExpFileBasedLookup(header.expFileBasedLookup);
+    elementByteLength = header.elementByteLength;
+    numElements = header.numElements;
+    elementsPerChunk = Math.max(1, Integer.MAX_VALUE / elementByteLength);
+  }
+
+  /**
+   * Returns whether or not the given local file is in the binary query format
+   */
+  public static boolean isBinaryQuery(File file) throws IOException
+  {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r"))
+    {
+      return raf.length() >= 4 && raf.readInt() == MAGIC;
+    }
+  }
+
+  /**
+   * Memory maps the query in the binary query format stored in the given local file
+   */
+  public static BinaryQuery map(File file) throws IOException
+  {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel())
+    {
+      if (raf.readInt() != MAGIC)
+      {
+        throw new IOException("File " + file + " is not in the binary query format");
+      }
+      byte[] headerBytes = new byte[raf.readInt()];
+      raf.readFully(headerBytes);
+
+      BinaryQuery query = new BinaryQuery(readHeader(headerBytes));
+      query.chunks = new ByteBuffer[query.numChunks()];
+
+      long position = 8L + headerBytes.length;
+      for (int i = 0; i < query.chunks.length; ++i)
+      {
+        long size = (long) query.chunkElements(i) * query.elementByteLength;
+        query.chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        position += size;
+      }
+
+      return query;
+    }
+  }
+
+  /**
+   * Reads the query in the binary query format from the given stream into heap buffers
+   * <p>
+   * The magic number must not yet have been consumed from the stream
+   */
+  public static BinaryQuery read(InputStream inputStream) throws IOException
+  {
+    DataInputStream dis = new DataInputStream(inputStream);
+    if (dis.readInt() != MAGIC)
+    {
+      throw new IOException("Stream is not in the binary query format");
+    }
+    byte[] headerBytes = new byte[dis.readInt()];
+    dis.readFully(headerBytes);
+
+    BinaryQuery query = new BinaryQuery(readHeader(headerBytes));
+    query.readChunks(dis);
+
+    return query;
+  }
+
+  /**
+   * Writes the given query in the binary query format
+   * <p>
+   * The query elements must be indexed 0, ..., numElements - 1; the stream is flushed but not closed
+   */
+  public static void write(Query query, OutputStream outputStream) throws IOException
+  {
+    DataOutputStream dos = new DataOutputStream(outputStream);
+
+    int elementByteLength;
+    int numElements;
+    SortedMap<Integer,BigInteger> queryElements = null;
+    if (query instanceof BinaryQuery)
+    {
+      elementByteLength = ((BinaryQuery) query).elementByteLength;
+      numElements = ((BinaryQuery) query).numElements;
+    }
+    else
+    {
+      queryElements = query.getQueryElements();
+      numElements = queryElements.size();
+      if (numElements > 0 && (queryElements.firstKey() != 0 || queryElements.lastKey() != numElements - 1))
+      {
+        throw new IllegalArgumentException("The binary query format requires query elements indexed 0, ..., " + (numElements - 1));
+      }
+      elementByteLength = (query.getNSquared().bitLength() + 7) / 8;
+    }
+
+    // Header
+    ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+    DataOutputStream header = new DataOutputStream(headerBytes);
+    writeBytes(header, JsonSerializer.gson.toJson(query.getQueryInfo()).getBytes(StandardCharsets.UTF_8));
+    writeBytes(header, query.getN().toByteArray());
+    writeBytes(header, JsonSerializer.gson.toJson(query.getExpFileBasedLookup()).getBytes(StandardCharsets.UTF_8));
+    header.writeInt(elementByteLength);
+    header.writeInt(numElements);
+    header.flush();
+
+    dos.writeInt(MAGIC);
+    dos.writeInt(headerBytes.size());
+    headerBytes.writeTo(dos);
+
+    // Elements
+    if (query instanceof BinaryQuery)
+    {
+      ((BinaryQuery) query).writeChunks(dos);
+    }
+    else
+    {
+      byte[] padded = new byte[elementByteLength];
+      for (BigInteger element : queryElements.values())
+      {
+        byte[] bytes = element.toByteArray();
+        int length = (bytes[0] == 0) ? bytes.length - 1 : bytes.length; // drop the sign byte
+        if (element.signum() < 0 || length > elementByteLength)
+        {
+          throw new IllegalArgumentException("Query element " + element + " is not in [0, N^2)");
+        }
+        int padding = elementByteLength - length;
+        for (int i = 0; i < padding; ++i)
+        {
+          padded[i] = 0;
+        }
+        System.arraycopy(bytes, bytes.length - length, padded, padding, length);
+        dos.write(padded);
+      }
+    }
+    dos.flush();
+  }
+
+  @Override
+  public BigInteger getQueryElement(int index)
+  {
+    if (index < 0 || index >= numElements)
+    {
+      return null;
+    }
+    ByteBuffer chunk = chunks[index / elementsPerChunk].duplicate();
+    chunk.position((index % elementsPerChunk) * elementByteLength);
+
+    byte[] bytes = new byte[elementByteLength];
+    chunk.get(bytes);
+
+    return new BigInteger(1, bytes);
+  }
+
+  /**
+   * Returns a copy of all of the query elements; use {@link #getQueryElement(int)} to access single elements
+   */
+  @Override
+  public SortedMap<Integer,BigInteger> getQueryElements()
+  {
+    SortedMap<Integer,BigInteger> queryElements = new TreeMap<>();
+    for (int i = 0; i < numElements; ++i)
+    {
+      queryElements.put(i, getQueryElement(i));
+    }
+    return queryElements;
+  }
+
+  public int getNumQueryElements()
+  {
+    return numElements;
+  }
+
+  @Override
+  public int getNumRows()
+  {
+    return getNumQueryElements();
+  }
+
+  private int numChunks()
+  {
+    return (numElements + elementsPerChunk - 1) / elementsPerChunk;
+  }
+
+  private int chunkElements(int chunk)
+  {
+    return Math.min(elementsPerChunk, numElements - chunk * elementsPerChunk);
+  }
+
+  private void readChunks(DataInputStream dis) throws IOException
+  {
+    chunks = new ByteBuffer[numChunks()];
+    for (int i = 0; i < chunks.length; ++i)
+    {
+      byte[] chunk = new byte[chunkElements(i) * elementByteLength];
+      dis.readFully(chunk);
+      chunks[i] = ByteBuffer.wrap(chunk);
+    }
+  }
+
+  private void writeChunks(DataOutputStream dos) throws IOException
+  {
+    byte[] buffer = new byte[Math.min(1 << 16, elementsPerChunk * elementByteLength)];
+    for (ByteBuffer chunk : chunks)
+    {
+      ByteBuffer source = chunk.duplicate();
+      source.position(0);
+      while (source.hasRemaining())
+      {
+        int length = Math.min(buffer.length, source.remaining());
+        source.get(buffer, 0, length);
+        dos.write(buffer, 0, length);
+      }
+    }
+  }
+
+  // Java serialization carries the raw element bytes; deserialized queries are backed by heap buffers
+  private void writeObject(ObjectOutputStream out) throws IOException
+  {
+    out.defaultWriteObject();
+    writeChunks(new DataOutputStream(out));
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+  {
+    in.defaultReadObject();
+    readChunks(new DataInputStream(in));
+  }
+
+  private static void writeBytes(DataOutputStream dos, byte[] bytes) throws IOException
+  {
+    dos.writeInt(bytes.length);
+    dos.write(bytes);
+  }
+
+  private static byte[] readBytes(DataInputStream dis) throws IOException
+  {
+    int length = dis.readInt();
+    if (length < 0)
+    {
+      throw new EOFException("Invalid length " + length + " in the binary query header");
+    }
+    byte[] bytes = new byte[length];
+    dis.readFully(bytes);
+    return bytes;
+  }
+
+  private static Header readHeader(byte[] headerBytes) throws IOException
+  {
+    DataInputStream dis = new DataInputStream(new ByteArrayInputStream(headerBytes));
+
+    Header header = new Header();
+    header.queryInfo = JsonSerializer.gson.fromJson(new String(readBytes(dis), StandardCharsets.UTF_8), QueryInfo.class);
+    header.N = new BigInteger(readBytes(dis));
+    header.expFileBasedLookup = JsonSerializer.gson.fromJson(new String(readBytes(dis), StandardCharsets.UTF_8), new TypeToken<HashMap<Integer,String>>()
+    {}.getType());
+    header.elementByteLength = dis.readInt();
+    header.numElements = dis.readInt();
+    if (header.elementByteLength <= 0 || header.numElements < 0)
+    {
+      throw new IOException("Invalid binary query header: elementByteLength = " + header.elementByteLength + " numElements = " + header.numElements);
+    }
+
+    return header;
+  }
+
+  private static class Header
+  {
+    QueryInfo queryInfo;
+    BigInteger N;
+    Map<Integer,String> expFileBasedLookup;
+    int elementByteLength;
+    int numElements;
+  }
+}
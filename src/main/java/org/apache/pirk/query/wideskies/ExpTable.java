@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pirk.query.wideskies;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.IntStream;
+
+import org.apache.pirk.encryption.Montgomery;
+
+/**
+ * Lookup table for the modular exponentiation of the query vectors: row -> (element^power mod N^2) for power in [0, 2^dataPartitionBitSize)
+ * <p>
+ * Each row is computed on first use by repeated Montgomery multiplication, element^power = element^(power-1) * element, and held as a dense byte array of
+ * fixed-width big-endian values indexed by power. The table is never serialized with the query; it is built wherever it is used.
+ * <p>
+ * Instances are thread-safe
+ */
+public class ExpTable
+{
+  private final Query query;
+  private final Montgomery montgomery;
+
+  private final int numPowers;
+  private final int valueByteLength;
+
+  private final AtomicReferenceArray<byte[]> rows;
+
+  public ExpTable(Query queryInput)
+  {
+    query = queryInput;
+    montgomery = new Montgomery(query.getNSquared());
+
+    QueryInfo queryInfo = query.getQueryInfo();
+    numPowers = 1 << queryInfo.getDataPartitionBitSize();
+    valueByteLength = 4 * montgomery.getNumLimbs();
+
+    // One slot per row of this query (a shard holds only its own rows, re-indexed from 0), not per possible hash value
+    rows = new AtomicReferenceArray<>(query.getNumRows());
+  }
+
+  /**
+   * Returns element^power mod N^2 for the query element of the given row
+   */
+  public BigInteger getExp(int rowIndex, int power)
+  {
+    int offset = power * valueByteLength;
+
+    return new BigInteger(1, Arrays.copyOfRange(getRow(rowIndex), offset, offset + valueByteLength));
+  }
+
+  /**
+   * Returns the row of the given query element, computing it if needed
+   * <p>
+   * The value for each power is stored big-endian in getValueByteLength() bytes starting at power * getValueByteLength(); the array must not be modified
+   */
+  public byte[] getRow(int rowIndex)
+  {
+    byte[] row = rows.get(rowIndex);
+    if (row == null)
+    {
+      row = computeRow(query.getQueryElement(rowIndex));
+      if (!rows.compareAndSet(rowIndex, null, row))
+      {
+        row = rows.get(rowIndex);
+      }
+    }
+    return row;
+  }
+
+  public int getNumPowers()
+  {
+    return numPowers;
+  }
+
+  public int getValueByteLength()
+  {
+    return valueByteLength;
+  }
+
+  /**
+   * Computes all rows of the table that have a query element
+   */
+  public void generate()
+  {
+    IntStream.range(0, rows.length()).parallel().filter(i -> query.getQueryElement(i) != null).forEach(this::getRow);
+  }
+
+  /**
+   * Returns the number of rows computed so far
+   */
+  public int getNumRows()
+  {
+    return (int) IntStream.range(0, rows.length()).filter(i -> rows.get(i) != null).count();
+  }
+
+  /**
+   * Computes the row of the given query element without holding it in the table
+   */
+  public byte[] computeRow(BigInteger element)
+  {
+    int numLimbs = montgomery.getNumLimbs();
+    int[] scratch = montgomery.newScratch();
+
+    int[] unit = new int[numLimbs];
+    unit[0] = 1;
+
+    int[] base = montgomery.toMontgomery(element);
+    int[] power = montgomery.one();
+    int[] value = new int[numLimbs];
+
+    byte[] row = new byte[numPowers * valueByteLength];
+    for (int i = 0; i < numPowers; ++i)
+    {
+      // Leave the Montgomery form -- (element^i * R) * 1 * R^{-1} = element^i
+      montgomery.multiply(power, unit, value, scratch);
+
+      int offset = i * valueByteLength;
+      for (int j = numLimbs - 1; j >= 0; --j)
+      {
+        row[offset++] = (byte) (value[j] >>> 24);
+        row[offset++] = (byte) (value[j] >>> 16);
+        row[offset++] = (byte) (value[j] >>> 8);
+        row[offset++] = (byte) value[j];
+      }
+
+      montgomery.multiply(power, base, power, scratch);
+    }
+    return row;
+  }
+}
@@ -24,17 +24,17 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.SortedMap;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.function.Consumer;
+import java.util.TreeMap;
 
 import com.google.gson.annotations.Expose;
-import org.apache.pirk.encryption.ModPowAbstraction;
 import org.apache.pirk.serialization.Storable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Class to hold the PIR query vectors
+ * <p>
+ * See {@link BinaryQuery} for the fixed-width binary form of the query
  */
 
 public class Query implements Serializable, Storable
@@ -56,9 +56,8 @@ public class Query implements Serializable, Storable
   private final SortedMap<Integer,BigInteger> queryElements; // query elements - ordered on insertion
 
   // lookup table for exponentiation of query vectors - based on dataPartitionBitSize
-  // element -> <power, element^power mod N^2>
-  @Expose
-  private Map<BigInteger,Map<Integer,BigInteger>> expTable = new ConcurrentHashMap<>();
+  // row -> <power, element^power mod N^2>, computed lazily and never serialized
+  private transient volatile ExpTable expTable = null;
 
   // File based lookup table for modular exponentiation
   // element hash -> filename containing it's <power, element^power mod N^2> modular exponentiations
@@ -99,6 +98,14 @@ public class Query implements Serializable, Storable
     return queryElements.get(index);
   }
 
+  /**
+   * Returns the number of rows of the query, one past the largest row index; subclasses answer without materializing the query elements
+   */
+  public int getNumRows()
+  {
+    return queryElements.isEmpty() ? 0 : queryElements.lastKey() + 1;
+  }
+
   public BigInteger getN()
   {
     return N;
@@ -125,34 +132,65 @@ public class Query implements Serializable, Storable
   }
 
   /**
-   * This should be called after all query elements have been added in order to generate the expTable. For int exponentiation with BigIntegers, assumes that
-   * dataPartitionBitSize < 32.
+   * Returns the lookup table for the modular exponentiation of the query elements; its rows are computed on first use
    */
-  public void generateExpTable()
+  public ExpTable getExpTable()
   {
-    int maxValue = (1 << queryInfo.getDataPartitionBitSize()) - 1; // 2^partitionBitSize - 1
-
-    queryElements.values().parallelStream().forEach(new Consumer<BigInteger>()
+    ExpTable table = expTable;
+    if (table == null)
     {
-      @Override
-      public void accept(BigInteger element)
+      synchronized (this)
       {
-        Map<Integer,BigInteger> powMap = new HashMap<>(maxValue); // <power, element^power mod N^2>
-        for (int i = 0; i <= maxValue; ++i)
+        if (expTable == null)
         {
-          BigInteger value = ModPowAbstraction.modPow(element, BigInteger.valueOf(i), NSquared);
-          powMap.put(i, value);
+          expTable = new ExpTable(this);
         }
-        expTable.put(element, powMap);
+        table = expTable;
       }
-    });
-    logger.debug("expTable.size() = " + expTable.keySet().size() + " NSquared = " + NSquared.intValue() + " = " + NSquared.toString());
+    }
+    return table;
+  }
+
+  /**
+   * Computes all rows of the expTable up front, rather than on first use
+   */
+  public void generateExpTable()
+  {
+    getExpTable().generate();
+    logger.debug("expTable rows = " + expTable.getNumRows() + " NSquared = " + NSquared.toString());
+  }
+
+  /**
+   * Returns (element^power mod N^2) for the query element of the given row from the expTable
+   */
+  public BigInteger getExp(int rowIndex, int power)
+  {
+    return getExpTable().getExp(rowIndex, power);
   }
 
-  public BigInteger getExp(BigInteger value, int power)
+  /**
+   * Returns the query restricted to the rows [start, end), re-indexed from 0, along with their expFileBasedLookup entries
+   */
+  public Query getRows(int start, int end)
   {
-    Map<Integer,BigInteger> powerMap = expTable.get(value);
-    return (powerMap == null) ? null : powerMap.get(power);
+    SortedMap<Integer,BigInteger> rowElements = new TreeMap<>();
+    Map<Integer,String> rowExpFiles = new HashMap<>();
+    for (int row = start; row < end; ++row)
+    {
+      BigInteger element = getQueryElement(row);
+      rowElements.put(row - start, element);
+
+      String expFile = getExpFile(row);
+      if (expFile != null)
+      {
+        rowExpFiles.put(row - start, expFile);
+      }
+    }
+
+    Query rows = new Query(queryInfo, N, NSquared, rowElements);
+    rows.expFileBasedLookup = rowExpFiles;
+
+    return rows;
   }
 
   @Override public boolean equals(Object o)
@@ -172,11 +210,7 @@ public class Query implements Serializable, Storable
     {
       return false;
     }
-    if (!queryElements.equals(query.queryElements))
-    {
-      return false;
-    }
-    if (expTable != null ? !expTable.equals(query.expTable) : query.expTable != null)
+    if (!getQueryElements().equals(query.getQueryElements()))
     {
       return false;
     }
@@ -193,6 +227,6 @@ public class Query implements Serializable, Storable
 
   @Override public int hashCode()
   {
-    return Objects.hash(queryInfo, queryElements, expTable, expFileBasedLookup, N, NSquared);
+    return Objects.hash(queryInfo, getQueryElements(), expFileBasedLookup, N, NSquared);
   }
 }
@@ -74,7 +74,7 @@ public class QueryInfo implements Serializable, Cloneable
   private int numPartitionsPerDataElement = 0; // num partitions of size dataPartitionBitSize per data element
 
   @Expose
-  private boolean useExpLookupTable = false; // whether or not to generate and use the expLookupTable for encryption, it is very expensive to compute
+  private boolean useExpLookupTable = false; // whether or not to use the in-memory expLookupTable for encryption, its rows are computed by the responder on first use
 
   @Expose
   private boolean useHDFSExpLookupTable = false; // whether or not to use the expLookupTable stored in HDFS
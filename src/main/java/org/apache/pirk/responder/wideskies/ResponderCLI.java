@@ -393,7 +393,7 @@ public class ResponderCLI
 
     // colMultReduceByKey
     Option optionColMultReduceByKey = new Option("colMultRBK", ResponderProps.COLMULTREDUCEBYKEY, true, "optional -- 'true' or 'false' -- Spark only -- "
-        + "If true, uses reduceByKey in performing column multiplication; if false, uses groupByKey -> reduce");
+        + "If true, uses combineByKey (map side combining) in performing column multiplication; if false, uses groupByKey -> reduce");
     optionColMultReduceByKey.setRequired(false);
     optionColMultReduceByKey.setArgName(ResponderProps.COLMULTREDUCEBYKEY);
     optionColMultReduceByKey.setType(String.class);
@@ -22,9 +22,12 @@ import java.util.Arrays;
 import java.util.List;
 
 import org.apache.commons.lang.ArrayUtils;
+import org.apache.pirk.encryption.ModPowAbstraction;
 import org.apache.pirk.inputformat.hadoop.InputFormatConst;
+import org.apache.pirk.responder.wideskies.common.ColumnEngine;
 import org.apache.pirk.schema.data.DataSchemaLoader;
 import org.apache.pirk.schema.query.QuerySchemaLoader;
+import org.apache.pirk.utils.PIRException;
 import org.apache.pirk.utils.SystemConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -61,6 +64,7 @@ public class ResponderProps
   public static final String USEMODEXPJOIN = "pir.useModExpJoin";
   public static final String COLMULTREDUCEBYKEY = "pir.colMultReduceByKey";
   public static final String NUMREDUCETASKS = "pir.numReduceTasks";
+  public static final String NUMREDUCERTHREADS = "pir.numReducerThreads";
   public static final String MAPMEMORY = "mapreduce.map.memory.mb";
   public static final String REDUCEMEMORY = "mapreduce.reduce.memory.mb";
   public static final String MAPJAVAOPTS = "mapreduce.map.java.opts";
@@ -69,6 +73,17 @@ public class ResponderProps
   public static final String NUMDATAPARTITIONS = "pir.numDataPartitions";
   public static final String ALLOWEMBEDDEDQUERYSCHEMAS = "pir.allowEmbeddedQuerySchemas";
   public static final String EMBEDQUERYSCHEMA = "pir.embedQuerySchema";
+  public static final String COLUMNENGINE = "pir.columnEngine";
+  public static final String MODPOWENGINE = "pir.modPowEngine";
+  public static final String SHARDQUERY = "pir.shardQuery";
+  public static final String NUMQUERYSHARDS = "pir.numQueryShards";
+  public static final String NUMSTANDALONETHREADS = "pir.numStandaloneThreads";
+  public static final String COLUMNSTOREMEMORYMB = "pir.columnStoreMemoryMB";
+  public static final String COLUMNSTORESPILLDIR = "pir.columnStoreSpillDir";
+  public static final String COLMULTCOMBINER = "pir.colMultCombiner";
+  public static final String COLMULTINMAPPERCOMBINING = "pir.colMultInMapperCombining";
+  public static final String COLMULTMAPPERMEMORYMB = "pir.colMultMapperMemoryMB";
+  public static final String MAPREDUCESINGLEJOB = "pir.mapReduceSingleJob";
 
   // For Spark Streaming - optional
   public static final String BATCHSECONDS = "pir.sparkstreaming.batchSeconds";
@@ -116,7 +131,9 @@ public class ResponderProps
       .asList((String[]) ArrayUtils.addAll(new String[] {PLATFORM, QUERYINPUT, DATAINPUTFORMAT, INPUTDATA, BASEQUERY, ESRESOURCE, ESQUERY, ESNODES, OUTPUTFILE,
           BASEINPUTFORMAT, STOPLISTFILE, NUMREDUCETASKS, USELOCALCACHE, LIMITHITSPERSELECTOR, MAXHITSPERSELECTOR, MAPMEMORY, REDUCEMEMORY, MAPJAVAOPTS,
           REDUCEJAVAOPTS, QUERYSCHEMAS, DATASCHEMAS, NUMEXPLOOKUPPARTS, USEHDFSLOOKUPTABLE, NUMDATAPARTITIONS, NUMCOLMULTPARTITIONS, USEMODEXPJOIN,
-          COLMULTREDUCEBYKEY, ALLOWEMBEDDEDQUERYSCHEMAS, BATCHSECONDS, WINDOWLENGTH, USEQUEUESTREAM, MAXBATCHES, STOPGRACEFULLY}, STORMPROPS));
+          COLMULTREDUCEBYKEY, ALLOWEMBEDDEDQUERYSCHEMAS, COLUMNENGINE, MODPOWENGINE, SHARDQUERY, NUMQUERYSHARDS, NUMSTANDALONETHREADS, COLUMNSTOREMEMORYMB,
+          COLUMNSTORESPILLDIR, COLMULTCOMBINER, COLMULTINMAPPERCOMBINING, COLMULTMAPPERMEMORYMB, MAPREDUCESINGLEJOB, NUMREDUCERTHREADS, BATCHSECONDS,
+          WINDOWLENGTH, USEQUEUESTREAM, MAXBATCHES, STOPGRACEFULLY}, STORMPROPS));
 
   /**
    * Validates the responder properties
@@ -267,11 +284,40 @@ public class ResponderProps
       SystemConfiguration.setProperty(EMBEDQUERYSCHEMA, "false");
     }
 
+    if (!SystemConfiguration.hasProperty(COLUMNENGINE))
+    {
+      SystemConfiguration.setProperty(COLUMNENGINE, ColumnEngine.MODPOW);
+    }
+    String columnEngine = SystemConfiguration.getProperty(COLUMNENGINE);
+    if (!columnEngine.equals(ColumnEngine.MODPOW) && !columnEngine.equals(ColumnEngine.BUCKET))
+    {
+      logger.info("Unsupported columnEngine = " + columnEngine);
+      valid = false;
+    }
+
+    if (!SystemConfiguration.hasProperty(MODPOWENGINE))
+    {
+      SystemConfiguration.setProperty(MODPOWENGINE, ModPowAbstraction.getEngine().getEngineName());
+    }
+    try
+    {
+      ModPowAbstraction.getEngine(SystemConfiguration.getProperty(MODPOWENGINE));
+    } catch (PIRException e)
+    {
+      logger.info("Unsupported modPowEngine = " + SystemConfiguration.getProperty(MODPOWENGINE) + " " + e.getMessage());
+      valid = false;
+    }
+
     if (!SystemConfiguration.hasProperty(USELOCALCACHE))
     {
       SystemConfiguration.setProperty(USELOCALCACHE, "true");
     }
 
+    if (!SystemConfiguration.hasProperty(SHARDQUERY))
+    {
+      SystemConfiguration.setProperty(SHARDQUERY, "false");
+    }
+
     if (!SystemConfiguration.hasProperty(BATCHSECONDS))
     {
       SystemConfiguration.setProperty(BATCHSECONDS, "30");
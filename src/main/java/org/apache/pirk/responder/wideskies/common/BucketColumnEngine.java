@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pirk.responder.wideskies.common;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import org.apache.pirk.encryption.MontgomeryAccumulator;
+import org.apache.pirk.encryption.spi.ModPowEngine;
+import org.apache.pirk.query.wideskies.Query;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Column engine that computes the column values via bucketed multi-exponentiation (Pippenger-style) instead of one modular exponentiation per data
+ * partition
+ * <p>
+ * As the data partitions take at most 2^dataPartitionBitSize values, the query elements of the rows that landed in a column are multiplied into buckets
+ * indexed by their partition value, B_v = \prod_{rows r with D_{r,c} = v} E_r mod N^2. Partitions equal to 0 are skipped.
+ * <p>
+ * The column value Y_c = \prod_v (B_v)^v is then formed with the running product trick: with v_1 > v_2 > ... > v_k the non-empty bucket values, v_{k+1} = 0,
+ * and S_j = B_{v_1} * ... * B_{v_j},
+ * <p>
+ * Y_c = \prod_j (S_j)^{v_j - v_{j+1}} mod N^2
+ * <p>
+ * where each gap v_j - v_{j+1} is walked one step at a time, which takes at most (#hits + 2 * 2^dataPartitionBitSize) modular multiplications per column and
+ * no exponentiations. The bucket, running, and column products are kept in {@link MontgomeryAccumulator}s and multiplied without leaving Montgomery form.
+ * <p>
+ * The distributed responders carry (rowIndex, part) pairs from the row calculations to the column multiplication as single values -- see
+ * {@link #packEntry(int, BigInteger)}
+ */
+public class BucketColumnEngine extends ColumnEngine
+{
+  private static final Logger logger = LoggerFactory.getLogger(BucketColumnEngine.class);
+
+  private static final int PART_SHIFT = 32; // dataPartitionBitSize < 32
+  private static final BigInteger PART_MASK = BigInteger.ONE.shiftLeft(PART_SHIFT).subtract(BigInteger.ONE);
+
+  // column -> (partition value -> bucket product B_v)
+  private Map<Long,TreeMap<Integer,MontgomeryAccumulator>> columnBuckets = new HashMap<>();
+
+  public BucketColumnEngine(Query queryInput, ModPowEngine modPowEngineInput)
+  {
+    super(queryInput, modPowEngineInput);
+  }
+
+  /**
+   * Packs a (rowIndex, part) pair into the single value emitted by the distributed row calculations when using the bucket engine
+   */
+  public static BigInteger packEntry(int rowIndex, BigInteger part)
+  {
+    return BigInteger.valueOf(rowIndex).shiftLeft(PART_SHIFT).or(part);
+  }
+
+  /**
+   * Method to add a (rowIndex, part) pair packed via {@link #packEntry(int, BigInteger)} to the given column
+   */
+  public void insertPackedEntry(long col, BigInteger entry)
+  {
+    insertDataPart(col, entry.shiftRight(PART_SHIFT).intValue(), entry.and(PART_MASK));
+  }
+
+  @Override
+  public void insertDataPart(long col, int rowIndex, BigInteger part)
+  {
+    TreeMap<Integer,MontgomeryAccumulator> buckets = columnBuckets.get(col);
+    if (buckets == null)
+    {
+      buckets = new TreeMap<>();
+      columnBuckets.put(col, buckets);
+    }
+
+    // (E_row)^0 = 1 -- nothing to multiply in
+    int value = part.intValue();
+    if (value == 0)
+    {
+      return;
+    }
+
+    MontgomeryAccumulator bucket = buckets.get(value);
+    if (bucket == null)
+    {
+      bucket = new MontgomeryAccumulator(montgomery);
+      buckets.put(value, bucket);
+    }
+    bucket.multiply(query.getQueryElement(rowIndex));
+  }
+
+  @Override
+  public BigInteger computeColumn(long col)
+  {
+    return combineBuckets(columnBuckets.remove(col));
+  }
+
+  @Override
+  public TreeMap<Long,BigInteger> computeColumns()
+  {
+    TreeMap<Long,BigInteger> result = new TreeMap<>();
+    for (Entry<Long,TreeMap<Integer,MontgomeryAccumulator>> entry : columnBuckets.entrySet())
+    {
+      result.put(entry.getKey(), combineBuckets(entry.getValue()));
+    }
+    columnBuckets.clear();
+
+    return result;
+  }
+
+  // Computes \prod_v (B_v)^v mod N^2 by walking v from the largest bucket value down to 1, multiplying the running product S_v = \prod_{u >= v} B_u into
+  // the column once per step; everything stays in Montgomery form
+  private BigInteger combineBuckets(TreeMap<Integer,MontgomeryAccumulator> buckets)
+  {
+    if (buckets == null || buckets.isEmpty())
+    {
+      return BigInteger.ONE;
+    }
+
+    MontgomeryAccumulator column = new MontgomeryAccumulator(montgomery);
+    MontgomeryAccumulator runningProduct = new MontgomeryAccumulator(montgomery);
+    for (int value = buckets.lastKey(); value >= 1; --value)
+    {
+      MontgomeryAccumulator bucket = buckets.get(value);
+      if (bucket != null)
+      {
+        runningProduct.multiply(bucket);
+      }
+      column.multiply(runningProduct);
+    }
+    BigInteger result = column.getValue();
+    logger.debug("numBuckets = {} column = {}", buckets.size(), result);
+
+    return result;
+  }
+}
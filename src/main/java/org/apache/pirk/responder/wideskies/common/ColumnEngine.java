@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pirk.responder.wideskies.common;
+
+import java.math.BigInteger;
+import java.util.TreeMap;
+
+import org.apache.pirk.encryption.Montgomery;
+import org.apache.pirk.encryption.spi.ModPowEngine;
+import org.apache.pirk.query.wideskies.Query;
+import org.apache.pirk.utils.PIRException;
+
+/**
+ * Abstract class for the engines that compute the encrypted column values of a response
+ * <p>
+ * Each column value is of the form Y_c = \prod_{rows r} (E_r)^{D_{r,c}} mod N^2, where E_r is the query element for row r and D_{r,c} is the data partition
+ * of row r that was placed in column c. Engines are handed the (column, rowIndex, partition) triples as they are produced and compute the column values on
+ * demand.
+ * <p>
+ * The engine is selected with the pir.columnEngine property -- {@link #MODPOW} (default) or {@link #BUCKET}; the modular exponentiations are performed with
+ * the {@link ModPowEngine} of the job
+ */
+public abstract class ColumnEngine
+{
+  public static final String MODPOW = "modpow";
+  public static final String BUCKET = "bucket";
+
+  protected Query query = null;
+  protected BigInteger NSquared = null;
+  protected ModPowEngine modPowEngine = null;
+  protected Montgomery montgomery = null; // for the column products, see MontgomeryAccumulator
+
+  protected ColumnEngine(Query queryInput, ModPowEngine modPowEngineInput)
+  {
+    query = queryInput;
+    NSquared = query.getNSquared();
+    modPowEngine = modPowEngineInput;
+    montgomery = new Montgomery(NSquared);
+  }
+
+  /**
+   * Returns the column engine with the given name for the given query
+   */
+  public static ColumnEngine getColumnEngine(String engineName, Query query, ModPowEngine modPowEngine) throws PIRException
+  {
+    switch (engineName)
+    {
+      case MODPOW:
+        return new ModPowColumnEngine(query, modPowEngine);
+      case BUCKET:
+        return new BucketColumnEngine(query, modPowEngine);
+      default:
+        throw new PIRException("Unknown column engine = " + engineName);
+    }
+  }
+
+  /**
+   * Method to add the contribution (E_row)^part of the given row to the given column
+   * <p>
+   * The column is created (with value 1) if it does not yet exist, even if part = 0
+   */
+  public abstract void insertDataPart(long col, int rowIndex, BigInteger part);
+
+  /**
+   * Returns true if {@link #insertDataPart(long, int, BigInteger)} may be called concurrently
+   */
+  public boolean isThreadSafe()
+  {
+    return false;
+  }
+
+  /**
+   * Method to compute the value of the given column and remove it from the engine
+   * <p>
+   * Returns 1 for columns that were never inserted into
+   */
+  public abstract BigInteger computeColumn(long col);
+
+  /**
+   * Method to compute the values of all columns held by the engine; the engine is cleared
+   */
+  public abstract TreeMap<Long,BigInteger> computeColumns();
+}
@@ -0,0 +1,598 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pirk.responder.wideskies.common;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+import org.apache.pirk.encryption.Montgomery;
+import org.apache.pirk.encryption.MontgomeryAccumulator;
+import org.apache.pirk.utils.SystemConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Concurrent store of the encrypted column products (mod N^2) of a response, held outside of the heap
+ * <p>
+ * Each column is a fixed-width slot holding the state of a {@link MontgomeryAccumulator}; the slots of {@link #COLUMNS_PER_PAGE} consecutive columns form a
+ * page of direct memory that is allocated on first use. Multiplications into different columns run concurrently: a page is guarded by a striped read-write
+ * lock (read to multiply in, write to load or spill the page) and each column by a striped lock.
+ * <p>
+ * All of the stores of the JVM share one budget of direct memory (see {@link #setSharedMemoryBudget(long)}), and a store may also have a budget of its own.
+ * When the pages in memory exceed a budget, the least recently used pages are spilled to a local file and read back on their next use; when over the shared
+ * budget, the pages of any store may be spilled.
+ * <p>
+ * {@link #forEach(BiConsumer)}, {@link #clear()}, and {@link #close()} must not run concurrently with the other methods
+ */
+public class ColumnStore implements Closeable
+{
+  private static final Logger logger = LoggerFactory.getLogger(ColumnStore.class);
+
+  public static final int COLUMNS_PER_PAGE = 64; // one presence bit per column in a long
+
+  private static final int NUM_STRIPES = 64;
+
+  private static final int MAX_FREE_PAGES = 16; // page buffers kept for reuse after a spill
+
+  private static final double DEFAULT_SHARED_FRACTION = 0.5; // of the maximum direct memory of the JVM
+  private static final double MAX_SHARED_FRACTION = 0.9;
+
+  private static final long MAX_DIRECT_MEMORY = getMaxDirectMemory();
+
+  // Shared by all of the stores of the JVM
+  private static volatile long sharedBudget = (long) (MAX_DIRECT_MEMORY * DEFAULT_SHARED_FRACTION);
+  private static final AtomicLong directBytes = new AtomicLong(); // resident and free page buffers
+  private static final Set<ColumnStore> residentStores = ConcurrentHashMap.newKeySet();
+  private static final AtomicLong clock = new AtomicLong();
+  private static final Object spillLock = new Object();
+
+  private final Montgomery montgomery;
+  private final int slotBytes;
+  private final int pageBytes;
+  private final long memoryBudget;
+  private final File spillDir;
+
+  private final ConcurrentHashMap<Long,Page> pages = new ConcurrentHashMap<>();
+  private final ReentrantReadWriteLock[] pageLocks = new ReentrantReadWriteLock[NUM_STRIPES];
+  private final ReentrantLock[] columnLocks = new ReentrantLock[NUM_STRIPES];
+  private final ThreadLocal<MontgomeryAccumulator> registers;
+
+  private final AtomicLong residentBytes = new AtomicLong();
+  private final ConcurrentLinkedQueue<ByteBuffer> freePages = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger numFreePages = new AtomicInteger();
+
+  private File spillFile = null; // guarded by spillLock
+  private volatile FileChannel spillChannel = null;
+  private long spillFileLength = 0; // guarded by spillLock
+
+  // A page of COLUMNS_PER_PAGE consecutive columns
+  private static final class Page
+  {
+    final AtomicLong present = new AtomicLong(); // bit i is set if the column (page start + i) exists
+    volatile ByteBuffer buffer = null; // null while spilled
+    volatile long lastUse = 0;
+    long spillOffset = -1;
+  }
+
+  /**
+   * Creates a store of columns modulo the given odd modulus that keeps at most memoryBudget bytes of pages in memory, within the shared budget, spilling to a
+   * file in spillDir (the temporary-file directory if null)
+   */
+  public ColumnStore(BigInteger modulus, long memoryBudgetInput, File spillDirInput)
+  {
+    montgomery = new Montgomery(modulus);
+    slotBytes = MontgomeryAccumulator.getStateByteLength(montgomery);
+    pageBytes = slotBytes * COLUMNS_PER_PAGE;
+    memoryBudget = Math.max(memoryBudgetInput, pageBytes);
+    spillDir = spillDirInput;
+
+    for (int i = 0; i < NUM_STRIPES; ++i)
+    {
+      pageLocks[i] = new ReentrantReadWriteLock();
+      columnLocks[i] = new ReentrantLock();
+    }
+    registers = ThreadLocal.withInitial(() -> new MontgomeryAccumulator(montgomery));
+  }
+
+  /**
+   * Creates a store of columns modulo the given odd modulus, bounded only by the shared budget; the pir.columnStoreMemoryMB property, if set, gives the shared
+   * budget and the pir.columnStoreSpillDir property the spill directory
+   */
+  public static ColumnStore fromConfiguration(BigInteger modulus)
+  {
+    setSharedMemoryBudget(SystemConfiguration.getLongProperty("pir.columnStoreMemoryMB", 0) << 20);
+
+    String spillDir = SystemConfiguration.getProperty("pir.columnStoreSpillDir");
+    return new ColumnStore(modulus, Long.MAX_VALUE, (spillDir == null || spillDir.isEmpty()) ? null : new File(spillDir));
+  }
+
+  /**
+   * Sets the budget of direct memory shared by all of the stores of the JVM, capped at 90% of the maximum direct memory of the JVM; a budget {@code <= 0}
+   * restores the default of half of the maximum direct memory
+   */
+  public static void setSharedMemoryBudget(long bytes)
+  {
+    long limit = (long) (MAX_DIRECT_MEMORY * MAX_SHARED_FRACTION);
+    if (bytes > limit)
+    {
+      logger.warn("Column store memory budget of " + bytes + " bytes capped at " + limit + " bytes by the maximum direct memory of the JVM");
+    }
+    sharedBudget = (bytes > 0) ? Math.min(bytes, limit) : (long) (MAX_DIRECT_MEMORY * DEFAULT_SHARED_FRACTION);
+  }
+
+  /**
+   * Returns the budget of direct memory shared by all of the stores of the JVM
+   */
+  public static long getSharedMemoryBudget()
+  {
+    return sharedBudget;
+  }
+
+  /**
+   * Returns the number of bytes of direct memory held by all of the stores of the JVM
+   */
+  public static long getSharedDirectBytes()
+  {
+    return directBytes.get();
+  }
+
+  // The -XX:MaxDirectMemorySize of the JVM, which defaults to the maximum heap size
+  private static long getMaxDirectMemory()
+  {
+    String option = "-XX:MaxDirectMemorySize=";
+    long maxDirectMemory = Runtime.getRuntime().maxMemory();
+    for (String arg : ManagementFactory.getRuntimeMXBean().getInputArguments())
+    {
+      if (arg.startsWith(option))
+      {
+        String size = arg.substring(option.length()).toLowerCase();
+        int shift = "kmgt".indexOf(size.charAt(size.length() - 1));
+        try
+        {
+          maxDirectMemory = (shift < 0) ? Long.parseLong(size) : Long.parseLong(size.substring(0, size.length() - 1)) << (10 * (shift + 1));
+        } catch (NumberFormatException e)
+        {
+          logger.warn("Unable to parse " + arg);
+        }
+      }
+    }
+    return maxDirectMemory;
+  }
+
+  /**
+   * Sets the value of the column to (value * x) mod modulus, creating the column with value 1 if it does not exist; x = null only creates the column
+   */
+  public void multiply(long col, BigInteger x)
+  {
+    Page page = pages.computeIfAbsent(col / COLUMNS_PER_PAGE, pageNo -> new Page());
+    ReentrantReadWriteLock pageLock = getPageLock(col);
+    pageLock.readLock().lock();
+    try
+    {
+      ByteBuffer buffer = getResidentBuffer(page, pageLock);
+      long bit = 1L << (col % COLUMNS_PER_PAGE);
+      int offset = (int) (col % COLUMNS_PER_PAGE) * slotBytes;
+
+      ReentrantLock columnLock = getColumnLock(col);
+      columnLock.lock();
+      try
+      {
+        MontgomeryAccumulator register = registers.get();
+        if ((page.present.get() & bit) != 0)
+        {
+          register.read(buffer, offset);
+        }
+        else
+        {
+          register.reset();
+          page.present.getAndAccumulate(bit, (present, b) -> present | b);
+        }
+        if (x != null)
+        {
+          register.multiply(x);
+        }
+        register.write(buffer, offset);
+      } finally
+      {
+        columnLock.unlock();
+      }
+    } finally
+    {
+      pageLock.readLock().unlock();
+    }
+    spillOverBudget();
+  }
+
+  /**
+   * Returns the value of the column, or null if it does not exist
+   */
+  public BigInteger getValue(long col)
+  {
+    return getValue(col, false);
+  }
+
+  /**
+   * Returns the value of the column and removes it, or returns null if it does not exist
+   */
+  public BigInteger remove(long col)
+  {
+    return getValue(col, true);
+  }
+
+  private BigInteger getValue(long col, boolean remove)
+  {
+    Page page = pages.get(col / COLUMNS_PER_PAGE);
+    long bit = 1L << (col % COLUMNS_PER_PAGE);
+    if (page == null || (page.present.get() & bit) == 0)
+    {
+      return null;
+    }
+
+    BigInteger value = null;
+    ReentrantReadWriteLock pageLock = getPageLock(col);
+    pageLock.readLock().lock();
+    try
+    {
+      ByteBuffer buffer = getResidentBuffer(page, pageLock);
+
+      ReentrantLock columnLock = getColumnLock(col);
+      columnLock.lock();
+      try
+      {
+        if ((page.present.get() & bit) != 0)
+        {
+          MontgomeryAccumulator register = registers.get();
+          register.read(buffer, (int) (col % COLUMNS_PER_PAGE) * slotBytes);
+          value = register.getValue();
+          if (remove)
+          {
+            page.present.getAndAccumulate(bit, (present, b) -> present & ~b);
+          }
+        }
+      } finally
+      {
+        columnLock.unlock();
+      }
+    } finally
+    {
+      pageLock.readLock().unlock();
+    }
+    spillOverBudget();
+
+    return value;
+  }
+
+  /**
+   * Returns the number of columns
+   */
+  public long size()
+  {
+    long size = 0;
+    for (Page page : pages.values())
+    {
+      size += Long.bitCount(page.present.get());
+    }
+    return size;
+  }
+
+  /**
+   * Returns the number of bytes of the pages held in memory
+   */
+  public long getResidentBytes()
+  {
+    return residentBytes.get();
+  }
+
+  /**
+   * Performs the given action for each column and its value, in column order
+   */
+  public void forEach(BiConsumer<Long,BigInteger> action)
+  {
+    List<Long> pageNos = new ArrayList<>(pages.keySet());
+    pageNos.sort(null);
+    for (long pageNo : pageNos)
+    {
+      long present = pages.get(pageNo).present.get();
+      while (present != 0)
+      {
+        long col = pageNo * COLUMNS_PER_PAGE + Long.numberOfTrailingZeros(present);
+        action.accept(col, getValue(col));
+        present &= present - 1;
+      }
+    }
+  }
+
+  /**
+   * Removes all columns, frees their memory, and deletes the spill file
+   */
+  public void clear()
+  {
+    synchronized (spillLock) // other stores may spill the pages of this one
+    {
+      for (Page page : pages.values())
+      {
+        if (page.buffer != null)
+        {
+          release(page);
+        }
+      }
+      pages.clear();
+      drainFreePages();
+      residentStores.remove(this);
+
+      closeSpillFile();
+    }
+  }
+
+  @Override
+  public void close()
+  {
+    clear();
+  }
+
+  private ReentrantReadWriteLock getPageLock(long col)
+  {
+    return pageLocks[(int) ((col / COLUMNS_PER_PAGE) % NUM_STRIPES)];
+  }
+
+  private ReentrantLock getColumnLock(long col)
+  {
+    return columnLocks[(int) (col % NUM_STRIPES)];
+  }
+
+  // Returns the buffer of the page, loading it if spilled or new; the read lock of the page is held on entry and on exit
+  private ByteBuffer getResidentBuffer(Page page, ReentrantReadWriteLock pageLock)
+  {
+    if (page.buffer == null)
+    {
+      pageLock.readLock().unlock();
+      pageLock.writeLock().lock();
+      try
+      {
+        if (page.buffer == null)
+        {
+          load(page);
+        }
+      } finally
+      {
+        pageLock.readLock().lock();
+        pageLock.writeLock().unlock();
+      }
+    }
+    page.lastUse = clock.incrementAndGet();
+
+    return page.buffer;
+  }
+
+  // Called with the write lock of the page held
+  private void load(Page page)
+  {
+    ByteBuffer buffer = freePages.poll();
+    if (buffer == null)
+    {
+      buffer = ByteBuffer.allocateDirect(pageBytes).order(ByteOrder.nativeOrder());
+      directBytes.addAndGet(pageBytes);
+    }
+    else
+    {
+      numFreePages.decrementAndGet();
+    }
+
+    if (page.spillOffset >= 0)
+    {
+      try
+      {
+        buffer.clear();
+        while (buffer.hasRemaining())
+        {
+          if (spillChannel.read(buffer, page.spillOffset + buffer.position()) < 0)
+          {
+            throw new IOException("Unexpected end of the column spill file " + spillFile);
+          }
+        }
+      } catch (IOException e)
+      {
+        freePage(buffer);
+        throw new UncheckedIOException(e);
+      }
+    }
+    page.buffer = buffer;
+    residentBytes.addAndGet(pageBytes);
+    residentStores.add(this);
+  }
+
+  // Spills the least recently used pages until the resident pages fit in the budget of the store and the shared budget
+  private void spillOverBudget()
+  {
+    if (residentBytes.get() <= memoryBudget && directBytes.get() <= sharedBudget)
+    {
+      return;
+    }
+
+    synchronized (spillLock)
+    {
+      while (true)
+      {
+        if (residentBytes.get() > memoryBudget)
+        {
+          if (!spillColdest(Collections.singleton(this)))
+          {
+            return;
+          }
+        }
+        else if (directBytes.get() > sharedBudget)
+        {
+          if (!spillColdest(residentStores))
+          {
+            residentStores.forEach(ColumnStore::drainFreePages);
+            return;
+          }
+        }
+        else
+        {
+          return;
+        }
+      }
+    }
+  }
+
+  // Spills the least recently used page of the given stores, returning false if none has a page in memory; called with the spill lock held
+  private static boolean spillColdest(Iterable<ColumnStore> stores)
+  {
+    ColumnStore coldestStore = null;
+    Page coldest = null;
+    long coldestPageNo = 0;
+    for (ColumnStore store : stores)
+    {
+      for (Map.Entry<Long,Page> entry : store.pages.entrySet())
+      {
+        Page page = entry.getValue();
+        if (page.buffer != null && (coldest == null || page.lastUse < coldest.lastUse))
+        {
+          coldestStore = store;
+          coldest = page;
+          coldestPageNo = entry.getKey();
+        }
+      }
+    }
+    if (coldest == null)
+    {
+      return false;
+    }
+
+    ReentrantReadWriteLock pageLock = coldestStore.getPageLock(coldestPageNo * COLUMNS_PER_PAGE);
+    pageLock.writeLock().lock();
+    try
+    {
+      if (coldest.buffer != null)
+      {
+        coldestStore.spill(coldest);
+      }
+    } finally
+    {
+      pageLock.writeLock().unlock();
+    }
+    return true;
+  }
+
+  // Called with the spill lock and the write lock of the page held
+  private void spill(Page page)
+  {
+    try
+    {
+      if (spillChannel == null)
+      {
+        spillFile = File.createTempFile("pirColumnStore", ".spill", spillDir);
+        spillFile.deleteOnExit();
+        spillChannel = FileChannel.open(spillFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        logger.info("Spilling columns to " + spillFile + " with memory budget = " + memoryBudget + " and shared memory budget = " + sharedBudget);
+      }
+      if (page.spillOffset < 0)
+      {
+        page.spillOffset = spillFileLength;
+        spillFileLength += pageBytes;
+      }
+
+      ByteBuffer buffer = page.buffer;
+      buffer.clear();
+      while (buffer.hasRemaining())
+      {
+        spillChannel.write(buffer, page.spillOffset + buffer.position());
+      }
+    } catch (IOException e)
+    {
+      throw new UncheckedIOException("Unable to spill columns to " + spillFile, e);
+    }
+    release(page);
+  }
+
+  private void release(Page page)
+  {
+    ByteBuffer buffer = page.buffer;
+    page.buffer = null;
+    residentBytes.addAndGet(-pageBytes);
+    freePage(buffer);
+  }
+
+  // Keeps the buffer for reuse unless over the shared budget
+  private void freePage(ByteBuffer buffer)
+  {
+    if (directBytes.get() <= sharedBudget)
+    {
+      if (numFreePages.incrementAndGet() <= MAX_FREE_PAGES)
+      {
+        freePages.add(buffer);
+        return;
+      }
+      numFreePages.decrementAndGet();
+    }
+    directBytes.addAndGet(-pageBytes);
+  }
+
+  private void drainFreePages()
+  {
+    while (freePages.poll() != null)
+    {
+      numFreePages.decrementAndGet();
+      directBytes.addAndGet(-pageBytes);
+    }
+  }
+
+  // Called with the spill lock held
+  private void closeSpillFile()
+  {
+    if (spillChannel != null)
+    {
+      try
+      {
+        spillChannel.close();
+      } catch (IOException e)
+      {
+        logger.warn("Unable to close the column spill file " + spillFile, e);
+      }
+      if (!spillFile.delete())
+      {
+        logger.warn("Unable to delete the column spill file " + spillFile);
+      }
+      spillChannel = null;
+      spillFile = null;
+      spillFileLength = 0;
+    }
+  }
+}
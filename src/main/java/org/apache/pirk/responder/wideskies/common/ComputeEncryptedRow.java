@@ -18,29 +18,20 @@
  */
 package org.apache.pirk.responder.wideskies.common;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
 
-import org.apache.hadoop.fs.FileSystem;
-import org.apache.hadoop.fs.Path;
-import org.apache.pirk.encryption.ModPowAbstraction;
+import org.apache.pirk.encryption.spi.ModPowEngine;
 import org.apache.pirk.inputformat.hadoop.BytesArrayWritable;
 import org.apache.pirk.query.wideskies.Query;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import scala.Tuple2;
-import scala.Tuple3;
-
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
 
 /**
  * Class to compute the encrypted row elements for a query from extracted data partitions
@@ -49,64 +40,21 @@ public class ComputeEncryptedRow
 {
   private static final Logger logger = LoggerFactory.getLogger(ComputeEncryptedRow.class);
 
-  // Input: base, exponent, NSquared
-  // <<base,exponent,NSquared>, base^exponent mod N^2>
-  private static LoadingCache<Tuple3<BigInteger,BigInteger,BigInteger>,BigInteger> expCache = CacheBuilder.newBuilder().maximumSize(10000)
-      .build(new CacheLoader<Tuple3<BigInteger,BigInteger,BigInteger>,BigInteger>()
-      {
-        @Override
-        public BigInteger load(Tuple3<BigInteger,BigInteger,BigInteger> info) throws Exception
-        {
-          logger.debug("cache miss");
-          return ModPowAbstraction.modPow(info._1(), info._2(), info._3());
-        }
-      });
-
-  /**
-   * Populate the cache based on the pre-generated exp table in hdfs
-   */
-  public static void loadCacheFromHDFS(FileSystem fs, String hdfsFileName, Query query) throws IOException
-  {
-    logger.info("Loading cache from hdfsFileName = " + hdfsFileName);
-
-    Path expPath = new Path(hdfsFileName);
-    try (BufferedReader br = new BufferedReader(new InputStreamReader(fs.open(expPath))))
-    {
-      String line;
-      while ((line = br.readLine()) != null) // form: element_hash,<exponent>-<element^exponent mod N^2>
-      {
-        String[] rowValTokens = line.split(",");
-        BigInteger base = query.getQueryElement(Integer.parseInt(rowValTokens[0]));
-
-        String[] expMod = rowValTokens[1].split("-");
-        BigInteger exponent = new BigInteger(expMod[0]);
-        BigInteger value = new BigInteger(expMod[1]);
-
-        // Cache: <<base,exponent,NSquared>, base^exponent mod N^2>
-        Tuple3<BigInteger,BigInteger,BigInteger> key = new Tuple3<>(base, exponent, query.getNSquared());
-        expCache.put(key, value);
-      }
-    }
-  }
-
   /**
    * Method to compute the encrypted row elements for a query from extracted data partitions in the form of Iterable{@link <BytesArrayWritable>}
    * <p>
    * For each row (as indicated by key = hash(selector)), iterates over the dataPartitions and calculates the column values.
    * <p>
-   * Optionally uses a static LRU cache for the modular exponentiation
+   * Reads the modular exponentiations from the given hdfs expTable if not null; otherwise, uses the given row cache if not null or performs all of the modular
+   * exponentiations of the row with a single {@link ModPowEngine#modPowBatch} call of the given engine
    * <p>
    * Emits {@code Tuple2<<colNum, colVal>>}
    */
   public static List<Tuple2<Long,BigInteger>> computeEncRow(Iterable<BytesArrayWritable> dataPartitionsIter, Query query, int rowIndex,
-      boolean limitHitsPerSelector, int maxHitsPerSelector, boolean useCache) throws IOException
+      boolean limitHitsPerSelector, int maxHitsPerSelector, RowExpCache expCache, ModPowEngine modPowEngine, ExpTableFile expTableFile) throws IOException
   {
-    List<Tuple2<Long,BigInteger>> returnPairs = new ArrayList<>();
+    List<BigInteger> parts = new ArrayList<>();
 
-    // Pull the corresponding encrypted row query
-    BigInteger rowQuery = query.getQueryElement(rowIndex);
-
-    long colCounter = 0;
     int elementCounter = 0;
     for (BytesArrayWritable dataPartitions : dataPartitionsIter)
     {
@@ -119,37 +67,15 @@ public class ComputeEncryptedRow
           break;
         }
       }
-      logger.debug("dataPartitions.size() = {} rowIndex = {} colCounter = {}", dataPartitions.size(), rowIndex, colCounter);
+      logger.debug("dataPartitions.size() = {} rowIndex = {} colCounter = {}", dataPartitions.size(), rowIndex, parts.size());
 
-      // Update the associated column values
       for (int i = 0; i < dataPartitions.size(); ++i)
       {
-        BigInteger part = dataPartitions.getBigInteger(i);
-        BigInteger exp = null;
-        try
-        {
-          if (useCache)
-          {
-            exp = expCache.get(new Tuple3<>(rowQuery, part, query.getNSquared()));
-          }
-          else
-          {
-            exp = ModPowAbstraction.modPow(rowQuery, part, query.getNSquared());
-          }
-        } catch (ExecutionException e)
-        {
-          e.printStackTrace();
-        }
-        logger.debug("rowIndex = {} colCounter = {} part = {} part binary = {} exp = {} i = {} partition = {} = {}", rowIndex, colCounter, part.toString(),
-            part.toString(2), exp, i, dataPartitions.getBigInteger(i), dataPartitions.getBigInteger(i).toString(2));
-
-        returnPairs.add(new Tuple2<>(colCounter, exp));
-
-        ++colCounter;
+        parts.add(dataPartitions.getBigInteger(i));
       }
       ++elementCounter;
     }
-    return returnPairs;
+    return computeRowExps(parts, query, rowIndex, expCache, modPowEngine, expTableFile);
   }
 
   /**
@@ -157,24 +83,19 @@ public class ComputeEncryptedRow
    * <p>
    * For each row (as indicated by key = hash(selector)), iterates over the dataPartitions and calculates the column values.
    * <p>
-   * Optionally uses a static LRU cache for the modular exponentiation
+   * Reads the modular exponentiations from the given hdfs expTable if not null; otherwise, uses the given row cache if not null or performs all of the modular
+   * exponentiations of the row with a single {@link ModPowEngine#modPowBatch} call of the given engine
    * <p>
    * Emits {@code Tuple2<<colNum, colVal>>}
    */
   public static List<Tuple2<Long,BigInteger>> computeEncRowBI(Iterable<List<BigInteger>> dataPartitionsIter, Query query, int rowIndex,
-      boolean limitHitsPerSelector, int maxHitsPerSelector, boolean useCache) throws IOException
+      boolean limitHitsPerSelector, int maxHitsPerSelector, RowExpCache expCache, ModPowEngine modPowEngine, ExpTableFile expTableFile) throws IOException
   {
-    List<Tuple2<Long,BigInteger>> returnPairs = new ArrayList<>();
-
-    // Pull the corresponding encrypted row query
-    BigInteger rowQuery = query.getQueryElement(rowIndex);
+    List<BigInteger> parts = new ArrayList<>();
 
-    long colCounter = 0;
     int elementCounter = 0;
     for (List<BigInteger> dataPartitions : dataPartitionsIter)
     {
-      // long startTime = System.currentTimeMillis();
-
       logger.debug("rowIndex = {} elementCounter = {}", rowIndex, elementCounter);
 
       if (limitHitsPerSelector)
@@ -185,42 +106,55 @@ public class ComputeEncryptedRow
           break;
         }
       }
-      logger.debug("dataPartitions.size() = {} rowIndex = {} colCounter = {}", dataPartitions.size(), rowIndex, colCounter);
-      // Update the associated column values
-      for (int i = 0; i < dataPartitions.size(); ++i)
-      {
-        BigInteger part = dataPartitions.get(i);
-        BigInteger exp = null;
-        try
-        {
-          if (useCache)
-          {
-            exp = expCache.get(new Tuple3<>(rowQuery, part, query.getNSquared()));
-          }
-          else
-          {
-            exp = ModPowAbstraction.modPow(rowQuery, part, query.getNSquared());
-          }
-        } catch (ExecutionException e)
-        {
-          e.printStackTrace();
-        }
+      logger.debug("dataPartitions.size() = {} rowIndex = {} colCounter = {}", dataPartitions.size(), rowIndex, parts.size());
+
+      parts.addAll(dataPartitions);
+      ++elementCounter;
+    }
+    logger.debug("totalHits: rowIndex = " + rowIndex + " elementCounter = " + elementCounter);
 
-        logger.debug("rowIndex = {} colCounter = {} part = {} part binary = {} exp = {} i = {}", rowIndex, colCounter, part.toString(), part.toString(2), exp,
-            i);
+    return computeRowExps(parts, query, rowIndex, expCache, modPowEngine, expTableFile);
+  }
 
-        returnPairs.add(new Tuple2<>(colCounter, exp));
+  // Computes the pairs <colNum, (E_row)^{parts[colNum]} mod N^2> for the data partitions of a row
+  private static List<Tuple2<Long,BigInteger>> computeRowExps(List<BigInteger> parts, Query query, int rowIndex, RowExpCache expCache,
+      ModPowEngine modPowEngine, ExpTableFile expTableFile) throws IOException
+  {
+    List<Tuple2<Long,BigInteger>> returnPairs = new ArrayList<>(parts.size());
 
-        ++colCounter;
+    BigInteger[] exps;
+    if (expTableFile != null)
+    {
+      exps = new BigInteger[parts.size()];
+      for (int i = 0; i < exps.length; ++i)
+      {
+        exps[i] = expTableFile.getExp(rowIndex, parts.get(i).intValue());
       }
+    }
+    else if (expCache != null)
+    {
+      exps = new BigInteger[parts.size()];
+      for (int i = 0; i < exps.length; ++i)
+      {
+        exps[i] = expCache.getExp(rowIndex, parts.get(i).intValue());
+      }
+    }
+    else
+    {
+      // Pull the corresponding encrypted row query
+      BigInteger rowQuery = query.getQueryElement(rowIndex);
 
-      // long endTime = System.currentTimeMillis();
-      // logger.debug("Completed encrypting row data element = " + rowIndex + " duration = " + (endTime - startTime));
-
-      ++elementCounter;
+      BigInteger[] bases = new BigInteger[parts.size()];
+      Arrays.fill(bases, rowQuery);
+      exps = modPowEngine.modPowBatch(bases, parts.toArray(new BigInteger[parts.size()]), query.getNSquared());
     }
-    logger.debug("totalHits: rowIndex = " + rowIndex + " elementCounter = " + elementCounter);
 
+    for (int i = 0; i < exps.length; ++i)
+    {
+      logger.debug("rowIndex = {} colCounter = {} part = {} exp = {}", rowIndex, i, parts.get(i), exps[i]);
+
+      returnPairs.add(new Tuple2<>((long) i, exps[i]));
+    }
     return returnPairs;
   }
 
@@ -258,7 +192,7 @@ public class ComputeEncryptedRow
         BigInteger part = dataPartitions.get(i);
         BigInteger exp = cache.get(part.intValue());
 
-        logger.debug("rowIndex = {} colCounter = {} part = {} exp = {} i = {}", rowIndex, colCounter, part.toString(), exp, i);
+        logger.debug("rowIndex = {} colCounter = {} part = {} exp = {} i = {}", rowIndex, colCounter, part, exp, i);
 
         returnPairs.add(new Tuple2<>(colCounter, exp));
 
@@ -269,24 +203,105 @@ public class ComputeEncryptedRow
     return returnPairs;
   }
 
+  /**
+   * Method to compute the bucket engine entries for a row from extracted data partitions in the form of Iterable{@link <BytesArrayWritable>}
+   * <p>
+   * For each row (as indicated by key = hash(selector)), iterates over the dataPartitions and, in place of (E_row)^{part} mod N^2, emits the (rowIndex, part)
+   * pair packed via {@link BucketColumnEngine#packEntry(int, BigInteger)} -- the exponentiation is folded into the column multiplication
+   * <p>
+   * Emits {@code Tuple2<<colNum, packedEntry>>}
+   */
+  public static List<Tuple2<Long,BigInteger>> computeBucketEntries(Iterable<BytesArrayWritable> dataPartitionsIter, int rowIndex, boolean limitHitsPerSelector,
+      int maxHitsPerSelector) throws IOException
+  {
+    List<Tuple2<Long,BigInteger>> returnPairs = new ArrayList<>();
+
+    long colCounter = 0;
+    int elementCounter = 0;
+    for (BytesArrayWritable dataPartitions : dataPartitionsIter)
+    {
+      if (limitHitsPerSelector && elementCounter >= maxHitsPerSelector)
+      {
+        break;
+      }
+      for (int i = 0; i < dataPartitions.size(); ++i)
+      {
+        returnPairs.add(new Tuple2<>(colCounter, BucketColumnEngine.packEntry(rowIndex, dataPartitions.getBigInteger(i))));
+        ++colCounter;
+      }
+      ++elementCounter;
+    }
+    logger.debug("rowIndex = {} elementCounter = {} colCounter = {}", rowIndex, elementCounter, colCounter);
+
+    return returnPairs;
+  }
+
+  /**
+   * Method to compute the bucket engine entries for a row from extracted data partitions in the form of Iterable{@link List<BigInteger>}
+   * <p>
+   * See {@link #computeBucketEntries(Iterable, int, boolean, int)}
+   * <p>
+   * Emits {@code Tuple2<<colNum, packedEntry>>}
+   */
+  public static List<Tuple2<Long,BigInteger>> computeBucketEntriesBI(Iterable<List<BigInteger>> dataPartitionsIter, int rowIndex, boolean limitHitsPerSelector,
+      int maxHitsPerSelector)
+  {
+    List<Tuple2<Long,BigInteger>> returnPairs = new ArrayList<>();
+
+    long colCounter = 0;
+    int elementCounter = 0;
+    for (List<BigInteger> dataPartitions : dataPartitionsIter)
+    {
+      if (limitHitsPerSelector && elementCounter >= maxHitsPerSelector)
+      {
+        break;
+      }
+      returnPairs.addAll(computeBucketEntries(dataPartitions, rowIndex, colCounter));
+      colCounter += dataPartitions.size();
+      ++elementCounter;
+    }
+    logger.debug("rowIndex = {} elementCounter = {} colCounter = {}", rowIndex, elementCounter, colCounter);
+
+    return returnPairs;
+  }
+
+  /**
+   * Method to compute the bucket engine entries for a row from extracted data partitions in the form of ArrayList<<BigInteger>>
+   * <p>
+   * Caller is responsible for keeping track of the colIndex and the the maxHitsPerSelector values
+   * <p>
+   * Emits {@code Tuple2<<colNum, packedEntry>>}
+   */
+  public static List<Tuple2<Long,BigInteger>> computeBucketEntries(List<BigInteger> dataPartitions, int rowIndex, long colIndex)
+  {
+    List<Tuple2<Long,BigInteger>> returnPairs = new ArrayList<>();
+
+    long colCounter = colIndex;
+    for (BigInteger part : dataPartitions)
+    {
+      returnPairs.add(new Tuple2<>(colCounter, BucketColumnEngine.packEntry(rowIndex, part)));
+      ++colCounter;
+    }
+
+    return returnPairs;
+  }
+
   /**
    * Method to compute the encrypted row elements for a query from extracted data partitions in the form of BytesArrayWritable
    * <p>
    * For each row (as indicated by key = hash(selector)), iterates over the dataPartitions and calculates the column values.
    * <p>
-   * Uses a static LRU cache for the modular exponentiation
+   * Uses the given row cache for the modular exponentiation
    * <p>
    * Caller is responsible for keeping track of the colIndex and the the maxHitsPerSelector values
    * <p>
    * Emits {@code Tuple2<<colNum, colVal>>}
    */
-  public static List<Tuple2<Long,BigInteger>> computeEncRow(BytesArrayWritable dataPartitions, Query query, int rowIndex, int colIndex) throws IOException
+  public static List<Tuple2<Long,BigInteger>> computeEncRow(BytesArrayWritable dataPartitions, RowExpCache expCache, int rowIndex, int colIndex)
+      throws IOException
   {
     List<Tuple2<Long,BigInteger>> returnPairs = new ArrayList<>();
 
-    // Pull the corresponding encrypted row query
-    BigInteger rowQuery = query.getQueryElement(rowIndex);
-
     // Initialize the column counter
     long colCounter = colIndex;
 
@@ -296,19 +311,13 @@ public class ComputeEncryptedRow
     for (int i = 0; i < dataPartitions.size(); ++i)
     {
       BigInteger part = dataPartitions.getBigInteger(i);
+      BigInteger exp = expCache.getExp(rowIndex, part.intValue());
 
-      BigInteger exp = null;
-      try
+      if (logger.isDebugEnabled())
       {
-        exp = expCache.get(new Tuple3<>(rowQuery, part, query.getNSquared()));
-      } catch (ExecutionException e)
-      {
-        e.printStackTrace();
+        logger.debug("rowIndex = {} colCounter = {} part = {} part binary = {} exp = {} i = {}", rowIndex, colCounter, part, part.toString(2), exp, i);
       }
 
-      logger.debug("rowIndex = {} colCounter = {} part = {} part binary = {} exp = {} i = {} partition = {} = {}", rowIndex, colCounter, part.toString(),
-          part.toString(2), exp, i, dataPartitions.getBigInteger(i), dataPartitions.getBigInteger(i).toString(2));
-
       returnPairs.add(new Tuple2<>(colCounter, exp));
 
       ++colCounter;
@@ -322,42 +331,33 @@ public class ComputeEncryptedRow
    * <p>
    * For each row (as indicated by key = hash(selector)), iterates over the dataPartitions and calculates the column values.
    * <p>
-   * Uses a static LRU cache for the modular exponentiation
+   * Uses the given row cache for the modular exponentiation
    * <p>
    * Caller is responsible for keeping track of the colIndex and the the maxHitsPerSelector values
    * <p>
    * Emits {@code Tuple2<<colNum, colVal>>}
    */
-  public static List<Tuple2<Long,BigInteger>> computeEncRow(List<BigInteger> dataPartitions, Query query, int rowIndex, int colIndex) throws IOException
+  public static List<Tuple2<Long,BigInteger>> computeEncRow(List<BigInteger> dataPartitions, RowExpCache expCache, int rowIndex, int colIndex)
+      throws IOException
   {
     List<Tuple2<Long,BigInteger>> returnPairs = new ArrayList<>();
 
-    // Pull the corresponding encrypted row query
-    BigInteger rowQuery = query.getQueryElement(rowIndex);
-
     // Initialize the column counter
     long colCounter = colIndex;
 
-    logger.debug("dataPartitions.size() = {} rowIndex = {} colCounter = {}", dataPartitions, rowIndex, colCounter);
+    logger.debug("dataPartitions.size() = {} rowIndex = {} colCounter = {}", dataPartitions.size(), rowIndex, colCounter);
 
     // Update the associated column values
     for (int i = 0; i < dataPartitions.size(); ++i)
     {
       BigInteger part = dataPartitions.get(i);
+      BigInteger exp = expCache.getExp(rowIndex, part.intValue());
 
-      BigInteger exp;
-      try
-      {
-        exp = expCache.get(new Tuple3<>(rowQuery, part, query.getNSquared()));
-      } catch (ExecutionException e)
+      if (logger.isDebugEnabled())
       {
-        e.printStackTrace();
-        break;
+        logger.debug("rowIndex = {} colCounter = {} part = {} part binary = {} exp = {} i = {}", rowIndex, colCounter, part, part.toString(2), exp, i);
       }
 
-      logger.debug("rowIndex = {} colCounter = {} part = {} part binary = {} exp = {} i = {} partition = {} = {}", rowIndex, colCounter, part.toString(),
-          part.toString(2), exp, i, dataPartitions.get(i), dataPartitions.get(i).toString(2));
-
       returnPairs.add(new Tuple2<>(colCounter, exp));
 
       ++colCounter;
@@ -366,29 +366,12 @@ public class ComputeEncryptedRow
     return returnPairs;
   }
 
-  public static List<Tuple2<Long,BigInteger>> computeEncRow(BigInteger part, Query query, int rowIndex, int colIndex) throws IOException
+  public static List<Tuple2<Long,BigInteger>> computeEncRow(BigInteger part, RowExpCache expCache, int rowIndex, int colIndex) throws IOException
   {
     List<Tuple2<Long,BigInteger>> returnPairs = new ArrayList<>();
 
-    // Pull the corresponding encrypted row query
-    BigInteger rowQuery = query.getQueryElement(rowIndex);
-
-    // Initialize the column counter
-    long colCounter = colIndex;
-
-    // Update the associated column values
-    BigInteger exp = null;
-    try
-    {
-      exp = expCache.get(new Tuple3<>(rowQuery, part, query.getNSquared()));
-    } catch (ExecutionException e)
-    {
-      e.printStackTrace();
-    }
-
-    returnPairs.add(new Tuple2<>(colCounter, exp));
-
-    ++colCounter;
+    // Update the associated column value
+    returnPairs.add(new Tuple2<>((long) colIndex, expCache.getExp(rowIndex, part.intValue())));
 
     return returnPairs;
   }
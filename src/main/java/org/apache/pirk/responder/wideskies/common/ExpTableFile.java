@@ -0,0 +1,215 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pirk.responder.wideskies.common;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.pirk.query.wideskies.ExpTable;
+import org.apache.pirk.query.wideskies.Query;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Binary lookup table in hdfs for the modular exponentiation of the query vectors
+ * <p>
+ * Each file holds a contiguous range of rows and is written by a single writer, without any shuffle. The file format is: the magic number {@link #MAGIC}, the
+ * first row, the number of rows, the number of powers, the value byte length, a per-row index of file offsets (-1 for rows without a query element), and then
+ * for each row the values (element^power mod N^2) for power in [0, 2^dataPartitionBitSize) as fixed-width unsigned big-endian integers.
+ * <p>
+ * {@link #getExp(int, int)} reads exactly the requested value with a positioned read; the file headers are read once per file
+ */
+public class ExpTableFile
+{
+  private static final Logger logger = LoggerFactory.getLogger(ExpTableFile.class);
+
+  public static final int MAGIC = 0x50455431; // "PET1"
+
+  private static final String FILE_PREFIX = "exptable-";
+
+  private final FileSystem fs;
+  private final Query query;
+
+  private final Map<String,RowRange> rowRanges = new HashMap<>();
+
+  public ExpTableFile(FileSystem fsInput, Query queryInput)
+  {
+    fs = fsInput;
+    query = queryInput;
+  }
+
+  /**
+   * Returns the number of rows per file when splitting numRows rows into (at most) numFiles files
+   */
+  public static int getRowsPerFile(int numRows, int numFiles)
+  {
+    return Math.max(1, (numRows + numFiles - 1) / numFiles);
+  }
+
+  /**
+   * Returns the name of the file holding the rows starting at startRow
+   */
+  public static String getFileName(String dir, int startRow)
+  {
+    return dir + "/" + FILE_PREFIX + startRow;
+  }
+
+  /**
+   * Returns the row -> file mapping of the files written for all rows of the query with the given number of rows per file
+   */
+  public static Map<Integer,String> getExpFileBasedLookup(String dir, int numRows, int rowsPerFile)
+  {
+    Map<Integer,String> expFileBasedLookup = new HashMap<>();
+    for (int row = 0; row < numRows; ++row)
+    {
+      expFileBasedLookup.put(row, getFileName(dir, row - row % rowsPerFile));
+    }
+    return expFileBasedLookup;
+  }
+
+  /**
+   * Computes the rows [startRow, endRow) of the table and writes them to their file in the given directory
+   */
+  public static void write(Query query, int startRow, int endRow, FileSystem fs, String dir) throws IOException
+  {
+    ExpTable expTable = query.getExpTable(); // one per query, shared by the row ranges; rows are computed without being held
+    int numRows = endRow - startRow;
+    int rowByteLength = expTable.getNumPowers() * expTable.getValueByteLength();
+
+    // Offsets of the rows with a query element, in row order after the header
+    long[] offsets = new long[numRows];
+    long offset = 20L + 8L * numRows;
+    for (int i = 0; i < numRows; ++i)
+    {
+      if (query.getQueryElement(startRow + i) == null)
+      {
+        offsets[i] = -1;
+      }
+      else
+      {
+        offsets[i] = offset;
+        offset += rowByteLength;
+      }
+    }
+
+    String fileName = getFileName(dir, startRow);
+    try (DataOutputStream dos = new DataOutputStream(fs.create(new Path(fileName), true)))
+    {
+      dos.writeInt(MAGIC);
+      dos.writeInt(startRow);
+      dos.writeInt(numRows);
+      dos.writeInt(expTable.getNumPowers());
+      dos.writeInt(expTable.getValueByteLength());
+      for (long rowOffset : offsets)
+      {
+        dos.writeLong(rowOffset);
+      }
+      for (int i = 0; i < numRows; ++i)
+      {
+        if (offsets[i] != -1)
+        {
+          dos.write(expTable.computeRow(query.getQueryElement(startRow + i)));
+        }
+      }
+    }
+    logger.info("Wrote the expTable rows " + startRow + " to " + endRow + " to " + fileName);
+  }
+
+  /**
+   * Returns (element^power mod N^2) for the query element of the given row, read from the file of the row in the query's expFileBasedLookup
+   */
+  public BigInteger getExp(int rowIndex, int power) throws IOException
+  {
+    return getRowRange(query.getExpFile(rowIndex)).getExp(rowIndex, power);
+  }
+
+  /**
+   * Closes all open files
+   */
+  public synchronized void close() throws IOException
+  {
+    for (RowRange rowRange : rowRanges.values())
+    {
+      rowRange.in.close();
+    }
+    rowRanges.clear();
+  }
+
+  private synchronized RowRange getRowRange(String fileName) throws IOException
+  {
+    RowRange rowRange = rowRanges.get(fileName);
+    if (rowRange == null)
+    {
+      rowRange = new RowRange(fs.open(new Path(fileName)), fileName);
+      rowRanges.put(fileName, rowRange);
+    }
+    return rowRange;
+  }
+
+  // An open file of the table along with its header
+  private static class RowRange
+  {
+    private final FSDataInputStream in;
+
+    private final int startRow;
+    private final int numPowers;
+    private final int valueByteLength;
+    private final long[] offsets;
+
+    RowRange(FSDataInputStream inInput, String fileName) throws IOException
+    {
+      in = inInput;
+
+      DataInputStream dis = new DataInputStream(in);
+      if (dis.readInt() != MAGIC)
+      {
+        in.close();
+        throw new IOException("File " + fileName + " is not an expTable file");
+      }
+      startRow = dis.readInt();
+      offsets = new long[dis.readInt()];
+      numPowers = dis.readInt();
+      valueByteLength = dis.readInt();
+      for (int i = 0; i < offsets.length; ++i)
+      {
+        offsets[i] = dis.readLong();
+      }
+    }
+
+    BigInteger getExp(int rowIndex, int power) throws IOException
+    {
+      int i = rowIndex - startRow;
+      if (i < 0 || i >= offsets.length || offsets[i] == -1 || power < 0 || power >= numPowers)
+      {
+        throw new IllegalArgumentException("rowIndex = " + rowIndex + " power = " + power + " is not in the expTable file");
+      }
+      byte[] value = new byte[valueByteLength];
+      in.readFully(offsets[i] + (long) power * valueByteLength, value);
+
+      return new BigInteger(1, value);
+    }
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pirk.responder.wideskies.common;
+
+import java.math.BigInteger;
+import java.util.TreeMap;
+
+import org.apache.pirk.encryption.spi.ModPowEngine;
+import org.apache.pirk.query.wideskies.Query;
+import org.apache.pirk.query.wideskies.QueryInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Column engine that performs one modular exponentiation per data partition and multiplies the result into the column
+ * <p>
+ * Y_c = (Y_c * ((E_row)^{part} mod N^2)) mod N^2
+ * <p>
+ * The column products are kept off-heap in a {@link ColumnStore}, configured by the pir.columnStoreMemoryMB and pir.columnStoreSpillDir properties;
+ * {@link #insertDataPart(long, int, BigInteger)} may be called concurrently
+ * <p>
+ * Uses the expLookupTable contained in the Query object, if present
+ */
+public class ModPowColumnEngine extends ColumnEngine
+{
+  private static final Logger logger = LoggerFactory.getLogger(ModPowColumnEngine.class);
+
+  private boolean useExpLookupTable = false;
+
+  private ColumnStore columns = null;
+
+  public ModPowColumnEngine(Query queryInput, ModPowEngine modPowEngineInput)
+  {
+    super(queryInput, modPowEngineInput);
+
+    QueryInfo queryInfo = query.getQueryInfo();
+    useExpLookupTable = queryInfo.useExpLookupTable() && !queryInfo.useHDFSExpLookupTable();
+
+    columns = ColumnStore.fromConfiguration(NSquared);
+  }
+
+  @Override
+  public boolean isThreadSafe()
+  {
+    return true;
+  }
+
+  @Override
+  public void insertDataPart(long col, int rowIndex, BigInteger part)
+  {
+    // (E_row)^0 = 1 -- nothing to multiply in
+    if (part.signum() == 0)
+    {
+      columns.multiply(col, null);
+    }
+    else
+    {
+      BigInteger rowQuery = query.getQueryElement(rowIndex);
+
+      BigInteger exp;
+      if (useExpLookupTable)
+      {
+        exp = query.getExp(rowIndex, part.intValue());
+      }
+      else
+      {
+        exp = modPowEngine.modPow(rowQuery, part, NSquared);
+      }
+      columns.multiply(col, exp);
+
+      logger.debug("col = {} rowIndex = {} part = {} exp = {}", col, rowIndex, part, exp);
+    }
+  }
+
+  @Override
+  public BigInteger computeColumn(long col)
+  {
+    BigInteger column = columns.remove(col);
+
+    return (column == null) ? BigInteger.ONE : column;
+  }
+
+  @Override
+  public TreeMap<Long,BigInteger> computeColumns()
+  {
+    TreeMap<Long,BigInteger> result = new TreeMap<>();
+    columns.forEach(result::put);
+    columns.clear();
+
+    return result;
+  }
+}
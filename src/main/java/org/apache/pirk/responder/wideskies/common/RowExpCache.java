@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pirk.responder.wideskies.common;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.pirk.encryption.spi.ModPowEngine;
+import org.apache.pirk.query.wideskies.Query;
+
+/**
+ * Cache of the modular exponentiations (E_row)^part mod N^2 for the data partitions of a single row
+ * <p>
+ * The values are held in 2^dataPartitionBitSize slots indexed by the int value of the partition and are computed on first use; moving to another row
+ * invalidates all slots in constant time. Meant to be held by a reducer, partition or bolt and reused while it processes a row -- not thread-safe.
+ */
+public class RowExpCache
+{
+  // Above this partition bit size the slots are kept in a map rather than an array
+  static final int MAX_SLOT_BITS = 16;
+
+  private final Query query;
+  private final ModPowEngine modPowEngine;
+
+  private final BigInteger[] slots;
+  private final int[] slotGenerations;
+  private final Map<Integer,BigInteger> slotMap;
+
+  private int generation = 0;
+  private int rowIndex = -1;
+  private BigInteger rowQuery = null;
+
+  public RowExpCache(Query queryInput, ModPowEngine modPowEngineInput)
+  {
+    query = queryInput;
+    modPowEngine = modPowEngineInput;
+
+    int dataPartitionBitSize = query.getQueryInfo().getDataPartitionBitSize();
+    if (dataPartitionBitSize <= MAX_SLOT_BITS)
+    {
+      slots = new BigInteger[1 << dataPartitionBitSize];
+      slotGenerations = new int[slots.length];
+      slotMap = null;
+    }
+    else
+    {
+      slots = null;
+      slotGenerations = null;
+      slotMap = new HashMap<>();
+    }
+  }
+
+  /**
+   * Returns (E_row)^part mod N^2 for the query element of the given row
+   */
+  public BigInteger getExp(int row, int part)
+  {
+    if (row != rowIndex || rowQuery == null)
+    {
+      setRow(row);
+    }
+
+    if (slots == null)
+    {
+      BigInteger exp = slotMap.get(part);
+      if (exp == null)
+      {
+        exp = modPowEngine.modPow(rowQuery, BigInteger.valueOf(part), query.getNSquared());
+        slotMap.put(part, exp);
+      }
+      return exp;
+    }
+
+    if (slotGenerations[part] != generation)
+    {
+      slots[part] = modPowEngine.modPow(rowQuery, BigInteger.valueOf(part), query.getNSquared());
+      slotGenerations[part] = generation;
+    }
+    return slots[part];
+  }
+
+  /**
+   * Returns the row of the cached values, or -1 if none
+   */
+  public int getRowIndex()
+  {
+    return rowIndex;
+  }
+
+  private void setRow(int row)
+  {
+    rowIndex = row;
+    rowQuery = query.getQueryElement(row);
+
+    if (slots == null)
+    {
+      slotMap.clear();
+    }
+    else if (++generation == 0)
+    {
+      // The generation counter wrapped -- clear the stale stamps so that they cannot match again
+      Arrays.fill(slotGenerations, 0);
+      generation = 1;
+    }
+  }
+}
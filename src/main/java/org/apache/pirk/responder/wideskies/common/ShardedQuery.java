@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pirk.responder.wideskies.common;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.pirk.query.wideskies.Query;
+import org.apache.pirk.serialization.HadoopFileSystemStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Query that is split by row range into shards stored in a (HDFS or local) directory and loads each shard on first use
+ * <p>
+ * Shard s holds the rows [s * rowsPerShard, (s + 1) * rowsPerShard), re-indexed from 0 (see {@link Query#getRows(int, int)}); the directory also holds the
+ * query without any rows, from which the QueryInfo and modulus are read. When the rows are range partitioned over the tasks of a responder with
+ * {@link #getPartition(int, int, int, int)}, each task only loads the shards of its own rows.
+ * <p>
+ * Serialized instances carry only the location of the shards.
+ */
+public class ShardedQuery extends Query
+{
+  private static final long serialVersionUID = 1L;
+
+  private static final Logger logger = LoggerFactory.getLogger(ShardedQuery.class);
+
+  public static final String SHARD_DIR_SUFFIX = "_shards";
+
+  private static final String META_FILE = "meta";
+  private static final String SHARD_PREFIX = "shard-";
+
+  private final String fsUri; // null for the default file system
+  private final String shardDir;
+  private final int numRows;
+  private final int rowsPerShard;
+
+  private transient Map<Integer,Query> shards = null;
+
+  private ShardedQuery(Query meta, String fsUriInput, String shardDirInput, int numRowsInput, int rowsPerShardInput)
+  {
+    super(meta.getQueryInfo(), meta.getN(), meta.getNSquared(), null);
+
+    fsUri = fsUriInput;
+    shardDir = shardDirInput;
+    numRows = numRowsInput;
+    rowsPerShard = rowsPerShardInput;
+  }
+
+  /**
+   * Returns the number of rows per shard when splitting numRows rows into (at most) numShards shards
+   */
+  public static int getRowsPerShard(int numRows, int numShards)
+  {
+    return Math.max(1, (numRows + numShards - 1) / numShards);
+  }
+
+  /**
+   * Returns the shard holding the given row
+   */
+  public static int getShard(int rowIndex, int rowsPerShard)
+  {
+    return rowIndex / rowsPerShard;
+  }
+
+  /**
+   * Returns the partition, out of numPartitions, of the given row such that the shards are spread evenly over the partitions and each shard belongs to
+   * exactly one partition
+   */
+  public static int getPartition(int rowIndex, int rowsPerShard, int numShards, int numPartitions)
+  {
+    return (int) ((long) getShard(rowIndex, rowsPerShard) * numPartitions / numShards);
+  }
+
+  /**
+   * Returns the number of shards for the given query size
+   */
+  public static int getNumShards(int numRows, int rowsPerShard)
+  {
+    return (numRows + rowsPerShard - 1) / rowsPerShard;
+  }
+
+  /**
+   * Splits the given query into (at most) numShards shards by row range and stores them in the given directory
+   *
+   * @return the number of rows per shard
+   */
+  public static int writeShards(Query query, int numShards, FileSystem fs, String shardDir) throws IOException
+  {
+    int numRows = 1 << query.getQueryInfo().getHashBitSize();
+    int rowsPerShard = getRowsPerShard(numRows, numShards);
+
+    Path dir = new Path(shardDir);
+    if (fs.exists(dir))
+    {
+      fs.delete(dir, true);
+    }
+    fs.mkdirs(dir);
+
+    HadoopFileSystemStore store = new HadoopFileSystemStore(fs);
+    store.store(new Path(dir, META_FILE), query.getRows(0, 0));
+    for (int shard = 0; shard < getNumShards(numRows, rowsPerShard); ++shard)
+    {
+      int start = shard * rowsPerShard;
+      store.store(new Path(dir, SHARD_PREFIX + shard), query.getRows(start, Math.min(numRows, start + rowsPerShard)));
+    }
+    logger.info("Wrote " + getNumShards(numRows, rowsPerShard) + " query shards of " + rowsPerShard + " rows to " + shardDir);
+
+    return rowsPerShard;
+  }
+
+  /**
+   * Opens the query shards written with {@link #writeShards(Query, int, FileSystem, String)}; only the query without any rows is read
+   *
+   * @param fsUri
+   *          the URI of the file system holding the shards, or null for the default file system
+   */
+  public static ShardedQuery open(String fsUri, String shardDir, int rowsPerShard) throws IOException
+  {
+    Query meta = new HadoopFileSystemStore(getFileSystem(fsUri)).recall(new Path(shardDir, META_FILE), Query.class);
+    int numRows = 1 << meta.getQueryInfo().getHashBitSize();
+
+    return new ShardedQuery(meta, fsUri, shardDir, numRows, rowsPerShard);
+  }
+
+  @Override
+  public BigInteger getQueryElement(int index)
+  {
+    if (index < 0 || index >= numRows)
+    {
+      return null;
+    }
+    return getShardQuery(getShard(index, rowsPerShard)).getQueryElement(index % rowsPerShard);
+  }
+
+  @Override
+  public String getExpFile(int i)
+  {
+    return getShardQuery(getShard(i, rowsPerShard)).getExpFile(i % rowsPerShard);
+  }
+
+  @Override
+  public BigInteger getExp(int rowIndex, int power)
+  {
+    return getShardQuery(getShard(rowIndex, rowsPerShard)).getExp(rowIndex % rowsPerShard, power);
+  }
+
+  /**
+   * Returns a copy of all of the query elements; loads all of the shards
+   */
+  @Override
+  public SortedMap<Integer,BigInteger> getQueryElements()
+  {
+    SortedMap<Integer,BigInteger> queryElements = new TreeMap<>();
+    for (int i = 0; i < numRows; ++i)
+    {
+      queryElements.put(i, getQueryElement(i));
+    }
+    return queryElements;
+  }
+
+  /**
+   * Returns a copy of the expFileBasedLookup of all of the rows; loads all of the shards
+   */
+  @Override
+  public Map<Integer,String> getExpFileBasedLookup()
+  {
+    Map<Integer,String> expFileBasedLookup = new HashMap<>();
+    for (int i = 0; i < numRows; ++i)
+    {
+      String expFile = getExpFile(i);
+      if (expFile != null)
+      {
+        expFileBasedLookup.put(i, expFile);
+      }
+    }
+    return expFileBasedLookup;
+  }
+
+  @Override
+  public int getNumRows()
+  {
+    return numRows;
+  }
+
+  public int getRowsPerShard()
+  {
+    return rowsPerShard;
+  }
+
+  /**
+   * Returns the number of shards loaded so far
+   */
+  public int getNumLoadedShards()
+  {
+    return shards().size();
+  }
+
+  private synchronized Map<Integer,Query> shards()
+  {
+    if (shards == null)
+    {
+      shards = new ConcurrentHashMap<>();
+    }
+    return shards;
+  }
+
+  private Query getShardQuery(int shard)
+  {
+    return shards().computeIfAbsent(shard, s -> {
+      logger.info("Loading query shard " + s + " from " + shardDir);
+      try
+      {
+        return new HadoopFileSystemStore(getFileSystem(fsUri)).recall(new Path(shardDir, SHARD_PREFIX + s), Query.class);
+      } catch (IOException e)
+      {
+        throw new RuntimeException("Unable to load query shard " + s + " from " + shardDir, e);
+      }
+    });
+  }
+
+  private static FileSystem getFileSystem(String fsUri) throws IOException
+  {
+    return (fsUri == null) ? FileSystem.get(new Configuration()) : FileSystem.get(URI.create(fsUri), new Configuration());
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pirk.responder.wideskies.mapreduce;
+
+import java.io.IOException;
+import java.math.BigInteger;
+
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.pirk.encryption.MontgomeryAccumulator;
+import org.apache.pirk.inputformat.hadoop.CiphertextWritable;
+
+/**
+ * Combiner for encrypted column multiplication
+ * <p>
+ * Multiplies the column values of a map task (mod N^2) and emits one partial product per column; as the multiplication is associative and commutative, the
+ * ColumnMultReducer computes the same columns from the partial products
+ * <p>
+ * Not used with the bucket column engine, whose column values are packed (rowIndex, part) pairs rather than ciphertexts
+ */
+public class ColumnMultCombiner extends Reducer<LongWritable,CiphertextWritable,LongWritable,CiphertextWritable>
+{
+  private CiphertextWritable outputValue = null;
+  private int outputWidth = 0;
+  private MontgomeryAccumulator columnAccumulator = null; // reused across columns
+
+  @Override
+  public void setup(Context ctx) throws IOException, InterruptedException
+  {
+    super.setup(ctx);
+
+    BigInteger nSquared = new BigInteger(ctx.getConfiguration().get(ColumnMultMapper.N_SQUARED));
+    outputValue = new CiphertextWritable();
+    outputWidth = CiphertextWritable.getByteWidth(nSquared);
+    columnAccumulator = new MontgomeryAccumulator(nSquared);
+  }
+
+  @Override
+  public void reduce(LongWritable colNum, Iterable<CiphertextWritable> colVals, Context ctx) throws IOException, InterruptedException
+  {
+    columnAccumulator.reset();
+    for (CiphertextWritable val : colVals)
+    {
+      columnAccumulator.multiply(val.get());
+    }
+    outputValue.set(columnAccumulator.getValue(), outputWidth);
+    ctx.write(colNum, outputValue);
+  }
+}
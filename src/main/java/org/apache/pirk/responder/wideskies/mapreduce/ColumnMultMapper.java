@@ -19,44 +19,125 @@
 package org.apache.pirk.responder.wideskies.mapreduce;
 
 import java.io.IOException;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
 
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.LongWritable;
-import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Mapper;
-import org.apache.pirk.utils.CSVOutputUtils;
+import org.apache.pirk.encryption.Montgomery;
+import org.apache.pirk.encryption.MontgomeryAccumulator;
+import org.apache.pirk.inputformat.hadoop.CiphertextWritable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Pass through mapper for encrypted column multiplication
+ * Mapper for encrypted column multiplication
+ * <p>
+ * Reads the {@code <colNum, colVal>} SequenceFiles written by the previous job and passes them through, unless in-mapper combining is enabled: then the
+ * values are multiplied (mod N^2) into a bounded map of partial column products, which is emitted and cleared when it reaches its memory budget, when the
+ * heap runs low, and at the end of the task
  *
  */
-public class ColumnMultMapper extends Mapper<LongWritable,Text,LongWritable,Text>
+public class ColumnMultMapper extends Mapper<LongWritable,CiphertextWritable,LongWritable,CiphertextWritable>
 {
   private static final Logger logger = LoggerFactory.getLogger(ColumnMultMapper.class);
 
+  public static final String N_SQUARED = "pirMR.nSquared";
+  public static final String IN_MAPPER_COMBINING = "pirMR.colMultInMapperCombining";
+  public static final String MAPPER_MEMORY_MB = "pirMR.colMultMapperMemoryMB";
+
+  public static final long DEFAULT_MAPPER_MEMORY_MB = 128;
+
+  private static final int ENTRY_OVERHEAD_BYTES = 96; // map entry, boxed key, and accumulator object and array headers
+  private static final int HEAP_CHECK_INTERVAL = 1024; // records between checks of the free heap
+  private static final double MIN_FREE_HEAP_FRACTION = 0.1;
+
+  private Map<Long,MontgomeryAccumulator> partialColumns = null; // null if not combining in the mapper
+  private Montgomery montgomery = null;
+  private int maxColumns = 0;
+  private long numRecords = 0;
+
   private LongWritable keyOut = null;
-  private Text valueOut = null;
+  private CiphertextWritable valueOut = null;
+  private int valueWidth = 0;
 
   @Override
   public void setup(Context ctx) throws IOException, InterruptedException
   {
     super.setup(ctx);
 
-    keyOut = new LongWritable();
-    valueOut = new Text();
+    Configuration conf = ctx.getConfiguration();
+    if (conf.getBoolean(IN_MAPPER_COMBINING, false))
+    {
+      BigInteger nSquared = new BigInteger(conf.get(N_SQUARED));
+      montgomery = new Montgomery(nSquared);
+      valueWidth = CiphertextWritable.getByteWidth(nSquared);
+
+      long entryBytes = MontgomeryAccumulator.getStateByteLength(montgomery) + ENTRY_OVERHEAD_BYTES;
+      maxColumns = (int) Math.max(1, Math.min(Integer.MAX_VALUE, (conf.getLong(MAPPER_MEMORY_MB, DEFAULT_MAPPER_MEMORY_MB) << 20) / entryBytes));
+
+      partialColumns = new HashMap<>();
+      keyOut = new LongWritable();
+      valueOut = new CiphertextWritable();
+      logger.info("In-mapper combining of up to " + maxColumns + " columns");
+    }
+  }
+
+  @Override
+  public void map(LongWritable colNum, CiphertextWritable colVal, Context ctx) throws IOException, InterruptedException
+  {
+    if (partialColumns == null)
+    {
+      ctx.write(colNum, colVal);
+      return;
+    }
+
+    MontgomeryAccumulator column = partialColumns.get(colNum.get());
+    if (column == null)
+    {
+      if (partialColumns.size() >= maxColumns)
+      {
+        flush(ctx);
+      }
+      column = new MontgomeryAccumulator(montgomery);
+      partialColumns.put(colNum.get(), column);
+    }
+    column.multiply(colVal.get());
+
+    if (++numRecords % HEAP_CHECK_INTERVAL == 0 && isHeapLow())
+    {
+      logger.info("Low heap, flushing " + partialColumns.size() + " partial columns");
+      flush(ctx);
+    }
   }
 
   @Override
-  public void map(LongWritable key, Text value, Context ctx) throws IOException, InterruptedException
+  public void cleanup(Context ctx) throws IOException, InterruptedException
   {
-    logger.debug("key = " + key.toString() + " value = " + value.toString());
+    if (partialColumns != null)
+    {
+      flush(ctx);
+    }
+  }
 
-    String tokens[] = CSVOutputUtils.extractCSVOutput(value);
-    logger.debug("value = " + value.toString() + " tokens[0] = " + tokens[0] + " tokens[1] = " + tokens[1]);
+  // Emits and clears the partial column products
+  private void flush(Context ctx) throws IOException, InterruptedException
+  {
+    for (Map.Entry<Long,MontgomeryAccumulator> entry : partialColumns.entrySet())
+    {
+      keyOut.set(entry.getKey());
+      valueOut.set(entry.getValue().getValue(), valueWidth);
+      ctx.write(keyOut, valueOut);
+    }
+    partialColumns.clear();
+  }
 
-    keyOut.set(Integer.parseInt(tokens[0])); // colNum
-    valueOut.set(tokens[1]); // colValue
-    ctx.write(keyOut, valueOut);
+  private static boolean isHeapLow()
+  {
+    Runtime runtime = Runtime.getRuntime();
+    long free = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+    return free < runtime.maxMemory() * MIN_FREE_HEAP_FRACTION;
   }
 }
@@ -23,56 +23,90 @@ import java.math.BigInteger;
 
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.io.LongWritable;
-import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.pirk.encryption.ModPowAbstraction;
+import org.apache.pirk.encryption.MontgomeryAccumulator;
+import org.apache.pirk.inputformat.hadoop.CiphertextWritable;
 import org.apache.pirk.query.wideskies.Query;
-import org.apache.pirk.serialization.HadoopFileSystemStore;
+import org.apache.pirk.responder.wideskies.common.BucketColumnEngine;
+import org.apache.pirk.responder.wideskies.common.ColumnEngine;
 import org.apache.pirk.utils.FileConst;
+import org.apache.pirk.utils.PIRException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Reducer to perform encrypted column multiplication
+ * <p>
+ * If using the bucket column engine, the column values are the packed (rowIndex, part) pairs emitted by the RowCalcReducer and the column is computed via
+ * the {@link BucketColumnEngine}
  * 
  */
-public class ColumnMultReducer extends Reducer<LongWritable,Text,LongWritable,Text>
+public class ColumnMultReducer extends Reducer<LongWritable,CiphertextWritable,LongWritable,CiphertextWritable>
 {
   private static final Logger logger = LoggerFactory.getLogger(ColumnMultReducer.class);
 
-  private Text outputValue = null;
-  private MultipleOutputs<LongWritable,Text> mos = null;
+  private CiphertextWritable outputValue = null;
+  private int outputWidth = 0;
+  private MultipleOutputs<LongWritable,CiphertextWritable> mos = null;
 
   private Query query = null;
+  private BucketColumnEngine bucketEngine = null;
+  private MontgomeryAccumulator columnAccumulator = null; // reused across columns
 
   @Override
   public void setup(Context ctx) throws IOException, InterruptedException
   {
     super.setup(ctx);
 
-    outputValue = new Text();
+    outputValue = new CiphertextWritable();
     mos = new MultipleOutputs<>(ctx);
 
     FileSystem fs = FileSystem.newInstance(ctx.getConfiguration());
-    String queryDir = ctx.getConfiguration().get("pirMR.queryInputDir");
-    query = new HadoopFileSystemStore(fs).recall(queryDir, Query.class);
+    query = RowRangePartitioner.recallQuery(ctx.getConfiguration(), fs);
+    outputWidth = CiphertextWritable.getByteWidth(query.getNSquared());
+
+    columnAccumulator = new MontgomeryAccumulator(query.getNSquared());
+
+    if (ctx.getConfiguration().get("pirWL.columnEngine", ColumnEngine.MODPOW).equals(ColumnEngine.BUCKET))
+    {
+      try
+      {
+        bucketEngine = new BucketColumnEngine(query, ModPowAbstraction.getEngine(ctx.getConfiguration().get("pirWL.modPowEngine", "")));
+      } catch (PIRException e)
+      {
+        throw new IOException(e);
+      }
+    }
   }
 
   @Override
-  public void reduce(LongWritable colNum, Iterable<Text> colVals, Context ctx) throws IOException, InterruptedException
+  public void reduce(LongWritable colNum, Iterable<CiphertextWritable> colVals, Context ctx) throws IOException, InterruptedException
   {
     logger.debug("Processing reducer for colNum = " + colNum.toString());
     ctx.getCounter(MRStats.NUM_COLUMNS).increment(1);
 
     BigInteger column = BigInteger.valueOf(1);
-    for (Text val : colVals)
+    if (bucketEngine != null)
+    {
+      for (CiphertextWritable val : colVals)
+      {
+        bucketEngine.insertPackedEntry(colNum.get(), val.get());
+      }
+      column = bucketEngine.computeColumn(colNum.get());
+    }
+    else
     {
-      BigInteger valBI = new BigInteger(val.toString());
-      column = (column.multiply(valBI)).mod(query.getNSquared());
-      logger.debug("valBI = " + valBI.toString() + " column = " + column.toString());
+      columnAccumulator.reset();
+      for (CiphertextWritable val : colVals)
+      {
+        columnAccumulator.multiply(val.get());
+      }
+      column = columnAccumulator.getValue();
     }
-    logger.debug("final column value = " + column.toString());
-    outputValue.set(column.toString());
+    logger.debug("final column value = {}", column);
+    outputValue.set(column, outputWidth);
     mos.write(FileConst.PIR_COLS, colNum, outputValue);
   }
 
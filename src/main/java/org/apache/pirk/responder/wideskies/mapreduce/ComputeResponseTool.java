@@ -18,14 +18,8 @@
  */
 package org.apache.pirk.responder.wideskies.mapreduce;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.math.BigInteger;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Collections;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.conf.Configured;
@@ -34,19 +28,29 @@ import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
 import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.LazyOutputFormat;
 import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
 import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
 import org.apache.hadoop.util.Tool;
 import org.apache.pirk.inputformat.hadoop.BaseInputFormat;
 import org.apache.pirk.inputformat.hadoop.BytesArrayWritable;
+import org.apache.pirk.inputformat.hadoop.CiphertextWritable;
 import org.apache.pirk.inputformat.hadoop.InputFormatConst;
 import org.apache.pirk.query.wideskies.Query;
 import org.apache.pirk.query.wideskies.QueryInfo;
+import org.apache.pirk.responder.wideskies.common.ColumnEngine;
+import org.apache.pirk.responder.wideskies.common.ColumnStore;
+import org.apache.pirk.responder.wideskies.common.ExpTableFile;
+import org.apache.pirk.responder.wideskies.common.ShardedQuery;
+import org.apache.pirk.response.wideskies.Response;
 import org.apache.pirk.schema.data.DataSchemaLoader;
 import org.apache.pirk.schema.query.QuerySchema;
 import org.apache.pirk.schema.query.QuerySchemaLoader;
@@ -71,16 +75,23 @@ import org.slf4j.LoggerFactory;
  * Reduce: Calculates the encrypted row values for each selector and corresponding data element, striping across columns,and outputs each row entry by column
  * position: {@link <colNum, colVal>}
  * <p>
- * (2) Map: Pass through mapper to aggregate by column number
+ * (2) Map: Pass through mapper to aggregate by column number; the partial column products are combined in the map tasks by the {@link ColumnMultCombiner}
+ * and, optionally, in the mapper itself
  * <p>
  * Reduce: Input: {@link <colnum, <colVals>>}; multiplies all colVals according to the encryption algorithm and outputs {@link <colNum, colVal>} for each colNum
  * <p>
  * (3) Map: Pass through mapper to move all final columns to one reducer
  * <p>
  * Reduce: Creates the Response object
+ * <p>
+ * If pir.mapReduceSingleJob is true, only the first job is run: its reducers multiply the encrypted row values into partial column products (see
+ * {@link RowCalcReducer}), which are merged into the Response by the driver. This saves two job launches and HDFS round trips per query.
+ * <p>
+ * The intermediate {@code <colNum, colVal>} outputs between the jobs are SequenceFiles of {@link CiphertextWritable}s, so that the ciphertexts are never
+ * converted to and from decimal strings
  * <P>
  * NOTE: If useHDFSExpLookupTable in the QueryInfo object is true, then the expLookupTable for the watchlist must be generated if it does not already exist in
- * hdfs.
+ * hdfs; it is written by a map-only job as binary {@link ExpTableFile}s, one per row range.
  * <p>
  * TODO:
  * <p>
@@ -88,8 +99,6 @@ import org.slf4j.LoggerFactory;
  * parameters) - using MultipleOutputs for extensibility to multiple queries per job later...
  * <p>
  * - Could place Query objects in DistributedCache (instead of a direct file based pull in task setup)
- * <p>
- * - Redesign exp lookup table to be smart and fully distributed/partitioned
  */
 public class ComputeResponseTool extends Configured implements Tool
 {
@@ -105,8 +114,15 @@ public class ComputeResponseTool extends Configured implements Tool
   private String queryInputDir = null;
   private String stopListFile = null;
   private int numReduceTasks = 1;
+  private int numReducerThreads = 1;
 
   private boolean useHDFSLookupTable = false;
+  private boolean singleJob = false;
+
+  private boolean shardQuery = false;
+  private String queryShardDir = null;
+  private int queryRowsPerShard = 0;
+  private int queryNumShards = 0;
 
   private String esQuery = "none";
   private String esResource = "none";
@@ -159,32 +175,72 @@ public class ComputeResponseTool extends Configured implements Tool
       success = computeExpTable();
     }
 
+    // Split the query by row range so that each reducer only loads the rows it computes
+    if (success && shardQuery)
+    {
+      writeQueryShards();
+    }
+
     // Read the data, hash selectors, form encrypted rows
     if (success)
     {
       success = readDataEncRows(outPathInit);
     }
 
-    // Multiply the column values
-    if (success)
+    if (singleJob)
     {
-      success = multiplyColumns(outPathInit, outPathColumnMult);
+      // Merge the partial column products into the response
+      if (success)
+      {
+        mergeColumns(outPathInit);
+      }
     }
-
-    // Concatenate the output to one file
-    if (success)
+    else
     {
-      success = computeFinalResponse(outPathFinal);
+      // Multiply the column values
+      if (success)
+      {
+        success = multiplyColumns(outPathInit, outPathColumnMult);
+      }
+
+      // Concatenate the output to one file
+      if (success)
+      {
+        success = computeFinalResponse(outPathFinal);
+      }
     }
 
     // Clean up
     fs.delete(outPathInit, true);
     fs.delete(outPathColumnMult, true);
     fs.delete(outPathFinal, true);
+    if (queryShardDir != null)
+    {
+      fs.delete(new Path(queryShardDir), true);
+    }
 
     return success ? 0 : 1;
   }
 
+  private void writeQueryShards() throws IOException
+  {
+    queryNumShards = SystemConfiguration.getIntProperty("pir.numQueryShards", numReduceTasks);
+    queryShardDir = queryInputDir + ShardedQuery.SHARD_DIR_SUFFIX;
+    queryRowsPerShard = ShardedQuery.writeShards(query, queryNumShards, fs, queryShardDir);
+    queryNumShards = ShardedQuery.getNumShards(1 << queryInfo.getHashBitSize(), queryRowsPerShard);
+  }
+
+  // Points the tasks of the given job at the query shards, if the query was sharded
+  private void setQueryShards(Job job)
+  {
+    if (queryShardDir != null)
+    {
+      job.getConfiguration().set(RowRangePartitioner.QUERY_SHARD_DIR, queryShardDir);
+      job.getConfiguration().setInt(RowRangePartitioner.QUERY_ROWS_PER_SHARD, queryRowsPerShard);
+      job.getConfiguration().setInt(RowRangePartitioner.QUERY_NUM_SHARDS, queryNumShards);
+    }
+  }
+
   private void setupParameters()
   {
     dataInputFormat = SystemConfiguration.getProperty("pir.dataInputFormat");
@@ -226,8 +282,11 @@ public class ComputeResponseTool extends Configured implements Tool
     stopListFile = SystemConfiguration.getProperty("pir.stopListFile");
 
     useHDFSLookupTable = SystemConfiguration.isSetTrue("pir.useHDFSLookupTable");
+    shardQuery = SystemConfiguration.isSetTrue("pir.shardQuery");
+    singleJob = SystemConfiguration.isSetTrue("pir.mapReduceSingleJob");
 
     numReduceTasks = SystemConfiguration.getIntProperty("pir.numReduceTasks", 1);
+    numReducerThreads = SystemConfiguration.getIntProperty("pir.numReducerThreads", 1);
   }
 
   private boolean computeExpTable() throws IOException, ClassNotFoundException, InterruptedException
@@ -242,41 +301,30 @@ public class ComputeResponseTool extends Configured implements Tool
     {
       fs.delete(splitDir, true);
     }
-    // Write the query hashes to the split files
-    Map<Integer,BigInteger> queryElements = query.getQueryElements();
-    List<Integer> keys = new ArrayList<>(queryElements.keySet());
-
-    int numSplits = SystemConfiguration.getIntProperty("pir.expCreationSplits", 100);
-    int elementsPerSplit = queryElements.size() / numSplits; // Integral division.
-    logger.info("numSplits = " + numSplits + " elementsPerSplit = " + elementsPerSplit);
-    for (int i = 0; i < numSplits; ++i)
+
+    // Write the first row of each row range to its own split file -- one mapper writes the expTable file of each range
+    int numRows = 1 << queryInfo.getHashBitSize();
+    int numExpLookupPartitions = SystemConfiguration.getIntProperty("pir.numExpLookupPartitions", 100);
+    int rowsPerFile = ExpTableFile.getRowsPerFile(numRows, numExpLookupPartitions);
+    logger.info("numExpLookupPartitions = " + numExpLookupPartitions + " rowsPerFile = " + rowsPerFile);
+    for (int startRow = 0; startRow < numRows; startRow += rowsPerFile)
     {
-      // Grab the range of the thread
-      int start = i * elementsPerSplit;
-      int stop = start + elementsPerSplit - 1;
-      if (i == (numSplits - 1))
-      {
-        stop = queryElements.size() - 1;
-      }
-      HDFS.writeFileIntegers(keys.subList(start, stop), fs, new Path(splitDir, "split-" + i), false);
+      HDFS.writeFileIntegers(Collections.singletonList(startRow), fs, new Path(splitDir, "split-" + startRow), false);
     }
 
-    // Run the job to generate the expTable
-    // Job jobExp = new Job(mrConfig.getConfig(), "pirExp-" + pirWL.getWatchlistNum());
+    // Run the map-only job to generate the expTable
     Job jobExp = Job.getInstance(conf, "pirExp-" + queryInfo.getIdentifier());
 
     jobExp.setSpeculativeExecution(false);
     jobExp.getConfiguration().set("mapreduce.map.speculative", "false");
-    jobExp.getConfiguration().set("mapreduce.reduce.speculative", "false");
 
     // Set the memory and heap options
     jobExp.getConfiguration().set("mapreduce.map.memory.mb", SystemConfiguration.getProperty("mapreduce.map.memory.mb", "10000"));
-    jobExp.getConfiguration().set("mapreduce.reduce.memory.mb", SystemConfiguration.getProperty("mapreduce.reduce.memory.mb", "10000"));
     jobExp.getConfiguration().set("mapreduce.map.java.opts", SystemConfiguration.getProperty("mapreduce.map.java.opts", "-Xmx9000m"));
-    jobExp.getConfiguration().set("mapreduce.reduce.java.opts", SystemConfiguration.getProperty("mapreduce.reduce.java.opts", "-Xmx9000m"));
-    jobExp.getConfiguration().set("mapreduce.reduce.shuffle.parallelcopies", "5");
 
     jobExp.getConfiguration().set("pirMR.queryInputDir", SystemConfiguration.getProperty("pir.queryInput"));
+    jobExp.getConfiguration().set("pirMR.expDir", outputDirExp);
+    jobExp.getConfiguration().setInt("pirMR.expRowsPerFile", rowsPerFile);
     jobExp.getConfiguration().setBoolean("mapreduce.input.fileinputformat.input.dir.recursive", true);
 
     jobExp.setInputFormatClass(TextInputFormat.class);
@@ -284,16 +332,9 @@ public class ComputeResponseTool extends Configured implements Tool
 
     jobExp.setJarByClass(ExpTableMapper.class);
     jobExp.setMapperClass(ExpTableMapper.class);
+    jobExp.setNumReduceTasks(0);
 
-    jobExp.setMapOutputKeyClass(Text.class);
-    jobExp.setMapOutputValueClass(Text.class);
-
-    // Set the reducer and output params
-    int numExpLookupPartitions = SystemConfiguration.getIntProperty("pir.numExpLookupPartitions", 100);
-    jobExp.setNumReduceTasks(numExpLookupPartitions);
-    jobExp.setReducerClass(ExpTableReducer.class);
-
-    // Delete the output directory if it exists
+    // Delete the output directory if it exists; the mappers write the expTable files directly into it
     Path outPathExp = new Path(outputDirExp);
     if (fs.exists(outPathExp))
     {
@@ -302,44 +343,14 @@ public class ComputeResponseTool extends Configured implements Tool
     jobExp.setOutputKeyClass(Text.class);
     jobExp.setOutputValueClass(Text.class);
     FileOutputFormat.setOutputPath(jobExp, outPathExp);
-    jobExp.getConfiguration().set("mapreduce.output.textoutputformat.separator", ",");
-    MultipleOutputs.addNamedOutput(jobExp, FileConst.PIR, TextOutputFormat.class, Text.class, Text.class);
-    MultipleOutputs.addNamedOutput(jobExp, FileConst.EXP, TextOutputFormat.class, Text.class, Text.class);
+    LazyOutputFormat.setOutputFormatClass(jobExp, TextOutputFormat.class);
 
     // Submit job, wait for completion
     success = jobExp.waitForCompletion(true);
+    fs.delete(splitDir, true);
 
-    // Assemble the exp table from the output
-    // element_index -> fileName
-    Map<Integer,String> expFileTable = new HashMap<>();
-    FileStatus[] status = fs.listStatus(outPathExp);
-    for (FileStatus fstat : status)
-    {
-      if (fstat.getPath().getName().startsWith(FileConst.PIR))
-      {
-        logger.info("fstat.getPath().getName().toString() = " + fstat.getPath().getName());
-        try
-        {
-          try (BufferedReader br = new BufferedReader(new InputStreamReader(fs.open(fstat.getPath()))))
-          {
-            String line;
-            while ((line = br.readLine()) != null)
-            {
-              String[] rowValTokens = line.split(","); // form is element_index,reducerNumber
-              String fileName = fstat.getPath().getParent() + "/" + FileConst.EXP + "-r-" + rowValTokens[1];
-              logger.info("fileName = " + fileName);
-              expFileTable.put(Integer.parseInt(rowValTokens[0]), fileName);
-            }
-          }
-        } catch (Exception e)
-        {
-          e.printStackTrace();
-        }
-      }
-    }
-
-    // Place exp table in query object
-    query.setExpFileBasedLookup(expFileTable);
+    // Place exp table in query object -- element_index -> fileName
+    query.setExpFileBasedLookup(ExpTableFile.getExpFileBasedLookup(outputDirExp, numRows, rowsPerFile));
     new HadoopFileSystemStore(fs).store(queryInputDir, query);
 
     logger.info("Completed creation of expTable");
@@ -376,6 +387,13 @@ public class ComputeResponseTool extends Configured implements Tool
     job.getConfiguration().set("pirWL.useLocalCache", SystemConfiguration.getProperty("pir.useLocalCache", "true"));
     job.getConfiguration().set("pirWL.limitHitsPerSelector", SystemConfiguration.getProperty("pir.limitHitsPerSelector", "false"));
     job.getConfiguration().set("pirWL.maxHitsPerSelector", SystemConfiguration.getProperty("pir.maxHitsPerSelector", "100"));
+    job.getConfiguration().set("pirWL.columnEngine", SystemConfiguration.getProperty("pir.columnEngine", ColumnEngine.MODPOW));
+    job.getConfiguration().set("pirWL.modPowEngine", SystemConfiguration.getProperty("pir.modPowEngine", ""));
+    job.getConfiguration().setBoolean(RowCalcReducer.SINGLE_JOB, singleJob);
+    job.getConfiguration().setInt(RowCalcReducer.NUM_THREADS, numReducerThreads);
+    job.getConfiguration().setInt("mapreduce.reduce.cpu.vcores", numReducerThreads);
+    job.getConfiguration().setLong(RowCalcReducer.COLUMN_STORE_MEMORY_MB,
+        SystemConfiguration.getLongProperty("pir.columnStoreMemoryMB", RowCalcReducer.DEFAULT_COLUMN_STORE_MEMORY_MB));
 
     if (dataInputFormat.equals(InputFormatConst.ES))
     {
@@ -422,6 +440,11 @@ public class ComputeResponseTool extends Configured implements Tool
     // Set the reducer and output params
     job.setNumReduceTasks(numReduceTasks);
     job.setReducerClass(RowCalcReducer.class);
+    setQueryShards(job);
+    if (queryShardDir != null)
+    {
+      job.setPartitionerClass(RowRangePartitioner.class);
+    }
 
     // Delete the output directory if it exists
     if (fs.exists(outPathInit))
@@ -429,11 +452,10 @@ public class ComputeResponseTool extends Configured implements Tool
       fs.delete(outPathInit, true);
     }
     job.setOutputKeyClass(LongWritable.class);
-    job.setOutputValueClass(Text.class);
+    job.setOutputValueClass(CiphertextWritable.class);
     FileOutputFormat.setOutputPath(job, outPathInit);
-    job.getConfiguration().set("mapreduce.output.textoutputformat.separator", ",");
 
-    MultipleOutputs.addNamedOutput(job, FileConst.PIR, TextOutputFormat.class, LongWritable.class, Text.class);
+    MultipleOutputs.addNamedOutput(job, FileConst.PIR, SequenceFileOutputFormat.class, LongWritable.class, CiphertextWritable.class);
 
     // Submit job, wait for completion
     success = job.waitForCompletion(true);
@@ -441,6 +463,36 @@ public class ComputeResponseTool extends Configured implements Tool
     return success;
   }
 
+  // Multiplies the partial column products written by the reducers of the single job and stores the Response
+  private void mergeColumns(Path outPathInit) throws IOException
+  {
+    logger.info("Merging the partial column products in " + outPathInit);
+
+    Response response = new Response(queryInfo);
+    try (ColumnStore columns = ColumnStore.fromConfiguration(query.getNSquared()))
+    {
+      LongWritable colNum = new LongWritable();
+      CiphertextWritable colVal = new CiphertextWritable();
+      for (FileStatus fstat : fs.listStatus(outPathInit))
+      {
+        if (fstat.getPath().getName().startsWith(FileConst.PIR))
+        {
+          try (SequenceFile.Reader reader = new SequenceFile.Reader(conf, SequenceFile.Reader.file(fstat.getPath())))
+          {
+            while (reader.next(colNum, colVal))
+            {
+              columns.multiply(colNum.get(), colVal.get());
+            }
+          }
+        }
+      }
+      columns.forEach((col, value) -> response.addElement(col.intValue(), value));
+    }
+    new HadoopFileSystemStore(fs).store(outputFile, response);
+
+    logger.info("Completed the response with " + response.getResponseElements().size() + " columns");
+  }
+
   private boolean multiplyColumns(Path outPathInit, Path outPathColumnMult) throws IOException, ClassNotFoundException, InterruptedException
   {
     boolean success;
@@ -459,6 +511,20 @@ public class ComputeResponseTool extends Configured implements Tool
     columnMultJob.getConfiguration().set("mapreduce.map.speculative", "false");
     columnMultJob.getConfiguration().set("mapreduce.reduce.speculative", "false");
     columnMultJob.getConfiguration().set("pirMR.queryInputDir", SystemConfiguration.getProperty("pir.queryInput"));
+    columnMultJob.getConfiguration().set("pirWL.columnEngine", SystemConfiguration.getProperty("pir.columnEngine", ColumnEngine.MODPOW));
+    columnMultJob.getConfiguration().set("pirWL.modPowEngine", SystemConfiguration.getProperty("pir.modPowEngine", ""));
+    setQueryShards(columnMultJob);
+
+    // Combine the column values in the map tasks, unless they are packed bucket entries rather than ciphertexts
+    boolean combine = !SystemConfiguration.getProperty("pir.columnEngine", ColumnEngine.MODPOW).equals(ColumnEngine.BUCKET);
+    columnMultJob.getConfiguration().set(ColumnMultMapper.N_SQUARED, query.getNSquared().toString());
+    columnMultJob.getConfiguration().setBoolean(ColumnMultMapper.IN_MAPPER_COMBINING, combine && SystemConfiguration.isSetTrue("pir.colMultInMapperCombining"));
+    columnMultJob.getConfiguration().setLong(ColumnMultMapper.MAPPER_MEMORY_MB,
+        SystemConfiguration.getLongProperty("pir.colMultMapperMemoryMB", ColumnMultMapper.DEFAULT_MAPPER_MEMORY_MB));
+    if (combine && SystemConfiguration.getProperty("pir.colMultCombiner", "true").equals("true"))
+    {
+      columnMultJob.setCombinerClass(ColumnMultCombiner.class);
+    }
 
     columnMultJob.setJobName(columnMultJobName);
     columnMultJob.setJarByClass(ColumnMultMapper.class);
@@ -466,7 +532,7 @@ public class ComputeResponseTool extends Configured implements Tool
 
     // Set the Mapper, InputFormat, and input path
     columnMultJob.setMapperClass(ColumnMultMapper.class);
-    columnMultJob.setInputFormatClass(TextInputFormat.class);
+    columnMultJob.setInputFormatClass(SequenceFileInputFormat.class);
 
     FileStatus[] status = fs.listStatus(outPathInit);
     for (FileStatus fstat : status)
@@ -478,13 +544,12 @@ public class ComputeResponseTool extends Configured implements Tool
       }
     }
     columnMultJob.setMapOutputKeyClass(LongWritable.class);
-    columnMultJob.setMapOutputValueClass(Text.class);
+    columnMultJob.setMapOutputValueClass(CiphertextWritable.class);
 
     // Set the reducer and output options
     columnMultJob.setReducerClass(ColumnMultReducer.class);
     columnMultJob.setOutputKeyClass(LongWritable.class);
-    columnMultJob.setOutputValueClass(Text.class);
-    columnMultJob.getConfiguration().set("mapreduce.output.textoutputformat.separator", ",");
+    columnMultJob.setOutputValueClass(CiphertextWritable.class);
 
     // Delete the output file, if it exists
     if (fs.exists(outPathColumnMult))
@@ -493,7 +558,7 @@ public class ComputeResponseTool extends Configured implements Tool
     }
     FileOutputFormat.setOutputPath(columnMultJob, outPathColumnMult);
 
-    MultipleOutputs.addNamedOutput(columnMultJob, FileConst.PIR_COLS, TextOutputFormat.class, LongWritable.class, Text.class);
+    MultipleOutputs.addNamedOutput(columnMultJob, FileConst.PIR_COLS, SequenceFileOutputFormat.class, LongWritable.class, CiphertextWritable.class);
 
     // Submit job, wait for completion
     success = columnMultJob.waitForCompletion(true);
@@ -518,6 +583,7 @@ public class ComputeResponseTool extends Configured implements Tool
 
     finalResponseJob.getConfiguration().set("pirMR.queryInputDir", SystemConfiguration.getProperty("pir.queryInput"));
     finalResponseJob.getConfiguration().set("pirMR.outputFile", outputFile);
+    setQueryShards(finalResponseJob);
 
     finalResponseJob.getConfiguration().set("mapreduce.map.speculative", "false");
     finalResponseJob.getConfiguration().set("mapreduce.reduce.speculative", "false");
@@ -528,7 +594,7 @@ public class ComputeResponseTool extends Configured implements Tool
 
     // Set the Mapper, InputFormat, and input path
     finalResponseJob.setMapperClass(ColumnMultMapper.class);
-    finalResponseJob.setInputFormatClass(TextInputFormat.class);
+    finalResponseJob.setInputFormatClass(SequenceFileInputFormat.class);
 
     FileStatus[] status = fs.listStatus(new Path(outputDirColumnMult));
     for (FileStatus fstat : status)
@@ -540,13 +606,12 @@ public class ComputeResponseTool extends Configured implements Tool
       }
     }
     finalResponseJob.setMapOutputKeyClass(LongWritable.class);
-    finalResponseJob.setMapOutputValueClass(Text.class);
+    finalResponseJob.setMapOutputValueClass(CiphertextWritable.class);
 
     // Set the reducer and output options
     finalResponseJob.setReducerClass(FinalResponseReducer.class);
     finalResponseJob.setOutputKeyClass(LongWritable.class);
-    finalResponseJob.setOutputValueClass(Text.class);
-    finalResponseJob.getConfiguration().set("mapreduce.output.textoutputformat.separator", ",");
+    finalResponseJob.setOutputValueClass(CiphertextWritable.class);
 
     // Delete the output file, if it exists
     if (fs.exists(outPathFinal))
@@ -554,7 +619,7 @@ public class ComputeResponseTool extends Configured implements Tool
       fs.delete(outPathFinal, true);
     }
     FileOutputFormat.setOutputPath(finalResponseJob, outPathFinal);
-    MultipleOutputs.addNamedOutput(finalResponseJob, FileConst.PIR_FINAL, TextOutputFormat.class, LongWritable.class, Text.class);
+    MultipleOutputs.addNamedOutput(finalResponseJob, FileConst.PIR_FINAL, SequenceFileOutputFormat.class, LongWritable.class, CiphertextWritable.class);
 
     // Submit job, wait for completion
     success = finalResponseJob.waitForCompletion(true);
@@ -19,61 +19,56 @@
 package org.apache.pirk.responder.wideskies.mapreduce;
 
 import java.io.IOException;
-import java.math.BigInteger;
 
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Mapper;
-import org.apache.pirk.encryption.ModPowAbstraction;
 import org.apache.pirk.query.wideskies.Query;
+import org.apache.pirk.responder.wideskies.common.ExpTableFile;
 import org.apache.pirk.serialization.HadoopFileSystemStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Class to generate the expTable given the input query vectors
- *
+ * Map-only class to generate the expTable given the input query vectors
+ * <p>
+ * Each input line holds the first row of a row range; the mapper writes the {@link ExpTableFile} of the range directly to pirMR.expDir, so that no shuffle
+ * is needed
  */
 public class ExpTableMapper extends Mapper<LongWritable,Text,Text,Text>
 {
   private static final Logger logger = LoggerFactory.getLogger(ExpTableMapper.class);
 
-  private Text valueOut = null;
-
-  private int maxValue = 0;
-  private BigInteger NSquared = null;
+  private FileSystem fs = null;
   private Query query = null;
 
+  private String expDir = null;
+  private int rowsPerFile = 0;
+  private int numRows = 0;
+
   @Override
   public void setup(Context ctx) throws IOException, InterruptedException
   {
     super.setup(ctx);
 
-    valueOut = new Text();
+    fs = FileSystem.newInstance(ctx.getConfiguration());
 
     String queryDir = ctx.getConfiguration().get("pirMR.queryInputDir");
-    query = new HadoopFileSystemStore(FileSystem.newInstance(ctx.getConfiguration())).recall(queryDir, Query.class);
+    query = new HadoopFileSystemStore(fs).recall(queryDir, Query.class);
 
-    int dataPartitionBitSize = query.getQueryInfo().getDataPartitionBitSize();
-    maxValue = (int) Math.pow(2, dataPartitionBitSize) - 1;
-
-    NSquared = query.getNSquared();
+    expDir = ctx.getConfiguration().get("pirMR.expDir");
+    rowsPerFile = ctx.getConfiguration().getInt("pirMR.expRowsPerFile", 1);
+    numRows = 1 << query.getQueryInfo().getHashBitSize();
   }
 
-  // key is line number; value is the index of the queryVec
+  // key is line number; value is the first row of the range
   @Override
   public void map(LongWritable key, Text value, Context ctx) throws IOException, InterruptedException
   {
     logger.info("key = " + key.toString() + " value = " + value.toString());
 
-    BigInteger element = query.getQueryElement(Integer.parseInt(value.toString()));
-    for (int i = 0; i <= maxValue; ++i)
-    {
-      BigInteger modPow = ModPowAbstraction.modPow(element, BigInteger.valueOf(i), NSquared);
-
-      valueOut.set(i + "-" + modPow.toString()); // val: <power>-<element^power mod N^2>
-      ctx.write(value, valueOut);
-    }
+    int startRow = Integer.parseInt(value.toString().trim());
+    ExpTableFile.write(query, startRow, Math.min(numRows, startRow + rowsPerFile), fs, expDir);
   }
 }
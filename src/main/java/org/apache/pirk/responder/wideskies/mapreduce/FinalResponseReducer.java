@@ -23,9 +23,9 @@ import java.math.BigInteger;
 
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.io.LongWritable;
-import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.pirk.inputformat.hadoop.CiphertextWritable;
 import org.apache.pirk.query.wideskies.Query;
 import org.apache.pirk.query.wideskies.QueryInfo;
 import org.apache.pirk.response.wideskies.Response;
@@ -37,11 +37,11 @@ import org.slf4j.LoggerFactory;
  * Reducer class to construct the final Response object
  * 
  */
-public class FinalResponseReducer extends Reducer<LongWritable,Text,LongWritable,Text>
+public class FinalResponseReducer extends Reducer<LongWritable,CiphertextWritable,LongWritable,CiphertextWritable>
 {
   private static final Logger logger = LoggerFactory.getLogger(FinalResponseReducer.class);
 
-  private MultipleOutputs<LongWritable,Text> mos = null;
+  private MultipleOutputs<LongWritable,CiphertextWritable> mos = null;
 
   private Response response = null;
   private String outputFile = null;
@@ -56,8 +56,7 @@ public class FinalResponseReducer extends Reducer<LongWritable,Text,LongWritable
 
     FileSystem fs = FileSystem.newInstance(ctx.getConfiguration());
     storage = new HadoopFileSystemStore(fs);
-    String queryDir = ctx.getConfiguration().get("pirMR.queryInputDir");
-    Query query = storage.recall(queryDir, Query.class);
+    Query query = RowRangePartitioner.recallQuery(ctx.getConfiguration(), fs);
     QueryInfo queryInfo = query.getQueryInfo();
 
     outputFile = ctx.getConfiguration().get("pirMR.outputFile");
@@ -66,16 +65,16 @@ public class FinalResponseReducer extends Reducer<LongWritable,Text,LongWritable
   }
 
   @Override
-  public void reduce(LongWritable colNum, Iterable<Text> colVals, Context ctx) throws IOException, InterruptedException
+  public void reduce(LongWritable colNum, Iterable<CiphertextWritable> colVals, Context ctx) throws IOException, InterruptedException
   {
     logger.debug("Processing reducer for colNum = " + colNum.toString());
     ctx.getCounter(MRStats.NUM_COLUMNS).increment(1);
 
     BigInteger column = null;
-    for (Text val : colVals) // there is only one column value
+    for (CiphertextWritable val : colVals) // there is only one column value
     {
-      column = new BigInteger(val.toString());
-      logger.debug("colNum = " + (int) colNum.get() + " column = " + column.toString());
+      column = val.get();
+      logger.debug("colNum = {} column = {}", colNum.get(), column);
     }
     response.addElement((int) colNum.get(), column);
   }
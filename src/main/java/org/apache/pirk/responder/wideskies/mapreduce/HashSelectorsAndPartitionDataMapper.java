@@ -36,7 +36,6 @@ import org.apache.pirk.schema.query.QuerySchema;
 import org.apache.pirk.schema.query.QuerySchemaLoader;
 import org.apache.pirk.schema.query.QuerySchemaRegistry;
 import org.apache.pirk.schema.query.filter.DataFilter;
-import org.apache.pirk.serialization.HadoopFileSystemStore;
 import org.apache.pirk.utils.StringUtils;
 import org.apache.pirk.utils.SystemConfiguration;
 import org.slf4j.Logger;
@@ -74,8 +73,7 @@ public class HashSelectorsAndPartitionDataMapper extends Mapper<Text,MapWritable
     FileSystem fs = FileSystem.newInstance(ctx.getConfiguration());
 
     // Can make this so that it reads multiple queries at one time...
-    String queryDir = ctx.getConfiguration().get("pirMR.queryInputDir");
-    Query query = new HadoopFileSystemStore(fs).recall(queryDir, Query.class);
+    Query query = RowRangePartitioner.recallQuery(ctx.getConfiguration(), fs);
     queryInfo = query.getQueryInfo();
 
     try
@@ -19,23 +19,39 @@
 package org.apache.pirk.responder.wideskies.mapreduce;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.LongWritable;
-import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.pirk.encryption.ModPowAbstraction;
+import org.apache.pirk.encryption.spi.ModPowEngine;
 import org.apache.pirk.inputformat.hadoop.BytesArrayWritable;
+import org.apache.pirk.inputformat.hadoop.CiphertextWritable;
 import org.apache.pirk.query.wideskies.Query;
 import org.apache.pirk.query.wideskies.QueryInfo;
+import org.apache.pirk.responder.wideskies.common.BucketColumnEngine;
+import org.apache.pirk.responder.wideskies.common.ColumnEngine;
+import org.apache.pirk.responder.wideskies.common.ColumnStore;
 import org.apache.pirk.responder.wideskies.common.ComputeEncryptedRow;
+import org.apache.pirk.responder.wideskies.common.ExpTableFile;
+import org.apache.pirk.responder.wideskies.common.RowExpCache;
 import org.apache.pirk.schema.data.DataSchemaLoader;
 import org.apache.pirk.schema.query.QuerySchemaLoader;
-import org.apache.pirk.serialization.HadoopFileSystemStore;
 import org.apache.pirk.utils.FileConst;
+import org.apache.pirk.utils.PIRException;
 import org.apache.pirk.utils.SystemConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,17 +63,34 @@ import scala.Tuple2;
  * <p>
  * For each row (as indicated by key = hash(selector)), iterates over each dataElement and calculates the column values.
  * <p>
- * Emits {@code <colNum, colVal>}
+ * Emits {@code <colNum, colVal>}, with colVal as a {@link CiphertextWritable} of the byte width of N^2
+ * <p>
+ * If using the bucket column engine, emits {@code <colNum, packed (rowIndex, part)>} and leaves the exponentiation to the ColumnMultReducer
+ * <p>
+ * In the single-job pipeline ({@link #SINGLE_JOB}), the column values are instead multiplied into the partial column products of the reducer -- held in a
+ * {@link ColumnStore}, or in a {@link BucketColumnEngine} if using the bucket column engine -- and one {@code <colNum, partial product>} per column is
+ * emitted at the end of the task
+ * <p>
+ * With {@link #NUM_THREADS} > 1, the encrypted rows are computed by a pool of threads; the rows are handed to the pool in key order through a bounded queue
+ * and their values are written in the same order, so that the output does not depend on the number of threads. The bucket column engine performs no
+ * exponentiations in the reducer and always runs on the reducer thread.
  *
  */
-public class RowCalcReducer extends Reducer<IntWritable,BytesArrayWritable,LongWritable,Text>
+public class RowCalcReducer extends Reducer<IntWritable,BytesArrayWritable,LongWritable,CiphertextWritable>
 {
   private static final Logger logger = LoggerFactory.getLogger(RowCalcReducer.class);
 
+  public static final String SINGLE_JOB = "pirMR.singleJob";
+  public static final String COLUMN_STORE_MEMORY_MB = "pirMR.columnStoreMemoryMB";
+  public static final String NUM_THREADS = "pirMR.numReducerThreads";
+
+  public static final long DEFAULT_COLUMN_STORE_MEMORY_MB = 256; // off-heap, on top of the reducer heap
+
   private LongWritable keyOut = null;
-  private Text valueOut = null;
+  private CiphertextWritable valueOut = null;
+  private int valueWidth = 0;
 
-  private MultipleOutputs<LongWritable,Text> mos = null;
+  private MultipleOutputs<LongWritable,CiphertextWritable> mos = null;
 
   private FileSystem fs = null;
   private Query query = null;
@@ -66,6 +99,19 @@ public class RowCalcReducer extends Reducer<IntWritable,BytesArrayWritable,LongW
   private boolean useLocalCache = false;
   private boolean limitHitsPerSelector = false;
   private int maxHitsPerSelector = 1000;
+  private boolean useBucketEngine = false;
+  private ModPowEngine modPowEngine = null;
+  private ExpTableFile expTableFile = null;
+  private RowExpCache expCache = null;
+
+  private boolean singleJob = false;
+  private ColumnStore columnStore = null; // partial column products of the single job
+  private BucketColumnEngine bucketEngine = null; // partial column products of the single job, if using the bucket engine
+
+  private int numThreads = 1;
+  private ExecutorService rowPool = null; // computes the encrypted rows if numThreads > 1
+  private ArrayDeque<Future<List<Tuple2<Long,BigInteger>>>> pendingRows = null; // in key order
+  private ThreadLocal<RowExpCache> threadExpCaches = null; // row caches of the pool threads
 
   @Override
   public void setup(Context ctx) throws IOException, InterruptedException
@@ -73,13 +119,16 @@ public class RowCalcReducer extends Reducer<IntWritable,BytesArrayWritable,LongW
     super.setup(ctx);
 
     keyOut = new LongWritable();
-    valueOut = new Text();
+    valueOut = new CiphertextWritable();
     mos = new MultipleOutputs<>(ctx);
 
     fs = FileSystem.newInstance(ctx.getConfiguration());
-    String queryDir = ctx.getConfiguration().get("pirMR.queryInputDir");
-    query = new HadoopFileSystemStore(fs).recall(queryDir, Query.class);
+    query = RowRangePartitioner.recallQuery(ctx.getConfiguration(), fs);
     queryInfo = query.getQueryInfo();
+    if (queryInfo.useHDFSExpLookupTable())
+    {
+      expTableFile = new ExpTableFile(fs, query);
+    }
 
     try
     {
@@ -104,9 +153,47 @@ public class RowCalcReducer extends Reducer<IntWritable,BytesArrayWritable,LongW
       limitHitsPerSelector = true;
     }
     maxHitsPerSelector = Integer.parseInt(ctx.getConfiguration().get("pirWL.maxHitsPerSelector"));
+    useBucketEngine = ctx.getConfiguration().get("pirWL.columnEngine", ColumnEngine.MODPOW).equals(ColumnEngine.BUCKET);
+    try
+    {
+      modPowEngine = ModPowAbstraction.getEngine(ctx.getConfiguration().get("pirWL.modPowEngine", ""));
+    } catch (PIRException e)
+    {
+      throw new IOException(e);
+    }
+    numThreads = Math.max(1, ctx.getConfiguration().getInt(NUM_THREADS, 1));
+    if (numThreads > 1 && !useBucketEngine)
+    {
+      rowPool = Executors.newFixedThreadPool(numThreads);
+      pendingRows = new ArrayDeque<>();
+      if (useLocalCache)
+      {
+        threadExpCaches = ThreadLocal.withInitial(() -> new RowExpCache(query, modPowEngine));
+      }
+    }
+    else if (useLocalCache)
+    {
+      expCache = new RowExpCache(query, modPowEngine);
+    }
+
+    singleJob = ctx.getConfiguration().getBoolean(SINGLE_JOB, false);
+    if (!useBucketEngine || singleJob)
+    {
+      valueWidth = CiphertextWritable.getByteWidth(query.getNSquared()); // packed bucket entries are written at their minimal width
+    }
+    if (singleJob && useBucketEngine)
+    {
+      bucketEngine = new BucketColumnEngine(query, modPowEngine);
+    }
+    else if (singleJob)
+    {
+      ColumnStore.setSharedMemoryBudget(ctx.getConfiguration().getLong(COLUMN_STORE_MEMORY_MB, DEFAULT_COLUMN_STORE_MEMORY_MB) << 20);
+      columnStore = new ColumnStore(query.getNSquared(), Long.MAX_VALUE, null);
+    }
 
     logger.info("RowCalcReducer -- useLocalCache = " + useLocalCache + " limitHitsPerSelector =  " + limitHitsPerSelector + " maxHitsPerSelector = "
-        + maxHitsPerSelector);
+        + maxHitsPerSelector + " useBucketEngine = " + useBucketEngine + " modPowEngine = " + modPowEngine.getEngineName() + " singleJob = " + singleJob
+        + " numThreads = " + numThreads);
   }
 
   @Override
@@ -115,28 +202,146 @@ public class RowCalcReducer extends Reducer<IntWritable,BytesArrayWritable,LongW
     logger.debug("Processing reducer for hash = " + rowIndex);
     ctx.getCounter(MRStats.NUM_HASHES_REDUCER).increment(1);
 
-    if (queryInfo.useHDFSExpLookupTable())
+    if (rowPool != null)
     {
-      ComputeEncryptedRow.loadCacheFromHDFS(fs, query.getExpFile(rowIndex.get()), query);
+      submitRow(rowIndex.get(), dataElementPartitions);
+      return;
     }
 
-    // Compute the encrypted row elements for a query from extracted data partitions
-    List<Tuple2<Long,BigInteger>> encRowValues = ComputeEncryptedRow.computeEncRow(dataElementPartitions, query, rowIndex.get(), limitHitsPerSelector,
-        maxHitsPerSelector, useLocalCache);
+    List<Tuple2<Long,BigInteger>> encRowValues;
+    if (useBucketEngine)
+    {
+      // Pair each data partition with the row; the exponentiation is folded into the column multiplication
+      encRowValues = ComputeEncryptedRow.computeBucketEntries(dataElementPartitions, rowIndex.get(), limitHitsPerSelector, maxHitsPerSelector);
+    }
+    else
+    {
+      // Compute the encrypted row elements for a query from extracted data partitions
+      encRowValues = ComputeEncryptedRow.computeEncRow(dataElementPartitions, query, rowIndex.get(), limitHitsPerSelector, maxHitsPerSelector, expCache,
+          modPowEngine, expTableFile);
+    }
 
-    // Emit <colNum, colVal>
+    addRowValues(encRowValues);
+  }
+
+  // Hands the row to the pool and writes the values of the completed rows, in key order, while too many rows are pending
+  private void submitRow(int rowIndex, Iterable<BytesArrayWritable> dataElementPartitions) throws IOException, InterruptedException
+  {
+    // Copy the data partitions; the writables are reused by the framework
+    List<List<BigInteger>> rowPartitions = new ArrayList<>();
+    for (BytesArrayWritable dataPartitions : dataElementPartitions)
+    {
+      if (limitHitsPerSelector && rowPartitions.size() >= maxHitsPerSelector)
+      {
+        break;
+      }
+      List<BigInteger> parts = new ArrayList<>(dataPartitions.size());
+      for (int i = 0; i < dataPartitions.size(); ++i)
+      {
+        parts.add(dataPartitions.getBigInteger(i));
+      }
+      rowPartitions.add(parts);
+    }
+
+    pendingRows.add(rowPool.submit(() -> ComputeEncryptedRow.computeEncRowBI(rowPartitions, query, rowIndex, limitHitsPerSelector, maxHitsPerSelector,
+        threadExpCaches == null ? null : threadExpCaches.get(), modPowEngine, expTableFile)));
+    while (pendingRows.size() > 2 * numThreads)
+    {
+      addRowValues(takeRow());
+    }
+  }
+
+  private List<Tuple2<Long,BigInteger>> takeRow() throws IOException, InterruptedException
+  {
+    try
+    {
+      return pendingRows.poll().get();
+    } catch (ExecutionException e)
+    {
+      throw new IOException("Exception computing an encrypted row", e.getCause());
+    }
+  }
+
+  // Emits <colNum, colVal>, or multiplies it into the partial column products of the single job
+  private void addRowValues(List<Tuple2<Long,BigInteger>> encRowValues) throws IOException, InterruptedException
+  {
     for (Tuple2<Long,BigInteger> encRowVal : encRowValues)
     {
-      keyOut.set(encRowVal._1);
-      BigInteger val = encRowVal._2;
-      valueOut.set(val.toString());
-      mos.write(FileConst.PIR, keyOut, valueOut);
+      if (bucketEngine != null)
+      {
+        bucketEngine.insertPackedEntry(encRowVal._1, encRowVal._2);
+      }
+      else if (columnStore != null)
+      {
+        columnStore.multiply(encRowVal._1, encRowVal._2);
+      }
+      else
+      {
+        writeColumnValue(encRowVal._1, encRowVal._2);
+      }
     }
   }
 
+  private void writeColumnValue(long col, BigInteger value) throws IOException, InterruptedException
+  {
+    keyOut.set(col);
+    valueOut.set(value, valueWidth);
+    mos.write(FileConst.PIR, keyOut, valueOut);
+  }
+
   @Override
   public void cleanup(Context ctx) throws IOException, InterruptedException
   {
+    if (rowPool != null)
+    {
+      try
+      {
+        while (!pendingRows.isEmpty())
+        {
+          addRowValues(takeRow());
+        }
+      } finally
+      {
+        rowPool.shutdownNow();
+      }
+    }
+
+    // Emit the partial column products of the single job
+    if (bucketEngine != null)
+    {
+      for (Map.Entry<Long,BigInteger> column : bucketEngine.computeColumns().entrySet())
+      {
+        writeColumnValue(column.getKey(), column.getValue());
+      }
+    }
+    else if (columnStore != null)
+    {
+      try
+      {
+        columnStore.forEach((col, value) -> {
+          try
+          {
+            writeColumnValue(col, value);
+          } catch (IOException e)
+          {
+            throw new UncheckedIOException(e);
+          } catch (InterruptedException e)
+          {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new InterruptedIOException("Interrupted writing column " + col));
+          }
+        });
+      } catch (UncheckedIOException e)
+      {
+        throw e.getCause();
+      }
+      columnStore.close();
+    }
+
+    if (expTableFile != null)
+    {
+      expTableFile.close();
+    }
     mos.close();
   }
 }
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pirk.responder.wideskies.mapreduce;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.mapreduce.Partitioner;
+import org.apache.pirk.inputformat.hadoop.BytesArrayWritable;
+import org.apache.pirk.query.wideskies.Query;
+import org.apache.pirk.responder.wideskies.common.ShardedQuery;
+import org.apache.pirk.serialization.HadoopFileSystemStore;
+
+/**
+ * Partitioner sending each row (selector hash) to the reducer holding its query shard
+ * <p>
+ * Used when the query is split into shards by row range (pir.shardQuery) so that each reducer only loads the shards for its own rows
+ */
+public class RowRangePartitioner extends Partitioner<IntWritable,BytesArrayWritable> implements Configurable
+{
+  public static final String QUERY_SHARD_DIR = "pirMR.queryShardDir";
+  public static final String QUERY_ROWS_PER_SHARD = "pirMR.queryRowsPerShard";
+  public static final String QUERY_NUM_SHARDS = "pirMR.queryNumShards";
+
+  private Configuration conf = null;
+
+  private int rowsPerShard = 1;
+  private int numShards = 1;
+
+  @Override
+  public void setConf(Configuration confInput)
+  {
+    conf = confInput;
+    rowsPerShard = conf.getInt(QUERY_ROWS_PER_SHARD, 1);
+    numShards = conf.getInt(QUERY_NUM_SHARDS, 1);
+  }
+
+  @Override
+  public Configuration getConf()
+  {
+    return conf;
+  }
+
+  @Override
+  public int getPartition(IntWritable rowIndex, BytesArrayWritable value, int numPartitions)
+  {
+    return ShardedQuery.getPartition(rowIndex.get(), rowsPerShard, numShards, numPartitions);
+  }
+
+  /**
+   * Recalls the query for a task: the sharded query if the job was configured with query shards, otherwise the full query from pirMR.queryInputDir
+   */
+  public static Query recallQuery(Configuration conf, FileSystem fs) throws IOException
+  {
+    String shardDir = conf.get(QUERY_SHARD_DIR);
+    if (shardDir != null)
+    {
+      return ShardedQuery.open(null, shardDir, conf.getInt(QUERY_ROWS_PER_SHARD, 1));
+    }
+    return new HadoopFileSystemStore(fs).recall(conf.get("pirMR.queryInputDir"), Query.class);
+  }
+}
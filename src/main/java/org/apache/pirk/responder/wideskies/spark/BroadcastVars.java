@@ -47,6 +47,10 @@ public class BroadcastVars implements Serializable
 
   private Broadcast<Boolean> useLocalCache = null;
 
+  private Broadcast<String> columnEngine = null;
+
+  private Broadcast<String> modPowEngine = null;
+
   private Broadcast<Boolean> limitHitsPerSelector = null;
 
   private Broadcast<Integer> maxHitsPerSelector = null;
@@ -122,6 +126,26 @@ public class BroadcastVars implements Serializable
     return useLocalCache.getValue();
   }
 
+  public void setColumnEngine(String columnEngineInput)
+  {
+    columnEngine = jsc.broadcast(columnEngineInput);
+  }
+
+  public String getColumnEngine()
+  {
+    return columnEngine.getValue();
+  }
+
+  public void setModPowEngine(String modPowEngineInput)
+  {
+    modPowEngine = jsc.broadcast(modPowEngineInput);
+  }
+
+  public String getModPowEngine()
+  {
+    return modPowEngine.getValue();
+  }
+
   public Boolean getLimitHitsPerSelector()
   {
     return limitHitsPerSelector.getValue();
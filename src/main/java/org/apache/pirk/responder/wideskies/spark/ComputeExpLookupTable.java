@@ -21,13 +21,14 @@ package org.apache.pirk.responder.wideskies.spark;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.pirk.query.wideskies.Query;
+import org.apache.pirk.responder.wideskies.common.ExpTableFile;
 import org.apache.pirk.serialization.HadoopFileSystemStore;
 import org.apache.pirk.utils.SystemConfiguration;
 import org.apache.spark.api.java.JavaPairRDD;
@@ -49,24 +50,11 @@ public class ComputeExpLookupTable
   /**
    * Method to create the distributed modular exponentiation lookup table in hdfs for a given Query
    * <p>
-   * Returns a Pair RDD of the form <queryHash, <<power>,<element^power mod N^2>>
-   */
-  public static JavaPairRDD<Integer,Iterable<Tuple2<Integer,BigInteger>>> computeExpTable(JavaSparkContext sc, FileSystem fs, BroadcastVars bVars, Query query,
-      String queryInputFile, String outputDirExp)
-  {
-    return computeExpTable(sc, fs, bVars, query, queryInputFile, outputDirExp, false);
-  }
-
-  /**
-   * Method to create the distributed modular exponentiation lookup table in hdfs for a given Query
-   * <p>
-   * Returns a Pair RDD of the form <queryHash, <<power>,<element^power mod N^2>>
+   * Each row range is computed and written as a binary {@link ExpTableFile} by a single task, without any shuffle; the row -> file mapping is placed in the
+   * query, which is stored again and broadcast
    */
-  public static JavaPairRDD<Integer,Iterable<Tuple2<Integer,BigInteger>>> computeExpTable(JavaSparkContext sc, FileSystem fs, BroadcastVars bVars, Query query,
-      String queryInputFile, String outputDirExp, boolean useModExpJoin)
+  public static void computeExpTable(JavaSparkContext sc, FileSystem fs, BroadcastVars bVars, Query query, String queryInputFile, String outputDirExp)
   {
-    JavaPairRDD<Integer,Iterable<Tuple2<Integer,BigInteger>>> expCalculations;
-
     logger.info("Creating expTable in hdfs for query identifier = " + query.getQueryInfo().getIdentifier());
 
     // Prep the output directory
@@ -77,14 +65,49 @@ public class ComputeExpLookupTable
       {
         fs.delete(outPathExp, true);
       }
+      fs.mkdirs(outPathExp);
+    } catch (IOException e)
+    {
+      e.printStackTrace();
+    }
+
+    // The first row of each row range
+    int numRows = 1 << query.getQueryInfo().getHashBitSize();
+    int numExpLookupPartitions = SystemConfiguration.getIntProperty("pir.numExpLookupPartitions", 100);
+    int rowsPerFile = ExpTableFile.getRowsPerFile(numRows, numExpLookupPartitions);
+    List<Integer> startRows = new ArrayList<>();
+    for (int startRow = 0; startRow < numRows; startRow += rowsPerFile)
+    {
+      startRows.add(startRow);
+    }
+
+    // Write the exp table files
+    int numSplits = SystemConfiguration.getIntProperty("pir.expCreationSplits", 100);
+    sc.parallelize(startRows, Math.min(numSplits, startRows.size())).foreach(new ExpTableWriter(bVars, rowsPerFile));
+
+    // Place exp table in query object and in the BroadcastVars
+    query.setExpFileBasedLookup(ExpTableFile.getExpFileBasedLookup(outputDirExp, numRows, rowsPerFile));
+    try
+    {
+      new HadoopFileSystemStore(fs).store(queryInputFile, query);
     } catch (IOException e)
     {
       e.printStackTrace();
     }
+    bVars.setQuery(query);
+
+    logger.info("Completed creation of expTable");
+  }
 
+  /**
+   * Method to compute the modular exponentiations of the query elements for joining with the data partitions, without writing them to hdfs
+   * <p>
+   * Returns a Pair RDD of the form <queryHash, <<power>,<element^power mod N^2>>
+   */
+  public static JavaPairRDD<Integer,Iterable<Tuple2<Integer,BigInteger>>> computeExpCalculations(JavaSparkContext sc, BroadcastVars bVars, Query query)
+  {
     // Write the query hashes to a RDD
-    Map<Integer,BigInteger> queryElements = query.getQueryElements();
-    List<Integer> keys = new ArrayList<>(queryElements.keySet());
+    List<Integer> keys = IntStream.range(0, query.getNumRows()).boxed().collect(Collectors.toList());
 
     int numSplits = SystemConfiguration.getIntProperty("pir.expCreationSplits", 100);
     JavaRDD<Integer> queryHashes = sc.parallelize(keys, numSplits);
@@ -92,28 +115,7 @@ public class ComputeExpLookupTable
     // Generate the exp table
     // <queryHash, <<power>,<element^power mod N^2>>
     int numExpLookupPartitions = SystemConfiguration.getIntProperty("pir.numExpLookupPartitions", 100);
-    expCalculations = queryHashes.flatMapToPair(new ExpTableGenerator(bVars)).groupByKey(numExpLookupPartitions);
-
-    if (!useModExpJoin)
-    {
-      // Generate the queryHash -> filename mapping and write the exp table to hdfs
-      JavaPairRDD<Integer,String> hashToPartition = expCalculations.mapPartitionsToPair(new ExpKeyFilenameMap(bVars));
-
-      // Place exp table in query object and in the BroadcastVars
-      Map<Integer,String> queryHashFileNameMap = hashToPartition.collectAsMap();
-      query.setExpFileBasedLookup(new HashMap<>(queryHashFileNameMap));
-      try
-      {
-        new HadoopFileSystemStore(fs).store(queryInputFile, query);
-      } catch (IOException e)
-      {
-        e.printStackTrace();
-      }
-      bVars.setQuery(query);
-    }
-
-    logger.info("Completed creation of expTable");
 
-    return expCalculations;
+    return queryHashes.flatMapToPair(new ExpTableGenerator(bVars)).groupByKey(numExpLookupPartitions);
   }
 }
@@ -25,14 +25,18 @@ import java.util.Map;
 import java.util.Map.Entry;
 
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.MapWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.pirk.encryption.MontgomeryAccumulator;
 import org.apache.pirk.inputformat.hadoop.BaseInputFormat;
 import org.apache.pirk.inputformat.hadoop.InputFormatConst;
 import org.apache.pirk.query.wideskies.Query;
 import org.apache.pirk.query.wideskies.QueryInfo;
+import org.apache.pirk.responder.wideskies.common.ColumnEngine;
+import org.apache.pirk.responder.wideskies.common.ShardedQuery;
 import org.apache.pirk.response.wideskies.Response;
 import org.apache.pirk.schema.data.DataSchema;
 import org.apache.pirk.schema.data.DataSchemaLoader;
@@ -99,6 +103,9 @@ public class ComputeResponse
 
   private boolean colMultReduceByKey = false;
 
+  private boolean shardQuery = false;
+  private String queryShardDir = null;
+
   public ComputeResponse(FileSystem fileSys) throws PIRException
   {
     fs = fileSys;
@@ -200,6 +207,7 @@ public class ComputeResponse
     bVars.setUseLocalCache(SystemConfiguration.getBooleanProperty("pir.useLocalCache", true));
 
     useHDFSLookupTable = SystemConfiguration.isSetTrue("pir.useHDFSLookupTable");
+    shardQuery = SystemConfiguration.isSetTrue("pir.shardQuery");
 
     // Set the hit limit variables
     bVars.setLimitHitsPerSelector(Boolean.valueOf(SystemConfiguration.getProperty("pir.limitHitsPerSelector")));
@@ -209,9 +217,20 @@ public class ComputeResponse
     numDataPartitions = SystemConfiguration.getIntProperty("pir.numDataPartitions", 1000);
     numColMultPartitions = SystemConfiguration.getIntProperty("pir.numColMultPartitions", numDataPartitions);
 
-    // Whether or not we are performing a reduceByKey or a groupByKey->reduce for column multiplication
+    // Whether or not we are performing a combineByKey or a groupByKey->reduce for column multiplication
     colMultReduceByKey = SystemConfiguration.getBooleanProperty("pir.colMultReduceByKey", false);
 
+    // Set the column engine -- the bucket engine needs all values for a column at once and makes the modular exponentiation table unnecessary
+    String columnEngine = SystemConfiguration.getProperty("pir.columnEngine", ColumnEngine.MODPOW);
+    bVars.setColumnEngine(columnEngine);
+    bVars.setModPowEngine(SystemConfiguration.getProperty("pir.modPowEngine", ""));
+    if (columnEngine.equals(ColumnEngine.BUCKET))
+    {
+      logger.info("Using the bucket column engine: colMultReduceByKey and useModExpJoin are disabled");
+      colMultReduceByKey = false;
+      useModExpJoin = false;
+    }
+
     // Set the expDir
     bVars.setExpDir(outputDirExp);
   }
@@ -222,6 +241,22 @@ public class ComputeResponse
     sc.stop();
   }
 
+  // Removes the query shards, if the query was sharded
+  private void deleteQueryShards()
+  {
+    if (queryShardDir != null)
+    {
+      try
+      {
+        fs.delete(new Path(queryShardDir), true);
+      } catch (IOException e)
+      {
+        logger.warn("Unable to delete the query shards " + queryShardDir, e);
+      }
+      queryShardDir = null;
+    }
+  }
+
   /**
    * Method to read in data from an allowed input source/format and perform the query
    */
@@ -344,42 +379,67 @@ public class ComputeResponse
     // If we are using distributed exp tables -- Create the expTable file in hdfs for this query, if it doesn't exist
     if ((queryInfo.useHDFSExpLookupTable() || useHDFSLookupTable) && query.getExpFileBasedLookup().isEmpty())
     {
-      // <queryHash, <<power>,<element^power mod N^2>>
-      JavaPairRDD<Integer,Iterable<Tuple2<Integer,BigInteger>>> expCalculations = ComputeExpLookupTable.computeExpTable(sc, fs, bVars, query, queryInput,
-          outputDirExp);
+      ComputeExpLookupTable.computeExpTable(sc, fs, bVars, query, queryInput, outputDirExp);
     }
 
     // Extract the selectors for each dataElement based upon the query type
     // and perform a keyed hash of the selectors
     JavaPairRDD<Integer,List<BigInteger>> selectorHashToDocRDD = inputRDD.mapToPair(new HashSelectorsAndPartitionData(bVars));
 
-    // Group by hashed selector (row) -- can combine with the line above, separating for testing and benchmarking...
-    JavaPairRDD<Integer,Iterable<List<BigInteger>>> selectorGroupRDD = selectorHashToDocRDD.groupByKey();
-
-    // Calculate the encrypted row values for each row, emit <colNum, colVal> for each row
-    JavaPairRDD<Long,BigInteger> encRowRDD;
-    if (useModExpJoin)
+    try
     {
-      // If we are pre-computing the modular exponentiation table and then joining the data partitions
-      // for computing the encrypted rows
+      // Group by hashed selector (row) -- can combine with the line above, separating for testing and benchmarking...
+      JavaPairRDD<Integer,Iterable<List<BigInteger>>> selectorGroupRDD;
+      if (shardQuery)
+      {
+        // Split the query by row range and partition the rows accordingly so that each task only loads the query rows it computes
+        int numShards = SystemConfiguration.getIntProperty("pir.numQueryShards", numDataPartitions);
+        queryShardDir = queryInput + ShardedQuery.SHARD_DIR_SUFFIX;
+        int rowsPerShard;
+        try
+        {
+          rowsPerShard = ShardedQuery.writeShards(query, numShards, fs, queryShardDir);
+          bVars.setQuery(ShardedQuery.open(null, queryShardDir, rowsPerShard));
+        } catch (IOException e)
+        {
+          throw new PIRException("Unable to shard the query into " + queryShardDir, e);
+        }
+        numShards = ShardedQuery.getNumShards(1 << queryInfo.getHashBitSize(), rowsPerShard);
+
+        selectorGroupRDD = selectorHashToDocRDD.groupByKey(new RowRangePartitioner(Math.min(numShards, numDataPartitions), rowsPerShard, numShards));
+      }
+      else
+      {
+        selectorGroupRDD = selectorHashToDocRDD.groupByKey();
+      }
 
-      // <queryHash, <<power>,<element^power mod N^2>>
-      JavaPairRDD<Integer,Iterable<Tuple2<Integer,BigInteger>>> expCalculations = ComputeExpLookupTable.computeExpTable(sc, fs, bVars, query, queryInput,
-          outputDirExp, useModExpJoin);
+      // Calculate the encrypted row values for each row, emit <colNum, colVal> for each row
+      JavaPairRDD<Long,BigInteger> encRowRDD;
+      if (useModExpJoin)
+      {
+        // If we are pre-computing the modular exponentiation table and then joining the data partitions
+        // for computing the encrypted rows
 
-      JavaPairRDD<Integer,Tuple2<Iterable<Tuple2<Integer,BigInteger>>,Iterable<List<BigInteger>>>> encMapDataJoin = expCalculations.join(selectorGroupRDD);
+        // <queryHash, <<power>,<element^power mod N^2>>
+        JavaPairRDD<Integer,Iterable<Tuple2<Integer,BigInteger>>> expCalculations = ComputeExpLookupTable.computeExpCalculations(sc, bVars, query);
 
-      // Calculate the encrypted row values for each row, emit <colNum, colVal> for each row
-      encRowRDD = encMapDataJoin.flatMapToPair(new EncRowCalcPrecomputedCache(accum, bVars));
-    }
-    else
+        JavaPairRDD<Integer,Tuple2<Iterable<Tuple2<Integer,BigInteger>>,Iterable<List<BigInteger>>>> encMapDataJoin = expCalculations.join(selectorGroupRDD);
+
+        // Calculate the encrypted row values for each row, emit <colNum, colVal> for each row
+        encRowRDD = encMapDataJoin.flatMapToPair(new EncRowCalcPrecomputedCache(accum, bVars));
+      }
+      else
+      {
+        encRowRDD = selectorGroupRDD.flatMapToPair(new EncRowCalc(accum, bVars));
+      }
+
+      // Multiply the column values by colNum: emit <colNum, finalColVal> and write the final result object
+      encryptedColumnCalc(encRowRDD);
+    } finally
     {
-      encRowRDD = selectorGroupRDD.flatMapToPair(new EncRowCalc(accum, bVars));
+      deleteQueryShards();
     }
 
-    // Multiply the column values by colNum: emit <colNum, finalColVal> and write the final result object
-    encryptedColumnCalc(encRowRDD);
-
     // Teardown the context
     logger.info("Tearing down...");
     teardown();
@@ -393,7 +453,9 @@ public class ComputeResponse
     JavaPairRDD<Long,BigInteger> encColRDD;
     if (colMultReduceByKey)
     {
-      encColRDD = encRowRDD.reduceByKey(new EncColMultReducer(bVars), numColMultPartitions);
+      EncColMultReducer colMultReducer = new EncColMultReducer(bVars);
+      encColRDD = encRowRDD.combineByKey(colMultReducer::createCombiner, colMultReducer::mergeValue, colMultReducer::mergeCombiners, numColMultPartitions)
+          .mapValues(MontgomeryAccumulator::getValue);
     }
     else
     {
@@ -20,7 +20,12 @@ package org.apache.pirk.responder.wideskies.spark;
 
 import java.math.BigInteger;
 
+import org.apache.pirk.encryption.ModPowAbstraction;
+import org.apache.pirk.encryption.Montgomery;
+import org.apache.pirk.encryption.MontgomeryAccumulator;
 import org.apache.pirk.query.wideskies.Query;
+import org.apache.pirk.responder.wideskies.common.BucketColumnEngine;
+import org.apache.pirk.responder.wideskies.common.ColumnEngine;
 import org.apache.spark.api.java.function.PairFunction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,6 +34,9 @@ import scala.Tuple2;
 
 /**
  * Class for performing encrypted column multiplication when all columns haven been grouped by column number
+ * <p>
+ * If using the bucket column engine, the grouped values are the packed (rowIndex, part) pairs emitted by EncRowCalc and the column is computed via the
+ * {@link BucketColumnEngine}
  * 
  */
 public class EncColMultGroupedMapper implements PairFunction<Tuple2<Long,Iterable<BigInteger>>,Long,BigInteger>
@@ -38,11 +46,17 @@ public class EncColMultGroupedMapper implements PairFunction<Tuple2<Long,Iterabl
   private static final Logger logger = LoggerFactory.getLogger(EncColMultGroupedMapper.class);
 
   Query query = null;
+  boolean useBucketEngine = false;
+  String modPowEngineName = null;
+  Montgomery montgomery = null;
 
   public EncColMultGroupedMapper(BroadcastVars bbVarsIn)
   {
 
     query = bbVarsIn.getQuery();
+    useBucketEngine = bbVarsIn.getColumnEngine().equals(ColumnEngine.BUCKET);
+    modPowEngineName = bbVarsIn.getModPowEngine();
+    montgomery = new Montgomery(query.getNSquared());
 
     logger.info("Initialized EncColMultReducer");
   }
@@ -53,9 +67,23 @@ public class EncColMultGroupedMapper implements PairFunction<Tuple2<Long,Iterabl
     // long startTime = System.currentTimeMillis();
 
     BigInteger colVal = BigInteger.ONE;
-    for (BigInteger col : colVals._2)
+    if (useBucketEngine)
     {
-      colVal = colVal.multiply(col).mod(query.getNSquared());
+      BucketColumnEngine bucketEngine = new BucketColumnEngine(query, ModPowAbstraction.getEngine(modPowEngineName));
+      for (BigInteger entry : colVals._2)
+      {
+        bucketEngine.insertPackedEntry(colVals._1, entry);
+      }
+      colVal = bucketEngine.computeColumn(colVals._1);
+    }
+    else
+    {
+      MontgomeryAccumulator colMult = new MontgomeryAccumulator(montgomery);
+      for (BigInteger col : colVals._2)
+      {
+        colMult.multiply(col);
+      }
+      colVal = colMult.getValue();
     }
 
     // long endTime = System.currentTimeMillis();
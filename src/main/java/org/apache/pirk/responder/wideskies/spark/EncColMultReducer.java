@@ -18,45 +18,55 @@
  */
 package org.apache.pirk.responder.wideskies.spark;
 
+import java.io.Serializable;
 import java.math.BigInteger;
 
-import org.apache.pirk.query.wideskies.Query;
-import org.apache.spark.api.java.function.Function2;
+import org.apache.pirk.encryption.Montgomery;
+import org.apache.pirk.encryption.MontgomeryAccumulator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Function to perform encrypted column multiplication
- *
+ * Functions to perform encrypted column multiplication via combineByKey
+ * <p>
+ * The column products are accumulated in place in {@link MontgomeryAccumulator}s -- see {@link #createCombiner(BigInteger)},
+ * {@link #mergeValue(MontgomeryAccumulator, BigInteger)}, and {@link #mergeCombiners(MontgomeryAccumulator, MontgomeryAccumulator)}; the column values are
+ * given by {@link MontgomeryAccumulator#getValue()}
  */
-public class EncColMultReducer implements Function2<BigInteger,BigInteger,BigInteger>
+public class EncColMultReducer implements Serializable
 {
   private static final long serialVersionUID = 1L;
 
   private static final Logger logger = LoggerFactory.getLogger(EncColMultReducer.class);
 
-  Query query = null;
+  private Montgomery montgomery = null;
 
   public EncColMultReducer(BroadcastVars bbVarsIn)
   {
-
-    query = bbVarsIn.getQuery();
+    montgomery = new Montgomery(bbVarsIn.getQuery().getNSquared());
 
     logger.info("Initialized EncColMultReducer");
   }
 
-  @Override
-  public BigInteger call(BigInteger colVal1, BigInteger colVal2) throws Exception
+  public MontgomeryAccumulator createCombiner(BigInteger colVal)
   {
-    // long startTime = System.currentTimeMillis();
-
-    BigInteger colMult = (colVal1.multiply(colVal2)).mod(query.getNSquared());
+    MontgomeryAccumulator colMult = new MontgomeryAccumulator(montgomery);
+    colMult.multiply(colVal);
 
-    logger.debug("colVal1 = " + colVal1.toString() + " colVal2 = " + colVal2.toString() + " colMult = " + colMult.toString());
+    return colMult;
+  }
 
-    // long endTime = System.currentTimeMillis();
-    // logger.info("Completed column mult: duration = " + (endTime-startTime));
+  public MontgomeryAccumulator mergeValue(MontgomeryAccumulator colMult, BigInteger colVal)
+  {
+    colMult.multiply(colVal);
 
     return colMult;
   }
+
+  public MontgomeryAccumulator mergeCombiners(MontgomeryAccumulator colMult1, MontgomeryAccumulator colMult2)
+  {
+    colMult1.multiply(colMult2);
+
+    return colMult1;
+  }
 }
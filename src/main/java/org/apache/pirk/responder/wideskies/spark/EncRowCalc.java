@@ -18,7 +18,6 @@
  */
 package org.apache.pirk.responder.wideskies.spark;
 
-import java.io.IOException;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -26,9 +25,14 @@ import java.util.List;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.pirk.encryption.ModPowAbstraction;
+import org.apache.pirk.encryption.spi.ModPowEngine;
 import org.apache.pirk.query.wideskies.Query;
 import org.apache.pirk.query.wideskies.QueryInfo;
+import org.apache.pirk.responder.wideskies.common.ColumnEngine;
 import org.apache.pirk.responder.wideskies.common.ComputeEncryptedRow;
+import org.apache.pirk.responder.wideskies.common.ExpTableFile;
+import org.apache.pirk.responder.wideskies.common.RowExpCache;
 import org.apache.spark.api.java.function.PairFlatMapFunction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -57,6 +61,14 @@ public class EncRowCalc implements PairFlatMapFunction<Tuple2<Integer,Iterable<L
   private boolean useLocalCache = false;
   private boolean limitHitsPerSelector = false;
   private int maxHitsPerSelector = 0;
+  private boolean useBucketEngine = false;
+  private String modPowEngineName = null;
+
+  // Opened on first use in the executor -- the files of the hdfs expTable stay open for the life of the function
+  private transient ExpTableFile expTableFile = null;
+
+  // Created on first use in the executor -- reused across the rows of the partition
+  private transient RowExpCache expCache = null;
 
   public EncRowCalc(Accumulators accumIn, BroadcastVars bvIn)
   {
@@ -67,8 +79,11 @@ public class EncRowCalc implements PairFlatMapFunction<Tuple2<Integer,Iterable<L
     useLocalCache = bvIn.getUseLocalCache();
     limitHitsPerSelector = bvIn.getLimitHitsPerSelector();
     maxHitsPerSelector = bvIn.getMaxHitsPerSelector();
+    useBucketEngine = bvIn.getColumnEngine().equals(ColumnEngine.BUCKET);
+    modPowEngineName = bvIn.getModPowEngine();
 
-    logger.info("Initialized EncRowCalc - limitHitsPerSelector = " + limitHitsPerSelector + " maxHitsPerSelector = " + maxHitsPerSelector);
+    logger.info("Initialized EncRowCalc - limitHitsPerSelector = " + limitHitsPerSelector + " maxHitsPerSelector = " + maxHitsPerSelector
+        + " useBucketEngine = " + useBucketEngine + " modPowEngine = " + modPowEngineName);
   }
 
   @Override
@@ -79,23 +94,28 @@ public class EncRowCalc implements PairFlatMapFunction<Tuple2<Integer,Iterable<L
     int rowIndex = hashDocTuple._1;
     accum.incNumHashes(1);
 
-    if (queryInfo.useHDFSExpLookupTable())
+    if (useBucketEngine)
+    {
+      // Pair each data partition with the row; the exponentiation is folded into the column multiplication
+      returnPairs.addAll(ComputeEncryptedRow.computeBucketEntriesBI(hashDocTuple._2, rowIndex, limitHitsPerSelector, maxHitsPerSelector));
+
+      return returnPairs.iterator();
+    }
+
+    if (queryInfo.useHDFSExpLookupTable() && expTableFile == null)
+    {
+      expTableFile = new ExpTableFile(FileSystem.get(new Configuration()), query);
+    }
+
+    ModPowEngine modPowEngine = ModPowAbstraction.getEngine(modPowEngineName);
+    if (useLocalCache && expCache == null)
     {
-      FileSystem fs;
-      try
-      {
-        fs = FileSystem.get(new Configuration());
-      } catch (IOException e)
-      {
-        e.printStackTrace();
-        throw e;
-      }
-      ComputeEncryptedRow.loadCacheFromHDFS(fs, query.getExpFile(rowIndex), query);
+      expCache = new RowExpCache(query, modPowEngine);
     }
 
     // Compute the encrypted row elements for a query from extracted data partitions
     List<Tuple2<Long,BigInteger>> encRowValues = ComputeEncryptedRow.computeEncRowBI(hashDocTuple._2, query, rowIndex, limitHitsPerSelector, maxHitsPerSelector,
-        useLocalCache);
+        expCache, modPowEngine, expTableFile);
 
     returnPairs.addAll(encRowValues);
 
@@ -20,6 +20,7 @@ package org.apache.pirk.responder.wideskies.spark;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
@@ -41,6 +42,7 @@ public class ExpTableGenerator implements PairFlatMapFunction<Integer,Integer,Tu
   Query query = null;
   private BigInteger NSquared = null;
   private int maxValue = 0;
+  private String modPowEngineName = null;
 
   public ExpTableGenerator(BroadcastVars bbVarsIn)
   {
@@ -49,6 +51,8 @@ public class ExpTableGenerator implements PairFlatMapFunction<Integer,Integer,Tu
 
     int dataPartitionBitSize = query.getQueryInfo().getDataPartitionBitSize();
     maxValue = (int) Math.pow(2, dataPartitionBitSize) - 1;
+
+    modPowEngineName = bbVarsIn.getModPowEngine();
   }
 
   @Override
@@ -57,11 +61,19 @@ public class ExpTableGenerator implements PairFlatMapFunction<Integer,Integer,Tu
     // queryHashKey -> <<power>,<element^power mod N^2>>
     List<Tuple2<Integer,Tuple2<Integer,BigInteger>>> modExp = new ArrayList<>();
 
-    BigInteger element = query.getQueryElement(queryHashKey);
+    // All powers of the element in a single batch
+    BigInteger[] elements = new BigInteger[maxValue + 1];
+    BigInteger[] exponents = new BigInteger[maxValue + 1];
+    Arrays.fill(elements, query.getQueryElement(queryHashKey));
+    for (int i = 0; i <= maxValue; ++i)
+    {
+      exponents[i] = BigInteger.valueOf(i);
+    }
+    BigInteger[] modPows = ModPowAbstraction.getEngine(modPowEngineName).modPowBatch(elements, exponents, NSquared);
+
     for (int i = 0; i <= maxValue; ++i)
     {
-      BigInteger modPow = ModPowAbstraction.modPow(element, BigInteger.valueOf(i), NSquared);
-      Tuple2<Integer,BigInteger> modPowTuple = new Tuple2<>(i, modPow);
+      Tuple2<Integer,BigInteger> modPowTuple = new Tuple2<>(i, modPows[i]);
       modExp.add(new Tuple2<>(queryHashKey, modPowTuple));
     }
 
@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pirk.responder.wideskies.spark;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.pirk.query.wideskies.Query;
+import org.apache.pirk.responder.wideskies.common.ExpTableFile;
+import org.apache.spark.api.java.function.VoidFunction;
+
+/**
+ * Function to write the {@link ExpTableFile} of the row range starting at the given row to the exp directory in hdfs
+ */
+public class ExpTableWriter implements VoidFunction<Integer>
+{
+  private static final long serialVersionUID = 1L;
+
+  private Query query = null;
+  private String expOutDir = null;
+  private int rowsPerFile = 0;
+  private int numRows = 0;
+
+  public ExpTableWriter(BroadcastVars bbVarsIn, int rowsPerFileIn)
+  {
+    query = bbVarsIn.getQuery();
+    expOutDir = bbVarsIn.getExpDir();
+    rowsPerFile = rowsPerFileIn;
+    numRows = 1 << query.getQueryInfo().getHashBitSize();
+  }
+
+  @Override
+  public void call(Integer startRow) throws Exception
+  {
+    ExpTableFile.write(query, startRow, Math.min(numRows, startRow + rowsPerFile), FileSystem.get(new Configuration()), expOutDir);
+  }
+}
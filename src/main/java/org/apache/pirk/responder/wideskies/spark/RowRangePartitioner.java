@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pirk.responder.wideskies.spark;
+
+import org.apache.pirk.responder.wideskies.common.ShardedQuery;
+import org.apache.spark.Partitioner;
+
+/**
+ * Partitioner sending each row (selector hash) to the partition holding its query shard
+ * <p>
+ * Used when the query is split into shards by row range (pir.shardQuery) so that each task only loads the shards for its own rows
+ */
+public class RowRangePartitioner extends Partitioner
+{
+  private static final long serialVersionUID = 1L;
+
+  private final int numPartitions;
+  private final int rowsPerShard;
+  private final int numShards;
+
+  public RowRangePartitioner(int numPartitionsInput, int rowsPerShardInput, int numShardsInput)
+  {
+    numPartitions = numPartitionsInput;
+    rowsPerShard = rowsPerShardInput;
+    numShards = numShardsInput;
+  }
+
+  @Override
+  public int numPartitions()
+  {
+    return numPartitions;
+  }
+
+  @Override
+  public int getPartition(Object key)
+  {
+    return ShardedQuery.getPartition((Integer) key, rowsPerShard, numShards, numPartitions);
+  }
+
+  @Override
+  public boolean equals(Object o)
+  {
+    if (this == o)
+      return true;
+    if (o == null || getClass() != o.getClass())
+      return false;
+
+    RowRangePartitioner that = (RowRangePartitioner) o;
+    return numPartitions == that.numPartitions && rowsPerShard == that.rowsPerShard && numShards == that.numShards;
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return 31 * (31 * numPartitions + rowsPerShard) + numShards;
+  }
+}
@@ -29,10 +29,12 @@ import org.apache.hadoop.io.MapWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.pirk.encryption.MontgomeryAccumulator;
 import org.apache.pirk.inputformat.hadoop.BaseInputFormat;
 import org.apache.pirk.inputformat.hadoop.InputFormatConst;
 import org.apache.pirk.query.wideskies.Query;
 import org.apache.pirk.query.wideskies.QueryInfo;
+import org.apache.pirk.responder.wideskies.common.ColumnEngine;
 import org.apache.pirk.responder.wideskies.spark.Accumulators;
 import org.apache.pirk.responder.wideskies.spark.BroadcastVars;
 import org.apache.pirk.responder.wideskies.spark.EncColMultGroupedMapper;
@@ -50,6 +52,7 @@ import org.apache.pirk.schema.query.QuerySchemaRegistry;
 import org.apache.pirk.serialization.HadoopFileSystemStore;
 import org.apache.pirk.utils.PIRException;
 import org.apache.pirk.utils.SystemConfiguration;
+import org.apache.spark.HashPartitioner;
 import org.apache.spark.SparkConf;
 import org.apache.spark.api.java.JavaPairRDD;
 import org.apache.spark.api.java.JavaRDD;
@@ -224,9 +227,19 @@ public class ComputeStreamingResponse
     numDataPartitions = SystemConfiguration.getIntProperty("pir.numDataPartitions", 1000);
     numColMultPartitions = SystemConfiguration.getIntProperty("pir.numColMultPartitions", numDataPartitions);
 
-    // Whether or not we are performing a reduceByKey or a groupByKey->reduce for column multiplication
+    // Whether or not we are performing a combineByKey or a groupByKey->reduce for column multiplication
     colMultReduceByKey = SystemConfiguration.getBooleanProperty("pir.colMultReduceByKey", false);
 
+    // Set the column engine -- the bucket engine needs all values for a column at once
+    String columnEngine = SystemConfiguration.getProperty("pir.columnEngine", ColumnEngine.MODPOW);
+    bVars.setColumnEngine(columnEngine);
+    bVars.setModPowEngine(SystemConfiguration.getProperty("pir.modPowEngine", ""));
+    if (columnEngine.equals(ColumnEngine.BUCKET))
+    {
+      logger.info("Using the bucket column engine: colMultReduceByKey is disabled");
+      colMultReduceByKey = false;
+    }
+
     // Set the expDir
     bVars.setExpDir(outputDirExp);
 
@@ -448,7 +461,9 @@ public class ComputeStreamingResponse
     JavaPairDStream<Long,BigInteger> encColRDD;
     if (colMultReduceByKey)
     {
-      encColRDD = encRowRDD.reduceByKey(new EncColMultReducer(bVars), numColMultPartitions);
+      EncColMultReducer colMultReducer = new EncColMultReducer(bVars);
+      encColRDD = encRowRDD.combineByKey(colMultReducer::createCombiner, colMultReducer::mergeValue, colMultReducer::mergeCombiners,
+          new HashPartitioner(numColMultPartitions)).mapValues(MontgomeryAccumulator::getValue);
     }
     else
     {
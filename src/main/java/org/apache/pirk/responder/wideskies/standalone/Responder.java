@@ -18,26 +18,37 @@
  */
 package org.apache.pirk.responder.wideskies.standalone;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
 import java.math.BigInteger;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map.Entry;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 import org.apache.pirk.encryption.ModPowAbstraction;
+import org.apache.pirk.encryption.spi.ModPowEngine;
+import org.apache.pirk.inputformat.local.MappedLineSplit;
 import org.apache.pirk.query.wideskies.Query;
 import org.apache.pirk.query.wideskies.QueryInfo;
 import org.apache.pirk.query.wideskies.QueryUtils;
+import org.apache.pirk.responder.wideskies.common.ColumnEngine;
 import org.apache.pirk.response.wideskies.Response;
 import org.apache.pirk.schema.query.QuerySchema;
 import org.apache.pirk.schema.query.QuerySchemaRegistry;
 import org.apache.pirk.serialization.LocalFileSystemStore;
 import org.apache.pirk.utils.KeyedHash;
+import org.apache.pirk.utils.PIRException;
 import org.apache.pirk.utils.SystemConfiguration;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -51,22 +62,36 @@ import org.slf4j.LoggerFactory;
  * Does not use the DataFilter class -- assumes all filtering happens before calling addDataElement()
  * <p>
  * NOTE: Only uses in expLookupTables that are contained in the Query object, not in hdfs as this is a standalone responder
+ * <p>
+ * The column values are computed by the {@link ColumnEngine} given by the pir.columnEngine property, with the modPow engine given by the pir.modPowEngine
+ * property
+ * <p>
+ * {@link #computeStandaloneResponse()} runs on pir.numStandaloneThreads threads (defaults to the number of cores): the input file (or directory of files) is
+ * memory-mapped and cut into {@link MappedLineSplit}s that are parsed, hashed, and partitioned in parallel; the splits are then assigned their columns one
+ * at a time in input order, so that the hits of each selector land in the same columns as with a single thread; column c is updated by the thread of
+ * stripe (c mod numThreads), with one column engine per stripe unless the engine is thread-safe
  */
 public class Responder
 {
   private static final Logger logger = LoggerFactory.getLogger(Responder.class);
 
+  private static final long BYTES_PER_SPLIT = 1 << 20;
+
   private Query query = null;
   private QueryInfo queryInfo = null;
   private QuerySchema qSchema = null;
 
   private Response response = null;
 
-  private TreeMap<Integer,BigInteger> columns = null; // the column values for the PIR calculations
+  private int numThreads = 1;
 
-  private ArrayList<Integer> rowColumnCounters; // keeps track of how many hit partitions have been recorded for each row/selector
+  private ColumnEngine[] columnStripes = null; // computes the column values for the PIR calculations; column c goes to stripe (c mod numThreads)
 
-  public Responder(Query queryInput)
+  private TreeMap<Integer,BigInteger> columns = null; // the column values, set by setResponseElements()
+
+  private int[] rowColumnCounters; // keeps track of how many hit partitions have been recorded for each row/selector
+
+  public Responder(Query queryInput) throws PIRException
   {
     query = queryInput;
     queryInfo = query.getQueryInfo();
@@ -83,15 +108,22 @@ public class Responder
 
     response = new Response(queryInfo);
 
+    numThreads = Math.max(1, SystemConfiguration.getIntProperty("pir.numStandaloneThreads", Runtime.getRuntime().availableProcessors()));
+
     // Columns are allocated as needed, initialized to 1
+    String columnEngineName = SystemConfiguration.getProperty("pir.columnEngine", ColumnEngine.MODPOW);
+    ModPowEngine modPowEngine = ModPowAbstraction.getEngine(SystemConfiguration.getProperty("pir.modPowEngine", ""));
+    columnStripes = new ColumnEngine[numThreads];
+    columnStripes[0] = ColumnEngine.getColumnEngine(columnEngineName, query, modPowEngine);
+    for (int i = 1; i < numThreads; ++i)
+    {
+      // A thread-safe engine is shared by the stripes
+      columnStripes[i] = columnStripes[0].isThreadSafe() ? columnStripes[0] : ColumnEngine.getColumnEngine(columnEngineName, query, modPowEngine);
+    }
     columns = new TreeMap<>();
 
     // Initialize row counters
-    rowColumnCounters = new ArrayList<>();
-    for (int i = 0; i < Math.pow(2, queryInfo.getHashBitSize()); ++i)
-    {
-      rowColumnCounters.add(0);
-    }
+    rowColumnCounters = new int[1 << queryInfo.getHashBitSize()];
   }
 
   public Response getResponse()
@@ -107,32 +139,54 @@ public class Responder
   /**
    * Method to compute the standalone response
    * <p>
-   * Assumes that the input data is a single file in the local filesystem and is fully qualified
+   * Assumes that the input data is a single file, or a directory of files, in the local filesystem and is fully qualified
    */
   public void computeStandaloneResponse() throws IOException
   {
-    // Read in data, perform query
     String inputData = SystemConfiguration.getProperty("pir.inputData");
+    logger.info("Computing the standalone response for inputData = " + inputData + " with numThreads = " + numThreads);
+
+    ExecutorService parsePool = Executors.newFixedThreadPool(numThreads);
+    ExecutorService[] stripeExecutors = new ExecutorService[numThreads];
+    for (int i = 0; i < numThreads; ++i)
+    {
+      stripeExecutors[i] = Executors.newSingleThreadExecutor();
+    }
+
+    // Read in data, perform query
     try
     {
-      BufferedReader br = new BufferedReader(new FileReader(inputData));
+      ArrayDeque<Future<List<Hit>>> parsedSplits = new ArrayDeque<>(); // in input order
+      ArrayDeque<Future<?>> stripeUpdates = new ArrayDeque<>();
 
-      String line;
-      JSONParser jsonParser = new JSONParser();
-      while ((line = br.readLine()) != null)
+      for (MappedLineSplit split : MappedLineSplit.getSplits(inputData, BYTES_PER_SPLIT))
       {
-        logger.info("line = " + line);
-        JSONObject jsonData = (JSONObject) jsonParser.parse(line);
-
-        logger.info("jsonData = " + jsonData.toJSONString());
+        parsedSplits.add(parsePool.submit(() -> parseLines(split)));
 
-        String selector = QueryUtils.getSelectorByQueryTypeJSON(qSchema, jsonData);
-        addDataElement(selector, jsonData);
+        // Bound the number of splits held in memory
+        if (parsedSplits.size() > 2 * numThreads)
+        {
+          assignColumns(parsedSplits.poll().get(), stripeExecutors, stripeUpdates);
+        }
       }
-      br.close();
-    } catch (Exception e)
+      while (!parsedSplits.isEmpty())
+      {
+        assignColumns(parsedSplits.poll().get(), stripeExecutors, stripeUpdates);
+      }
+      for (Future<?> update : stripeUpdates)
+      {
+        update.get();
+      }
+    } catch (InterruptedException | ExecutionException e)
     {
-      e.printStackTrace();
+      throw new IOException("Exception in the standalone responder threads", e);
+    } finally
+    {
+      parsePool.shutdownNow();
+      for (ExecutorService stripeExecutor : stripeExecutors)
+      {
+        stripeExecutor.shutdownNow();
+      }
     }
 
     // Set the response object, extract, write to file
@@ -141,6 +195,117 @@ public class Responder
     new LocalFileSystemStore().store(outputFile, response);
   }
 
+  // A data element reduced to its row and data partitions
+  private static class Hit
+  {
+    final int rowIndex;
+    final List<BigInteger> partitions;
+
+    Hit(int rowIndexInput, List<BigInteger> partitionsInput)
+    {
+      rowIndex = rowIndexInput;
+      partitions = partitionsInput;
+    }
+  }
+
+  // A data partition placed in a column
+  private static class ColumnPart
+  {
+    final long col;
+    final int rowIndex;
+    final BigInteger part;
+
+    ColumnPart(long colInput, int rowIndexInput, BigInteger partInput)
+    {
+      col = colInput;
+      rowIndex = rowIndexInput;
+      part = partInput;
+    }
+  }
+
+  // Parses, hashes, and partitions the lines of a split; lines that cannot be parsed are logged and skipped
+  private List<Hit> parseLines(MappedLineSplit split) throws PIRException
+  {
+    List<Hit> hits = new ArrayList<>();
+
+    JSONParser jsonParser = new JSONParser();
+    int numSkipped = 0;
+    String line;
+    while ((line = split.readLine()) != null)
+    {
+      JSONObject jsonData;
+      try
+      {
+        jsonData = (JSONObject) jsonParser.parse(line);
+      } catch (ParseException e)
+      {
+        ++numSkipped;
+        logger.debug("Skipping unparsable line = {} {}", line, e.getMessage());
+        continue;
+      }
+      logger.debug("jsonData = {}", jsonData);
+
+      String selector = QueryUtils.getSelectorByQueryTypeJSON(qSchema, jsonData);
+      hits.add(toHit(selector, jsonData));
+    }
+    if (numSkipped > 0)
+    {
+      logger.warn("Skipped " + numSkipped + " unparsable lines of the split of " + split.getFileName() + " at offset " + split.getStart());
+    }
+    return hits;
+  }
+
+  private Hit toHit(String selector, JSONObject jsonData) throws PIRException
+  {
+    // Extract the data bits based on the query type
+    // Partition by the given partitionSize
+    List<BigInteger> hitValPartitions = QueryUtils.partitionDataElement(qSchema, jsonData, queryInfo.getEmbedSelector());
+
+    int rowIndex = KeyedHash.hash(queryInfo.getHashKey(), queryInfo.getHashBitSize(), selector);
+
+    return new Hit(rowIndex, hitValPartitions);
+  }
+
+  // Assigns the columns of the hits of a split, in order, and hands the data partitions to the threads of their column stripes
+  private void assignColumns(List<Hit> hits, ExecutorService[] stripeExecutors, ArrayDeque<Future<?>> stripeUpdates)
+      throws InterruptedException, ExecutionException
+  {
+    List<List<ColumnPart>> stripeParts = new ArrayList<>(numThreads);
+    for (int i = 0; i < numThreads; ++i)
+    {
+      stripeParts.add(new ArrayList<>());
+    }
+
+    for (Hit hit : hits)
+    {
+      int rowCounter = rowColumnCounters[hit.rowIndex];
+      for (int i = 0; i < hit.partitions.size(); ++i)
+      {
+        long col = rowCounter + i;
+        stripeParts.get((int) (col % numThreads)).add(new ColumnPart(col, hit.rowIndex, hit.partitions.get(i)));
+      }
+      rowColumnCounters[hit.rowIndex] = rowCounter + hit.partitions.size();
+    }
+
+    for (int i = 0; i < numThreads; ++i)
+    {
+      ColumnEngine stripe = columnStripes[i];
+      List<ColumnPart> parts = stripeParts.get(i);
+      stripeUpdates.add(stripeExecutors[i].submit(() -> {
+        for (ColumnPart part : parts)
+        {
+          stripe.insertDataPart(part.col, part.rowIndex, part.part);
+        }
+      }));
+    }
+
+    // Bound the number of pending column updates
+    while (stripeUpdates.size() > 4 * numThreads * numThreads)
+    {
+      stripeUpdates.poll().get();
+    }
+  }
+
   /**
    * Method to add a data element associated with the given selector to the Response
    * <p>
@@ -167,63 +332,41 @@ public class Responder
    */
   public void addDataElement(String selector, JSONObject jsonData) throws Exception
   {
-    // Extract the data bits based on the query type
-    // Partition by the given partitionSize
-    List<BigInteger> hitValPartitions = QueryUtils.partitionDataElement(qSchema, jsonData, queryInfo.getEmbedSelector());
+    Hit hit = toHit(selector, jsonData);
 
     // Pull the necessary elements
-    int rowIndex = KeyedHash.hash(queryInfo.getHashKey(), queryInfo.getHashBitSize(), selector);
-    int rowCounter = rowColumnCounters.get(rowIndex);
-    BigInteger rowQuery = query.getQueryElement(rowIndex);
+    int rowIndex = hit.rowIndex;
+    int rowCounter = rowColumnCounters[rowIndex];
 
-    logger.debug("hitValPartitions.size() = " + hitValPartitions.size() + " rowIndex = " + rowIndex + " rowCounter = " + rowCounter + " rowQuery = "
-        + rowQuery.toString() + " pirWLQuery.getNSquared() = " + query.getNSquared().toString());
+    logger.debug("hitValPartitions.size() = {} rowIndex = {} rowCounter = {}", hit.partitions.size(), rowIndex, rowCounter);
 
     // Update the associated column values
-    for (int i = 0; i < hitValPartitions.size(); ++i)
+    for (int i = 0; i < hit.partitions.size(); ++i)
     {
-      if (!columns.containsKey(i + rowCounter))
-      {
-        columns.put(i + rowCounter, BigInteger.valueOf(1));
-      }
-      BigInteger column = columns.get(i + rowCounter); // the next 'free' column relative to the selector
-      logger.debug("Before: columns.get(" + (i + rowCounter) + ") = " + columns.get(i + rowCounter));
-
-      BigInteger exp;
-      if (query.getQueryInfo().useExpLookupTable() && !query.getQueryInfo().useHDFSExpLookupTable()) // using the standalone
-      // lookup table
-      {
-        exp = query.getExp(rowQuery, hitValPartitions.get(i).intValue());
-      }
-      else
-      // without lookup table
-      {
-        logger.debug("i = " + i + " hitValPartitions.get(i).intValue() = " + hitValPartitions.get(i).intValue());
-        exp = ModPowAbstraction.modPow(rowQuery, hitValPartitions.get(i), query.getNSquared());
-      }
-      column = (column.multiply(exp)).mod(query.getNSquared());
-
-      columns.put(i + rowCounter, column);
-
-      logger.debug(
-          "exp = " + exp + " i = " + i + " partition = " + hitValPartitions.get(i) + " = " + hitValPartitions.get(i).toString(2) + " column = " + column);
-      logger.debug("After: columns.get(" + (i + rowCounter) + ") = " + columns.get(i + rowCounter));
+      long col = rowCounter + i;
+      columnStripes[(int) (col % numThreads)].insertDataPart(col, rowIndex, hit.partitions.get(i));
     }
 
     // Update the rowCounter (next free column position) for the selector
-    rowColumnCounters.set(rowIndex, (rowCounter + hitValPartitions.size()));
-    logger.debug("new rowIndex = " + rowColumnCounters.get(rowIndex));
+    rowColumnCounters[rowIndex] = rowCounter + hit.partitions.size();
+    logger.debug("new rowIndex = {}", rowColumnCounters[rowIndex]);
   }
 
   // Sets the elements of the response object that will be passed back to the
   // querier for decryption
   public void setResponseElements()
   {
+    // The column stripes are computed in parallel
+    List<TreeMap<Long,BigInteger>> stripeColumns = Arrays.stream(columnStripes).distinct().parallel().map(ColumnEngine::computeColumns)
+        .collect(Collectors.toList());
+    for (TreeMap<Long,BigInteger> stripe : stripeColumns)
+    {
+      for (Entry<Long,BigInteger> column : stripe.entrySet())
+      {
+        columns.put(column.getKey().intValue(), column.getValue());
+      }
+    }
     logger.debug("numResponseElements = " + columns.size());
-    // for(int key: columns.keySet())
-    // {
-    // logger.debug("key = " + key + " column = " + columns.get(key));
-    // }
 
     response.setResponseElements(columns);
   }
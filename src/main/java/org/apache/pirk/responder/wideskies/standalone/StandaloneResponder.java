@@ -21,6 +21,7 @@ package org.apache.pirk.responder.wideskies.standalone;
 import org.apache.pirk.query.wideskies.Query;
 import org.apache.pirk.responder.wideskies.spi.ResponderPlugin;
 import org.apache.pirk.serialization.LocalFileSystemStore;
+import org.apache.pirk.utils.PIRException;
 import org.apache.pirk.utils.SystemConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,7 +42,7 @@ public class StandaloneResponder implements ResponderPlugin
   }
 
   @Override
-  public void run()
+  public void run() throws PIRException
   {
     logger.info("Launching Standalone Responder:");
     String queryInput = SystemConfiguration.getProperty("pir.queryInput");
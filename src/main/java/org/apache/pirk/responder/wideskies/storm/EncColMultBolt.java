@@ -23,6 +23,11 @@ import java.math.BigInteger;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.apache.pirk.encryption.ModPowAbstraction;
+import org.apache.pirk.responder.wideskies.common.BucketColumnEngine;
+import org.apache.pirk.responder.wideskies.common.ColumnEngine;
+import org.apache.pirk.responder.wideskies.common.ColumnStore;
+import org.apache.pirk.utils.PIRException;
 import org.apache.storm.task.OutputCollector;
 import org.apache.storm.task.TopologyContext;
 import org.apache.storm.topology.OutputFieldsDeclarer;
@@ -35,7 +40,8 @@ import org.slf4j.LoggerFactory;
 /**
  * Bolt class to perform encrypted column multiplication
  * <p>
- * Takes {@code <columnIndex, columnValue>} tuples as input and aggregates (multiplies) the columnValues for a given columnIndex as they are received.
+ * Takes {@code <columnIndex, columnValue>} tuples as input and aggregates (multiplies) the columnValues for a given columnIndex as they are received. If using
+ * the bucket column engine, the columnValues are packed (rowIndex, part) pairs that are bucketed as they are received and combined upon flush.
  * <p>
  * EncRowCalcBolts send flush signals to the EncColMultBolts indicating that they have finished sending all tuples for a session. Whenever a flush signal is
  * received from a EncRowCalcBolt, the num of received flush signals is tallied until each EncRowCalcBolt has emitted a flush signal.
@@ -59,8 +65,11 @@ public class EncColMultBolt extends BaseRichBolt
   private long numFlushSignals;
   private Long totalFlushSignals;
 
-  // This is the main object here. It holds column Id -> aggregated product
-  private Map<Long,BigInteger> resultsMap = new HashMap<>();
+  // This is the main object here. It holds column Id -> aggregated product, off-heap
+  private ColumnStore resultsStore;
+
+  // Used in place of the resultsStore if using the bucket column engine
+  private BucketColumnEngine bucketEngine = null;
 
   @Override
   public void prepare(Map map, TopologyContext topologyContext, OutputCollector collector)
@@ -68,8 +77,21 @@ public class EncColMultBolt extends BaseRichBolt
     outputCollector = collector;
     String nSquare = (String) map.get(StormConstants.N_SQUARED_KEY);
     nSquared = new BigInteger(nSquare);
+    resultsStore = StormUtils.createColumnStore(map, nSquared);
     totalFlushSignals = (Long) map.get(StormConstants.ENCROWCALCBOLT_PARALLELISM_KEY);
 
+    if (ColumnEngine.BUCKET.equals(map.get(StormConstants.COLUMN_ENGINE_KEY)))
+    {
+      try
+      {
+        bucketEngine = new BucketColumnEngine(StormUtils.prepareQuery(map), ModPowAbstraction.getEngine((String) map.get(StormConstants.MODPOW_ENGINE_KEY)));
+      } catch (PIRException e)
+      {
+        logger.error("Unable to initialize the modPow engine.", e);
+        throw new RuntimeException(e);
+      }
+    }
+
     logger.info("Initialized EncColMultBolt. ");
   }
 
@@ -84,11 +106,17 @@ public class EncColMultBolt extends BaseRichBolt
       // Need to receive notice from all EncRowCalcBolts in order to flush.
       if (numFlushSignals == totalFlushSignals)
       {
-        logger.debug("Received signal to flush in EncColMultBolt. Outputting {} results.", resultsMap.keySet().size());
-        for (Long key : resultsMap.keySet())
+        Map<Long,BigInteger> columns = new HashMap<>();
+        if (bucketEngine != null)
+        {
+          columns.putAll(bucketEngine.computeColumns());
+        }
+        logger.debug("Received signal to flush in EncColMultBolt. Outputting {} results.", columns.size() + resultsStore.size());
+        for (Long key : columns.keySet())
           // key = column Id, value = aggregated product
-          outputCollector.emit(StormConstants.ENCCOLMULTBOLT_ID, new Values(key, resultsMap.get(key)));
-        resultsMap.clear();
+          outputCollector.emit(StormConstants.ENCCOLMULTBOLT_ID, new Values(key, columns.get(key)));
+        resultsStore.forEach((key, value) -> outputCollector.emit(StormConstants.ENCCOLMULTBOLT_ID, new Values(key, value)));
+        resultsStore.clear();
 
         // Send signal to OutputBolt to write output and notify EncRowCalcBolt that results have been flushed.
         outputCollector.emit(StormConstants.ENCCOLMULTBOLT_ID, new Values(-1L, BigInteger.ZERO));
@@ -105,14 +133,13 @@ public class EncColMultBolt extends BaseRichBolt
 
       logger.debug("Received tuple in ECM, multiplying {} to col {}", colVal1, colIndex);
 
-      if (resultsMap.containsKey(colIndex))
+      if (bucketEngine != null)
       {
-        BigInteger colMult = colVal1.multiply(resultsMap.get(colIndex));
-        resultsMap.put(colIndex, colMult.mod(nSquared));
+        bucketEngine.insertPackedEntry(colIndex, colVal1);
       }
       else
       {
-        resultsMap.put(colIndex, colVal1);
+        resultsStore.multiply(colIndex, colVal1);
       }
     }
     outputCollector.ack(tuple);
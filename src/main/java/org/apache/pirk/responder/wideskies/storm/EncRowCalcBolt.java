@@ -27,8 +27,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 
+import org.apache.pirk.encryption.ModPowAbstraction;
 import org.apache.pirk.query.wideskies.Query;
+import org.apache.pirk.responder.wideskies.common.ColumnEngine;
 import org.apache.pirk.responder.wideskies.common.ComputeEncryptedRow;
+import org.apache.pirk.responder.wideskies.common.RowExpCache;
 
 import org.apache.storm.task.OutputCollector;
 import org.apache.storm.task.TopologyContext;
@@ -46,7 +49,8 @@ import scala.Tuple2;
  * <p>
  * Receives a {@code <hash(selector), dataPartitions>} tuple as input.
  * <p>
- * Encrypts the row data and emits a (column index, encrypted row-value) tuple for each encrypted block.
+ * Encrypts the row data and emits a (column index, encrypted row-value) tuple for each encrypted block. If using the bucket column engine, emits a (column
+ * index, packed (rowIndex, part)) tuple instead and leaves the exponentiation to the EncColMultBolt.
  * <p>
  * Every FLUSH_FREQUENCY seconds, it sends a signal to EncColMultBolt to flush its output and resets all counters. At that point, all outgoing (column index,
  * encrypted row-value) tuples are buffered until a SESSION_END signal is received back from each EncColMultBolt.
@@ -67,9 +71,13 @@ public class EncRowCalcBolt extends BaseRichBolt
   private int rowDivisions;
   private Boolean saltColumns;
   private Boolean splitPartitions;
+  private boolean useBucketEngine;
 
   private Random rand;
 
+  // Modular exponentiations of the row of the last tuple -- reused while consecutive tuples hit the same row
+  private RowExpCache expCache;
+
   // These are the main data structures used here.
   private Map<Integer,Integer> hitsByRow = new HashMap<>();
   private Map<Integer,Integer> colIndexByRow = new HashMap<>();
@@ -96,6 +104,7 @@ public class EncRowCalcBolt extends BaseRichBolt
     splitPartitions = (Boolean) map.get(StormConstants.SPLIT_PARTITIONS_KEY);
     saltColumns = (Boolean) map.get(StormConstants.SALT_COLUMNS_KEY);
     rowDivisions = ((Long) map.get(StormConstants.ROW_DIVISIONS_KEY)).intValue();
+    useBucketEngine = ColumnEngine.BUCKET.equals(map.get(StormConstants.COLUMN_ENGINE_KEY));
 
     // If splitPartitions==true, the data is incoming partition by partition, rather than record by record.
     // The numRecords below will increment every partition elt exceed the maxHitsPerSelector param far too
@@ -104,6 +113,10 @@ public class EncRowCalcBolt extends BaseRichBolt
       maxHitsPerSelector *= query.getQueryInfo().getNumPartitionsPerDataElement();
 
     rand = new Random();
+    if (!useBucketEngine)
+    {
+      expCache = new RowExpCache(query, ModPowAbstraction.getEngine());
+    }
 
     logger.info("Initialized EncRowCalcBolt.");
   }
@@ -199,7 +212,14 @@ public class EncRowCalcBolt extends BaseRichBolt
       if (limitHitsPerSelector && numRecords < maxHitsPerSelector)
       {
         logger.debug("computing matrix elements.");
-        matrixElements = ComputeEncryptedRow.computeEncRow(dataArray, query, rowIndex, colIndex);
+        if (useBucketEngine)
+        {
+          matrixElements = ComputeEncryptedRow.computeBucketEntries(dataArray, rowIndex, colIndex);
+        }
+        else
+        {
+          matrixElements = ComputeEncryptedRow.computeEncRow(dataArray, expCache, rowIndex, colIndex);
+        }
         colIndexByRow.put(rowIndex, colIndex + matrixElements.size());
         hitsByRow.put(rowIndex, numRecords + 1);
       }
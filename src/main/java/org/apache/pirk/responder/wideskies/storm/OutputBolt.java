@@ -25,7 +25,6 @@ import java.math.BigInteger;
 import java.net.URI;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -35,6 +34,7 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.pirk.query.wideskies.QueryInfo;
+import org.apache.pirk.responder.wideskies.common.ColumnStore;
 import org.apache.pirk.response.wideskies.Response;
 import org.apache.pirk.serialization.HadoopFileSystemStore;
 import org.apache.pirk.serialization.LocalFileSystemStore;
@@ -79,10 +79,8 @@ public class OutputBolt extends BaseRichBolt
   // This latch just serves as a hook for testing.
   public static CountDownLatch latch = new CountDownLatch(4);
 
-  // This is the main object here. It holds column Id -> product
-  private Map<Long,BigInteger> resultsMap = new HashMap<>();
-
-  private BigInteger nSquared;
+  // This is the main object here. It holds column Id -> product, off-heap
+  private ColumnStore resultsStore;
 
   @Override
   public void prepare(Map map, TopologyContext topologyContext, OutputCollector collector)
@@ -111,7 +109,7 @@ public class OutputBolt extends BaseRichBolt
     {
       localStore = new LocalFileSystemStore();
     }
-    nSquared = new BigInteger((String) map.get(StormConstants.N_SQUARED_KEY));
+    resultsStore = StormUtils.createColumnStore(map, new BigInteger((String) map.get(StormConstants.N_SQUARED_KEY)));
     QueryInfo queryInfo = new QueryInfo((Map) map.get(StormConstants.QUERY_INFO_KEY));
     response = new Response(queryInfo);
 
@@ -135,14 +133,11 @@ public class OutputBolt extends BaseRichBolt
       // Wait till all EncColMultBolts have been flushed
       if (Objects.equals(flushCounter, totalFlushSigs))
       {
-        logger.info("TimeToFlush reached - outputting response to " + outputFile + " with columns.size = " + resultsMap.keySet().size());
+        logger.info("TimeToFlush reached - outputting response to " + outputFile + " with columns.size = " + resultsStore.size());
         try
         {
           String timestamp = (new SimpleDateFormat("yyyyMMddHHmmss").format(new java.util.Date()));
-          for (long cv : resultsMap.keySet())
-          {
-            response.addElement((int) cv, resultsMap.get(cv));
-          }
+          resultsStore.forEach((col, value) -> response.addElement(col.intValue(), value));
 
           if (hdfs)
           {
@@ -152,10 +147,9 @@ public class OutputBolt extends BaseRichBolt
           { // In order to accommodate testing, this does not currently include timestamp.
             // Should probably be fixed, but this will not likely be used outside of testing.
             localStore.store(new File(outputFile), response);
-            for (long cv : resultsMap.keySet())
+            for (Map.Entry<Integer,BigInteger> entry : response.getResponseElements().entrySet())
             {
-              response.addElement((int) cv, resultsMap.get(cv));
-              logger.debug("column = " + cv + ", value = " + resultsMap.get(cv).toString());
+              logger.debug("column = " + entry.getKey() + ", value = " + entry.getValue().toString());
             }
           }
         } catch (IOException e)
@@ -164,7 +158,7 @@ public class OutputBolt extends BaseRichBolt
         }
 
         // Reset
-        resultsMap.clear();
+        resultsStore.clear();
         flushCounter = 0;
         for (Tuple t : tuplesToAck)
           outputCollector.ack(t);
@@ -176,16 +170,8 @@ public class OutputBolt extends BaseRichBolt
     {
       // Process data values: add them to map. The column multiplication is only done in the case where saltColumns==true,
       // in which case a small number of multiplications still need to be done per column.
-      if (resultsMap.containsKey(colIndex))
-      {
-        BigInteger colMult = colVal.multiply(resultsMap.get(colIndex)).mod(nSquared);
-        resultsMap.put(colIndex, colMult);
-      }
-      else
-      {
-        resultsMap.put(colIndex, colVal);
-      }
-      logger.debug("column = " + colIndex + ", value = " + resultsMap.get(colIndex).toString());
+      resultsStore.multiply(colIndex, colVal);
+      logger.debug("column = {}, value = {}", colIndex, colVal);
     }
     outputCollector.ack(tuple);
   }
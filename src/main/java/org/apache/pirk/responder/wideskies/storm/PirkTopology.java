@@ -18,7 +18,14 @@
  */
 package org.apache.pirk.responder.wideskies.storm;
 
+import java.io.IOException;
+import java.net.URI;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.pirk.query.wideskies.Query;
+import org.apache.pirk.responder.wideskies.common.ColumnEngine;
+import org.apache.pirk.responder.wideskies.common.ShardedQuery;
 import org.apache.pirk.utils.PIRException;
 import org.apache.pirk.utils.SystemConfiguration;
 import org.apache.storm.Config;
@@ -66,6 +73,7 @@ public class PirkTopology
   private static final Boolean splitPartitions = Boolean.parseBoolean(SystemConfiguration.getProperty("storm.splitPartitions", "false"));
 
   private static final String queryFile = SystemConfiguration.getProperty("pir.queryInput");
+  private static final Boolean shardQuery = SystemConfiguration.isSetTrue("pir.shardQuery");
   private static final String outputPath = SystemConfiguration.getProperty("pir.outputFile");
 
   public static void runPirkTopology() throws PIRException
@@ -84,11 +92,31 @@ public class PirkTopology
     conf.put(StormConstants.N_SQUARED_KEY, query.getNSquared().toString());
     conf.put(StormConstants.QUERY_INFO_KEY, query.getQueryInfo().toMap());
 
+    // Split the query by row range so that each EncRowCalcBolt task only loads the query rows it computes
+    RowRangeGrouping rowGrouping = null;
+    if (shardQuery)
+    {
+      int numShards = SystemConfiguration.getIntProperty("pir.numQueryShards", encrowcalcboltParallelism);
+      String shardDir = queryFile + ShardedQuery.SHARD_DIR_SUFFIX;
+      String fsUri = useHdfs ? hdfsUri : "file:///";
+      int rowsPerShard;
+      try
+      {
+        rowsPerShard = ShardedQuery.writeShards(query, numShards, FileSystem.get(URI.create(fsUri), new Configuration()), shardDir);
+      } catch (IOException e)
+      {
+        throw new PIRException("Unable to shard the query into " + shardDir, e);
+      }
+      conf.put(StormConstants.QUERY_SHARD_DIR_KEY, shardDir);
+      conf.put(StormConstants.QUERY_ROWS_PER_SHARD_KEY, rowsPerShard);
+      rowGrouping = new RowRangeGrouping(rowsPerShard, ShardedQuery.getNumShards(1 << query.getQueryInfo().getHashBitSize(), rowsPerShard));
+    }
+
     // Configure this for different types of input data on Kafka.
     kafkaConfig.scheme = new SchemeAsMultiScheme(new PirkHashScheme(conf));
 
     // Create topology
-    StormTopology topology = getPirkTopology(kafkaConfig);
+    StormTopology topology = getPirkTopology(kafkaConfig, rowGrouping);
 
     // Run topology
     logger.info("Submitting Pirk topology to Storm...");
@@ -109,6 +137,18 @@ public class PirkTopology
    * @return
    */
   public static StormTopology getPirkTopology(SpoutConfig kafkaConfig)
+  {
+    return getPirkTopology(kafkaConfig, null);
+  }
+
+  /***
+   * Creates Pirk topology as above, sending the rows to the EncRowCalcBolt tasks with the given grouping if the query is sharded (null otherwise)
+   *
+   * @param kafkaConfig
+   * @param rowGrouping
+   * @return
+   */
+  public static StormTopology getPirkTopology(SpoutConfig kafkaConfig, RowRangeGrouping rowGrouping)
   {
     // Create spout and bolts
     KafkaSpout spout = new KafkaSpout(kafkaConfig);
@@ -125,9 +165,16 @@ public class PirkTopology
         new Fields(StormConstants.HASH_FIELD));
 
     // TODO: Decide whether to use Resource Aware Scheduler. (If not, get rid of b2 and b3).
-    BoltDeclarer b2 = builder.setBolt(StormConstants.ENCROWCALCBOLT_ID, ercbolt, encrowcalcboltParallelism)
-        .fieldsGrouping(StormConstants.PARTITION_DATA_BOLT_ID, new Fields(StormConstants.HASH_FIELD))
-        .allGrouping(StormConstants.ENCCOLMULTBOLT_ID, StormConstants.ENCCOLMULTBOLT_SESSION_END)
+    BoltDeclarer b2 = builder.setBolt(StormConstants.ENCROWCALCBOLT_ID, ercbolt, encrowcalcboltParallelism);
+    if (rowGrouping != null)
+    {
+      b2.customGrouping(StormConstants.PARTITION_DATA_BOLT_ID, rowGrouping);
+    }
+    else
+    {
+      b2.fieldsGrouping(StormConstants.PARTITION_DATA_BOLT_ID, new Fields(StormConstants.HASH_FIELD));
+    }
+    b2.allGrouping(StormConstants.ENCCOLMULTBOLT_ID, StormConstants.ENCCOLMULTBOLT_SESSION_END)
         .addConfiguration(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS, Integer.parseInt(SystemConfiguration.getProperty("storm.encrowcalcbolt.ticktuple")));
 
     // b2.setMemoryLoad(5000);
@@ -176,6 +223,10 @@ public class PirkTopology
     conf.put(StormConstants.LIMIT_HITS_PER_SEL_KEY, limitHitsPerSelector);
     conf.put(StormConstants.MAX_HITS_PER_SEL_KEY, maxHitsPerSelector);
     conf.put(StormConstants.SPLIT_PARTITIONS_KEY, splitPartitions);
+    conf.put(StormConstants.COLUMN_ENGINE_KEY, SystemConfiguration.getProperty("pir.columnEngine", ColumnEngine.MODPOW));
+    conf.put(StormConstants.MODPOW_ENGINE_KEY, SystemConfiguration.getProperty("pir.modPowEngine", ""));
+    conf.put(StormConstants.COLUMN_STORE_MEMORY_MB_KEY, SystemConfiguration.getLongProperty("pir.columnStoreMemoryMB", 0));
+    conf.put(StormConstants.COLUMN_STORE_SPILL_DIR_KEY, SystemConfiguration.getProperty("pir.columnStoreSpillDir", ""));
     conf.put(StormConstants.SALT_COLUMNS_KEY, saltColumns);
     conf.put(StormConstants.ROW_DIVISIONS_KEY, rowDivisions);
     conf.put(StormConstants.ENCROWCALCBOLT_PARALLELISM_KEY, encrowcalcboltParallelism);
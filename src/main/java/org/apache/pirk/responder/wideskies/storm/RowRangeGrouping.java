@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pirk.responder.wideskies.storm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.pirk.responder.wideskies.common.ShardedQuery;
+import org.apache.storm.generated.GlobalStreamId;
+import org.apache.storm.grouping.CustomStreamGrouping;
+import org.apache.storm.task.WorkerTopologyContext;
+
+/**
+ * Grouping sending each row (selector hash) to the EncRowCalcBolt task holding its query shard
+ * <p>
+ * Used when the query is split into shards by row range (pir.shardQuery) so that each task only loads the shards for its own rows; the hash is expected as
+ * the first tuple value
+ */
+public class RowRangeGrouping implements CustomStreamGrouping
+{
+  private static final long serialVersionUID = 1L;
+
+  private final int rowsPerShard;
+  private final int numShards;
+
+  private List<List<Integer>> targets = null;
+
+  public RowRangeGrouping(int rowsPerShardInput, int numShardsInput)
+  {
+    rowsPerShard = rowsPerShardInput;
+    numShards = numShardsInput;
+  }
+
+  @Override
+  public void prepare(WorkerTopologyContext context, GlobalStreamId stream, List<Integer> targetTasks)
+  {
+    List<Integer> tasks = new ArrayList<>(targetTasks);
+    Collections.sort(tasks);
+
+    targets = new ArrayList<>(tasks.size());
+    for (Integer task : tasks)
+    {
+      targets.add(Collections.singletonList(task));
+    }
+  }
+
+  @Override
+  public List<Integer> chooseTasks(int taskId, List<Object> values)
+  {
+    int rowIndex = (Integer) values.get(0);
+    return targets.get(ShardedQuery.getPartition(rowIndex, rowsPerShard, numShards, targets.size()));
+  }
+}
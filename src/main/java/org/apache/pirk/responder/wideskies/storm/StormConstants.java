@@ -49,6 +49,8 @@ public class StormConstants
   public static final String USE_HDFS = "useHdfs";
   static final String HDFS_URI_KEY = "hdfsUri";
   static final String QUERY_FILE_KEY = "queryFile";
+  static final String QUERY_SHARD_DIR_KEY = "queryShardDir";
+  static final String QUERY_ROWS_PER_SHARD_KEY = "queryRowsPerShard";
   public static final String QUERY_INFO_KEY = "queryInfo";
   static final String ALLOW_ADHOC_QSCHEMAS_KEY = "allowAdHocQuerySchemas";
   static final String QSCHEMA_KEY = "qSchema";
@@ -59,6 +61,10 @@ public class StormConstants
   static final String SALT_COLUMNS_KEY = "saltColumns";
   static final String ROW_DIVISIONS_KEY = "rowDivisions";
   static final String SPLIT_PARTITIONS_KEY = "splitPartitions";
+  static final String COLUMN_ENGINE_KEY = "columnEngine";
+  static final String MODPOW_ENGINE_KEY = "modPowEngine";
+  static final String COLUMN_STORE_MEMORY_MB_KEY = "columnStoreMemoryMB";
+  static final String COLUMN_STORE_SPILL_DIR_KEY = "columnStoreSpillDir";
   public static final String N_SQUARED_KEY = "nSquared";
   static final String ENCROWCALCBOLT_PARALLELISM_KEY = "encrowcalcboltPar";
   static final String ENCCOLMULTBOLT_PARALLELISM_KEY = "enccolmultboltPar";
@@ -18,12 +18,16 @@
  */
 package org.apache.pirk.responder.wideskies.storm;
 
+import java.io.File;
+import java.math.BigInteger;
 import java.net.URI;
 import java.util.Map;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.pirk.query.wideskies.Query;
+import org.apache.pirk.responder.wideskies.common.ColumnStore;
+import org.apache.pirk.responder.wideskies.common.ShardedQuery;
 import org.apache.pirk.schema.data.DataSchemaLoader;
 import org.apache.pirk.schema.query.QuerySchemaLoader;
 import org.apache.pirk.serialization.HadoopFileSystemStore;
@@ -78,6 +82,8 @@ public class StormUtils
 
   /**
    * Method to read in and return a serialized Query object from the given file and initialize/load the query.schemas and data.schemas
+   * <p>
+   * Returns the {@link ShardedQuery} instead if the topology was configured with query shards
    * 
    * @param map
    * @return {@link Query}
@@ -89,9 +95,18 @@ public class StormUtils
     boolean useHdfs = (boolean) map.get(StormConstants.USE_HDFS);
     String hdfsUri = (String) map.get(StormConstants.HDFS_URI_KEY);
     String queryFile = (String) map.get(StormConstants.QUERY_FILE_KEY);
+    String queryShardDir = (String) map.get(StormConstants.QUERY_SHARD_DIR_KEY);
     try
     {
-      query = StormUtils.getQuery(useHdfs, hdfsUri, queryFile);
+      if (queryShardDir != null)
+      {
+        int rowsPerShard = ((Number) map.get(StormConstants.QUERY_ROWS_PER_SHARD_KEY)).intValue();
+        query = ShardedQuery.open(useHdfs ? hdfsUri : "file:///", queryShardDir, rowsPerShard);
+      }
+      else
+      {
+        query = StormUtils.getQuery(useHdfs, hdfsUri, queryFile);
+      }
 
     } catch (Exception e)
     {
@@ -101,6 +116,22 @@ public class StormUtils
     return query;
   }
 
+  /**
+   * Method to create the off-heap store of the column products of a bolt, with the spill directory of the topology; the stores of all the bolts of a worker
+   * share the memory budget of the topology
+   */
+  public static ColumnStore createColumnStore(Map map, BigInteger nSquared)
+  {
+    Number memoryMB = (Number) map.get(StormConstants.COLUMN_STORE_MEMORY_MB_KEY);
+    String spillDir = (String) map.get(StormConstants.COLUMN_STORE_SPILL_DIR_KEY);
+
+    if (memoryMB != null)
+    {
+      ColumnStore.setSharedMemoryBudget(memoryMB.longValue() << 20);
+    }
+    return new ColumnStore(nSquared, Long.MAX_VALUE, (spillDir == null || spillDir.isEmpty()) ? null : new File(spillDir));
+  }
+
   /***
    * Initialize data and query schema. Conf requires values for USE_HDFS, HDFS_URI_KEY, DSCHEMA_KEY, and QSCHEMA_KEY
    * 
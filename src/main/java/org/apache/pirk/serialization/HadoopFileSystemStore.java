@@ -18,12 +18,16 @@
  *******************************************************************************/
 package org.apache.pirk.serialization;
 
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.pirk.query.wideskies.BinaryQuery;
+import org.apache.pirk.query.wideskies.Query;
 
 public class HadoopFileSystemStore extends StorageService
 {
@@ -83,7 +87,14 @@ public class HadoopFileSystemStore extends StorageService
   {
     try (OutputStream os = hadoopFileSystem.create(path))
     {
-      serializer.write(os, obj);
+      if (storesAsBinaryQuery(obj))
+      {
+        BinaryQuery.write((Query) obj, os);
+      }
+      else
+      {
+        serializer.write(os, obj);
+      }
     }
   }
 
@@ -105,6 +116,8 @@ public class HadoopFileSystemStore extends StorageService
 
   /**
    * Retrieves the object stored at the given path in HDFS.
+   * <p>
+   * Queries in the binary query format are read into heap buffers.
    * 
    * @param path
    *          The HDFS path descriptor to the object.
@@ -116,9 +129,29 @@ public class HadoopFileSystemStore extends StorageService
    */
   public <T> T recall(Path path, Class<T> type) throws IOException
   {
-    try (InputStream is = hadoopFileSystem.open(path))
+    try (InputStream is = new BufferedInputStream(hadoopFileSystem.open(path)))
     {
+      if (recallsQuery(type) && isBinaryQuery(is))
+      {
+        return type.cast(BinaryQuery.read(is));
+      }
       return serializer.read(is, type);
     }
   }
+
+  // Checks the stream for the binary query magic number without consuming it
+  private static boolean isBinaryQuery(InputStream is) throws IOException
+  {
+    is.mark(4);
+    try
+    {
+      return new DataInputStream(is).readInt() == BinaryQuery.MAGIC;
+    } catch (IOException e)
+    {
+      return false;
+    } finally
+    {
+      is.reset();
+    }
+  }
 }
@@ -20,6 +20,8 @@ package org.apache.pirk.serialization;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import org.apache.pirk.querier.wideskies.DecryptionKey;
+import org.apache.pirk.querier.wideskies.DecryptionKeyDeserializer;
 import org.apache.pirk.querier.wideskies.Querier;
 import org.apache.pirk.querier.wideskies.QuerierDeserializer;
 
@@ -34,7 +36,8 @@ import java.io.Writer;
 public class JsonSerializer extends SerializationService
 {
   public static final Gson gson = new GsonBuilder()
-      .registerTypeAdapter(Querier.class, new QuerierDeserializer()).setPrettyPrinting()
+      .registerTypeAdapter(Querier.class, new QuerierDeserializer()).registerTypeAdapter(DecryptionKey.class, new DecryptionKeyDeserializer())
+      .setPrettyPrinting()
       .excludeFieldsWithoutExposeAnnotation().serializeNulls().create();
 
   /**
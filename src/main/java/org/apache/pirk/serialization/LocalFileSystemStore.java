@@ -23,6 +23,9 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 
+import org.apache.pirk.query.wideskies.BinaryQuery;
+import org.apache.pirk.query.wideskies.Query;
+
 public class LocalFileSystemStore extends StorageService
 {
   /**
@@ -70,7 +73,14 @@ public class LocalFileSystemStore extends StorageService
   {
     try (FileOutputStream fos = new FileOutputStream(file))
     {
-      serializer.write(fos, obj);
+      if (storesAsBinaryQuery(obj))
+      {
+        BinaryQuery.write((Query) obj, fos);
+      }
+      else
+      {
+        serializer.write(fos, obj);
+      }
     }
   }
 
@@ -92,6 +102,8 @@ public class LocalFileSystemStore extends StorageService
 
   /**
    * Returns the object stored in the local file system at the given file location.
+   * <p>
+   * Queries in the binary query format are memory mapped.
    * 
    * @param file
    *          The local file system location.
@@ -103,6 +115,10 @@ public class LocalFileSystemStore extends StorageService
    */
   public <T> T recall(File file, Class<T> type) throws IOException
   {
+    if (recallsQuery(type) && BinaryQuery.isBinaryQuery(file))
+    {
+      return type.cast(BinaryQuery.map(file));
+    }
     try (FileInputStream fis = new FileInputStream(file))
     {
       return serializer.read(fis, type);
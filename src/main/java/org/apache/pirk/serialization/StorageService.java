@@ -18,15 +18,22 @@
  *******************************************************************************/
 package org.apache.pirk.serialization;
 
+import org.apache.pirk.query.wideskies.BinaryQuery;
+import org.apache.pirk.query.wideskies.Query;
 import org.apache.pirk.utils.SystemConfiguration;
 
 /**
  * Common supertype for types that can store objects using serialization.
+ * <p>
+ * Queries stored in the binary query format (see {@link BinaryQuery}) are recognized on recall regardless of the configured serializer; queries are stored
+ * in the binary query format if they were recalled from it or if pirk.serialization.binaryQuery is set.
  */
 abstract class StorageService
 {
   SerializationService serializer;
 
+  boolean binaryQuery = SystemConfiguration.getBooleanProperty("pirk.serialization.binaryQuery", false);
+
   StorageService()
   {
     if (SystemConfiguration.getBooleanProperty("pirk.serialization.java", false))
@@ -48,4 +55,16 @@ abstract class StorageService
   {
     serializer = service;
   }
+
+  // Whether or not the given object is stored in the binary query format
+  boolean storesAsBinaryQuery(Storable obj)
+  {
+    return obj instanceof BinaryQuery || (binaryQuery && obj instanceof Query);
+  }
+
+  // Whether or not an object of the given type may be recalled from the binary query format
+  static boolean recallsQuery(Class<?> type)
+  {
+    return Query.class.isAssignableFrom(type);
+  }
 }
@@ -101,6 +101,22 @@ public class DistTestSuite
     BaseTests.testSRCIPQuery(dataElements, fs, false, true, 2, false);
     SystemConfiguration.setProperty("pir.useLocalCache", "false");
 
+    // Test the single job pipeline and the in-mapper column combining
+    SystemConfiguration.setProperty("pir.mapReduceSingleJob", "true");
+    BaseTests.testDNSIPQuery(dataElements, fs, false, true, 2, false);
+    SystemConfiguration.setProperty("pir.mapReduceSingleJob", "false");
+    SystemConfiguration.setProperty("pir.colMultInMapperCombining", "true");
+    BaseTests.testDNSIPQuery(dataElements, fs, false, true, 2, false);
+    SystemConfiguration.setProperty("pir.colMultInMapperCombining", "false");
+
+    // Test the multi-threaded RowCalcReducer
+    SystemConfiguration.setProperty("pir.numReducerThreads", "4");
+    BaseTests.testDNSIPQuery(dataElements, fs, false, true, 2, false);
+    SystemConfiguration.setProperty("pir.useLocalCache", "true");
+    BaseTests.testDNSIPQuery(dataElements, fs, false, true, 2, false);
+    SystemConfiguration.setProperty("pir.useLocalCache", "false");
+    SystemConfiguration.setProperty("pir.numReducerThreads", "1");
+
     // Change query for NXDOMAIN
     SystemConfiguration.setProperty("pir.baseQuery", "?q=rcode:3");
     BaseTests.testDNSNXDOMAINQuery(dataElements, fs, false, true, 2);
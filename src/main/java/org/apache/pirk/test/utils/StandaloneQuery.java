@@ -19,6 +19,7 @@
 package org.apache.pirk.test.utils;
 
 import org.apache.pirk.querier.wideskies.EncryptionPropertiesBuilder;
+import org.apache.pirk.querier.wideskies.DecryptionKey;
 import org.apache.pirk.querier.wideskies.Querier;
 import org.apache.pirk.querier.wideskies.QuerierConst;
 import org.apache.pirk.querier.wideskies.QuerierFactory;
@@ -33,12 +34,14 @@ import org.apache.pirk.schema.response.QueryResponseJSON;
 import org.apache.pirk.serialization.LocalFileSystemStore;
 import org.apache.pirk.utils.PIRException;
 import org.apache.pirk.utils.QueryResultsWriter;
+import org.apache.pirk.utils.SystemConfiguration;
 import org.json.simple.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -62,7 +65,7 @@ public class StandaloneQuery
   {
     Properties baseTestEncryptionProperties = EncryptionPropertiesBuilder.newBuilder().dataPartitionBitSize(BaseTests.dataPartitionBitSize)
         .hashBitSize(BaseTests.hashBitSize).paillierBitSize(BaseTests.paillierBitSize).certainty(BaseTests.certainty)
-        .queryType(queryType).build();
+        .queryType(queryType).useMemLookupTable(SystemConfiguration.getBooleanProperty("pirTest.useExpLookupTable", false)).build();
     return QuerierFactory.createQuerier(BaseTests.queryIdentifier, selectors, baseTestEncryptionProperties);
   }
 
@@ -79,6 +82,7 @@ public class StandaloneQuery
     LocalFileSystemStore storage = new LocalFileSystemStore();
     File fileQuerier = File.createTempFile(QUERY_SIDE_OUPUT_FILE_PREFIX + "-" + QuerierConst.QUERIER_FILETAG, ".txt");
     File fileQuery = File.createTempFile(QUERY_SIDE_OUPUT_FILE_PREFIX + "-" + QuerierConst.QUERY_FILETAG, ".txt");
+    File fileDecryptionKey = File.createTempFile(QUERY_SIDE_OUPUT_FILE_PREFIX + "-" + QuerierConst.DECRYPTIONKEY_FILETAG, ".txt");
     String responseFile = "encryptedResponse";
     File fileResponse = File.createTempFile(responseFile, ".txt");
     String finalResultsFile = "finalResultFile";
@@ -102,41 +106,73 @@ public class StandaloneQuery
     // Write necessary output files
     storage.store(fileQuerier, querier);
     storage.store(fileQuery, querier.getQuery());
+    storage.store(fileDecryptionKey, querier.getDecryptionKey());
 
     // Perform the PIR query and build the response elements
     logger.info("Performing the PIR Query and constructing the response elements:");
     Query query = storage.recall(fileQuery, Query.class);
     Responder pirResponder = new Responder(query);
     logger.info("Query and Responder elements constructed");
-    for (JSONObject jsonData : dataElements)
+    if (SystemConfiguration.getBooleanProperty("pirTest.useInputFile", false))
     {
-      String selector = QueryUtils.getSelectorByQueryTypeJSON(qSchema, jsonData);
-      logger.info("selector = " + selector + " numDataElements = " + jsonData.size());
+      // Run the responder over the data elements written to a file, as in the standalone platform
+      File fileInputData = File.createTempFile("inputData", ".json");
+      String inputData = SystemConfiguration.getProperty("pir.inputData", "none");
+      String outputFile = SystemConfiguration.getProperty("pir.outputFile", "none");
       try
       {
-        pirResponder.addDataElement(selector, jsonData);
-      } catch (Exception e)
+        try (PrintWriter writer = new PrintWriter(fileInputData))
+        {
+          for (JSONObject jsonData : dataElements)
+          {
+            writer.println(jsonData.toJSONString());
+          }
+        }
+        SystemConfiguration.setProperty("pir.inputData", fileInputData.getAbsolutePath());
+        SystemConfiguration.setProperty("pir.outputFile", fileResponse.getAbsolutePath());
+
+        logger.info("Performing the PIR Query over inputData = " + fileInputData.getAbsolutePath() + " and writing the response to a file");
+        pirResponder.computeStandaloneResponse();
+        logger.info("Completed the PIR Query and writing the response to a file");
+      } finally
       {
-        fail(e.toString());
+        SystemConfiguration.setProperty("pir.inputData", inputData);
+        SystemConfiguration.setProperty("pir.outputFile", outputFile);
+        fileInputData.delete();
       }
     }
-    logger.info("Completed the PIR Query and construction of the response elements:");
-
-    // Set the response object, extract, write to file
-    logger.info("Forming response from response elements; writing to a file");
-    pirResponder.setResponseElements();
-    Response responseOut = pirResponder.getResponse();
-    storage.store(fileResponse, responseOut);
-    logger.info("Completed forming response from response elements and writing to a file");
+    else
+    {
+      for (JSONObject jsonData : dataElements)
+      {
+        String selector = QueryUtils.getSelectorByQueryTypeJSON(qSchema, jsonData);
+        logger.info("selector = " + selector + " numDataElements = " + jsonData.size());
+        try
+        {
+          pirResponder.addDataElement(selector, jsonData);
+        } catch (Exception e)
+        {
+          fail(e.toString());
+        }
+      }
+      logger.info("Completed the PIR Query and construction of the response elements:");
+
+      // Set the response object, extract, write to file
+      logger.info("Forming response from response elements; writing to a file");
+      pirResponder.setResponseElements();
+      Response responseOut = pirResponder.getResponse();
+      storage.store(fileResponse, responseOut);
+      logger.info("Completed forming response from response elements and writing to a file");
+    }
 
     // Perform decryption
     // Reconstruct the necessary objects from the files
     logger.info("Performing decryption; writing final results file");
     Response responseIn = storage.recall(fileResponse, Response.class);
-    querier = storage.recall(fileQuerier, Querier.class);
+    DecryptionKey decryptionKey = storage.recall(fileDecryptionKey, DecryptionKey.class);
 
     // Perform decryption and output the result file
-    DecryptResponse decryptResponse = new DecryptResponse(responseIn, querier);
+    DecryptResponse decryptResponse = new DecryptResponse(responseIn, decryptionKey);
     QueryResultsWriter.writeResultFile(fileFinalResults, decryptResponse.decrypt(numThreads));
     logger.info("Completed performing decryption and writing final results file");
 
@@ -146,6 +182,7 @@ public class StandaloneQuery
 
     // Clean up
     fileQuerier.delete();
+    fileDecryptionKey.delete();
     fileQuery.delete();
     fileResponse.delete();
     fileFinalResults.delete();
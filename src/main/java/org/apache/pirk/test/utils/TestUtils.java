@@ -21,7 +21,6 @@ package org.apache.pirk.test.utils;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
@@ -39,6 +38,7 @@ import javax.xml.transform.stream.StreamResult;
 
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.pirk.inputformat.local.MappedLineSplit;
 import org.apache.pirk.schema.response.QueryResponseJSON;
 import org.apache.pirk.utils.SystemConfiguration;
 import org.slf4j.Logger;
@@ -310,10 +310,10 @@ public class TestUtils
   public static List<QueryResponseJSON> readResultsFile(File file) throws IOException
   {
     List<QueryResponseJSON> results = new ArrayList<>();
-    try (BufferedReader br = new BufferedReader(new FileReader(file)))
+    for (MappedLineSplit split : MappedLineSplit.getSplits(file.getPath(), MappedLineSplit.MAX_WINDOW_BYTES))
     {
       String line;
-      while ((line = br.readLine()) != null)
+      while ((line = split.readLine()) != null)
       {
         QueryResponseJSON jsonResult = new QueryResponseJSON(line);
         results.add(jsonResult);
@@ -22,7 +22,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Class that provides access to an existing SecureRandom object.
@@ -40,12 +42,22 @@ import java.security.SecureRandom;
  * algorithm used to create the instance.
  * <p>
  * </ul>
+ * <p>
+ * For the hot paths of multithreaded code, {@link #getThreadSecureRandom()} returns a per-thread DRBG instead, so that threads do not contend on a single
+ * SecureRandom. The per-thread instances are created based on the "pallier.secureRandom.threadAlgorithm" and "pallier.secureRandom.threadProvider"
+ * configuration variables, seeded from SECURE_RANDOM, and reseeded from SECURE_RANDOM every "pallier.secureRandom.reseedIntervalMillis" milliseconds.
  */
 public class RandomProvider
 {
   public static final SecureRandom SECURE_RANDOM;
   private static final Logger logger = LoggerFactory.getLogger(RandomProvider.class);
 
+  private static final int SEED_LENGTH = 32;
+  private static final long RESEED_INTERVAL_NANOS = TimeUnit.MILLISECONDS
+      .toNanos(SystemConfiguration.getLongProperty("pallier.secureRandom.reseedIntervalMillis", 60000));
+
+  private static final ThreadLocal<ThreadSecureRandom> THREAD_SECURE_RANDOM = ThreadLocal.withInitial(ThreadSecureRandom::new);
+
   static
   {
     try
@@ -90,4 +102,72 @@ public class RandomProvider
   {
     return SECURE_RANDOM;
   }
+
+  /**
+   * Return the SecureRandom of the calling thread, reseeding it from SECURE_RANDOM if the reseed interval has elapsed.
+   * <p>
+   * The returned object must not be shared with other threads.
+   *
+   * @return The SecureRandom of the calling thread.
+   */
+  public static SecureRandom getThreadSecureRandom()
+  {
+    ThreadSecureRandom threadSecureRandom = THREAD_SECURE_RANDOM.get();
+    if (System.nanoTime() - threadSecureRandom.lastSeeded > RESEED_INTERVAL_NANOS)
+    {
+      threadSecureRandom.reseed();
+    }
+    return threadSecureRandom.random;
+  }
+
+  /**
+   * Per-thread SecureRandom, by default the first available of the DRBG and SHA1PRNG algorithms
+   */
+  private static class ThreadSecureRandom
+  {
+    private final SecureRandom random;
+    private long lastSeeded;
+
+    ThreadSecureRandom()
+    {
+      try
+      {
+        String alg = SystemConfiguration.getProperty("pallier.secureRandom.threadAlgorithm");
+        if (alg == null)
+        {
+          random = getDefaultThreadInstance();
+        }
+        else
+        {
+          String provider = SystemConfiguration.getProperty("pallier.secureRandom.threadProvider");
+          random = (provider == null) ? SecureRandom.getInstance(alg) : SecureRandom.getInstance(alg, provider);
+        }
+      } catch (GeneralSecurityException e)
+      {
+        logger.error("Unable to instantiate a thread SecureRandom object with the requested algorithm.", e);
+        throw new RuntimeException("Unable to instantiate a thread SecureRandom object with the requested algorithm.", e);
+      }
+      reseed(); // seeds before first use
+      logger.debug("Using thread secure random from " + random.getProvider().getName() + ":" + random.getAlgorithm());
+    }
+
+    private static SecureRandom getDefaultThreadInstance() throws NoSuchAlgorithmException
+    {
+      try
+      {
+        return SecureRandom.getInstance("DRBG");
+      } catch (NoSuchAlgorithmException e)
+      {
+        return SecureRandom.getInstance("SHA1PRNG"); // Java 8
+      }
+    }
+
+    private void reseed()
+    {
+      byte[] seed = new byte[SEED_LENGTH];
+      SECURE_RANDOM.nextBytes(seed);
+      random.setSeed(seed);
+      lastSeeded = System.nanoTime();
+    }
+  }
 }
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pirk.general;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Random;
+
+import org.apache.pirk.inputformat.hadoop.CiphertextWritable;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Functional tests for CiphertextWritable
+ */
+public class CiphertextWritableTest
+{
+  private static final Logger logger = LoggerFactory.getLogger(CiphertextWritableTest.class);
+
+  @Test
+  public void testSerializationAndOrder() throws IOException
+  {
+    logger.info("Starting testSerializationAndOrder: ");
+
+    Random rand = new Random(42);
+    BigInteger modulus = BigInteger.probablePrime(1024, rand).pow(2);
+    int width = CiphertextWritable.getByteWidth(modulus);
+    assertEquals(256, width);
+
+    CiphertextWritable.Comparator comparator = new CiphertextWritable.Comparator();
+    CiphertextWritable reused = new CiphertextWritable();
+    BigInteger[] values = {BigInteger.ZERO, BigInteger.ONE, BigInteger.valueOf(255), BigInteger.valueOf(256), modulus.subtract(BigInteger.ONE),
+        new BigInteger(2000, rand), new BigInteger(8, rand)};
+    for (BigInteger a : values)
+    {
+      byte[] aBytes = serialize(new CiphertextWritable(a, width));
+      assertEquals(4 + width, aBytes.length);
+
+      reused.readFields(new DataInputStream(new ByteArrayInputStream(aBytes)));
+      assertEquals(a, reused.get());
+      assertEquals(width, reused.getLength());
+
+      for (BigInteger b : values)
+      {
+        int expected = Integer.signum(a.compareTo(b));
+
+        // Mix padded and minimal widths -- the order depends only on the value
+        byte[] bBytes = serialize(new CiphertextWritable(b, 0));
+        assertEquals(expected, Integer.signum(comparator.compare(aBytes, 0, aBytes.length, bBytes, 0, bBytes.length)));
+        assertEquals(expected, Integer.signum(new CiphertextWritable(a, width).compareTo(new CiphertextWritable(b, 0))));
+      }
+    }
+
+    // Values wider than the requested width are kept whole
+    BigInteger wide = modulus.shiftLeft(64);
+    assertEquals(wide, new CiphertextWritable(wide, width).get());
+    assertTrue(new CiphertextWritable(wide, width).getLength() > width);
+
+    logger.info("Successfully completed testSerializationAndOrder");
+  }
+
+  private static byte[] serialize(CiphertextWritable writable) throws IOException
+  {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    writable.write(new DataOutputStream(bytes));
+    return bytes.toByteArray();
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pirk.general;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.pirk.responder.wideskies.common.ColumnStore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Functional tests for ColumnStore
+ */
+public class ColumnStoreTest
+{
+  private static final Logger logger = LoggerFactory.getLogger(ColumnStoreTest.class);
+
+  @Test
+  public void testColumnStore() throws Exception
+  {
+    logger.info("Starting testColumnStore: ");
+
+    Random random = new Random(1234);
+    BigInteger modulus = BigInteger.probablePrime(512, random).pow(2);
+
+    // A budget of three pages forces spilling
+    int numColumns = 1000;
+    int numThreads = 4;
+    long memoryBudget = 3 * ColumnStore.COLUMNS_PER_PAGE * (8 + modulus.bitLength() / 8);
+    try (ColumnStore store = new ColumnStore(modulus, memoryBudget, null))
+    {
+      List<List<BigInteger>> factors = new ArrayList<>();
+      for (int t = 0; t < numThreads; ++t)
+      {
+        List<BigInteger> threadFactors = new ArrayList<>();
+        for (int i = 0; i < 4 * numColumns; ++i)
+        {
+          threadFactors.add(new BigInteger(modulus.bitLength() + 8, random)); // not reduced mod modulus
+        }
+        factors.add(threadFactors);
+      }
+
+      // Each thread multiplies into every column, in a different order
+      ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < numThreads; ++t)
+      {
+        List<BigInteger> threadFactors = factors.get(t);
+        int offset = t * 97;
+        futures.add(pool.submit(() -> {
+          for (int i = 0; i < threadFactors.size(); ++i)
+          {
+            store.multiply((i + offset) % numColumns, threadFactors.get(i));
+          }
+        }));
+      }
+      for (Future<?> future : futures)
+      {
+        future.get();
+      }
+      pool.shutdown();
+
+      TreeMap<Long,BigInteger> expected = new TreeMap<>();
+      for (int t = 0; t < numThreads; ++t)
+      {
+        List<BigInteger> threadFactors = factors.get(t);
+        for (int i = 0; i < threadFactors.size(); ++i)
+        {
+          long col = (i + t * 97) % numColumns;
+          expected.put(col, expected.getOrDefault(col, BigInteger.ONE).multiply(threadFactors.get(i)).mod(modulus));
+        }
+      }
+      store.multiply(5000, null);
+      expected.put(5000L, BigInteger.ONE);
+
+      assertTrue(store.getResidentBytes() <= memoryBudget);
+      assertEquals(expected.size(), store.size());
+
+      TreeMap<Long,BigInteger> actual = new TreeMap<>();
+      store.forEach(actual::put);
+      assertEquals(expected, actual);
+
+      assertEquals(expected.get(7L), store.remove(7));
+      assertNull(store.getValue(7));
+      assertNull(store.getValue(4999));
+      assertEquals(expected.size() - 1, store.size());
+
+      store.clear();
+      assertEquals(0, store.size());
+      store.multiply(3, BigInteger.TEN);
+      assertEquals(BigInteger.TEN, store.getValue(3));
+    }
+
+    logger.info("Successfully completed testColumnStore");
+  }
+
+  @Test
+  public void testSharedMemoryBudget() throws Exception
+  {
+    logger.info("Starting testSharedMemoryBudget: ");
+
+    Random random = new Random(4321);
+    BigInteger modulus = BigInteger.probablePrime(512, random).pow(2);
+
+    // Two stores without budgets of their own share a budget of four pages
+    int numColumns = 1000;
+    long sharedBudget = 4 * ColumnStore.COLUMNS_PER_PAGE * (8 + modulus.bitLength() / 8);
+    ColumnStore.setSharedMemoryBudget(sharedBudget);
+    try (ColumnStore store1 = new ColumnStore(modulus, Long.MAX_VALUE, null); ColumnStore store2 = new ColumnStore(modulus, Long.MAX_VALUE, null))
+    {
+      TreeMap<Long,BigInteger> expected1 = new TreeMap<>();
+      TreeMap<Long,BigInteger> expected2 = new TreeMap<>();
+      for (int i = 0; i < 2 * numColumns; ++i)
+      {
+        long col = (i * 37) % numColumns;
+        BigInteger x = new BigInteger(modulus.bitLength() - 1, random);
+        store1.multiply(col, x);
+        expected1.put(col, expected1.getOrDefault(col, BigInteger.ONE).multiply(x).mod(modulus));
+        store2.multiply(col + 1, x);
+        expected2.put(col + 1, expected2.getOrDefault(col + 1, BigInteger.ONE).multiply(x).mod(modulus));
+
+        assertTrue(ColumnStore.getSharedDirectBytes() <= sharedBudget);
+      }
+
+      TreeMap<Long,BigInteger> actual = new TreeMap<>();
+      store1.forEach(actual::put);
+      assertEquals(expected1, actual);
+      actual.clear();
+      store2.forEach(actual::put);
+      assertEquals(expected2, actual);
+    } finally
+    {
+      ColumnStore.setSharedMemoryBudget(0);
+    }
+
+    logger.info("Successfully completed testSharedMemoryBudget");
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pirk.general;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.pirk.inputformat.local.MappedLineSplit;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Functional tests for MappedLineSplit
+ */
+public class MappedLineSplitTest
+{
+  private static final Logger logger = LoggerFactory.getLogger(MappedLineSplitTest.class);
+
+  @Test
+  public void testSplits() throws IOException
+  {
+    logger.info("Starting testSplits: ");
+
+    List<String> lines = new ArrayList<>();
+    for (int i = 0; i < 500; ++i)
+    {
+      StringBuilder line = new StringBuilder("{\"id\":" + i + ",\"value\":\"");
+      for (int j = 0; j < i % 37; ++j)
+      {
+        line.append((char) ('a' + j % 26));
+      }
+      lines.add(line.append("\u00e9\"}").toString());
+    }
+
+    File dir = Files.createTempDirectory("mappedLineSplitTest").toFile();
+    dir.deleteOnExit();
+    writeFile(new File(dir, "part-0"), String.join("\n", lines.subList(0, 200)) + "\n");
+    writeFile(new File(dir, "part-1"), String.join("\r\n", lines.subList(200, 500))); // last line not terminated
+    writeFile(new File(dir, "_SUCCESS"), "ignored\n");
+
+    for (long splitBytes : new long[] {1, 17, 100, 4096, Long.MAX_VALUE})
+    {
+      List<MappedLineSplit> splits = MappedLineSplit.getSplits(dir.getPath(), splitBytes);
+      assertEquals(lines, readAll(splits));
+      for (MappedLineSplit split : splits)
+      {
+        assertTrue(split.getLength() > 0);
+      }
+    }
+    assertEquals(lines.subList(0, 200), readAll(MappedLineSplit.getSplits(new File(dir, "part-0").getPath(), 64)));
+
+    // Empty file and empty lines
+    writeFile(new File(dir, "part-0"), "");
+    writeFile(new File(dir, "part-1"), "a\n\nb\n");
+    assertEquals(Arrays.asList("a", "", "b"), readAll(MappedLineSplit.getSplits(dir.getPath(), 1)));
+
+    MappedLineSplit split = MappedLineSplit.getSplits(new File(dir, "part-1").getPath(), 1).get(0);
+    assertEquals(1, split.nextLine().remaining());
+    assertNull(split.nextLine());
+
+    logger.info("Successfully completed testSplits");
+  }
+
+  private static List<String> readAll(List<MappedLineSplit> splits)
+  {
+    List<String> lines = new ArrayList<>();
+    for (MappedLineSplit split : splits)
+    {
+      String line;
+      while ((line = split.readLine()) != null)
+      {
+        lines.add(line);
+      }
+    }
+    return lines;
+  }
+
+  private static void writeFile(File file, String contents) throws IOException
+  {
+    file.deleteOnExit();
+    try (FileOutputStream out = new FileOutputStream(file))
+    {
+      out.write(contents.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+}
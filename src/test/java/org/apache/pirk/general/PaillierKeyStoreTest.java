@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pirk.general;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import org.apache.pirk.encryption.Paillier;
+import org.apache.pirk.encryption.PaillierKeyStore;
+import org.apache.pirk.utils.PIRException;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Basic functional tests for PaillierKeyStore
+ * 
+ */
+public class PaillierKeyStoreTest
+{
+  private static final Logger logger = LoggerFactory.getLogger(PaillierKeyStoreTest.class);
+
+  private static final int bitLength = 384;
+  private static final int certainty = 128;
+
+  @Test
+  public void testKeyStore() throws Exception
+  {
+    logger.info("Starting testKeyStore: ");
+
+    File directory = Files.createTempDirectory("keyStore").toFile();
+    directory.deleteOnExit();
+
+    // Each key is handed out twice
+    PaillierKeyStore keyStore = new PaillierKeyStore(directory, "password".toCharArray(), 2);
+    keyStore.generateKeys(bitLength, certainty, -1, 1);
+    assertEquals(1, keyStore.numKeys(bitLength));
+    assertEquals(0, keyStore.numKeys(bitLength * 2));
+
+    Paillier first = keyStore.acquire(bitLength, certainty, -1);
+    assertEquals(1, keyStore.numKeys(bitLength));
+    Paillier second = keyStore.acquire(bitLength, certainty, -1);
+    assertEquals(first, second);
+    assertEquals(0, keyStore.numKeys(bitLength));
+
+    // An empty store generates the key and keeps it for its remaining use
+    Paillier third = keyStore.acquire(bitLength, certainty, -1);
+    assertNotEquals(first, third);
+    assertEquals(1, keyStore.numKeys(bitLength));
+
+    // The keys are encrypted under the password
+    PaillierKeyStore wrongPassword = new PaillierKeyStore(directory, "wrong".toCharArray(), 2);
+    try
+    {
+      wrongPassword.acquire(bitLength, certainty, -1);
+      fail("acquire did not throw PIRException for a wrong password");
+    } catch (PIRException ignore)
+    {}
+    assertEquals(1, keyStore.numKeys(bitLength));
+    assertEquals(third, keyStore.acquire(bitLength, certainty, -1));
+
+    // Keys not satisfying the request stay in the store
+    keyStore.generateKeys(bitLength, certainty, -1, 1);
+    keyStore.acquire(bitLength, certainty + 1, -1);
+    assertEquals(2, keyStore.numKeys(bitLength));
+
+    // The key files are readable only by their owner
+    for (File file : directory.listFiles())
+    {
+      if (Files.getFileStore(file.toPath()).supportsFileAttributeView("posix"))
+      {
+        assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(file.toPath())));
+      }
+    }
+
+    // A key left claimed by a dead process is returned to the store when it is next opened
+    File key = directory.listFiles((dir, name) -> name.endsWith(".key"))[0];
+    File claimed = new File(key.getPath() + ".claimed");
+    assertTrue(key.renameTo(claimed));
+    assertEquals(1, keyStore.numKeys(bitLength));
+    new PaillierKeyStore(directory, "password".toCharArray(), 2);
+    assertEquals(1, keyStore.numKeys(bitLength)); // a recent claim may still be held
+    assertTrue(claimed.setLastModified(System.currentTimeMillis() - PaillierKeyStore.STALE_CLAIM_MILLIS - 1000));
+    new PaillierKeyStore(directory, "password".toCharArray(), 2);
+    assertEquals(2, keyStore.numKeys(bitLength));
+    assertFalse(claimed.exists());
+
+    for (File file : directory.listFiles())
+    {
+      file.deleteOnExit();
+    }
+
+    logger.info("Successfully completed testKeyStore: ");
+  }
+}
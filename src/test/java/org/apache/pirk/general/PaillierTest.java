@@ -19,13 +19,31 @@
 package org.apache.pirk.general;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
 import java.util.Random;
 
+import org.apache.pirk.encryption.FixedBaseTable;
+import org.apache.pirk.encryption.ModPowAbstraction;
+import org.apache.pirk.encryption.ModPowEngineService;
+import org.apache.pirk.encryption.MontgomeryAccumulator;
+import org.apache.pirk.encryption.MontgomeryModPowEngine;
 import org.apache.pirk.encryption.Paillier;
+import org.apache.pirk.encryption.RandomnessPool;
+import org.apache.pirk.encryption.spi.ModPowEngine;
 import org.apache.pirk.utils.PIRException;
 import org.apache.pirk.utils.SystemConfiguration;
 import org.junit.BeforeClass;
@@ -220,28 +238,266 @@ public class PaillierTest
     SystemConfiguration.setProperty("pallier.FIPSPrimeGenerationChecks", "true");
     SystemConfiguration.setProperty("paillier.useGMPForModPow", "true");
     SystemConfiguration.setProperty("paillier.GMPConstantTimeMode", "true");
+    ModPowAbstraction.reloadConfiguration();
     testPaillerWithKeyGenerationGeneral();
 
     SystemConfiguration.setProperty("pallier.FIPSPrimeGenerationChecks", "false");
 
     SystemConfiguration.setProperty("paillier.useGMPForModPow", "true");
     SystemConfiguration.setProperty("paillier.GMPConstantTimeMode", "true");
+    ModPowAbstraction.reloadConfiguration();
     testPaillerWithKeyGenerationGeneral();
 
     SystemConfiguration.setProperty("paillier.useGMPForModPow", "true");
     SystemConfiguration.setProperty("paillier.GMPConstantTimeMode", "false");
+    ModPowAbstraction.reloadConfiguration();
     testPaillerWithKeyGenerationGeneral();
 
     SystemConfiguration.setProperty("paillier.useGMPForModPow", "false");
     SystemConfiguration.setProperty("paillier.GMPConstantTimeMode", "false");
+    ModPowAbstraction.reloadConfiguration();
+    testPaillerWithKeyGenerationGeneral();
+
+    SystemConfiguration.setProperty("paillier.modPowEngine", MontgomeryModPowEngine.NAME);
+    ModPowAbstraction.reloadConfiguration();
     testPaillerWithKeyGenerationGeneral();
 
     // Reset the properties
     SystemConfiguration.initialize();
+    ModPowAbstraction.reloadConfiguration();
 
     logger.info("Ending testPaillierWithKeyGeneration: ");
   }
 
+  @Test
+  public void testModPowEngines() throws Exception
+  {
+    logger.info("Starting testModPowEngines: ");
+
+    Random random = new Random(1234);
+    for (String engineName : ModPowEngineService.getInstance().getEngineNames())
+    {
+      ModPowEngine engine = ModPowAbstraction.getEngine(engineName);
+      logger.info("Testing modPow engine " + engineName);
+
+      for (int modulusBitLength : new int[] {14, 32, 33, 64, 521, 1024})
+      {
+        BigInteger modulus = new BigInteger(modulusBitLength, random).setBit(modulusBitLength - 1).setBit(0);
+
+        BigInteger[] bases = new BigInteger[20];
+        BigInteger[] exponents = new BigInteger[bases.length];
+        for (int i = 0; i < bases.length; ++i)
+        {
+          // Runs of equal bases, bases larger than the modulus, and zero exponents
+          bases[i] = (i % 4 == 3) ? bases[i - 1] : new BigInteger(modulusBitLength + 8, random);
+          exponents[i] = (i % 5 == 0) ? BigInteger.ZERO : new BigInteger(1 + random.nextInt(modulusBitLength), random);
+
+          assertEquals(bases[i].modPow(exponents[i], modulus), engine.modPow(bases[i], exponents[i], modulus));
+        }
+
+        BigInteger[] results = engine.modPowBatch(bases, exponents, modulus);
+        for (int i = 0; i < bases.length; ++i)
+        {
+          assertEquals(bases[i].modPow(exponents[i], modulus), results[i]);
+        }
+
+        // One base raised to many small exponents, as for the data partitions of a row
+        BigInteger[] rowBases = new BigInteger[300];
+        BigInteger[] partitions = new BigInteger[rowBases.length];
+        Arrays.fill(rowBases, bases[0]);
+        for (int i = 0; i < partitions.length; ++i)
+        {
+          partitions[i] = BigInteger.valueOf(random.nextInt(256));
+        }
+        results = engine.modPowBatch(rowBases, partitions, modulus);
+        for (int i = 0; i < rowBases.length; ++i)
+        {
+          assertEquals(rowBases[i].modPow(partitions[i], modulus), results[i]);
+        }
+      }
+    }
+
+    try
+    {
+      ModPowAbstraction.getEngine("unknownEngine");
+      fail("ModPowAbstraction.getEngine did not throw PIRException for an unknown engine");
+    } catch (PIRException ignore)
+    {}
+
+    logger.info("Successfully completed testModPowEngines: ");
+  }
+
+  @Test
+  public void testMontgomeryAccumulator()
+  {
+    logger.info("Starting testMontgomeryAccumulator: ");
+
+    Random random = new Random(5678);
+    for (int modulusBitLength : new int[] {14, 32, 33, 521, 2048})
+    {
+      BigInteger modulus = new BigInteger(modulusBitLength, random).setBit(modulusBitLength - 1).setBit(0);
+
+      MontgomeryAccumulator acc1 = new MontgomeryAccumulator(modulus);
+      MontgomeryAccumulator acc2 = new MontgomeryAccumulator(modulus);
+      assertEquals(BigInteger.ONE, acc1.getValue());
+
+      BigInteger product1 = BigInteger.ONE;
+      BigInteger product2 = BigInteger.ONE;
+      for (int i = 0; i < 50; ++i)
+      {
+        BigInteger x = new BigInteger(modulusBitLength + 4, random); // not necessarily reduced
+        acc1.multiply(x);
+        product1 = (product1.multiply(x)).mod(modulus);
+
+        BigInteger y = new BigInteger(modulusBitLength - 1, random);
+        acc2.multiply(y);
+        product2 = (product2.multiply(y)).mod(modulus);
+      }
+      assertEquals(product1, acc1.getValue());
+
+      acc1.multiply(acc2);
+      assertEquals((product1.multiply(product2)).mod(modulus), acc1.getValue());
+
+      acc1.reset();
+      acc1.multiply(m1);
+      assertEquals(m1.mod(modulus), acc1.getValue());
+    }
+
+    logger.info("Successfully completed testMontgomeryAccumulator: ");
+  }
+
+  @Test
+  public void testRandomnessPool() throws Exception
+  {
+    logger.info("Starting testRandomnessPool: ");
+
+    Paillier pailler = new Paillier(p, q, bitLength);
+
+    // Precomputed randomness gives the same ciphertexts as the inline computation
+    BigInteger r1N = ModPowAbstraction.modPow(r1, N, NSquared);
+    assertEquals(BigInteger.valueOf(14019), pailler.encryptWithRandomness(m1, r1N));
+    assertEquals(r1N, pailler.encryptWithRandomness(BigInteger.ZERO, r1N));
+
+    RandomnessPool pool = new RandomnessPool(pailler, 64);
+    pool.fill(40);
+    assertEquals(40, pool.size());
+    for (int i = 0; i < 10; ++i)
+    {
+      BigInteger m = (i % 2 == 0) ? BigInteger.ZERO : BigInteger.ONE.shiftLeft(i / 2);
+      assertEquals(m, pailler.decrypt(pailler.encryptWithRandomness(m, pool.next())));
+    }
+    assertEquals(30, pool.size());
+
+    // Persisting drains the pool into an owner-only, encrypted file; loading consumes the file
+    char[] password = "pool-password".toCharArray();
+    File file = File.createTempFile("randomnessPool", ".bin");
+    file.deleteOnExit();
+    pool.store(file, password);
+    assertEquals(0, pool.size());
+    if (file.toPath().getFileSystem().supportedFileAttributeViews().contains("posix"))
+    {
+      assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(file.toPath())));
+    }
+
+    RandomnessPool loaded = RandomnessPool.load(file, password, pailler, 20);
+    assertEquals(20, loaded.size());
+    assertFalse(file.exists());
+    assertEquals(m2, pailler.decrypt(pailler.encryptWithRandomness(m2, loaded.next())));
+
+    // Background filling, and drawing from an empty pool
+    RandomnessPool background = new RandomnessPool(pailler, 8);
+    background.start(2);
+    for (int i = 0; i < 20; ++i)
+    {
+      assertEquals(m1, pailler.decrypt(pailler.encryptWithRandomness(m1, background.next())));
+    }
+    background.stop();
+
+    // A pool only loads for the key and password it was stored with
+    loaded.store(file, password);
+    try
+    {
+      RandomnessPool.load(file, password, new Paillier(BigInteger.valueOf(7), BigInteger.valueOf(11), 7), 20);
+      fail("RandomnessPool.load did not throw IOException for a different key");
+    } catch (IOException ignore)
+    {}
+    try
+    {
+      RandomnessPool.load(file, "wrong-password".toCharArray(), pailler, 20);
+      fail("RandomnessPool.load did not throw IOException for a wrong password");
+    } catch (IOException ignore)
+    {}
+    assertEquals(19, RandomnessPool.load(file, password, pailler, 20).size());
+
+    // A pool filled on several threads loads with the key it was stored with
+    RandomnessPool precomputed = new RandomnessPool(pailler, 32);
+    precomputed.fill(32, 3);
+    assertEquals(32, precomputed.size());
+    precomputed.store(file, password);
+    RandomnessPool withKey = RandomnessPool.load(file, password, 64);
+    assertEquals(32, withKey.size());
+    assertEquals(N, withKey.getPaillier().getN());
+    assertEquals(bitLength, withKey.getPaillier().getBitLength());
+    assertEquals(m1, pailler.decrypt(withKey.getPaillier().encryptWithRandomness(m1, withKey.next())));
+
+    logger.info("Successfully completed testRandomnessPool: ");
+  }
+
+  @Test
+  public void testShortExponentRandomness() throws Exception
+  {
+    logger.info("Starting testShortExponentRandomness: ");
+
+    Random random = new Random(4321);
+    for (int modulusBitLength : new int[] {14, 64, 1024})
+    {
+      BigInteger modulus = new BigInteger(modulusBitLength, random).setBit(modulusBitLength - 1).setBit(0);
+      BigInteger base = new BigInteger(modulusBitLength - 1, random);
+      for (int window : new int[] {1, 4, 6})
+      {
+        FixedBaseTable table = new FixedBaseTable(base, modulus, 100, window);
+        assertEquals(BigInteger.ONE.mod(modulus), table.pow(BigInteger.ZERO));
+        for (int i = 0; i < 20; ++i)
+        {
+          BigInteger exponent = new BigInteger(1 + random.nextInt(100), random);
+          assertEquals(base.modPow(exponent, modulus), table.pow(exponent));
+        }
+      }
+    }
+
+    Paillier pailler = new Paillier(384, 128);
+    pailler.useShortExponentRandomness(64);
+    assertTrue(pailler.usesShortExponentRandomness());
+    for (int i = 0; i < 10; ++i)
+    {
+      BigInteger m = BigInteger.ONE.shiftLeft(8 * i);
+      assertEquals(m, pailler.decrypt(pailler.encrypt(m)));
+    }
+
+    // The mode survives serialization
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes))
+    {
+      out.writeObject(pailler);
+    }
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())))
+    {
+      Paillier deserialized = (Paillier) in.readObject();
+      assertTrue(deserialized.usesShortExponentRandomness());
+      assertEquals(pailler.getRandomnessBase(), deserialized.getRandomnessBase());
+      assertEquals(m1, deserialized.decrypt(deserialized.encrypt(m1)));
+    }
+
+    try
+    {
+      pailler.useShortExponentRandomness(385);
+      fail("useShortExponentRandomness did not throw IllegalArgumentException for exponentBitLength > bitLength");
+    } catch (IllegalArgumentException ignore)
+    {}
+
+    logger.info("Successfully completed testShortExponentRandomness: ");
+  }
+
   public void testPaillerWithKeyGenerationGeneral() throws Exception
   {
     // Test without requiring highest bit to be set
@@ -291,6 +547,14 @@ public class PaillierTest
     assertEquals(decM1, m1);
     assertEquals(decM2, m2);
 
+    // Check batch decryption
+    assertEquals(Arrays.asList(m1, m2), pailler.decryptBatch(Arrays.asList(encM1, encM2)));
+
+    // Check the CRT encryption against the encryption over the full modulus
+    BigInteger r = new BigInteger(bitLengthInput - 1, new Random()).setBit(0);
+    BigInteger encFull = (m1.multiply(generatedN).add(BigInteger.ONE)).multiply(r.modPow(generatedN, geneartedNsquared)).mod(geneartedNsquared);
+    assertEquals(encFull, pailler.encrypt(m1, r));
+
     // Check homomorphic property: E_r1(m1)*E_r2(m2) mod N^2 = E_r1r2((m1+m2) mod N) mod N^2
     BigInteger encM1_times_encM2 = (encM1.multiply(encM2)).mod(geneartedNsquared);
     BigInteger multDecrypt = pailler.decrypt(encM1_times_encM2);
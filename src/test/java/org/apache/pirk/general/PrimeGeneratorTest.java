@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pirk.general;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import org.apache.pirk.encryption.Paillier;
+import org.apache.pirk.encryption.PrimeGenerator;
+import org.apache.pirk.utils.SystemConfiguration;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Functional tests for PrimeGenerator
+ */
+public class PrimeGeneratorTest
+{
+  private static final Logger logger = LoggerFactory.getLogger(PrimeGeneratorTest.class);
+
+  private static final String THREADS_PROPERTY = "pallier.primeGenerationThreads";
+
+  private static final int bitLength = 1024;
+  private static final int certainty = 128;
+
+  @Test
+  public void testPrimeGeneration()
+  {
+    logger.info("Starting testPrimeGeneration: ");
+
+    String numThreads = SystemConfiguration.getProperty(THREADS_PROPERTY, String.valueOf(Runtime.getRuntime().availableProcessors()));
+    try
+    {
+      // A seeded Random gives the same primes whatever the number of threads
+      SystemConfiguration.setProperty(THREADS_PROPERTY, "1");
+      BigInteger[] pair = PrimeGenerator.getPrimePair(bitLength, certainty, new Random(1234));
+      BigInteger single = PrimeGenerator.getSinglePrime(bitLength, certainty, new Random(5678));
+      SystemConfiguration.setProperty(THREADS_PROPERTY, "4");
+      assertArrayEquals(pair, PrimeGenerator.getPrimePair(bitLength, certainty, new Random(1234)));
+      assertEquals(single, PrimeGenerator.getSinglePrime(bitLength, certainty, new Random(5678)));
+
+      BigInteger second = PrimeGenerator.getSecondPrime(bitLength, certainty, new Random(1234), pair[0]);
+      assertNotEquals(pair[0], pair[1]);
+      assertNotEquals(pair[0], second);
+      for (BigInteger prime : new BigInteger[] {pair[0], pair[1], single, second, PrimeGenerator.getPrimePair(bitLength, certainty)[0]})
+      {
+        assertEquals(bitLength / 2, prime.bitLength());
+        assertTrue(prime.isProbablePrime(certainty));
+      }
+    } finally
+    {
+      SystemConfiguration.setProperty(THREADS_PROPERTY, numThreads);
+    }
+
+    // Keys are generated until the requested bit of the modulus is set
+    int ensureBitSet = bitLength - 2;
+    Paillier paillier = new Paillier(bitLength, certainty, ensureBitSet);
+    assertTrue(paillier.getN().testBit(ensureBitSet));
+    assertTrue(paillier.getN().bitLength() <= bitLength);
+
+    logger.info("Successfully completed testPrimeGeneration");
+  }
+}
@@ -18,7 +18,14 @@
  */
 package org.apache.pirk.serialization;
 
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.pirk.querier.wideskies.DecryptionKey;
 import org.apache.pirk.querier.wideskies.Querier;
+import org.apache.pirk.query.wideskies.BinaryQuery;
+import org.apache.pirk.query.wideskies.Query;
+import org.apache.pirk.responder.wideskies.common.ExpTableFile;
+import org.apache.pirk.responder.wideskies.common.ShardedQuery;
 import org.apache.pirk.response.wideskies.Response;
 import org.apache.pirk.test.utils.BaseTests;
 import org.apache.pirk.test.utils.Inputs;
@@ -137,6 +144,9 @@ public class SerializationTest
       querier = StandaloneQuery.createQuerier(Inputs.DNS_HOSTNAME_QUERY, BaseTests.selectorsDomain);
       checkSerializeDeserialize(querier, service);
 
+      // Test the decryption key of the querier.
+      checkSerializeDeserialize(querier.getDecryptionKey(), service);
+
       // Create Response.
       Response response = new Response(querier.getQuery().getQueryInfo());
       for (Integer i = 0; i < 10; i++ )
@@ -156,6 +166,121 @@ public class SerializationTest
     }
   }
 
+  @Test
+  public void testBinaryQuery() throws Exception
+  {
+    Query query = StandaloneQuery.createQuerier(Inputs.DNS_HOSTNAME_QUERY, BaseTests.selectorsDomain).getQuery();
+
+    // Write in the binary format, memory map
+    File fileQuery = folder.newFile("test-binary-query");
+    try (FileOutputStream fos = new FileOutputStream(fileQuery))
+    {
+      BinaryQuery.write(query, fos);
+    }
+    Assert.assertTrue(BinaryQuery.isBinaryQuery(fileQuery));
+    Query mappedQuery = new LocalFileSystemStore(jsonSerializer).recall(fileQuery, Query.class);
+    Assert.assertTrue(mappedQuery instanceof BinaryQuery);
+    checkBinaryQuery(query, mappedQuery);
+
+    // Rewrite the mapped query and read it back from a stream
+    File fileRewritten = folder.newFile("test-binary-query-rewritten");
+    new LocalFileSystemStore(javaSerializer).store(fileRewritten, mappedQuery);
+    try (FileInputStream fis = new FileInputStream(fileRewritten))
+    {
+      checkBinaryQuery(query, BinaryQuery.read(fis));
+    }
+
+    // Java serialization of a binary query carries the raw elements
+    File fileJava = folder.newFile("test-binary-query-java");
+    javaSerializer.write(new FileOutputStream(fileJava), mappedQuery);
+    checkBinaryQuery(query, javaSerializer.read(new FileInputStream(fileJava), Query.class));
+
+    // JSON files are still read as regular queries
+    File fileJson = folder.newFile("test-json-query");
+    new LocalFileSystemStore(jsonSerializer).store(fileJson, query);
+    Assert.assertFalse(BinaryQuery.isBinaryQuery(fileJson));
+    Assert.assertEquals(query, new LocalFileSystemStore(jsonSerializer).recall(fileJson, Query.class));
+  }
+
+  @Test
+  public void testShardedQuery() throws Exception
+  {
+    Query query = StandaloneQuery.createQuerier(Inputs.DNS_HOSTNAME_QUERY, BaseTests.selectorsDomain).getQuery();
+    int numRows = 1 << query.getQueryInfo().getHashBitSize();
+
+    String shardDir = folder.newFolder("test-query" + ShardedQuery.SHARD_DIR_SUFFIX).getAbsolutePath();
+    int rowsPerShard = ShardedQuery.writeShards(query, 3, FileSystem.get(new Configuration()), shardDir);
+    int numShards = ShardedQuery.getNumShards(numRows, rowsPerShard);
+    Assert.assertEquals(3, numShards);
+
+    // Only the shards of the requested rows are loaded
+    ShardedQuery shardedQuery = ShardedQuery.open(null, shardDir, rowsPerShard);
+    Assert.assertEquals(0, shardedQuery.getNumLoadedShards());
+    Assert.assertEquals(query.getQueryElement(numRows - 1), shardedQuery.getQueryElement(numRows - 1));
+    Assert.assertEquals(1, shardedQuery.getNumLoadedShards());
+    checkBinaryQuery(query, shardedQuery);
+    Assert.assertEquals(numShards, shardedQuery.getNumLoadedShards());
+
+    // Each shard belongs to exactly one partition and the partitions are contiguous row ranges
+    int numPartitions = 2;
+    int lastPartition = 0;
+    for (int row = 0; row < numRows; ++row)
+    {
+      int partition = ShardedQuery.getPartition(row, rowsPerShard, numShards, numPartitions);
+      Assert.assertTrue(partition >= lastPartition && partition < numPartitions);
+      Assert.assertEquals(ShardedQuery.getPartition(ShardedQuery.getShard(row, rowsPerShard) * rowsPerShard, rowsPerShard, numShards, numPartitions), partition);
+      lastPartition = partition;
+    }
+    Assert.assertEquals(numPartitions - 1, lastPartition);
+  }
+
+  @Test
+  public void testExpTableFile() throws Exception
+  {
+    Query query = StandaloneQuery.createQuerier(Inputs.DNS_HOSTNAME_QUERY, BaseTests.selectorsDomain).getQuery();
+    int numRows = 1 << query.getQueryInfo().getHashBitSize();
+    int numPowers = 1 << query.getQueryInfo().getDataPartitionBitSize();
+
+    // One file per row range
+    FileSystem fs = FileSystem.get(new Configuration());
+    String expDir = folder.newFolder("test-exp-table").getAbsolutePath();
+    int rowsPerFile = ExpTableFile.getRowsPerFile(numRows, 3);
+    for (int startRow = 0; startRow < numRows; startRow += rowsPerFile)
+    {
+      ExpTableFile.write(query, startRow, Math.min(numRows, startRow + rowsPerFile), fs, expDir);
+    }
+    query.setExpFileBasedLookup(ExpTableFile.getExpFileBasedLookup(expDir, numRows, rowsPerFile));
+
+    ExpTableFile expTableFile = new ExpTableFile(fs, query);
+    try
+    {
+      Random random = new Random();
+      for (int i = 0; i < 100; ++i)
+      {
+        int row = (i == 0) ? numRows - 1 : random.nextInt(numRows);
+        int power = (i == 0) ? numPowers - 1 : random.nextInt(numPowers);
+        BigInteger expected = query.getQueryElement(row).modPow(BigInteger.valueOf(power), query.getNSquared());
+        Assert.assertEquals(expected, expTableFile.getExp(row, power));
+        Assert.assertEquals(expected, query.getExp(row, power));
+      }
+    } finally
+    {
+      expTableFile.close();
+    }
+  }
+
+  private void checkBinaryQuery(Query query, Query binaryQuery)
+  {
+    Assert.assertEquals(query.getQueryInfo(), binaryQuery.getQueryInfo());
+    Assert.assertEquals(query.getN(), binaryQuery.getN());
+    Assert.assertEquals(query.getNSquared(), binaryQuery.getNSquared());
+    for (int i = 0; i < query.getQueryElements().size(); ++i)
+    {
+      Assert.assertEquals(query.getQueryElement(i), binaryQuery.getQueryElement(i));
+    }
+    Assert.assertEquals(query.getQueryElements(), binaryQuery.getQueryElements());
+  }
+
   private void checkSerializeDeserialize(Querier querier, SerializationService service) throws IOException
   {
     try
@@ -175,6 +300,25 @@ public class SerializationTest
     }
   }
 
+  private void checkSerializeDeserialize(DecryptionKey decryptionKey, SerializationService service) throws IOException
+  {
+    try
+    {
+      File fileDecryptionKey = folder.newFile();
+      fileDecryptionKey.deleteOnExit();
+      // Serialize DecryptionKey
+      service.write(new FileOutputStream(fileDecryptionKey), decryptionKey);
+      // Deserialize DecryptionKey
+      DecryptionKey deserializedDecryptionKey = service.read(new FileInputStream(fileDecryptionKey), DecryptionKey.class);
+      // Check
+      Assert.assertEquals(decryptionKey, deserializedDecryptionKey);
+    } catch (IOException e)
+    {
+      logger.error("File operation error: ", e);
+      throw e;
+    }
+  }
+
   private void checkSerializeDeserialize(Response response, SerializationService service) throws IOException
   {
     try
@@ -20,6 +20,7 @@ package org.apache.pirk.wideskies.standalone;
 
 import java.util.ArrayList;
 
+import org.apache.pirk.responder.wideskies.common.ColumnEngine;
 import org.apache.pirk.schema.data.DataSchemaRegistry;
 import org.apache.pirk.schema.query.QuerySchemaRegistry;
 import org.apache.pirk.schema.query.filter.StopListFilter;
@@ -40,7 +41,7 @@ import org.slf4j.LoggerFactory;
  * <p>
  * Using a fixed 8-bit data partition size (consistent with the currently codebase)
  * <p>
- * Runs with useExpLookupTable = false as generating the lookup table takes too long for normal in-memory builds
+ * Runs mostly with useExpLookupTable = false; the lookup table rows are computed by the responder on first use
  * 
  */
 public class StandaloneTest
@@ -124,5 +125,31 @@ public class StandaloneTest
     // Run using a false positive
     SystemConfiguration.setProperty("pirTest.embedSelector", "true");
     BaseTests.testDNSHostnameQuery(dataElements, 1, true);
+
+    // Run using the bucket column engine
+    SystemConfiguration.setProperty("pir.columnEngine", ColumnEngine.BUCKET);
+    BaseTests.testDNSHostnameQuery(dataElements, 1, false);
+    BaseTests.testSRCIPQuery(dataElements, 2);
+    BaseTests.testDNSNXDOMAINQuery(dataElementsRcode3, 4);
+    SystemConfiguration.setProperty("pir.columnEngine", ColumnEngine.MODPOW);
+
+    // Run using the in-memory expLookupTable
+    SystemConfiguration.setProperty("pirTest.useExpLookupTable", "true");
+    BaseTests.testDNSHostnameQuery(dataElements, 1, false);
+    BaseTests.testSRCIPQuery(dataElements, 2);
+    SystemConfiguration.setProperty("pirTest.useExpLookupTable", "false");
+
+    // Run the multi-threaded responder over an input file
+    SystemConfiguration.setProperty("pirTest.useInputFile", "true");
+    SystemConfiguration.setProperty("pir.numStandaloneThreads", "4");
+    BaseTests.testDNSHostnameQuery(dataElements, 1, false);
+    BaseTests.testSRCIPQuery(dataElements, 2);
+    BaseTests.testDNSNXDOMAINQuery(dataElementsRcode3, 4);
+    SystemConfiguration.setProperty("pir.columnEngine", ColumnEngine.BUCKET);
+    BaseTests.testDNSHostnameQuery(dataElements, 1, false);
+    SystemConfiguration.setProperty("pir.columnEngine", ColumnEngine.MODPOW);
+    SystemConfiguration.setProperty("pir.numStandaloneThreads", "1");
+    BaseTests.testDNSHostnameQuery(dataElements, 1, false);
+    SystemConfiguration.setProperty("pirTest.useInputFile", "false");
   }
 }